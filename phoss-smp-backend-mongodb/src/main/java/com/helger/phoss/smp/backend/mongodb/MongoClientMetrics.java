@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedCounter;
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedSize;
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedTimer;
+import com.helger.commons.statistics.StatisticsManager;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.event.ConnectionPoolOpenedEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
+
+/**
+ * MongoDB driver listener that records the command latency per collection and
+ * command as well as the connection pool usage per server in the
+ * {@link StatisticsManager}. The keys of the command statistics are
+ * <code>collection/command</code>, the keys of the pool statistics are the
+ * server addresses.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public class MongoClientMetrics implements CommandListener, ConnectionPoolListener
+{
+  private static final String PREFIX = MongoClientMetrics.class.getName () + "$";
+  private static final IMutableStatisticsHandlerKeyedTimer s_aStatsCommandTimer = StatisticsManager.getKeyedTimerHandler (PREFIX +
+                                                                                                                          "command");
+  private static final IMutableStatisticsHandlerKeyedCounter s_aStatsCommandError = StatisticsManager.getKeyedCounterHandler (PREFIX +
+                                                                                                                              "command-error");
+  private static final IMutableStatisticsHandlerKeyedSize s_aStatsPoolCheckedOut = StatisticsManager.getKeyedSizeHandler (PREFIX +
+                                                                                                                          "pool-checkedout");
+  private static final IMutableStatisticsHandlerKeyedCounter s_aStatsPoolExhausted = StatisticsManager.getKeyedCounterHandler (PREFIX +
+                                                                                                                               "pool-exhausted");
+
+  /** Request ID to statistics key of all running commands */
+  private final Map <Integer, String> m_aRunningCommands = new ConcurrentHashMap <> ();
+  /** Number of checked out connections per server */
+  private final Map <ServerId, AtomicInteger> m_aCheckedOut = new ConcurrentHashMap <> ();
+  /** Maximum pool size per server */
+  private final Map <ServerId, Integer> m_aMaxPoolSize = new ConcurrentHashMap <> ();
+
+  public MongoClientMetrics ()
+  {}
+
+  @Nonnull
+  private static String _getCommandKey (@Nonnull final CommandStartedEvent aEvent)
+  {
+    final String sCommandName = aEvent.getCommandName ();
+    final BsonDocument aCommand = aEvent.getCommand ();
+    // For most commands the collection name is the value of the command name
+    BsonValue aCollection = aCommand.get (sCommandName);
+    if (aCollection == null || !aCollection.isString ())
+    {
+      // e.g. for "getMore"
+      aCollection = aCommand.get ("collection");
+    }
+    final String sCollectionName = aCollection != null && aCollection.isString () ? aCollection.asString ()
+                                                                                               .getValue ()
+                                                                                  : aEvent.getDatabaseName ();
+    return sCollectionName + "/" + sCommandName;
+  }
+
+  public void commandStarted (@Nonnull final CommandStartedEvent aEvent)
+  {
+    m_aRunningCommands.put (Integer.valueOf (aEvent.getRequestId ()), _getCommandKey (aEvent));
+  }
+
+  public void commandSucceeded (@Nonnull final CommandSucceededEvent aEvent)
+  {
+    final String sKey = m_aRunningCommands.remove (Integer.valueOf (aEvent.getRequestId ()));
+    if (sKey != null)
+      s_aStatsCommandTimer.addTime (sKey, aEvent.getElapsedTime (TimeUnit.MILLISECONDS));
+  }
+
+  public void commandFailed (@Nonnull final CommandFailedEvent aEvent)
+  {
+    final String sKey = m_aRunningCommands.remove (Integer.valueOf (aEvent.getRequestId ()));
+    if (sKey != null)
+    {
+      s_aStatsCommandTimer.addTime (sKey, aEvent.getElapsedTime (TimeUnit.MILLISECONDS));
+      s_aStatsCommandError.increment (sKey);
+    }
+  }
+
+  @Nonnull
+  private static String _getServerKey (@Nonnull final ServerId aServerId)
+  {
+    return aServerId.getAddress ().toString ();
+  }
+
+  @Nullable
+  private AtomicInteger _getCheckedOut (@Nonnull final ServerId aServerId)
+  {
+    return m_aCheckedOut.get (aServerId);
+  }
+
+  public void connectionPoolOpened (@Nonnull final ConnectionPoolOpenedEvent aEvent)
+  {
+    m_aCheckedOut.put (aEvent.getServerId (), new AtomicInteger (0));
+    m_aMaxPoolSize.put (aEvent.getServerId (), Integer.valueOf (aEvent.getSettings ().getMaxSize ()));
+  }
+
+  public void connectionPoolClosed (@Nonnull final ConnectionPoolClosedEvent aEvent)
+  {
+    m_aCheckedOut.remove (aEvent.getServerId ());
+    m_aMaxPoolSize.remove (aEvent.getServerId ());
+  }
+
+  public void connectionCheckedOut (@Nonnull final ConnectionCheckedOutEvent aEvent)
+  {
+    final ServerId aServerId = aEvent.getConnectionId ().getServerId ();
+    final AtomicInteger aCheckedOut = _getCheckedOut (aServerId);
+    if (aCheckedOut != null)
+    {
+      final int nCheckedOut = aCheckedOut.incrementAndGet ();
+      final String sKey = _getServerKey (aServerId);
+      s_aStatsPoolCheckedOut.addSize (sKey, nCheckedOut);
+
+      final Integer aMaxSize = m_aMaxPoolSize.get (aServerId);
+      if (aMaxSize != null && nCheckedOut >= aMaxSize.intValue ())
+      {
+        // All connections are in use - the next request has to wait
+        s_aStatsPoolExhausted.increment (sKey);
+      }
+    }
+  }
+
+  public void connectionCheckedIn (@Nonnull final ConnectionCheckedInEvent aEvent)
+  {
+    final AtomicInteger aCheckedOut = _getCheckedOut (aEvent.getConnectionId ().getServerId ());
+    if (aCheckedOut != null)
+      aCheckedOut.decrementAndGet ();
+  }
+
+  public void waitQueueEntered (@Nonnull final ConnectionPoolWaitQueueEnteredEvent aEvent)
+  {
+    // Entered for every check out - saturation is measured on check out
+  }
+
+  public void waitQueueExited (@Nonnull final ConnectionPoolWaitQueueExitedEvent aEvent)
+  {}
+
+  public void connectionAdded (@Nonnull final ConnectionAddedEvent aEvent)
+  {}
+
+  public void connectionRemoved (@Nonnull final ConnectionRemovedEvent aEvent)
+  {}
+}
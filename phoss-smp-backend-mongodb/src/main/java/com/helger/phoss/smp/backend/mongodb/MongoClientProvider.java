@@ -16,7 +16,10 @@
  */
 package com.helger.phoss.smp.backend.mongodb;
 
+import java.util.function.Consumer;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bson.Document;
 
@@ -35,31 +38,89 @@ public class MongoClientProvider implements AutoCloseable
   public static final Integer INDEX_ASCENDING = Integer.valueOf (1);
   public static final Integer INDEX_DESCENDING = Integer.valueOf (-1);
 
+  private final MongoClientSettings m_aClientSettings;
+  private final String m_sDBName;
   private final MongoClient m_aMongoClient;
   private final MongoDatabase m_aDatabase;
+  // Lazily created
+  private com.mongodb.async.client.MongoClient m_aAsyncMongoClient;
+  private com.mongodb.async.client.MongoDatabase m_aAsyncDatabase;
 
   public MongoClientProvider (@Nonnull @Nonempty final String sConnectionString,
                               @Nonnull @Nonempty final String sDBName)
+  {
+    this (sConnectionString, sDBName, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sConnectionString
+   *        The MongoDB connection string. May neither be <code>null</code> nor
+   *        empty.
+   * @param sDBName
+   *        The database name. May neither be <code>null</code> nor empty.
+   * @param aSettingsCustomizer
+   *        An optional customizer for the client settings that is invoked after
+   *        the connection string was applied. May be <code>null</code>.
+   * @since 5.2.0
+   */
+  public MongoClientProvider (@Nonnull @Nonempty final String sConnectionString,
+                              @Nonnull @Nonempty final String sDBName,
+                              @Nullable final Consumer <? super MongoClientSettings.Builder> aSettingsCustomizer)
   {
     ValueEnforcer.notEmpty (sConnectionString, "ConnectionString");
     ValueEnforcer.notEmpty (sDBName, "DBName");
 
-    final MongoClientSettings aClientSettings = MongoClientSettings.builder ()
-                                                                   .applicationName ("phoss SMP")
-                                                                   .applyConnectionString (new ConnectionString (sConnectionString))
-                                                                   .build ();
-    m_aMongoClient = MongoClients.create (aClientSettings);
+    final MongoClientSettings.Builder aBuilder = MongoClientSettings.builder ()
+                                                                    .applicationName ("phoss SMP")
+                                                                    .applyConnectionString (new ConnectionString (sConnectionString));
+    if (aSettingsCustomizer != null)
+      aSettingsCustomizer.accept (aBuilder);
+    m_aClientSettings = aBuilder.build ();
+    m_sDBName = sDBName;
+    m_aMongoClient = MongoClients.create (m_aClientSettings);
     m_aDatabase = m_aMongoClient.getDatabase (sDBName);
   }
 
   public void close ()
   {
+    synchronized (this)
+    {
+      if (m_aAsyncMongoClient != null)
+        m_aAsyncMongoClient.close ();
+    }
     StreamHelper.close (m_aMongoClient);
   }
 
+  @Nonnull
+  public MongoDatabase getDatabase ()
+  {
+    return m_aDatabase;
+  }
+
   @Nonnull
   public MongoCollection <Document> getCollection (@Nonnull final String sName)
   {
     return m_aDatabase.getCollection (sName);
   }
+
+  /**
+   * Get the database of the asynchronous MongoDB client. The asynchronous
+   * client uses the same settings as the synchronous client, but has its own
+   * connection pool. It is created upon the first call of this method.
+   *
+   * @return The asynchronous database. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  public synchronized com.mongodb.async.client.MongoDatabase getAsyncDatabase ()
+  {
+    if (m_aAsyncDatabase == null)
+    {
+      m_aAsyncMongoClient = com.mongodb.async.client.MongoClients.create (m_aClientSettings);
+      m_aAsyncDatabase = m_aAsyncMongoClient.getDatabase (m_sDBName);
+    }
+    return m_aAsyncDatabase;
+  }
 }
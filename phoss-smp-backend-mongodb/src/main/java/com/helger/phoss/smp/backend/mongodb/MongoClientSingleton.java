@@ -16,9 +16,14 @@
  */
 package com.helger.phoss.smp.backend.mongodb;
 
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.UsedViaReflection;
@@ -27,14 +32,52 @@ import com.helger.phoss.smp.SMPServerConfiguration;
 import com.helger.scope.IScope;
 import com.helger.settings.exchange.configfile.ConfigFile;
 import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
 
 public class MongoClientSingleton extends AbstractGlobalWebSingleton
 {
   public static final String CONFIG_MONGODB_CONNECTION_STRING = "mongodb.connectionstring";
   public static final String CONFIG_MONGODB_DB_NAME = "mongodb.dbname";
+  /**
+   * The maximum number of write operations sent in a single bulk write.
+   *
+   * @since 5.2.0
+   */
+  public static final String CONFIG_MONGODB_BULK_SIZE = "mongodb.bulk.size";
+  public static final int DEFAULT_MONGODB_BULK_SIZE = 500;
+  /**
+   * Connection pool settings. If not specified, the driver defaults or the
+   * values from the connection string are used.
+   *
+   * @since 5.2.0
+   */
+  public static final String CONFIG_MONGODB_POOL_MAX_SIZE = "mongodb.pool.maxsize";
+  public static final String CONFIG_MONGODB_POOL_MIN_SIZE = "mongodb.pool.minsize";
+  public static final String CONFIG_MONGODB_POOL_MAX_WAIT_QUEUE_SIZE = "mongodb.pool.maxwaitqueuesize";
+  public static final String CONFIG_MONGODB_POOL_MAX_WAIT_TIME_MS = "mongodb.pool.maxwaittime";
+  /**
+   * The read preference for the single object lookups as done by the public
+   * SMP API (e.g. <code>secondaryPreferred</code>). All other reads and all
+   * writes use the primary.
+   *
+   * @since 5.2.0
+   */
+  public static final String CONFIG_MONGODB_LOOKUP_READ_PREFERENCE = "mongodb.readpreference.lookup";
+  /**
+   * Record command and connection pool metrics in the statistics?
+   *
+   * @since 5.2.0
+   */
+  public static final String CONFIG_MONGODB_METRICS_ENABLED = "mongodb.metrics.enabled";
+  public static final boolean DEFAULT_MONGODB_METRICS_ENABLED = true;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (MongoClientSingleton.class);
 
   private MongoClientProvider m_aProvider;
+  private int m_nBulkSize = DEFAULT_MONGODB_BULK_SIZE;
+  private ReadPreference m_aLookupReadPreference = ReadPreference.primary ();
 
   @Deprecated
   @UsedViaReflection
@@ -58,7 +101,48 @@ public class MongoClientSingleton extends AbstractGlobalWebSingleton
                                        CONFIG_MONGODB_DB_NAME +
                                        "'");
 
-    m_aProvider = new MongoClientProvider (sConnectionString, sDBName);
+    final String sLookupReadPreference = aConfigFile.getAsString (CONFIG_MONGODB_LOOKUP_READ_PREFERENCE);
+    if (StringHelper.hasText (sLookupReadPreference))
+      try
+      {
+        m_aLookupReadPreference = ReadPreference.valueOf (sLookupReadPreference);
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        LOGGER.error ("Invalid MongoDB read preference '" +
+                      sLookupReadPreference +
+                      "' in property '" +
+                      CONFIG_MONGODB_LOOKUP_READ_PREFERENCE +
+                      "' - using primary");
+      }
+
+    final int nPoolMaxSize = aConfigFile.getAsInt (CONFIG_MONGODB_POOL_MAX_SIZE, -1);
+    final int nPoolMinSize = aConfigFile.getAsInt (CONFIG_MONGODB_POOL_MIN_SIZE, -1);
+    final int nPoolMaxWaitQueueSize = aConfigFile.getAsInt (CONFIG_MONGODB_POOL_MAX_WAIT_QUEUE_SIZE, -1);
+    final long nPoolMaxWaitTimeMS = aConfigFile.getAsLong (CONFIG_MONGODB_POOL_MAX_WAIT_TIME_MS, -1);
+    final MongoClientMetrics aMetrics = aConfigFile.getAsBoolean (CONFIG_MONGODB_METRICS_ENABLED,
+                                                                  DEFAULT_MONGODB_METRICS_ENABLED) ? new MongoClientMetrics ()
+                                                                                                   : null;
+
+    m_aProvider = new MongoClientProvider (sConnectionString, sDBName, aBuilder -> {
+      aBuilder.applyToConnectionPoolSettings (aPool -> {
+        if (nPoolMaxSize > 0)
+          aPool.maxSize (nPoolMaxSize);
+        if (nPoolMinSize >= 0)
+          aPool.minSize (nPoolMinSize);
+        if (nPoolMaxWaitQueueSize >= 0)
+          aPool.maxWaitQueueSize (nPoolMaxWaitQueueSize);
+        if (nPoolMaxWaitTimeMS >= 0)
+          aPool.maxWaitTime (nPoolMaxWaitTimeMS, TimeUnit.MILLISECONDS);
+        if (aMetrics != null)
+          aPool.addConnectionPoolListener (aMetrics);
+      });
+      if (aMetrics != null)
+        aBuilder.addCommandListener (aMetrics);
+    });
+
+    final int nBulkSize = aConfigFile.getAsInt (CONFIG_MONGODB_BULK_SIZE, DEFAULT_MONGODB_BULK_SIZE);
+    m_nBulkSize = nBulkSize > 0 ? nBulkSize : DEFAULT_MONGODB_BULK_SIZE;
   }
 
   @Nonnull
@@ -67,6 +151,47 @@ public class MongoClientSingleton extends AbstractGlobalWebSingleton
     return getGlobalSingleton (MongoClientSingleton.class);
   }
 
+  /**
+   * @return The maximum number of write operations per bulk write. Always
+   *         &gt; 0.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public int getBulkSize ()
+  {
+    return m_nBulkSize;
+  }
+
+  /**
+   * @return The read preference to be used for single object lookups. Never
+   *         <code>null</code>. Defaults to primary.
+   * @since 5.2.0
+   */
+  @Nonnull
+  public ReadPreference getLookupReadPreference ()
+  {
+    return m_aLookupReadPreference;
+  }
+
+  @Nonnull
+  public MongoDatabase getDatabase ()
+  {
+    return m_aProvider.getDatabase ();
+  }
+
+  /**
+   * @param sCollectionName
+   *        The collection name. May neither be <code>null</code> nor empty.
+   * @return The collection of the asynchronous client. Never
+   *         <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  public com.mongodb.async.client.MongoCollection <Document> getAsyncCollection (@Nonnull @Nonempty final String sCollectionName)
+  {
+    return m_aProvider.getAsyncDatabase ().getCollection (sCollectionName);
+  }
+
   @Nonnull
   public MongoCollection <Document> getCollection (@Nonnull @Nonempty final String sCollectionName)
   {
@@ -16,22 +16,46 @@
  */
 package com.helger.phoss.smp.backend.mongodb.mgr;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.OverridingMethodsMustInvokeSuper;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
 
 /**
  * Abstract base class for MongoDB backends
@@ -40,17 +64,43 @@ import com.mongodb.client.MongoCollection;
  */
 public abstract class AbstractManagerMongoDB implements AutoCloseable
 {
-  private static final String BSON_SCHEME = "scheme";
-  private static final String BSON_VALUE = "value";
+  /**
+   * Callback for a single successfully written item of a bulk write.
+   *
+   * @param <T>
+   *        The item type
+   * @since 5.2.0
+   */
+  @FunctionalInterface
+  protected interface IBulkWriteSuccessHandler <T>
+  {
+    /**
+     * @param aItem
+     *        The written item. Never <code>null</code>.
+     * @param bInserted
+     *        <code>true</code> if a new document was created,
+     *        <code>false</code> if an existing document was replaced.
+     */
+    void onSuccess (@Nonnull T aItem, boolean bInserted);
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AbstractManagerMongoDB.class);
+  protected static final String BSON_SCHEME = "scheme";
+  protected static final String BSON_VALUE = "value";
 
   private final String m_sCollectionName;
   private final MongoCollection <Document> m_aCollection;
+  private final MongoCollection <Document> m_aLookupCollection;
+  // Lazily created
+  private com.mongodb.async.client.MongoCollection <Document> m_aAsyncLookupCollection;
 
   public AbstractManagerMongoDB (@Nonnull @Nonempty final String sCollectionName)
   {
     ValueEnforcer.notNull (sCollectionName, "CollectionName");
     m_sCollectionName = sCollectionName;
-    m_aCollection = MongoClientSingleton.getInstance ().getCollection (sCollectionName);
+    final MongoClientSingleton aClient = MongoClientSingleton.getInstance ();
+    m_aCollection = aClient.getCollection (sCollectionName);
+    m_aLookupCollection = m_aCollection.withReadPreference (aClient.getLookupReadPreference ());
   }
 
   @OverridingMethodsMustInvokeSuper
@@ -74,6 +124,233 @@ public abstract class AbstractManagerMongoDB implements AutoCloseable
     return m_aCollection;
   }
 
+  /**
+   * @return The collection to be used for read-only single object lookups as
+   *         performed by the public SMP API. It uses the configured lookup
+   *         read preference and may therefore be slightly behind the primary.
+   *         Use {@link #getCollection()} for all reads that precede a write.
+   * @since 5.2.0
+   */
+  @Nonnull
+  protected final MongoCollection <Document> getLookupCollection ()
+  {
+    return m_aLookupCollection;
+  }
+
+  /**
+   * @return The collection of the asynchronous client to be used for read-only
+   *         single object lookups. It uses the same read preference as
+   *         {@link #getLookupCollection()}. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  protected final synchronized com.mongodb.async.client.MongoCollection <Document> getAsyncLookupCollection ()
+  {
+    if (m_aAsyncLookupCollection == null)
+    {
+      final MongoClientSingleton aClient = MongoClientSingleton.getInstance ();
+      m_aAsyncLookupCollection = aClient.getAsyncCollection (m_sCollectionName)
+                                        .withReadPreference (aClient.getLookupReadPreference ());
+    }
+    return m_aAsyncLookupCollection;
+  }
+
+  /**
+   * Find the first document matching the provided filter with the
+   * asynchronous client. The mapper is invoked in a driver thread and must not
+   * block.
+   *
+   * @param <T>
+   *        The result type
+   * @param aFilter
+   *        The filter to apply. May not be <code>null</code>.
+   * @param aMapper
+   *        The function to convert the found document. May not be
+   *        <code>null</code>.
+   * @return The future that is completed with the converted document or with
+   *         <code>null</code> if no document matches. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  protected final <T> CompletableFuture <T> findFirstAsync (@Nonnull final Bson aFilter,
+                                                           @Nonnull final Function <? super Document, ? extends T> aMapper)
+  {
+    final CompletableFuture <T> ret = new CompletableFuture <> ();
+    getAsyncLookupCollection ().find (aFilter).first ( (aDoc, aThrowable) -> {
+      if (aThrowable != null)
+        ret.completeExceptionally (aThrowable);
+      else
+        try
+        {
+          ret.complete (aDoc == null ? null : aMapper.apply (aDoc));
+        }
+        catch (final RuntimeException ex)
+        {
+          ret.completeExceptionally (ex);
+        }
+    });
+    return ret;
+  }
+
+  /**
+   * Create the provided indexes on the collection of this manager. MongoDB
+   * ignores indexes that already exist with the same definition, so this is
+   * meant to be called on every startup with the full list of indexes of a
+   * manager. A failure is logged but does not prevent the manager from being
+   * used.
+   *
+   * @param aIndexes
+   *        The indexes to be created. May not be <code>null</code>.
+   */
+  protected final void ensureIndexes (@Nonnull final Iterable <? extends IndexModel> aIndexes)
+  {
+    ValueEnforcer.notNull (aIndexes, "Indexes");
+
+    final ICommonsList <IndexModel> aList = new CommonsArrayList <> (aIndexes);
+    if (aList.isNotEmpty ())
+    {
+      try
+      {
+        final ICommonsList <String> aNames = new CommonsArrayList <> (m_aCollection.createIndexes (aList));
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Ensured indexes " + aNames + " on collection '" + m_sCollectionName + "'");
+      }
+      catch (final MongoException ex)
+      {
+        LOGGER.error ("Failed to create the indexes on collection '" + m_sCollectionName + "'", ex);
+      }
+    }
+  }
+
+  /**
+   * Write the provided items with unordered bulk writes of at most
+   * {@link MongoClientSingleton#getBulkSize()} operations each. The failure of
+   * a single item does not stop the other items. The handlers are invoked
+   * after each bulk write, once per item.
+   *
+   * @param <T>
+   *        The item type
+   * @param aItems
+   *        The items to write. May not be <code>null</code>.
+   * @param aModelFactory
+   *        Creates the write operation for a single item. May not be
+   *        <code>null</code>.
+   * @param aSuccessHandler
+   *        Invoked for every successfully written item. May not be
+   *        <code>null</code>.
+   * @param aErrorHandler
+   *        Invoked for every item that could not be written. May not be
+   *        <code>null</code>.
+   * @since 5.2.0
+   */
+  protected final <T> void bulkWrite (@Nonnull final Iterable <? extends T> aItems,
+                                      @Nonnull final Function <? super T, ? extends WriteModel <Document>> aModelFactory,
+                                      @Nonnull final IBulkWriteSuccessHandler <? super T> aSuccessHandler,
+                                      @Nonnull final BiConsumer <? super T, String> aErrorHandler)
+  {
+    ValueEnforcer.notNull (aItems, "Items");
+    ValueEnforcer.notNull (aModelFactory, "ModelFactory");
+    ValueEnforcer.notNull (aSuccessHandler, "SuccessHandler");
+    ValueEnforcer.notNull (aErrorHandler, "ErrorHandler");
+
+    final int nBulkSize = MongoClientSingleton.getInstance ().getBulkSize ();
+    final ICommonsList <T> aBatch = new CommonsArrayList <> (nBulkSize);
+    for (final T aItem : aItems)
+    {
+      aBatch.add (aItem);
+      if (aBatch.size () >= nBulkSize)
+      {
+        _bulkWrite (aBatch, aModelFactory, aSuccessHandler, aErrorHandler);
+        aBatch.clear ();
+      }
+    }
+    if (aBatch.isNotEmpty ())
+      _bulkWrite (aBatch, aModelFactory, aSuccessHandler, aErrorHandler);
+  }
+
+  private <T> void _bulkWrite (@Nonnull final ICommonsList <T> aBatch,
+                               @Nonnull final Function <? super T, ? extends WriteModel <Document>> aModelFactory,
+                               @Nonnull final IBulkWriteSuccessHandler <? super T> aSuccessHandler,
+                               @Nonnull final BiConsumer <? super T, String> aErrorHandler)
+  {
+    final ICommonsList <WriteModel <Document>> aModels = new CommonsArrayList <> (aBatch.size ());
+    for (final T aItem : aBatch)
+      aModels.add (aModelFactory.apply (aItem));
+
+    BulkWriteResult aResult;
+    final ICommonsMap <Integer, String> aErrors = new CommonsHashMap <> ();
+    try
+    {
+      aResult = m_aCollection.bulkWrite (aModels, new BulkWriteOptions ().ordered (false));
+    }
+    catch (final MongoBulkWriteException ex)
+    {
+      // Some operations failed - the others were applied
+      aResult = ex.getWriteResult ();
+      for (final BulkWriteError aError : ex.getWriteErrors ())
+        aErrors.put (Integer.valueOf (aError.getIndex ()), aError.getMessage ());
+    }
+    catch (final MongoException ex)
+    {
+      // Nothing is known about the state of the single operations
+      LOGGER.error ("Failed to bulk write " + aBatch.size () + " documents to collection '" + m_sCollectionName + "'",
+                    ex);
+      for (final T aItem : aBatch)
+        aErrorHandler.accept (aItem, ex.getMessage ());
+      return;
+    }
+
+    final ICommonsSet <Integer> aInserted = new CommonsHashSet <> ();
+    if (aResult.wasAcknowledged ())
+      for (final BulkWriteUpsert aUpsert : aResult.getUpserts ())
+        aInserted.add (Integer.valueOf (aUpsert.getIndex ()));
+
+    for (int i = 0; i < aBatch.size (); ++i)
+    {
+      final Integer aIndex = Integer.valueOf (i);
+      final T aItem = aBatch.get (i);
+      final String sError = aErrors.get (aIndex);
+      if (sError != null)
+        aErrorHandler.accept (aItem, sError);
+      else
+        aSuccessHandler.onSuccess (aItem,
+                                   aModels.get (i) instanceof InsertOneModel <?> || aInserted.contains (aIndex));
+    }
+  }
+
+  /**
+   * Check if at least one document matching the provided filter exists. The
+   * count stops at the first match and no document is transferred.
+   *
+   * @param aFilter
+   *        The filter to use. May not be <code>null</code>.
+   * @return <code>true</code> if a matching document exists.
+   */
+  protected final boolean containsAny (@Nonnull final Bson aFilter)
+  {
+    ValueEnforcer.notNull (aFilter, "Filter");
+    return m_aCollection.countDocuments (aFilter, new CountOptions ().limit (1)) > 0;
+  }
+
+  /**
+   * Create a filter that matches an identifier stored via
+   * {@link #toBson(IIdentifier)} in the provided field. The sub-fields are
+   * matched separately so that indexes on them can be used.
+   *
+   * @param sFieldName
+   *        The name of the field containing the identifier. May neither be
+   *        <code>null</code> nor empty.
+   * @param aValue
+   *        The identifier to match. May not be <code>null</code>.
+   * @return The filter and never <code>null</code>.
+   */
+  @Nonnull
+  public static Bson toFilter (@Nonnull @Nonempty final String sFieldName, @Nonnull final IIdentifier aValue)
+  {
+    return Filters.and (Filters.eq (sFieldName + "." + BSON_SCHEME, aValue.getScheme ()),
+                        Filters.eq (sFieldName + "." + BSON_VALUE, aValue.getValue ()));
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public static Document toBson (@Nonnull final IIdentifier aValue)
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.mgr;
+
+import com.helger.commons.callback.ICallback;
+
+/**
+ * Callback interface invoked by the {@link MongoChangeStreamListener} if
+ * changes may have been missed, so that all locally cached data must be
+ * considered stale.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@FunctionalInterface
+public interface IMongoResyncCallback extends ICallback
+{
+  /**
+   * Invoked when the change stream cannot tell exactly what changed. This
+   * happens after the stream was interrupted and could not be resumed, after
+   * an invalidate event and for deleted documents that were not seen before
+   * by the listener.
+   */
+  void onResync ();
+}
@@ -0,0 +1,499 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.mgr;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.map.LRUMap;
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectCallback;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
+import com.helger.scope.IScope;
+import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+import com.mongodb.MongoException;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+/**
+ * Listens to the MongoDB change stream of the service group, service
+ * information, redirect and business card collections and turns all inserts,
+ * updates and
+ * deletes - including the ones performed by other SMP nodes on the same
+ * replica set - into local callback events. This is meant for invalidating
+ * in-process caches in a multi-node deployment. The callbacks registered here
+ * are separate from the ones of the managers, because the managers only report
+ * changes of the local node and their callbacks perform actions (like SML or
+ * Directory updates) that must only happen once per change.<br>
+ * The change stream requires MongoDB 4.0 or later, running as a replica set.
+ * It is only started if <code>mongodb.changestream.enabled</code> is set to
+ * <code>true</code>.<br>
+ * The last resume token is kept, so that a temporarily interrupted stream
+ * continues where it stopped. If the stream cannot be resumed (e.g. because the
+ * oplog was rolled over), all {@link IMongoResyncCallback} are invoked. As the
+ * documents are keyed by MongoDB generated object IDs, deletions can only be
+ * reported with the full domain object if the listener has seen the document
+ * before. All other deletions are reported as a resync as well. Multiple resync
+ * requests are coalesced and handled once, as soon as the stream is idle or at
+ * the latest after {@link #MAX_RESYNC_DELAY_MILLIS} milliseconds.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class MongoChangeStreamListener extends AbstractGlobalWebSingleton
+{
+  public static final String CONFIG_MONGODB_CHANGESTREAM_ENABLED = "mongodb.changestream.enabled";
+  public static final boolean DEFAULT_MONGODB_CHANGESTREAM_ENABLED = false;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (MongoChangeStreamListener.class);
+
+  /** The maximum number of seen documents per collection kept for deletions */
+  private static final int MAX_KNOWN_DOCUMENTS = 10_000;
+  private static final long MIN_RETRY_MILLIS = 1_000;
+  private static final long MAX_RETRY_MILLIS = 60_000;
+  /** The maximum time a pending resync is delayed by a busy stream */
+  public static final long MAX_RESYNC_DELAY_MILLIS = 1_000;
+
+  // MongoDB server error codes
+  private static final int ERROR_INVALID_RESUME_TOKEN = 260;
+  private static final int ERROR_CHANGE_STREAM_FATAL = 280;
+  private static final int ERROR_CHANGE_STREAM_HISTORY_LOST = 286;
+  private static final int ERROR_NOT_A_REPLICA_SET = 40573;
+
+  private final CallbackList <ISMPServiceGroupCallback> m_aServiceGroupCBs = new CallbackList <> ();
+  private final CallbackList <ISMPServiceInformationCallback> m_aServiceInformationCBs = new CallbackList <> ();
+  private final CallbackList <ISMPRedirectCallback> m_aRedirectCBs = new CallbackList <> ();
+  private final CallbackList <ISMPBusinessCardCallback> m_aBusinessCardCBs = new CallbackList <> ();
+  private final CallbackList <IMongoResyncCallback> m_aResyncCBs = new CallbackList <> ();
+
+  // Only accessed from the listener thread
+  private final LRUMap <BsonValue, ISMPServiceGroup> m_aKnownServiceGroups = new LRUMap <> (MAX_KNOWN_DOCUMENTS);
+  private final LRUMap <BsonValue, ISMPServiceInformation> m_aKnownServiceInfos = new LRUMap <> (MAX_KNOWN_DOCUMENTS);
+  private final LRUMap <BsonValue, ISMPRedirect> m_aKnownRedirects = new LRUMap <> (MAX_KNOWN_DOCUMENTS);
+  private final LRUMap <BsonValue, ISMPBusinessCard> m_aKnownBusinessCards = new LRUMap <> (MAX_KNOWN_DOCUMENTS);
+  private BsonDocument m_aResumeToken;
+  // 0 means no resync is pending
+  private long m_nResyncPendingSince = 0;
+
+  private SMPServiceGroupManagerMongoDB m_aServiceGroupMgr;
+  private SMPServiceInformationManagerMongoDB m_aServiceInfoMgr;
+  private SMPRedirectManagerMongoDB m_aRedirectMgr;
+  private SMPBusinessCardManagerMongoDB m_aBusinessCardMgr;
+  private volatile boolean m_bStopRequested = false;
+  private Thread m_aThread;
+
+  @Deprecated
+  @UsedViaReflection
+  public MongoChangeStreamListener ()
+  {}
+
+  @Nonnull
+  public static MongoChangeStreamListener getInstance ()
+  {
+    return getGlobalSingleton (MongoChangeStreamListener.class);
+  }
+
+  /**
+   * @return The callbacks for service group changes. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public CallbackList <ISMPServiceGroupCallback> serviceGroupCallbacks ()
+  {
+    return m_aServiceGroupCBs;
+  }
+
+  /**
+   * @return The callbacks for service information changes. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public CallbackList <ISMPServiceInformationCallback> serviceInformationCallbacks ()
+  {
+    return m_aServiceInformationCBs;
+  }
+
+  /**
+   * @return The callbacks for redirect changes. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public CallbackList <ISMPRedirectCallback> redirectCallbacks ()
+  {
+    return m_aRedirectCBs;
+  }
+
+  /**
+   * @return The callbacks for business card changes. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public CallbackList <ISMPBusinessCardCallback> businessCardCallbacks ()
+  {
+    return m_aBusinessCardCBs;
+  }
+
+  /**
+   * @return The callbacks invoked if changes may have been missed. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public CallbackList <IMongoResyncCallback> resyncCallbacks ()
+  {
+    return m_aResyncCBs;
+  }
+
+  /**
+   * @return <code>true</code> if the listener thread is running.
+   */
+  public synchronized boolean isRunning ()
+  {
+    return m_aThread != null && m_aThread.isAlive ();
+  }
+
+  /**
+   * Start listening. Called by the {@link SMPManagerProviderMongoDB} after the
+   * managers were created.
+   *
+   * @param aServiceGroupMgr
+   *        Service group manager. May not be <code>null</code>.
+   * @param aServiceInfoMgr
+   *        Service information manager. May not be <code>null</code>.
+   * @param aRedirectMgr
+   *        Redirect manager. May not be <code>null</code>.
+   * @param aBusinessCardMgr
+   *        Business card manager. May not be <code>null</code>.
+   */
+  synchronized void start (@Nonnull final SMPServiceGroupManagerMongoDB aServiceGroupMgr,
+                           @Nonnull final SMPServiceInformationManagerMongoDB aServiceInfoMgr,
+                           @Nonnull final SMPRedirectManagerMongoDB aRedirectMgr,
+                           @Nonnull final SMPBusinessCardManagerMongoDB aBusinessCardMgr)
+  {
+    ValueEnforcer.notNull (aServiceGroupMgr, "ServiceGroupMgr");
+    ValueEnforcer.notNull (aServiceInfoMgr, "ServiceInfoMgr");
+    ValueEnforcer.notNull (aRedirectMgr, "RedirectMgr");
+    ValueEnforcer.notNull (aBusinessCardMgr, "BusinessCardMgr");
+    if (m_aThread != null)
+      throw new IllegalStateException ("The change stream listener was already started");
+
+    m_aServiceGroupMgr = aServiceGroupMgr;
+    m_aServiceInfoMgr = aServiceInfoMgr;
+    m_aRedirectMgr = aRedirectMgr;
+    m_aBusinessCardMgr = aBusinessCardMgr;
+    m_aThread = new Thread (this::_run, "phoss-smp-mongodb-changestream");
+    m_aThread.setDaemon (true);
+    m_aThread.start ();
+    LOGGER.info ("Started MongoDB change stream listener");
+  }
+
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed)
+  {
+    final Thread aThread;
+    synchronized (this)
+    {
+      aThread = m_aThread;
+    }
+    if (aThread != null)
+    {
+      m_bStopRequested = true;
+      try
+      {
+        aThread.join (MIN_RETRY_MILLIS * 5);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+      LOGGER.info ("Stopped MongoDB change stream listener");
+    }
+  }
+
+  /**
+   * Remember that a resync is needed. It is performed by
+   * {@link #_fireResyncIfPending(boolean)}, so that a series of unknown
+   * deletions (e.g. of a service group with all its children) only leads to a
+   * single resync.
+   */
+  private void _markResyncPending ()
+  {
+    if (m_nResyncPendingSince == 0)
+      m_nResyncPendingSince = System.currentTimeMillis ();
+  }
+
+  private void _fireResyncIfPending (final boolean bIdle)
+  {
+    if (m_nResyncPendingSince == 0)
+      return;
+    if (!bIdle && System.currentTimeMillis () - m_nResyncPendingSince < MAX_RESYNC_DELAY_MILLIS)
+      return;
+
+    m_nResyncPendingSince = 0;
+    LOGGER.info ("MongoDB change stream requests a resync of all cached data");
+    m_aKnownServiceGroups.clear ();
+    m_aKnownServiceInfos.clear ();
+    m_aKnownRedirects.clear ();
+    m_aKnownBusinessCards.clear ();
+    m_aResyncCBs.forEach (IMongoResyncCallback::onResync);
+  }
+
+  private void _run ()
+  {
+    final Bson aPipeline = Aggregates.match (Filters.in ("ns.coll",
+                                                         m_aServiceGroupMgr.getCollectionName (),
+                                                         m_aServiceInfoMgr.getCollectionName (),
+                                                         m_aRedirectMgr.getCollectionName (),
+                                                         m_aBusinessCardMgr.getCollectionName ()));
+    long nRetryMillis = MIN_RETRY_MILLIS;
+    while (!m_bStopRequested)
+    {
+      MongoCursor <ChangeStreamDocument <Document>> aCursor = null;
+      try
+      {
+        ChangeStreamIterable <Document> aIterable = MongoClientSingleton.getInstance ()
+                                                                        .getDatabase ()
+                                                                        .watch (new CommonsArrayList <> (aPipeline))
+                                                                        .fullDocument (FullDocument.UPDATE_LOOKUP)
+                                                                        .maxAwaitTime (1, TimeUnit.SECONDS);
+        if (m_aResumeToken != null)
+          aIterable = aIterable.resumeAfter (m_aResumeToken);
+        aCursor = aIterable.iterator ();
+      }
+      catch (final MongoServerException ex)
+      {
+        final int nCode = ex.getCode ();
+        if (nCode == ERROR_NOT_A_REPLICA_SET)
+        {
+          LOGGER.error ("MongoDB change streams require a replica set - stopping the change stream listener", ex);
+          return;
+        }
+        if (m_aResumeToken != null &&
+            (nCode == ERROR_INVALID_RESUME_TOKEN ||
+             nCode == ERROR_CHANGE_STREAM_FATAL ||
+             nCode == ERROR_CHANGE_STREAM_HISTORY_LOST))
+        {
+          // Gap - start from now and drop everything cached before
+          LOGGER.warn ("Failed to resume the MongoDB change stream (" + nCode + ") - starting a new one");
+          m_aResumeToken = null;
+          _markResyncPending ();
+          continue;
+        }
+        LOGGER.error ("Failed to open the MongoDB change stream - retrying in " + nRetryMillis + "ms", ex);
+      }
+      catch (final MongoException ex)
+      {
+        LOGGER.error ("Failed to open the MongoDB change stream - retrying in " + nRetryMillis + "ms", ex);
+      }
+
+      if (aCursor == null)
+      {
+        ThreadHelper.sleep (nRetryMillis);
+        nRetryMillis = Math.min (nRetryMillis * 2, MAX_RETRY_MILLIS);
+        continue;
+      }
+
+      try
+      {
+        nRetryMillis = MIN_RETRY_MILLIS;
+        while (!m_bStopRequested)
+        {
+          final ChangeStreamDocument <Document> aChange = aCursor.tryNext ();
+          if (aChange == null)
+          {
+            // All available events were handled
+            _fireResyncIfPending (true);
+          }
+          else
+          {
+            if (aChange.getOperationType () == OperationType.INVALIDATE)
+            {
+              // The stream is closed by the server and cannot be resumed
+              m_aResumeToken = null;
+              _markResyncPending ();
+              break;
+            }
+            _onChange (aChange);
+            m_aResumeToken = aChange.getResumeToken ();
+            _fireResyncIfPending (false);
+          }
+        }
+      }
+      catch (final MongoException ex)
+      {
+        // The resume token is kept - reopen the stream where it stopped
+        LOGGER.warn ("The MongoDB change stream was interrupted - resuming", ex);
+      }
+      finally
+      {
+        aCursor.close ();
+      }
+    }
+  }
+
+  private void _onChange (@Nonnull final ChangeStreamDocument <Document> aChange)
+  {
+    final String sCollectionName = aChange.getNamespace ().getCollectionName ();
+    final OperationType eOperationType = aChange.getOperationType ();
+    final BsonValue aKey = aChange.getDocumentKey () == null ? null : aChange.getDocumentKey ().get ("_id");
+    final Document aDoc = aChange.getFullDocument ();
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Change stream event " + eOperationType + " on '" + sCollectionName + "' for " + aKey);
+
+    try
+    {
+      if (eOperationType == OperationType.DELETE)
+      {
+        if (aKey == null || !_onDelete (sCollectionName, aKey))
+        {
+          // We don't know what was deleted
+          _markResyncPending ();
+        }
+      }
+      else
+        if (aKey != null && aDoc != null)
+        {
+          // If the document was deleted in the meantime, the delete event
+          // follows
+          _onInsertOrUpdate (sCollectionName, aKey, aDoc, eOperationType == OperationType.INSERT);
+        }
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Failed to handle change stream event " +
+                    eOperationType +
+                    " on '" +
+                    sCollectionName +
+                    "' for " +
+                    aKey,
+                    ex);
+      _markResyncPending ();
+    }
+  }
+
+  private void _onInsertOrUpdate (@Nonnull final String sCollectionName,
+                                  @Nonnull final BsonValue aKey,
+                                  @Nonnull final Document aDoc,
+                                  final boolean bInserted)
+  {
+    if (sCollectionName.equals (m_aServiceGroupMgr.getCollectionName ()))
+    {
+      final ISMPServiceGroup aServiceGroup = SMPServiceGroupManagerMongoDB.toDomain (aDoc);
+      m_aKnownServiceGroups.put (aKey, aServiceGroup);
+      if (bInserted)
+        m_aServiceGroupCBs.forEach (x -> x.onSMPServiceGroupCreated (aServiceGroup));
+      else
+        m_aServiceGroupCBs.forEach (x -> x.onSMPServiceGroupUpdated (aServiceGroup.getParticpantIdentifier ()));
+    }
+    else
+      if (sCollectionName.equals (m_aServiceInfoMgr.getCollectionName ()))
+      {
+        final ISMPServiceInformation aServiceInfo = m_aServiceInfoMgr.toServiceInformation (aDoc, true);
+        m_aKnownServiceInfos.put (aKey, aServiceInfo);
+        if (bInserted)
+          m_aServiceInformationCBs.forEach (x -> x.onSMPServiceInformationCreated (aServiceInfo));
+        else
+          m_aServiceInformationCBs.forEach (x -> x.onSMPServiceInformationUpdated (aServiceInfo));
+      }
+      else
+        if (sCollectionName.equals (m_aRedirectMgr.getCollectionName ()))
+        {
+          final ISMPRedirect aRedirect = m_aRedirectMgr.toDomain (aDoc);
+          m_aKnownRedirects.put (aKey, aRedirect);
+          if (bInserted)
+            m_aRedirectCBs.forEach (x -> x.onSMPRedirectCreated (aRedirect));
+          else
+            m_aRedirectCBs.forEach (x -> x.onSMPRedirectUpdated (aRedirect));
+        }
+        else
+          if (sCollectionName.equals (m_aBusinessCardMgr.getCollectionName ()))
+          {
+            final ISMPBusinessCard aBusinessCard = m_aBusinessCardMgr.toDomain (aDoc);
+            m_aKnownBusinessCards.put (aKey, aBusinessCard);
+            m_aBusinessCardCBs.forEach (x -> x.onCreateOrUpdateSMPBusinessCard (aBusinessCard));
+          }
+  }
+
+  /**
+   * @return <code>true</code> if the deleted document was known and the
+   *         callbacks were invoked, <code>false</code> otherwise.
+   */
+  private boolean _onDelete (@Nonnull final String sCollectionName, @Nonnull final BsonValue aKey)
+  {
+    if (sCollectionName.equals (m_aServiceGroupMgr.getCollectionName ()))
+    {
+      final ISMPServiceGroup aServiceGroup = m_aKnownServiceGroups.remove (aKey);
+      if (aServiceGroup == null)
+        return false;
+      m_aServiceGroupCBs.forEach (x -> x.onSMPServiceGroupDeleted (aServiceGroup.getParticpantIdentifier ()));
+      return true;
+    }
+    if (sCollectionName.equals (m_aServiceInfoMgr.getCollectionName ()))
+    {
+      final ISMPServiceInformation aServiceInfo = m_aKnownServiceInfos.remove (aKey);
+      if (aServiceInfo == null)
+        return false;
+      m_aServiceInformationCBs.forEach (x -> x.onSMPServiceInformationDeleted (aServiceInfo));
+      return true;
+    }
+    if (sCollectionName.equals (m_aRedirectMgr.getCollectionName ()))
+    {
+      final ISMPRedirect aRedirect = m_aKnownRedirects.remove (aKey);
+      if (aRedirect == null)
+        return false;
+      m_aRedirectCBs.forEach (x -> x.onSMPRedirectDeleted (aRedirect));
+      return true;
+    }
+    if (sCollectionName.equals (m_aBusinessCardMgr.getCollectionName ()))
+    {
+      final ISMPBusinessCard aBusinessCard = m_aKnownBusinessCards.remove (aKey);
+      if (aBusinessCard == null)
+        return false;
+      m_aBusinessCardCBs.forEach (x -> x.onDeleteSMPBusinessCard (aBusinessCard));
+      return true;
+    }
+    // Not a collection of interest
+    return true;
+  }
+}
@@ -45,12 +45,17 @@ import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardExistenceCache;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.photon.audit.AuditHelper;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.result.DeleteResult;
 
 /**
@@ -77,13 +82,12 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
   private static final String BSON_NAME = "name";
   private static final String BSON_PHONE = "phone";
   private static final String BSON_EMAIL = "email";
-  private static final String BSON_SCHEME = "scheme";
-  private static final String BSON_VALUE = "value";
   private static final String BSON_LANGUAGE = "language";
 
   private final IIdentifierFactory m_aIdentifierFactory;
   private final ISMPServiceGroupManager m_aServiceGroupMgr;
   private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+  private final SMPBusinessCardExistenceCache m_aExistenceCache;
 
   public SMPBusinessCardManagerMongoDB (@Nonnull final IIdentifierFactory aIdentifierFactory,
                                         @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
@@ -91,7 +95,11 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
     super ("smp-businesscard");
     m_aIdentifierFactory = aIdentifierFactory;
     m_aServiceGroupMgr = aServiceGroupMgr;
-    getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    ensureIndexes (new CommonsArrayList <> (new IndexModel (Indexes.ascending (BSON_ID))));
+
+    // Must be the first callback, so that all others see the current state
+    m_aExistenceCache = new SMPBusinessCardExistenceCache (this);
+    m_aCBs.add (m_aExistenceCache);
   }
 
   @Nonnull
@@ -101,6 +109,16 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
     return m_aCBs;
   }
 
+  /**
+   * @return The cache of all business card IDs. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  public SMPBusinessCardExistenceCache existenceCache ()
+  {
+    return m_aExistenceCache;
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public static Document toBson (@Nonnull final SMPBusinessCardName aValue)
@@ -326,6 +344,61 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
     return aNewBusinessCard;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPBusinessCard> createOrUpdateSMPBusinessCards (@Nonnull final Iterable <? extends ISMPBusinessCard> aBusinessCards)
+  {
+    ValueEnforcer.notNull (aBusinessCards, "BusinessCards");
+
+    final ICommonsList <SMPBusinessCard> aNewBusinessCards = new CommonsArrayList <> ();
+    for (final ISMPBusinessCard aBusinessCard : aBusinessCards)
+      aNewBusinessCards.add (new SMPBusinessCard (aBusinessCard.getServiceGroup (), aBusinessCard.getAllEntities ()));
+
+    // The ID is the service group ID - so an upsert by ID replaces an existing
+    // business card
+    final ICommonsList <ISMPBusinessCard> ret = new CommonsArrayList <> ();
+    final ICommonsList <SMPBusinessCard> aFailed = new CommonsArrayList <> ();
+    bulkWrite (aNewBusinessCards,
+               x -> new ReplaceOneModel <> (new Document (BSON_ID, x.getID ()),
+                                            toBson (x),
+                                            new ReplaceOptions ().upsert (true)),
+               (x, bInserted) -> {
+                 if (bInserted)
+                   AuditHelper.onAuditCreateSuccess (SMPBusinessCard.OT,
+                                                     x.getID (),
+                                                     x.getServiceGroupID (),
+                                                     Integer.valueOf (x.getEntityCount ()));
+                 else
+                   AuditHelper.onAuditModifySuccess (SMPBusinessCard.OT,
+                                                     x.getID (),
+                                                     x.getServiceGroupID (),
+                                                     Integer.valueOf (x.getEntityCount ()));
+                 m_aCBs.forEach (cb -> cb.onCreateOrUpdateSMPBusinessCard (x));
+                 ret.add (x);
+               },
+               (x, sError) -> {
+                 LOGGER.warn ("Failed to create or update business card '" + x.getID () + "' in bulk: " + sError);
+                 aFailed.add (x);
+               });
+
+    // Retry the failed ones one by one, so that they are handled exactly like
+    // a single write and only the really failed ones are missing in the result
+    for (final SMPBusinessCard aBusinessCard : aFailed)
+      try
+      {
+        ret.add (createOrUpdateSMPBusinessCard (aBusinessCard.getServiceGroup (), aBusinessCard.getAllEntities ()));
+      }
+      catch (final MongoException ex)
+      {
+        LOGGER.error ("Failed to create or update business card '" + aBusinessCard.getID () + "'", ex);
+      }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("createOrUpdateSMPBusinessCards - handled " + ret.size () + " objects");
+    return ret;
+  }
+
   @Nonnull
   public EChange deleteSMPBusinessCard (@Nullable final ISMPBusinessCard aSMPBusinessCard)
   {
@@ -364,6 +437,14 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
     return ret;
   }
 
+  @Override
+  public void forEachSMPBusinessCard (@Nonnull final Consumer <? super ISMPBusinessCard> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    // Convert while iterating the cursor
+    getCollection ().find ().forEach ((Consumer <Document>) x -> aConsumer.accept (toDomain (x)));
+  }
+
   @Nullable
   public ISMPBusinessCard getSMPBusinessCardOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
   {
@@ -374,13 +455,19 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
     return getSMPBusinessCardOfID (aServiceGroup.getID ());
   }
 
+  @Override
+  public boolean containsSMPBusinessCardOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  {
+    return m_aExistenceCache.containsServiceGroup (aServiceGroup);
+  }
+
   @Nullable
   public ISMPBusinessCard getSMPBusinessCardOfID (@Nullable final String sID)
   {
     if (StringHelper.hasNoText (sID))
       return null;
 
-    return getCollection ().find (new Document (BSON_ID, sID)).map (x -> toDomain (x)).first ();
+    return getLookupCollection ().find (new Document (BSON_ID, sID)).map (x -> toDomain (x)).first ();
   }
 
   @Nonnegative
@@ -19,10 +19,16 @@ package com.helger.phoss.smp.backend.mongodb.mgr;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.ISMPManagerProvider;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
@@ -39,6 +45,10 @@ import com.helger.phoss.smp.settings.ISMPSettingsManager;
  */
 public final class SMPManagerProviderMongoDB implements ISMPManagerProvider
 {
+  private SMPServiceGroupManagerMongoDB m_aServiceGroupMgr;
+  private SMPRedirectManagerMongoDB m_aRedirectMgr;
+  private SMPServiceInformationManagerMongoDB m_aServiceInfoMgr;
+
   public SMPManagerProviderMongoDB ()
   {}
 
@@ -69,28 +79,88 @@ public final class SMPManagerProviderMongoDB implements ISMPManagerProvider
   @Nonnull
   public ISMPServiceGroupManager createServiceGroupMgr ()
   {
-    return new SMPServiceGroupManagerMongoDB ();
+    m_aServiceGroupMgr = new SMPServiceGroupManagerMongoDB ();
+    return m_aServiceGroupMgr;
+  }
+
+  /**
+   * @return The service group manager created by this provider. Never
+   *         <code>null</code>.
+   * @throws NullPointerException
+   *         if {@link #createServiceGroupMgr()} was not called before
+   */
+  @Nonnull
+  private SMPServiceGroupManagerMongoDB _getServiceGroupMgr ()
+  {
+    // The embedding collections are required for a consistent deletion
+    return ValueEnforcer.notNull (m_aServiceGroupMgr, "ServiceGroupMgr");
   }
 
   @Nonnull
   public ISMPRedirectManager createRedirectMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
                                                 @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
-    return new SMPRedirectManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    m_aRedirectMgr = new SMPRedirectManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    _getServiceGroupMgr ().registerEmbeddingCollection (m_aRedirectMgr.getCollectionName (),
+                                                        SMPRedirectManagerMongoDB.BSON_SERVICE_GROUP_ID);
+    return m_aRedirectMgr;
   }
 
   @Nonnull
   public ISMPServiceInformationManager createServiceInformationMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
                                                                     @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
-    return new SMPServiceInformationManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    m_aServiceInfoMgr = new SMPServiceInformationManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    _getServiceGroupMgr ().registerEmbeddingCollection (m_aServiceInfoMgr.getCollectionName (),
+                                                        SMPServiceInformationManagerMongoDB.BSON_SERVICE_GROUP_ID);
+    return m_aServiceInfoMgr;
   }
 
   @Nullable
   public ISMPBusinessCardManager createBusinessCardMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
                                                         @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
-    return new SMPBusinessCardManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    final SMPBusinessCardManagerMongoDB ret = new SMPBusinessCardManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    if (SMPServerConfiguration.getConfigFile ()
+                              .getAsBoolean (MongoChangeStreamListener.CONFIG_MONGODB_CHANGESTREAM_ENABLED,
+                                             MongoChangeStreamListener.DEFAULT_MONGODB_CHANGESTREAM_ENABLED))
+    {
+      // Reload the business card IDs and the search index, if changes may have
+      // been missed
+      final MongoChangeStreamListener aListener = MongoChangeStreamListener.getInstance ();
+      aListener.resyncCallbacks ().add (ret.existenceCache ()::reset);
+      aListener.resyncCallbacks ().add ( () -> {
+        final SMPBusinessCardSearchIndex aSearchIndex = SMPMetaManager.getBusinessCardSearchIndex ();
+        if (aSearchIndex != null)
+          aSearchIndex.reset ();
+      });
+
+      // Apply the changes of other nodes as well
+      aListener.businessCardCallbacks ().add (ret.existenceCache ());
+      aListener.businessCardCallbacks ().add (new ISMPBusinessCardCallback ()
+      {
+        // The search index is created after this manager
+        public void onCreateOrUpdateSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+        {
+          final SMPBusinessCardSearchIndex aSearchIndex = SMPMetaManager.getBusinessCardSearchIndex ();
+          if (aSearchIndex != null)
+            aSearchIndex.onCreateOrUpdateSMPBusinessCard (aBusinessCard);
+        }
+
+        public void onDeleteSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+        {
+          final SMPBusinessCardSearchIndex aSearchIndex = SMPMetaManager.getBusinessCardSearchIndex ();
+          if (aSearchIndex != null)
+            aSearchIndex.onDeleteSMPBusinessCard (aBusinessCard);
+        }
+      });
+
+      // All managers observed by the change stream are present now
+      ValueEnforcer.notNull (m_aRedirectMgr, "RedirectMgr");
+      ValueEnforcer.notNull (m_aServiceInfoMgr, "ServiceInfoMgr");
+      aListener.start (_getServiceGroupMgr (), m_aServiceInfoMgr, m_aRedirectMgr, ret);
+    }
+    return ret;
   }
 
   @Override
@@ -17,6 +17,7 @@
 package com.helger.phoss.smp.backend.mongodb.mgr;
 
 import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
@@ -48,7 +49,10 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.photon.audit.AuditHelper;
 import com.helger.security.certificate.CertificateHelper;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.result.DeleteResult;
 
@@ -62,8 +66,14 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
   private static final Logger LOGGER = LoggerFactory.getLogger (SMPRedirectManagerMongoDB.class);
 
   private static final String BSON_ID = "id";
-  private static final String BSON_SERVICE_GROUP_ID = "sgid";
+  static final String BSON_SERVICE_GROUP_ID = "sgid";
   private static final String BSON_DOCTYPE_ID = "doctypeid";
+
+  /**
+   * Unique index for the lookup by service group and document type. The prefix
+   * is also used for the lookup by service group only.
+   */
+  static final String INDEX_SG_DOCTYPE = "sgid_doctypeid";
   private static final String BSON_TARGET_HREF = "target";
   private static final String BSON_TARGET_SUBJECT_CN = "subjectcn";
   private static final String BSON_TARGET_CERTIFICATE = "certificate";
@@ -79,7 +89,11 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
     super ("smp-redirect");
     m_aIdentifierFactory = aIdentifierFactory;
     m_aServiceGroupMgr = aServiceGroupMgr;
-    getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    ensureIndexes (new CommonsArrayList <> (new IndexModel (Indexes.ascending (BSON_ID)),
+                                            new IndexModel (Indexes.ascending (BSON_SERVICE_GROUP_ID,
+                                                                               BSON_DOCTYPE_ID + "." + BSON_SCHEME,
+                                                                               BSON_DOCTYPE_ID + "." + BSON_VALUE),
+                                                            new IndexOptions ().name (INDEX_SG_DOCTYPE).unique (true))));
   }
 
   @Nonnull
@@ -95,6 +109,8 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
   {
     final Document ret = new Document ().append (BSON_ID, aValue.getID ())
                                         .append (BSON_SERVICE_GROUP_ID, aValue.getServiceGroupID ())
+                                        .append (SMPServiceGroupManagerMongoDB.BSON_EMBEDDED_SERVICE_GROUP,
+                                                 SMPServiceGroupManagerMongoDB.toBson (aValue.getServiceGroup ()))
                                         .append (BSON_DOCTYPE_ID, toBson (aValue.getDocumentTypeIdentifier ()))
                                         .append (BSON_TARGET_HREF, aValue.getTargetHref ())
                                         .append (BSON_TARGET_SUBJECT_CN, aValue.getSubjectUniqueIdentifier ());
@@ -112,7 +128,33 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
                                       @Nonnull final Document aDoc)
   {
     // The ID itself is derived from ServiceGroupID and DocTypeID
-    final ISMPServiceGroup aServiceGroup = aServiceGroupMgr.getSMPServiceGroupOfID (aIdentifierFactory.parseParticipantIdentifier (aDoc.getString (BSON_SERVICE_GROUP_ID)));
+    final ISMPServiceGroup aServiceGroup;
+    final Document aSGDoc = aDoc.get (SMPServiceGroupManagerMongoDB.BSON_EMBEDDED_SERVICE_GROUP, Document.class);
+    if (aSGDoc != null)
+      aServiceGroup = SMPServiceGroupManagerMongoDB.toDomain (aSGDoc);
+    else
+    {
+      // Document written before the service group was embedded
+      aServiceGroup = aServiceGroupMgr.getSMPServiceGroupOfID (aIdentifierFactory.parseParticipantIdentifier (aDoc.getString (BSON_SERVICE_GROUP_ID)));
+    }
+    return toDomain (aServiceGroup, aDoc);
+  }
+
+  /**
+   * Convert a document to a redirect, if the service group is already known.
+   *
+   * @param aServiceGroup
+   *        The service group the document belongs to. May not be
+   *        <code>null</code>.
+   * @param aDoc
+   *        The document to convert. May not be <code>null</code>.
+   * @return The domain object and never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static SMPRedirect toDomain (@Nonnull final ISMPServiceGroup aServiceGroup, @Nonnull final Document aDoc)
+  {
     final IDocumentTypeIdentifier aDocTypeID = toDocumentTypeID (aDoc.get (BSON_DOCTYPE_ID, Document.class));
     final X509Certificate aCert = CertificateHelper.convertStringToCertficateOrNull (aDoc.getString (BSON_TARGET_CERTIFICATE));
     return new SMPRedirect (aServiceGroup,
@@ -191,8 +233,9 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
                     (StringHelper.hasText (sExtension) ? "with extension" : "without extension") +
                     ")");
 
-    final ISMPRedirect aOldRedirect = getSMPRedirectOfServiceGroupAndDocumentType (aServiceGroup,
-                                                                                   aDocumentTypeIdentifier);
+    final ISMPRedirect aOldRedirect = _getSMPRedirectOfServiceGroupAndDocumentType (getCollection (),
+                                                                                    aServiceGroup,
+                                                                                    aDocumentTypeIdentifier);
     final SMPRedirect aNewRedirect = new SMPRedirect (aServiceGroup,
                                                       aDocumentTypeIdentifier,
                                                       sTargetHref,
@@ -259,10 +302,31 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
     if (aServiceGroup == null)
       return EChange.UNCHANGED;
 
-    EChange eChange = EChange.UNCHANGED;
-    for (final ISMPRedirect aRedirect : getAllSMPRedirectsOfServiceGroup (aServiceGroup.getID ()))
-      eChange = eChange.or (deleteSMPRedirect (aRedirect));
-    return eChange;
+    final ICommonsList <ISMPRedirect> aRedirects = getAllSMPRedirectsOfServiceGroup (aServiceGroup.getID ());
+    if (aRedirects.isEmpty ())
+      return EChange.UNCHANGED;
+
+    // Delete exactly the read objects in a single round trip
+    final DeleteResult aDR = getCollection ().deleteMany (Filters.in (BSON_ID, aRedirects.getAllMapped (ISMPRedirect::getID)));
+    if (!aDR.wasAcknowledged () || aDR.getDeletedCount () == 0)
+    {
+      AuditHelper.onAuditDeleteFailure (SMPRedirect.OT, "no-such-id", aServiceGroup.getID ());
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("deleteAllSMPRedirectsOfServiceGroup - failure");
+      return EChange.UNCHANGED;
+    }
+
+    for (final ISMPRedirect aRedirect : aRedirects)
+    {
+      m_aCallbacks.forEach (x -> x.onSMPRedirectDeleted (aRedirect));
+      AuditHelper.onAuditDeleteSuccess (SMPRedirect.OT,
+                                        aRedirect.getID (),
+                                        aRedirect.getServiceGroupID (),
+                                        aRedirect.getDocumentTypeIdentifier ().getURIEncoded ());
+    }
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("deleteAllSMPRedirectsOfServiceGroup - deleted " + aDR.getDeletedCount () + " objects");
+    return EChange.CHANGED;
   }
 
   @Nonnull
@@ -299,20 +363,42 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
   }
 
   @Nullable
-  public ISMPRedirect getSMPRedirectOfServiceGroupAndDocumentType (@Nullable final ISMPServiceGroup aServiceGroup,
-                                                                   @Nullable final IDocumentTypeIdentifier aDocTypeID)
+  private ISMPRedirect _getSMPRedirectOfServiceGroupAndDocumentType (@Nonnull final MongoCollection <Document> aCollection,
+                                                                     @Nullable final ISMPServiceGroup aServiceGroup,
+                                                                     @Nullable final IDocumentTypeIdentifier aDocTypeID)
   {
     if (aServiceGroup == null)
       return null;
     if (aDocTypeID == null)
       return null;
 
-    final Document aMatch = getCollection ().find (Filters.and (new Document (BSON_SERVICE_GROUP_ID,
-                                                                              aServiceGroup.getID ()),
-                                                                new Document (BSON_DOCTYPE_ID, toBson (aDocTypeID))))
-                                            .first ();
+    final Document aMatch = aCollection.find (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
+                                                           toFilter (BSON_DOCTYPE_ID, aDocTypeID)))
+                                       .first ();
     if (aMatch == null)
       return null;
-    return toDomain (aMatch);
+    return toDomain (aServiceGroup, aMatch);
+  }
+
+  @Nullable
+  public ISMPRedirect getSMPRedirectOfServiceGroupAndDocumentType (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                                   @Nullable final IDocumentTypeIdentifier aDocTypeID)
+  {
+    return _getSMPRedirectOfServiceGroupAndDocumentType (getLookupCollection (), aServiceGroup, aDocTypeID);
+  }
+
+  @Override
+  @Nonnull
+  public CompletableFuture <ISMPRedirect> getSMPRedirectOfServiceGroupAndDocumentTypeAsync (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                                                           @Nullable final IDocumentTypeIdentifier aDocTypeID)
+  {
+    if (aServiceGroup == null)
+      return CompletableFuture.completedFuture (null);
+    if (aDocTypeID == null)
+      return CompletableFuture.completedFuture (null);
+
+    return findFirstAsync (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
+                                        toFilter (BSON_DOCTYPE_ID, aDocTypeID)),
+                           x -> toDomain (aServiceGroup, x));
   }
 }
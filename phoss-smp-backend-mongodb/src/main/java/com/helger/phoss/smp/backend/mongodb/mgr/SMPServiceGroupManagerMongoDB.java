@@ -16,6 +16,9 @@
  */
 package com.helger.phoss.smp.backend.mongodb.mgr;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
@@ -32,10 +35,14 @@ import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
 import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.state.EChange;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
@@ -43,6 +50,7 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.exception.SMPInternalErrorException;
 import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPSMLException;
 import com.helger.phoss.smp.exception.SMPServerException;
@@ -50,9 +58,15 @@ import com.helger.phoss.smp.smlhook.IRegistrationHook;
 import com.helger.phoss.smp.smlhook.RegistrationHookException;
 import com.helger.phoss.smp.smlhook.RegistrationHookFactory;
 import com.helger.photon.audit.AuditHelper;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 
 /**
  * Implementation of {@link ISMPServiceGroupManager} for the XML backend.
@@ -67,12 +81,24 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
   private static final String BSON_PARTICIPANT_ID = "participantid";
   private static final String BSON_EXTENSION = "extension";
 
+  /** Index for the lookup of all service groups of an owner */
+  static final String INDEX_OWNER = "ownerid";
+  /**
+   * Name of the field in which dependent documents embed a copy of their
+   * service group
+   */
+  static final String BSON_EMBEDDED_SERVICE_GROUP = "servicegroup";
+
   private final CallbackList <ISMPServiceGroupCallback> m_aCBs = new CallbackList <> ();
+  // Collection name to name of the service group ID field
+  private final ICommonsMap <String, String> m_aEmbeddingCollections = new CommonsHashMap <> ();
 
   public SMPServiceGroupManagerMongoDB ()
   {
     super ("smp-servicegroup");
-    getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    ensureIndexes (new CommonsArrayList <> (new IndexModel (Indexes.ascending (BSON_ID)),
+                                            new IndexModel (Indexes.ascending (BSON_OWNER_ID),
+                                                            new IndexOptions ().name (INDEX_OWNER))));
   }
 
   @Nonnull
@@ -82,6 +108,29 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     return m_aCBs;
   }
 
+  /**
+   * Register a collection whose documents embed a copy of the service group
+   * in the field {@value #BSON_EMBEDDED_SERVICE_GROUP}. Updates of a service
+   * group are propagated to all matching documents of these collections.
+   *
+   * @param sCollectionName
+   *        The collection name. May neither be <code>null</code> nor empty.
+   * @param sServiceGroupIDFieldName
+   *        The name of the field containing the service group ID. May neither
+   *        be <code>null</code> nor empty.
+   * @since 5.2.0
+   */
+  void registerEmbeddingCollection (@Nonnull @Nonempty final String sCollectionName,
+                                    @Nonnull @Nonempty final String sServiceGroupIDFieldName)
+  {
+    ValueEnforcer.notEmpty (sCollectionName, "CollectionName");
+    ValueEnforcer.notEmpty (sServiceGroupIDFieldName, "ServiceGroupIDFieldName");
+    synchronized (m_aEmbeddingCollections)
+    {
+      m_aEmbeddingCollections.put (sCollectionName, sServiceGroupIDFieldName);
+    }
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public static Document toBson (@Nonnull final ISMPServiceGroup aValue)
@@ -165,6 +214,67 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     return aSMPServiceGroup;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceGroup> createSMPServiceGroups (@Nonnull final Iterable <? extends ISMPServiceGroup> aServiceGroups,
+                                                                 @Nullable final BiConsumer <? super ISMPServiceGroup, ? super SMPServerException> aErrorHandler)
+  {
+    ValueEnforcer.notNull (aServiceGroups, "ServiceGroups");
+
+    final IRegistrationHook aHook = RegistrationHookFactory.getInstance ();
+
+    // Register all in the SML first - at once
+    final ICommonsList <ISMPServiceGroup> aAll = new CommonsArrayList <> (aServiceGroups);
+    final ICommonsMap <IParticipantIdentifier, RegistrationHookException> aSMLFailures;
+    aSMLFailures = aHook.createServiceGroups (aAll.getAllMapped (ISMPServiceGroup::getParticpantIdentifier));
+    final ICommonsList <SMPServiceGroup> aRegistered = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aServiceGroup : aAll)
+    {
+      final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+      final RegistrationHookException aSMLFailure = aSMLFailures.get (aParticipantID);
+      if (aSMLFailure == null)
+        aRegistered.add (new SMPServiceGroup (aServiceGroup.getOwnerID (),
+                                              aParticipantID,
+                                              aServiceGroup.getExtensionsAsString ()));
+      else
+        if (aErrorHandler != null)
+          aErrorHandler.accept (aServiceGroup,
+                                new SMPSMLException ("Failed to create '" + aParticipantID.getURIEncoded () + "' in SML",
+                                                     aSMLFailure));
+    }
+
+    final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
+    final ICommonsList <IParticipantIdentifier> aStoringFailed = new CommonsArrayList <> ();
+    bulkWrite (aRegistered, x -> new InsertOneModel <> (toBson (x)), (x, bInserted) -> {
+      AuditHelper.onAuditCreateSuccess (SMPServiceGroup.OT,
+                                        x.getID (),
+                                        x.getOwnerID (),
+                                        x.getParticpantIdentifier ().getURIEncoded (),
+                                        x.getExtensionsAsString ());
+      m_aCBs.forEach (cb -> cb.onSMPServiceGroupCreated (x));
+      ret.add (x);
+    }, (x, sError) -> {
+      // Storing failed - remove from SML again afterwards
+      final IParticipantIdentifier aParticipantID = x.getParticpantIdentifier ();
+      aStoringFailed.add (aParticipantID);
+      if (aErrorHandler != null)
+        aErrorHandler.accept (x,
+                              new SMPInternalErrorException ("Failed to store service group '" +
+                                                             aParticipantID.getURIEncoded () +
+                                                             "'",
+                                                             new MongoException (sError)));
+    });
+
+    if (aStoringFailed.isNotEmpty ())
+      aHook.undoCreateServiceGroups (aStoringFailed)
+           .forEach ( (k, v) -> LOGGER.error ("Failed to undoCreateServiceGroup (" + k.getURIEncoded () + ")", v));
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("createSMPServiceGroups - created " + ret.size () + " objects");
+    return ret;
+  }
+
   @Nonnull
   public EChange updateSMPServiceGroup (@Nonnull final IParticipantIdentifier aParticipantID,
                                         @Nonnull @Nonempty final String sNewOwnerID,
@@ -190,6 +300,8 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     if (aOldDoc == null)
       return EChange.UNCHANGED;
 
+    _updateEmbeddedCopies (sServiceGroupID, toBson (new SMPServiceGroup (sNewOwnerID, aParticipantID, sExtension)));
+
     AuditHelper.onAuditModifySuccess (SMPServiceGroup.OT, "all", sServiceGroupID, sNewOwnerID, sExtension);
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("updateSMPServiceGroup - success");
@@ -199,6 +311,29 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     return EChange.CHANGED;
   }
 
+  private void _updateEmbeddedCopies (@Nonnull final String sServiceGroupID, @Nonnull final Document aNewDoc)
+  {
+    final ICommonsMap <String, String> aCollections;
+    synchronized (m_aEmbeddingCollections)
+    {
+      aCollections = m_aEmbeddingCollections.getClone ();
+    }
+    final MongoClientSingleton aClient = MongoClientSingleton.getInstance ();
+    for (final Map.Entry <String, String> aEntry : aCollections.entrySet ())
+    {
+      // One multi-document update per collection
+      final UpdateResult aUR = aClient.getCollection (aEntry.getKey ())
+                                      .updateMany (new Document (aEntry.getValue (), sServiceGroupID),
+                                                   Updates.set (BSON_EMBEDDED_SERVICE_GROUP, aNewDoc));
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("updateSMPServiceGroup - updated " +
+                      aUR.getModifiedCount () +
+                      " embedded copies in '" +
+                      aEntry.getKey () +
+                      "'");
+    }
+  }
+
   @Nonnull
   public EChange deleteSMPServiceGroup (@Nonnull final IParticipantIdentifier aParticipantID) throws SMPServerException
   {
@@ -207,7 +342,7 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
       LOGGER.debug ("deleteSMPServiceGroup (" + aParticipantID.getURIEncoded () + ")");
 
     // Check first in memory, to avoid unnecessary deletion
-    final ISMPServiceGroup aServiceGroup = getSMPServiceGroupOfID (aParticipantID);
+    final ISMPServiceGroup aServiceGroup = _getSMPServiceGroupOfID (getCollection (), aParticipantID);
     if (aServiceGroup == null)
       return EChange.UNCHANGED;
 
@@ -271,6 +406,24 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     return ret;
   }
 
+  @Override
+  @Nonnull
+  public ESuccess forEachSMPServiceGroup (@Nonnull final Consumer <? super ISMPServiceGroup> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    try
+    {
+      // The cursor fetches the documents in batches from the server
+      getCollection ().find ().forEach ((Consumer <Document>) x -> aConsumer.accept (toDomain (x)));
+      return ESuccess.SUCCESS;
+    }
+    catch (final MongoException ex)
+    {
+      LOGGER.error ("Failed to iterate all service groups - aborting the iteration", ex);
+      return ESuccess.FAILURE;
+    }
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroupsOfOwner (@Nonnull final String sOwnerID)
@@ -287,13 +440,31 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     return getCollection ().countDocuments (new Document (BSON_OWNER_ID, sOwnerID));
   }
 
-  public ISMPServiceGroup getSMPServiceGroupOfID (@Nullable final IParticipantIdentifier aParticipantID)
+  @Nullable
+  private static ISMPServiceGroup _getSMPServiceGroupOfID (@Nonnull final MongoCollection <Document> aCollection,
+                                                           @Nullable final IParticipantIdentifier aParticipantID)
   {
     if (aParticipantID == null)
       return null;
 
     final String sID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
-    return getCollection ().find (new Document (BSON_ID, sID)).map (x -> toDomain (x)).first ();
+    return aCollection.find (new Document (BSON_ID, sID)).map (x -> toDomain (x)).first ();
+  }
+
+  public ISMPServiceGroup getSMPServiceGroupOfID (@Nullable final IParticipantIdentifier aParticipantID)
+  {
+    return _getSMPServiceGroupOfID (getLookupCollection (), aParticipantID);
+  }
+
+  @Override
+  @Nonnull
+  public CompletableFuture <ISMPServiceGroup> getSMPServiceGroupOfIDAsync (@Nullable final IParticipantIdentifier aParticipantID)
+  {
+    if (aParticipantID == null)
+      return CompletableFuture.completedFuture (null);
+
+    final String sID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
+    return findFirstAsync (new Document (BSON_ID, sID), SMPServiceGroupManagerMongoDB::toDomain);
   }
 
   public boolean containsSMPServiceGroupWithID (@Nullable final IParticipantIdentifier aParticipantID)
@@ -302,7 +473,7 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
       return false;
 
     final String sID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
-    return getCollection ().find (new Document (BSON_ID, sID)).first () != null;
+    return containsAny (new Document (BSON_ID, sID));
   }
 
   @Nonnegative
@@ -18,6 +18,7 @@ package com.helger.phoss.smp.backend.mongodb.mgr;
 
 import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
@@ -53,7 +54,15 @@ import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
 import com.helger.photon.audit.AuditHelper;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.result.DeleteResult;
 
 /**
@@ -67,8 +76,14 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   private static final Logger LOGGER = LoggerFactory.getLogger (SMPServiceInformationManagerMongoDB.class);
 
   private static final String BSON_ID = "id";
-  private static final String BSON_SERVICE_GROUP_ID = "sgid";
+  static final String BSON_SERVICE_GROUP_ID = "sgid";
   private static final String BSON_DOCTYPE_ID = "doctypeid";
+
+  /**
+   * Unique index for the lookup by service group and document type. The prefix
+   * is also used for the lookup by service group only.
+   */
+  static final String INDEX_SG_DOCTYPE = "sgid_doctypeid";
   private static final String BSON_PROCESSES = "processes";
   private static final String BSON_PROCESS_ID = "processid";
   private static final String BSON_ENDPOINTS = "endpoints";
@@ -94,6 +109,11 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     super ("smp-serviceinfo");
     m_aIdentifierFactory = aIdentifierFactory;
     m_aServiceGroupMgr = aServiceGroupMgr;
+    ensureIndexes (new CommonsArrayList <> (new IndexModel (Indexes.ascending (BSON_ID)),
+                                            new IndexModel (Indexes.ascending (BSON_SERVICE_GROUP_ID,
+                                                                               BSON_DOCTYPE_ID + "." + BSON_SCHEME,
+                                                                               BSON_DOCTYPE_ID + "." + BSON_VALUE),
+                                                            new IndexOptions ().name (INDEX_SG_DOCTYPE).unique (true))));
   }
 
   @Nonnull
@@ -194,6 +214,8 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   {
     final Document ret = new Document ().append (BSON_ID, aValue.getID ())
                                         .append (BSON_SERVICE_GROUP_ID, aValue.getServiceGroupID ())
+                                        .append (SMPServiceGroupManagerMongoDB.BSON_EMBEDDED_SERVICE_GROUP,
+                                                 SMPServiceGroupManagerMongoDB.toBson (aValue.getServiceGroup ()))
                                         .append (BSON_DOCTYPE_ID, toBson (aValue.getDocumentTypeIdentifier ()));
     final ICommonsList <Document> aProcs = new CommonsArrayList <> ();
     for (final ISMPProcess aProc : aValue.getAllProcesses ())
@@ -209,7 +231,38 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   @ReturnsMutableCopy
   public SMPServiceInformation toServiceInformation (@Nonnull final Document aDoc, final boolean bNeedProcesses)
   {
-    final ISMPServiceGroup aServiceGroup = m_aServiceGroupMgr.getSMPServiceGroupOfID (m_aIdentifierFactory.parseParticipantIdentifier (aDoc.getString (BSON_SERVICE_GROUP_ID)));
+    final ISMPServiceGroup aServiceGroup;
+    final Document aSGDoc = aDoc.get (SMPServiceGroupManagerMongoDB.BSON_EMBEDDED_SERVICE_GROUP, Document.class);
+    if (aSGDoc != null)
+      aServiceGroup = SMPServiceGroupManagerMongoDB.toDomain (aSGDoc);
+    else
+    {
+      // Document written before the service group was embedded
+      aServiceGroup = m_aServiceGroupMgr.getSMPServiceGroupOfID (m_aIdentifierFactory.parseParticipantIdentifier (aDoc.getString (BSON_SERVICE_GROUP_ID)));
+    }
+    return toServiceInformation (aServiceGroup, aDoc, bNeedProcesses);
+  }
+
+  /**
+   * Convert a document to a service information, if the service group is
+   * already known.
+   *
+   * @param aServiceGroup
+   *        The service group the document belongs to. May not be
+   *        <code>null</code>.
+   * @param aDoc
+   *        The document to convert. May not be <code>null</code>.
+   * @param bNeedProcesses
+   *        <code>true</code> to convert the processes as well.
+   * @return The domain object and never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static SMPServiceInformation toServiceInformation (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                            @Nonnull final Document aDoc,
+                                                            final boolean bNeedProcesses)
+  {
     final IDocumentTypeIdentifier aDocTypeID = toDocumentTypeID (aDoc.get (BSON_DOCTYPE_ID, Document.class));
     final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
     if (bNeedProcesses)
@@ -253,8 +306,9 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
 
     // Check for an update
     boolean bChangedExisting = false;
-    final SMPServiceInformation aOldInformation = (SMPServiceInformation) getSMPServiceInformationOfServiceGroupAndDocumentType (aSMPServiceInformation.getServiceGroup (),
-                                                                                                                                 aSMPServiceInformation.getDocumentTypeIdentifier ());
+    final SMPServiceInformation aOldInformation = (SMPServiceInformation) _getSMPServiceInformationOfServiceGroupAndDocumentType (getCollection (),
+                                                                                                                                  aSMPServiceInformation.getServiceGroup (),
+                                                                                                                                  aSMPServiceInformation.getDocumentTypeIdentifier ());
     if (aOldInformation != null)
     {
       // If a service information is present, it must be the provided object!
@@ -326,6 +380,67 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     return ESuccess.SUCCESS;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceInformation> mergeSMPServiceInformations (@Nonnull final Iterable <? extends ISMPServiceInformation> aServiceInformations)
+  {
+    ValueEnforcer.notNull (aServiceInformations, "ServiceInformations");
+
+    // The ID is derived from service group and document type - so an upsert by
+    // ID replaces an existing service information
+    final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
+    final ICommonsList <ISMPServiceInformation> aFailed = new CommonsArrayList <> ();
+    bulkWrite (aServiceInformations,
+               x -> new ReplaceOneModel <> (new Document (BSON_ID, x.getID ()),
+                                            toBson (x),
+                                            new ReplaceOptions ().upsert (true)),
+               (x, bInserted) -> {
+                 if (bInserted)
+                 {
+                   AuditHelper.onAuditCreateSuccess (SMPServiceInformation.OT,
+                                                     x.getID (),
+                                                     x.getServiceGroupID (),
+                                                     x.getDocumentTypeIdentifier ().getURIEncoded (),
+                                                     x.getAllProcesses (),
+                                                     x.getExtensionsAsString ());
+                   m_aCBs.forEach (cb -> cb.onSMPServiceInformationCreated (x));
+                 }
+                 else
+                 {
+                   AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                                     x.getID (),
+                                                     x.getServiceGroupID (),
+                                                     x.getDocumentTypeIdentifier ().getURIEncoded (),
+                                                     x.getAllProcesses (),
+                                                     x.getExtensionsAsString ());
+                   m_aCBs.forEach (cb -> cb.onSMPServiceInformationUpdated (x));
+                 }
+                 ret.add (x);
+               },
+               (x, sError) -> {
+                 LOGGER.warn ("Failed to merge service information '" + x.getID () + "' in bulk: " + sError);
+                 aFailed.add (x);
+               });
+
+    // Retry the failed ones one by one, so that they are handled exactly like
+    // a single merge and only the really failed ones are missing in the result
+    for (final ISMPServiceInformation aSMPServiceInformation : aFailed)
+      try
+      {
+        if (mergeSMPServiceInformation (aSMPServiceInformation).isSuccess ())
+          ret.add (aSMPServiceInformation);
+      }
+      catch (final MongoException ex)
+      {
+        LOGGER.error ("Failed to merge service information '" + aSMPServiceInformation.getID () + "'", ex);
+      }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("mergeSMPServiceInformations - merged " + ret.size () + " objects");
+    return ret;
+  }
+
   @Nonnull
   public EChange deleteSMPServiceInformation (@Nullable final ISMPServiceInformation aSMPServiceInformation)
   {
@@ -360,10 +475,30 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   @Nonnull
   public EChange deleteAllSMPServiceInformationOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
   {
-    EChange eChange = EChange.UNCHANGED;
-    for (final ISMPServiceInformation aSMPServiceInformation : getAllSMPServiceInformationOfServiceGroup (aServiceGroup))
-      eChange = eChange.or (deleteSMPServiceInformation (aSMPServiceInformation));
-    return eChange;
+    final ICommonsList <ISMPServiceInformation> aSMPServiceInformations = _getAllSMPServiceInformationOfServiceGroup (getCollection (),
+                                                                                                                     aServiceGroup);
+    if (aSMPServiceInformations.isEmpty ())
+      return EChange.UNCHANGED;
+
+    // Delete exactly the read objects in a single round trip
+    final DeleteResult aDR = getCollection ().deleteMany (Filters.in (BSON_ID,
+                                                                      aSMPServiceInformations.getAllMapped (ISMPServiceInformation::getID)));
+    if (!aDR.wasAcknowledged () || aDR.getDeletedCount () == 0)
+    {
+      AuditHelper.onAuditDeleteFailure (SMPServiceInformation.OT, "no-such-id", aServiceGroup.getID ());
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("deleteAllSMPServiceInformationOfServiceGroup - failure");
+      return EChange.UNCHANGED;
+    }
+
+    for (final ISMPServiceInformation aSMPServiceInformation : aSMPServiceInformations)
+    {
+      AuditHelper.onAuditDeleteSuccess (SMPServiceInformation.OT, aSMPServiceInformation.getID ());
+      m_aCBs.forEach (x -> x.onSMPServiceInformationDeleted (aSMPServiceInformation));
+    }
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("deleteAllSMPServiceInformationOfServiceGroup - deleted " + aDR.getDeletedCount () + " objects");
+    return EChange.CHANGED;
   }
 
   @Nonnull
@@ -426,6 +561,24 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     return ret;
   }
 
+  @Override
+  @Nonnull
+  public ESuccess forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    try
+    {
+      // The cursor fetches the documents in batches from the server
+      getCollection ().find ().forEach ((Consumer <Document>) x -> aConsumer.accept (toServiceInformation (x, true)));
+      return ESuccess.SUCCESS;
+    }
+    catch (final MongoException ex)
+    {
+      LOGGER.error ("Failed to iterate all service information - aborting the iteration", ex);
+      return ESuccess.FAILURE;
+    }
+  }
+
   @Nonnegative
   public long getSMPServiceInformationCount ()
   {
@@ -434,15 +587,23 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
 
   @Nonnull
   @ReturnsMutableCopy
-  public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformationOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  private ICommonsList <ISMPServiceInformation> _getAllSMPServiceInformationOfServiceGroup (@Nonnull final MongoCollection <Document> aCollection,
+                                                                                          @Nullable final ISMPServiceGroup aServiceGroup)
   {
     final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
     if (aServiceGroup != null)
-      getCollection ().find (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()))
-                      .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x, true)));
+      aCollection.find (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()))
+                 .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (aServiceGroup, x, true)));
     return ret;
   }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformationOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  {
+    return _getAllSMPServiceInformationOfServiceGroup (getLookupCollection (), aServiceGroup);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <IDocumentTypeIdentifier> getAllSMPDocumentTypesOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
@@ -450,9 +611,11 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     final ICommonsList <IDocumentTypeIdentifier> ret = new CommonsArrayList <> ();
     if (aServiceGroup != null)
     {
+      // Only the document type is needed
       getCollection ().find (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()))
-                      .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x,
-                                                                                          false).getDocumentTypeIdentifier ()));
+                      .projection (Projections.fields (Projections.include (BSON_DOCTYPE_ID), Projections.excludeId ()))
+                      .forEach ((Consumer <Document>) x -> ret.add (toDocumentTypeID (x.get (BSON_DOCTYPE_ID,
+                                                                                              Document.class))));
     }
     return ret;
   }
@@ -460,6 +623,16 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   @Nullable
   public ISMPServiceInformation getSMPServiceInformationOfServiceGroupAndDocumentType (@Nullable final ISMPServiceGroup aServiceGroup,
                                                                                        @Nullable final IDocumentTypeIdentifier aDocumentTypeIdentifier)
+  {
+    return _getSMPServiceInformationOfServiceGroupAndDocumentType (getLookupCollection (),
+                                                                   aServiceGroup,
+                                                                   aDocumentTypeIdentifier);
+  }
+
+  @Nullable
+  private ISMPServiceInformation _getSMPServiceInformationOfServiceGroupAndDocumentType (@Nonnull final MongoCollection <Document> aCollection,
+                                                                                         @Nullable final ISMPServiceGroup aServiceGroup,
+                                                                                         @Nullable final IDocumentTypeIdentifier aDocumentTypeIdentifier)
   {
     if (aServiceGroup == null)
       return null;
@@ -467,9 +640,9 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       return null;
 
     final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
-    getCollection ().find (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
-                                        new Document (BSON_DOCTYPE_ID, toBson (aDocumentTypeIdentifier))))
-                    .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x, true)));
+    aCollection.find (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
+                                   toFilter (BSON_DOCTYPE_ID, aDocumentTypeIdentifier)))
+               .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (aServiceGroup, x, true)));
 
     if (ret.isEmpty ())
       return null;
@@ -481,4 +654,20 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
                    "'. This seems to be a bug! Using the first one.");
     return ret.getFirst ();
   }
+
+  @Override
+  @Nonnull
+  public CompletableFuture <ISMPServiceInformation> getSMPServiceInformationOfServiceGroupAndDocumentTypeAsync (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                                                                               @Nullable final IDocumentTypeIdentifier aDocumentTypeIdentifier)
+  {
+    if (aServiceGroup == null)
+      return CompletableFuture.completedFuture (null);
+    if (aDocumentTypeIdentifier == null)
+      return CompletableFuture.completedFuture (null);
+
+    // The unique index ensures that there is at most one match
+    return findFirstAsync (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
+                                        toFilter (BSON_DOCTYPE_ID, aDocumentTypeIdentifier)),
+                           x -> toServiceInformation (aServiceGroup, x, true));
+  }
 }
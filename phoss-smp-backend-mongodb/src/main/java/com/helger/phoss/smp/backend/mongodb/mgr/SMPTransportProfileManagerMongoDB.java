@@ -35,6 +35,7 @@ import com.helger.peppol.smp.SMPTransportProfile;
 import com.helger.phoss.smp.domain.redirect.SMPRedirect;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
 import com.helger.photon.audit.AuditHelper;
+import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
@@ -54,7 +55,7 @@ public final class SMPTransportProfileManagerMongoDB extends AbstractManagerMong
   public SMPTransportProfileManagerMongoDB ()
   {
     super ("smp-transportprofile");
-    getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    ensureIndexes (new CommonsArrayList <> (new IndexModel (Indexes.ascending (BSON_ID))));
   }
 
   @Nonnull
@@ -145,7 +146,7 @@ public final class SMPTransportProfileManagerMongoDB extends AbstractManagerMong
 
   public boolean containsSMPTransportProfileWithID (@Nullable final String sID)
   {
-    return getCollection ().find (new Document (BSON_ID, sID)).first () != null;
+    return containsAny (new Document (BSON_ID, sID));
   }
 
   @Nonnegative
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.mgr;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Filters;
+
+/**
+ * Test class for class {@link AbstractManagerMongoDB}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractManagerMongoDBTest
+{
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule ();
+
+  private static void _collectIndexNames (@Nonnull final Document aStage, @Nonnull final ICommonsSet <String> aTarget)
+  {
+    final String sIndexName = aStage.getString ("indexName");
+    if (sIndexName != null)
+      aTarget.add (sIndexName);
+
+    final Object aInputStage = aStage.get ("inputStage");
+    if (aInputStage instanceof Document)
+      _collectIndexNames ((Document) aInputStage, aTarget);
+
+    final Object aInputStages = aStage.get ("inputStages");
+    if (aInputStages instanceof List <?>)
+      for (final Object aItem : (List <?>) aInputStages)
+        if (aItem instanceof Document)
+          _collectIndexNames ((Document) aItem, aTarget);
+  }
+
+  @Nonnull
+  private static ICommonsSet <String> _getUsedIndexNames (@Nonnull final AbstractManagerMongoDB aMgr,
+                                                          @Nonnull final Bson aFilter)
+  {
+    final BsonDocument aFilterDoc = aFilter.toBsonDocument (BsonDocument.class,
+                                                            MongoClientSettings.getDefaultCodecRegistry ());
+    final Document aFind = new Document ("find", aMgr.getCollectionName ()).append ("filter", aFilterDoc);
+    final Document aExplain = MongoClientSingleton.getInstance ()
+                                                  .getDatabase ()
+                                                  .runCommand (new Document ("explain", aFind).append ("verbosity",
+                                                                                                       "queryPlanner"));
+    final ICommonsSet <String> ret = new CommonsHashSet <> ();
+    _collectIndexNames (((Document) aExplain.get ("queryPlanner")).get ("winningPlan", Document.class), ret);
+    return ret;
+  }
+
+  @Test
+  public void testHotQueriesUseIndexes ()
+  {
+    final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
+    final String sServiceGroupID = "iso6523-actorid-upis::0088:dummy";
+    final IDocumentTypeIdentifier aDocTypeID = aIdentifierFactory.createDocumentTypeIdentifier (PeppolIdentifierHelper.DEFAULT_DOCUMENT_TYPE_SCHEME,
+                                                                                                "doctype4711");
+
+    final Bson aFilterSG = Filters.eq ("sgid", sServiceGroupID);
+    final Bson aFilterSGAndDocType = Filters.and (aFilterSG, AbstractManagerMongoDB.toFilter ("doctypeid", aDocTypeID));
+
+    final SMPServiceGroupManagerMongoDB aSGMgr = (SMPServiceGroupManagerMongoDB) SMPMetaManager.getServiceGroupMgr ();
+    assertTrue (_getUsedIndexNames (aSGMgr, Filters.eq ("ownerid", "dummy")).contains (SMPServiceGroupManagerMongoDB.INDEX_OWNER));
+
+    final SMPServiceInformationManagerMongoDB aSIMgr = (SMPServiceInformationManagerMongoDB) SMPMetaManager.getServiceInformationMgr ();
+    assertTrue (_getUsedIndexNames (aSIMgr, aFilterSG).contains (SMPServiceInformationManagerMongoDB.INDEX_SG_DOCTYPE));
+    assertTrue (_getUsedIndexNames (aSIMgr, aFilterSGAndDocType).contains (SMPServiceInformationManagerMongoDB.INDEX_SG_DOCTYPE));
+
+    final SMPRedirectManagerMongoDB aRedirectMgr = (SMPRedirectManagerMongoDB) SMPMetaManager.getRedirectMgr ();
+    assertTrue (_getUsedIndexNames (aRedirectMgr, aFilterSG).contains (SMPRedirectManagerMongoDB.INDEX_SG_DOCTYPE));
+    assertTrue (_getUsedIndexNames (aRedirectMgr, aFilterSGAndDocType).contains (SMPRedirectManagerMongoDB.INDEX_SG_DOCTYPE));
+  }
+}
@@ -10,15 +10,26 @@
  */
 package com.helger.phoss.smp.backend.sql;
 
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.db.jpa.JPAEnabledManager;
 
 public abstract class AbstractSMPJPAEnabledManager extends JPAEnabledManager
 {
   protected static final Logger LOGGER = LoggerFactory.getLogger (AbstractSMPJPAEnabledManager.class);
 
+  /** The number of objects read per page when iterating all objects */
+  protected static final int STREAM_PAGE_SIZE = 500;
+
   public AbstractSMPJPAEnabledManager ()
   {
     super ( () -> SMPEntityManagerWrapper.getInstance ().getEntityManager ());
@@ -26,4 +37,42 @@ public abstract class AbstractSMPJPAEnabledManager extends JPAEnabledManager
     // To avoid some EclipseLink logging issues
     setUseTransactionsForSelect (true);
   }
+
+  /**
+   * Split the provided items into chunks of at most the provided size and
+   * invoke the consumer for each chunk. This is used by the bulk write methods
+   * to limit the number of objects per transaction.
+   *
+   * @param aItems
+   *        The items to be split. May not be <code>null</code>.
+   * @param nChunkSize
+   *        The maximum number of items per chunk. Must be &gt; 0.
+   * @param aChunkConsumer
+   *        The consumer invoked for every non-empty chunk. May not be
+   *        <code>null</code>.
+   * @param <T>
+   *        Item type
+   * @since 5.2.0
+   */
+  protected static <T> void forEachChunk (@Nonnull final Iterable <? extends T> aItems,
+                                          @Nonnegative final int nChunkSize,
+                                          @Nonnull final Consumer <? super ICommonsList <T>> aChunkConsumer)
+  {
+    ValueEnforcer.notNull (aItems, "Items");
+    ValueEnforcer.isGT0 (nChunkSize, "ChunkSize");
+    ValueEnforcer.notNull (aChunkConsumer, "ChunkConsumer");
+
+    ICommonsList <T> aChunk = new CommonsArrayList <> (nChunkSize);
+    for (final T aItem : aItems)
+    {
+      aChunk.add (aItem);
+      if (aChunk.size () >= nChunkSize)
+      {
+        aChunkConsumer.accept (aChunk);
+        aChunk = new CommonsArrayList <> (nChunkSize);
+      }
+    }
+    if (aChunk.isNotEmpty ())
+      aChunkConsumer.accept (aChunk);
+  }
 }
@@ -10,13 +10,20 @@
  */
 package com.helger.phoss.smp.backend.sql;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.OverridingMethodsMustInvokeSuper;
 import javax.persistence.PersistenceException;
 
+import org.eclipse.persistence.config.BatchWriting;
+import org.eclipse.persistence.config.CommitOrderType;
 import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.UsedViaReflection;
@@ -25,6 +32,7 @@ import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.db.jpa.AbstractGlobalEntityManagerFactory;
 import com.helger.db.jpa.JPAEnabledManager;
 import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.backend.sql.migration.SMPSchemaMigrator;
 import com.helger.scope.IScope;
 import com.helger.settings.exchange.configfile.ConfigFile;
 
@@ -35,6 +43,8 @@ import com.helger.settings.exchange.configfile.ConfigFile;
  */
 public final class SMPEntityManagerFactory extends AbstractGlobalEntityManagerFactory
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPEntityManagerFactory.class);
+
   @Nonnull
   @ReturnsMutableCopy
   private static Map <String, Object> _createPropertiesMap ()
@@ -48,15 +58,29 @@ public final class SMPEntityManagerFactory extends AbstractGlobalEntityManagerFa
     ret.put (PersistenceUnitProperties.CONNECTION_POOL_MAX,
              aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_READ_CONNECTIONS_MAX));
 
-    // EclipseLink should create the database schema automatically
+    // EclipseLink may create missing tables - existing tables are never
+    // dropped. Everything else is handled by the schema migration.
     // Values: Values: none/create-tables/drop-and-create-tables
-    ret.put (PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+    ret.put (PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.CREATE_ONLY);
     ret.put (PersistenceUnitProperties.DDL_GENERATION_MODE,
              aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_DDL_GENERATION_MODE,
                                       SMPJPAConfiguration.getDefaultDDLGenerationMode ()));
     ret.put (PersistenceUnitProperties.CREATE_JDBC_DDL_FILE, "db-create-smp.sql");
     ret.put (PersistenceUnitProperties.DROP_JDBC_DDL_FILE, "db-drop-smp.sql");
 
+    // JDBC batch writing for bulk operations
+    if (aConfigFile.getAsBoolean (SMPJPAConfiguration.CONFIG_JDBC_BATCH_WRITING_ENABLED,
+                                  SMPJPAConfiguration.DEFAULT_JDBC_BATCH_WRITING_ENABLED))
+    {
+      ret.put (PersistenceUnitProperties.BATCH_WRITING, BatchWriting.JDBC);
+      ret.put (PersistenceUnitProperties.BATCH_WRITING_SIZE,
+               aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_BATCH_WRITING_SIZE,
+                                        Integer.toString (SMPJPAConfiguration.DEFAULT_JDBC_BATCH_WRITING_SIZE)));
+      // Order the statements by table and ID so that subsequent statements on
+      // the same table can be grouped into one batch
+      ret.put (PersistenceUnitProperties.PERSISTENCE_CONTEXT_COMMIT_ORDER, CommitOrderType.Id);
+    }
+
     // Use an isolated cache
     // (http://code.google.com/p/peppol-silicone/issues/detail?id=6)
     ret.put (PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "false");
@@ -89,6 +113,52 @@ public final class SMPEntityManagerFactory extends AbstractGlobalEntityManagerFa
                                                                                     JPAEnabledManager.DEFAULT_EXECUTION_WARN_TIME_MS));
   }
 
+  @Override
+  @OverridingMethodsMustInvokeSuper
+  protected void onAfterInstantiation (@Nonnull final IScope aScope)
+  {
+    // Creates the entity manager factory
+    super.onAfterInstantiation (aScope);
+
+    if (SMPServerConfiguration.getConfigFile ()
+                              .getAsBoolean (SMPJPAConfiguration.CONFIG_JDBC_SCHEMA_MIGRATION_ENABLED,
+                                             SMPJPAConfiguration.DEFAULT_JDBC_SCHEMA_MIGRATION_ENABLED))
+      _migrateSchema ();
+  }
+
+  private void _migrateSchema ()
+  {
+    final ConfigFile aConfigFile = SMPServerConfiguration.getConfigFile ();
+    try
+    {
+      // Deploy the persistence unit first, so that the EclipseLink DDL
+      // generation (if enabled) has created the tables
+      createEntityManager ().close ();
+    }
+    catch (final PersistenceException ex)
+    {
+      LOGGER.error ("Failed to initialize the persistence unit - schema migration is skipped", ex);
+      return;
+    }
+
+    try
+    {
+      final String sDriver = aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_DRIVER);
+      if (sDriver != null)
+        Class.forName (sDriver);
+      try (final Connection aConnection = DriverManager.getConnection (aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_URL),
+                                                                       aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_USER),
+                                                                       aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_PASSWORD)))
+      {
+        SMPSchemaMigrator.migrate (aConnection);
+      }
+    }
+    catch (final ClassNotFoundException | SQLException ex)
+    {
+      LOGGER.error ("Failed to migrate the SQL schema", ex);
+    }
+  }
+
   @Nonnull
   public static SMPEntityManagerFactory getInstance ()
   {
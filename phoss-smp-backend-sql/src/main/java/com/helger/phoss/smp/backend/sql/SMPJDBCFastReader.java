@@ -0,0 +1,439 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.db.api.jdbc.JDBCHelper;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.domain.redirect.SMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.scope.IScope;
+import com.helger.scope.singleton.AbstractGlobalSingleton;
+import com.helger.security.certificate.CertificateHelper;
+import com.helger.settings.exchange.configfile.ConfigFile;
+
+/**
+ * A lightweight plain JDBC read path for the hot public lookup queries (service
+ * group by ID, redirect and service information by service group and document
+ * type). It bypasses the JPA persistence context, keeps a small pool of
+ * read-only connections and caches the prepared statements per connection. The
+ * result sets are mapped directly onto the domain objects.<br>
+ * Enable it via {@link SMPJPAConfiguration#CONFIG_JDBC_FAST_READ_ENABLED}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPJDBCFastReader extends AbstractGlobalSingleton
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPJDBCFastReader.class);
+
+  /** Maximum time to wait for a free connection */
+  private static final long CONNECTION_WAIT_SECONDS = 30;
+
+  private static final String SQL_SERVICE_GROUP = "SELECT o.username, sg.extension" +
+                                                  " FROM smp_service_group sg" +
+                                                  " INNER JOIN smp_ownership o" +
+                                                  " ON o.businessIdentifierScheme=sg.businessIdentifierScheme AND o.businessIdentifier=sg.businessIdentifier" +
+                                                  " WHERE sg.businessIdentifierScheme=? AND sg.businessIdentifier=?";
+  private static final String SQL_REDIRECT = "SELECT redirectionUrl, certificateUID, certificate, extension" +
+                                             " FROM smp_service_metadata_redirection" +
+                                             " WHERE businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? AND documentIdentifier=?";
+  private static final String SQL_SERVICE_INFO = "SELECT sm.extension, p.processIdentifierType, p.processIdentifier, p.extension," +
+                                                 " e.transportProfile, e.endpointReference, e.requireBusinessLevelSignature, e.minimumAuthenticationLevel," +
+                                                 " e.serviceActivationDate, e.serviceExpirationDate, e.certificate, e.serviceDescription," +
+                                                 " e.technicalContactUrl, e.technicalInformationUrl, e.extension" +
+                                                 " FROM smp_service_metadata sm" +
+                                                 " LEFT OUTER JOIN smp_process p" +
+                                                 " ON p.businessIdentifierScheme=sm.businessIdentifierScheme AND p.businessIdentifier=sm.businessIdentifier" +
+                                                 " AND p.documentIdentifierScheme=sm.documentIdentifierScheme AND p.documentIdentifier=sm.documentIdentifier" +
+                                                 " LEFT OUTER JOIN smp_endpoint e" +
+                                                 " ON e.businessIdentifierScheme=p.businessIdentifierScheme AND e.businessIdentifier=p.businessIdentifier" +
+                                                 " AND e.documentIdentifierScheme=p.documentIdentifierScheme AND e.documentIdentifier=p.documentIdentifier" +
+                                                 " AND e.processIdentifierType=p.processIdentifierType AND e.processIdentifier=p.processIdentifier" +
+                                                 " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=? AND sm.documentIdentifierScheme=? AND sm.documentIdentifier=?" +
+                                                 " ORDER BY p.processIdentifierType, p.processIdentifier, e.transportProfile";
+
+  /**
+   * A single pooled connection together with its prepared statement cache.
+   * Only accessed by one thread at a time.
+   */
+  private static final class PooledConnection
+  {
+    private final Connection m_aConnection;
+    private final ICommonsMap <String, PreparedStatement> m_aStatements = new CommonsHashMap <> ();
+
+    PooledConnection (@Nonnull final Connection aConnection)
+    {
+      m_aConnection = aConnection;
+    }
+
+    @Nonnull
+    PreparedStatement getPreparedStatement (@Nonnull final String sSQL) throws SQLException
+    {
+      PreparedStatement ret = m_aStatements.get (sSQL);
+      if (ret == null)
+      {
+        ret = m_aConnection.prepareStatement (sSQL);
+        m_aStatements.put (sSQL, ret);
+      }
+      else
+        ret.clearParameters ();
+      return ret;
+    }
+
+    void close ()
+    {
+      for (final PreparedStatement aPS : m_aStatements.values ())
+        try
+        {
+          aPS.close ();
+        }
+        catch (final SQLException ex)
+        {
+          // Ignore
+        }
+      m_aStatements.clear ();
+      JDBCHelper.close (m_aConnection);
+    }
+  }
+
+  @FunctionalInterface
+  private interface IReadCallback <T>
+  {
+    @Nullable
+    T read (@Nonnull PooledConnection aConnection) throws SQLException;
+  }
+
+  private final String m_sURL;
+  private final String m_sUser;
+  private final String m_sPassword;
+  private final int m_nMaxConnections;
+  private final Semaphore m_aPermits;
+  private final LinkedBlockingDeque <PooledConnection> m_aIdle = new LinkedBlockingDeque <> ();
+
+  @Deprecated
+  @UsedViaReflection
+  public SMPJDBCFastReader ()
+  {
+    final ConfigFile aConfigFile = SMPServerConfiguration.getConfigFile ();
+    final String sDriver = aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_DRIVER);
+    if (sDriver != null)
+      try
+      {
+        Class.forName (sDriver);
+      }
+      catch (final ClassNotFoundException ex)
+      {
+        throw new IllegalStateException ("Failed to load JDBC driver '" + sDriver + "'", ex);
+      }
+    m_sURL = aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_URL);
+    m_sUser = aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_USER);
+    m_sPassword = aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_PASSWORD);
+    m_nMaxConnections = Math.max (1,
+                                  aConfigFile.getAsInt (SMPJPAConfiguration.CONFIG_JDBC_FAST_READ_CONNECTIONS_MAX,
+                                                        SMPJPAConfiguration.DEFAULT_JDBC_FAST_READ_CONNECTIONS_MAX));
+    m_aPermits = new Semaphore (m_nMaxConnections, true);
+  }
+
+  @Nonnull
+  public static SMPJDBCFastReader getInstance ()
+  {
+    return getGlobalSingleton (SMPJDBCFastReader.class);
+  }
+
+  @Override
+  protected void onDestroy (@Nonnull final IScope aScopeInDestruction) throws Exception
+  {
+    PooledConnection aConnection;
+    while ((aConnection = m_aIdle.poll ()) != null)
+      aConnection.close ();
+  }
+
+  /**
+   * @return The maximum number of JDBC connections used by this reader. Always
+   *         &gt; 0.
+   */
+  @Nonnegative
+  public int getMaxConnections ()
+  {
+    return m_nMaxConnections;
+  }
+
+  @Nonnull
+  private PooledConnection _createConnection () throws SQLException
+  {
+    final Connection aConnection = DriverManager.getConnection (m_sURL, m_sUser, m_sPassword);
+    aConnection.setAutoCommit (true);
+    aConnection.setReadOnly (true);
+    return new PooledConnection (aConnection);
+  }
+
+  @Nullable
+  private <T> T _read (@Nonnull final IReadCallback <T> aCallback) throws SQLException
+  {
+    try
+    {
+      if (!m_aPermits.tryAcquire (CONNECTION_WAIT_SECONDS, TimeUnit.SECONDS))
+        throw new SQLException ("Timeout waiting for a free JDBC connection");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new SQLException ("Interrupted while waiting for a free JDBC connection", ex);
+    }
+
+    try
+    {
+      PooledConnection aConnection = m_aIdle.pollFirst ();
+      if (aConnection != null)
+      {
+        try
+        {
+          final T ret = aCallback.read (aConnection);
+          m_aIdle.offerFirst (aConnection);
+          return ret;
+        }
+        catch (final SQLException ex)
+        {
+          // The pooled connection may have gone stale - retry once with a fresh
+          // connection
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("Pooled JDBC connection failed - retrying with a new connection", ex);
+          aConnection.close ();
+        }
+      }
+
+      aConnection = _createConnection ();
+      try
+      {
+        final T ret = aCallback.read (aConnection);
+        m_aIdle.offerFirst (aConnection);
+        return ret;
+      }
+      catch (final SQLException ex)
+      {
+        aConnection.close ();
+        throw ex;
+      }
+    }
+    finally
+    {
+      m_aPermits.release ();
+    }
+  }
+
+  @Nullable
+  private static LocalDateTime _getLocalDateTime (@Nonnull final ResultSet aRS,
+                                                  @Nonnegative final int nIndex) throws SQLException
+  {
+    final Timestamp aTS = aRS.getTimestamp (nIndex);
+    return aTS == null ? null : aTS.toLocalDateTime ();
+  }
+
+  /**
+   * Get the service group with the provided participant ID.
+   *
+   * @param aParticipantID
+   *        The participant ID to search. May not be <code>null</code>.
+   * @return <code>null</code> if no such service group exists.
+   * @throws SQLException
+   *         On database error
+   */
+  @Nullable
+  public SMPServiceGroup getServiceGroupOfID (@Nonnull final IParticipantIdentifier aParticipantID) throws SQLException
+  {
+    ValueEnforcer.notNull (aParticipantID, "ParticipantID");
+
+    return _read (aConnection -> {
+      final PreparedStatement aPS = aConnection.getPreparedStatement (SQL_SERVICE_GROUP);
+      aPS.setString (1, aParticipantID.getScheme ());
+      aPS.setString (2, aParticipantID.getValue ());
+      try (final ResultSet aRS = aPS.executeQuery ())
+      {
+        if (!aRS.next ())
+          return null;
+        return new SMPServiceGroup (aRS.getString (1), aParticipantID, aRS.getString (2));
+      }
+    });
+  }
+
+  /**
+   * Get the redirect of the provided service group and document type.
+   *
+   * @param aServiceGroup
+   *        The service group to use. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type to search. May not be <code>null</code>.
+   * @return <code>null</code> if no such redirect exists.
+   * @throws SQLException
+   *         On database error
+   */
+  @Nullable
+  public SMPRedirect getRedirect (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                  @Nonnull final IDocumentTypeIdentifier aDocTypeID) throws SQLException
+  {
+    ValueEnforcer.notNull (aServiceGroup, "ServiceGroup");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+
+    final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+    return _read (aConnection -> {
+      final PreparedStatement aPS = aConnection.getPreparedStatement (SQL_REDIRECT);
+      aPS.setString (1, aParticipantID.getScheme ());
+      aPS.setString (2, aParticipantID.getValue ());
+      aPS.setString (3, aDocTypeID.getScheme ());
+      aPS.setString (4, aDocTypeID.getValue ());
+      try (final ResultSet aRS = aPS.executeQuery ())
+      {
+        if (!aRS.next ())
+          return null;
+        final X509Certificate aCertificate = CertificateHelper.convertStringToCertficateOrNull (aRS.getString (3));
+        return new SMPRedirect (aServiceGroup,
+                                aDocTypeID,
+                                aRS.getString (1),
+                                aRS.getString (2),
+                                aCertificate,
+                                aRS.getString (4));
+      }
+    });
+  }
+
+  private static final class ProcessData
+  {
+    private final SimpleProcessIdentifier m_aProcessID;
+    private final String m_sExtension;
+    private final ICommonsList <SMPEndpoint> m_aEndpoints = new CommonsArrayList <> ();
+
+    ProcessData (@Nonnull final SimpleProcessIdentifier aProcessID, @Nullable final String sExtension)
+    {
+      m_aProcessID = aProcessID;
+      m_sExtension = sExtension;
+    }
+
+    @Nonnull
+    SMPProcess getAsProcess ()
+    {
+      return new SMPProcess (m_aProcessID, m_aEndpoints, m_sExtension);
+    }
+  }
+
+  /**
+   * Get the service information of the provided service group and document
+   * type, including all processes and endpoints, with a single query.
+   *
+   * @param aServiceGroup
+   *        The service group to use. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type to search. May not be <code>null</code>.
+   * @return <code>null</code> if no such service information exists.
+   * @throws SQLException
+   *         On database error
+   */
+  @Nullable
+  public SMPServiceInformation getServiceInformation (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                      @Nonnull final IDocumentTypeIdentifier aDocTypeID) throws SQLException
+  {
+    ValueEnforcer.notNull (aServiceGroup, "ServiceGroup");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+
+    final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+    return _read (aConnection -> {
+      final PreparedStatement aPS = aConnection.getPreparedStatement (SQL_SERVICE_INFO);
+      aPS.setString (1, aParticipantID.getScheme ());
+      aPS.setString (2, aParticipantID.getValue ());
+      aPS.setString (3, aDocTypeID.getScheme ());
+      aPS.setString (4, aDocTypeID.getValue ());
+      try (final ResultSet aRS = aPS.executeQuery ())
+      {
+        boolean bFound = false;
+        String sExtension = null;
+        final ICommonsOrderedMap <SimpleProcessIdentifier, ProcessData> aProcesses = new CommonsLinkedHashMap <> ();
+        while (aRS.next ())
+        {
+          if (!bFound)
+          {
+            bFound = true;
+            sExtension = aRS.getString (1);
+          }
+
+          final String sProcessValue = aRS.getString (3);
+          if (sProcessValue == null)
+          {
+            // Service information without processes
+            continue;
+          }
+
+          final SimpleProcessIdentifier aProcessID = new SimpleProcessIdentifier (aRS.getString (2), sProcessValue);
+          final String sProcessExtension = aRS.getString (4);
+          final ProcessData aProcess = aProcesses.computeIfAbsent (aProcessID,
+                                                                   k -> new ProcessData (k, sProcessExtension));
+
+          final String sTransportProfile = aRS.getString (5);
+          if (sTransportProfile != null)
+          {
+            aProcess.m_aEndpoints.add (new SMPEndpoint (sTransportProfile,
+                                                        aRS.getString (6),
+                                                        aRS.getBoolean (7),
+                                                        aRS.getString (8),
+                                                        _getLocalDateTime (aRS, 9),
+                                                        _getLocalDateTime (aRS, 10),
+                                                        aRS.getString (11),
+                                                        aRS.getString (12),
+                                                        aRS.getString (13),
+                                                        aRS.getString (14),
+                                                        aRS.getString (15)));
+          }
+        }
+        if (!bFound)
+          return null;
+
+        final ICommonsList <SMPProcess> aProcessList = new CommonsArrayList <> (aProcesses.size ());
+        for (final ProcessData aProcess : aProcesses.values ())
+          aProcessList.add (aProcess.getAsProcess ());
+        return new SMPServiceInformation (aServiceGroup, aDocTypeID, aProcessList, sExtension);
+      }
+    });
+  }
+}
@@ -10,6 +10,7 @@
  */
 package com.helger.phoss.smp.backend.sql;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 
@@ -17,6 +18,7 @@ import org.eclipse.persistence.config.PersistenceUnitProperties;
 
 import com.helger.commons.annotation.PresentForCodeCoverage;
 import com.helger.commons.annotation.Since;
+import com.helger.phoss.smp.SMPServerConfiguration;
 
 /**
  * Default JPA configuration file properties
@@ -37,6 +39,25 @@ public final class SMPJPAConfiguration
   public static final String CONFIG_JDBC_EXECUTION_TIME_WARNING_ENABLE = "jdbc.execution-time-warning.enabled";
   @Since ("5.0.6")
   public static final String CONFIG_JDBC_EXECUTION_TIME_WARNING_MS = "jdbc.execution-time-warning.ms";
+  @Since ("5.2.0")
+  public static final String CONFIG_JDBC_FAST_READ_ENABLED = "jdbc.fast-read.enabled";
+  @Since ("5.2.0")
+  public static final String CONFIG_JDBC_FAST_READ_CONNECTIONS_MAX = "jdbc.fast-read.connections.max";
+  @Since ("5.2.0")
+  public static final String CONFIG_JDBC_BATCH_WRITING_ENABLED = "jdbc.batch-writing.enabled";
+  @Since ("5.2.0")
+  public static final String CONFIG_JDBC_BATCH_WRITING_SIZE = "jdbc.batch-writing.size";
+  @Since ("5.2.0")
+  public static final String CONFIG_JDBC_BULK_TRANSACTION_SIZE = "jdbc.bulk.transaction-size";
+  @Since ("5.2.0")
+  public static final String CONFIG_JDBC_SCHEMA_MIGRATION_ENABLED = "jdbc.schema-migration.enabled";
+
+  public static final boolean DEFAULT_JDBC_FAST_READ_ENABLED = false;
+  public static final int DEFAULT_JDBC_FAST_READ_CONNECTIONS_MAX = 10;
+  public static final boolean DEFAULT_JDBC_BATCH_WRITING_ENABLED = false;
+  public static final int DEFAULT_JDBC_BATCH_WRITING_SIZE = 100;
+  public static final int DEFAULT_JDBC_BULK_TRANSACTION_SIZE = 1000;
+  public static final boolean DEFAULT_JDBC_SCHEMA_MIGRATION_ENABLED = true;
 
   @PresentForCodeCoverage
   private static final SMPJPAConfiguration s_aInstance = new SMPJPAConfiguration ();
@@ -51,4 +72,28 @@ public final class SMPJPAConfiguration
   {
     return PersistenceUnitProperties.NONE;
   }
+
+  /**
+   * @return <code>true</code> if the plain JDBC read path should be used for
+   *         the public lookup queries instead of JPA.
+   * @since 5.2.0
+   */
+  public static boolean isFastReadEnabled ()
+  {
+    return SMPServerConfiguration.getConfigFile ().getAsBoolean (CONFIG_JDBC_FAST_READ_ENABLED,
+                                                                 DEFAULT_JDBC_FAST_READ_ENABLED);
+  }
+
+  /**
+   * @return The maximum number of objects to be written in a single
+   *         transaction by the bulk write methods. Always &gt; 0.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getBulkTransactionSize ()
+  {
+    final int ret = SMPServerConfiguration.getConfigFile ().getAsInt (CONFIG_JDBC_BULK_TRANSACTION_SIZE,
+                                                                      DEFAULT_JDBC_BULK_TRANSACTION_SIZE);
+    return ret > 0 ? ret : DEFAULT_JDBC_BULK_TRANSACTION_SIZE;
+  }
 }
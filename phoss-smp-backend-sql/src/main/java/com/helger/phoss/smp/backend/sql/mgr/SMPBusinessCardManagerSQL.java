@@ -39,6 +39,7 @@ import com.helger.json.serialize.JsonWriterSettings;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.backend.sql.AbstractSMPJPAEnabledManager;
+import com.helger.phoss.smp.backend.sql.SMPJPAConfiguration;
 import com.helger.phoss.smp.backend.sql.model.DBBusinessCardEntity;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
@@ -47,6 +48,7 @@ import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardExistenceCache;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
@@ -65,11 +67,20 @@ public final class SMPBusinessCardManagerSQL extends AbstractSMPJPAEnabledManage
 
   private final ISMPServiceGroupManager m_aServiceGroupMgr;
   private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+  private final SMPBusinessCardExistenceCache m_aExistenceCache;
 
   public SMPBusinessCardManagerSQL (@Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
     ValueEnforcer.notNull (aServiceGroupMgr, "ServiceGroupMgr");
     m_aServiceGroupMgr = aServiceGroupMgr;
+
+    // Must be the first callback, so that all others see the current state
+    m_aExistenceCache = new SMPBusinessCardExistenceCache (this);
+    m_aCBs.add (m_aExistenceCache);
+
+    // The service group manager deletes the business cards in bulk
+    if (aServiceGroupMgr instanceof SMPServiceGroupManagerSQL)
+      ((SMPServiceGroupManagerSQL) aServiceGroupMgr).setBusinessCardMgr (this);
   }
 
   @Nonnull
@@ -79,6 +90,35 @@ public final class SMPBusinessCardManagerSQL extends AbstractSMPJPAEnabledManage
     return m_aCBs;
   }
 
+  @Override
+  public boolean isDeletedWithServiceGroup ()
+  {
+    return m_aServiceGroupMgr instanceof SMPServiceGroupManagerSQL;
+  }
+
+  /**
+   * Invoke the callbacks for a business card whose rows were deleted in bulk
+   * together with its service group by {@link SMPServiceGroupManagerSQL}.
+   *
+   * @param aServiceGroup
+   *        The deleted service group. May not be <code>null</code>.
+   */
+  void onSMPBusinessCardDeletedWithServiceGroup (@Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    final ISMPBusinessCard aBusinessCard = new SMPBusinessCard (aServiceGroup, new CommonsArrayList <> ());
+    m_aCBs.forEach (x -> x.onDeleteSMPBusinessCard (aBusinessCard));
+  }
+
+  /**
+   * @return The cache of all business card IDs. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  public SMPBusinessCardExistenceCache existenceCache ()
+  {
+    return m_aExistenceCache;
+  }
+
   @Nonnull
   public static IJson getBCIAsJson (@Nullable final List <SMPBusinessCardIdentifier> aIDs)
   {
@@ -161,6 +201,23 @@ public final class SMPBusinessCardManagerSQL extends AbstractSMPJPAEnabledManage
     return ret;
   }
 
+  @Nonnull
+  private static DBBusinessCardEntity _createDBEntity (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                      @Nonnull final SMPBusinessCardEntity aEntity)
+  {
+    // Single name only
+    return new DBBusinessCardEntity (aEntity.getID (),
+                                     aServiceGroup.getParticpantIdentifier ().getURIEncoded (),
+                                     aEntity.names ().getFirst ().getName (),
+                                     aEntity.getCountryCode (),
+                                     aEntity.getGeographicalInformation (),
+                                     getBCIAsJson (aEntity.identifiers ()).getAsJsonString (JWS),
+                                     getStringAsJson (aEntity.websiteURIs ()).getAsJsonString (JWS),
+                                     getBCCAsJson (aEntity.contacts ()).getAsJsonString (JWS),
+                                     aEntity.getAdditionalInformation (),
+                                     aEntity.getRegistrationDate ());
+  }
+
   @Nullable
   public ISMPBusinessCard createOrUpdateSMPBusinessCard (@Nonnull final ISMPServiceGroup aServiceGroup,
                                                          @Nonnull final Collection <SMPBusinessCardEntity> aEntities)
@@ -189,21 +246,7 @@ public final class SMPBusinessCardManagerSQL extends AbstractSMPJPAEnabledManage
         LOGGER.info ("Deleted " + nDeleted + " existing DBBusinessCardEntity rows");
 
       for (final SMPBusinessCardEntity aEntity : aEntities)
-      {
-        // Single name only
-        final DBBusinessCardEntity aDBBCE = new DBBusinessCardEntity (aEntity.getID (),
-                                                                      aServiceGroup.getParticpantIdentifier ()
-                                                                                   .getURIEncoded (),
-                                                                      aEntity.names ().getFirst ().getName (),
-                                                                      aEntity.getCountryCode (),
-                                                                      aEntity.getGeographicalInformation (),
-                                                                      getBCIAsJson (aEntity.identifiers ()).getAsJsonString (JWS),
-                                                                      getStringAsJson (aEntity.websiteURIs ()).getAsJsonString (JWS),
-                                                                      getBCCAsJson (aEntity.contacts ()).getAsJsonString (JWS),
-                                                                      aEntity.getAdditionalInformation (),
-                                                                      aEntity.getRegistrationDate ());
-        aEM.persist (aDBBCE);
-      }
+        aEM.persist (_createDBEntity (aServiceGroup, aEntity));
     });
     if (ret.hasException ())
     {
@@ -221,6 +264,72 @@ public final class SMPBusinessCardManagerSQL extends AbstractSMPJPAEnabledManage
     return aNewBusinessCard;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPBusinessCard> createOrUpdateSMPBusinessCards (@Nonnull final Iterable <? extends ISMPBusinessCard> aBusinessCards)
+  {
+    ValueEnforcer.notNull (aBusinessCards, "BusinessCards");
+
+    final ICommonsList <ISMPBusinessCard> ret = new CommonsArrayList <> ();
+    forEachChunk (aBusinessCards, SMPJPAConfiguration.getBulkTransactionSize (), aChunk -> {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("createOrUpdateSMPBusinessCards (" + aChunk.size () + " business cards)");
+
+      final ICommonsList <SMPBusinessCard> aNewBusinessCards = new CommonsArrayList <> (aChunk.size ());
+      for (final ISMPBusinessCard aBusinessCard : aChunk)
+        aNewBusinessCards.add (new SMPBusinessCard (aBusinessCard.getServiceGroup (), aBusinessCard.getAllEntities ()));
+
+      final JPAExecutionResult <?> aResult = doInTransaction ( () -> {
+        final EntityManager aEM = getEntityManager ();
+
+        // Delete all existing entities of all participants at once
+        final ICommonsList <String> aParticipantIDs = aNewBusinessCards.getAllMapped (x -> x.getServiceGroup ()
+                                                                                            .getParticpantIdentifier ()
+                                                                                            .getURIEncoded ());
+        final int nDeleted = aEM.createQuery ("DELETE FROM DBBusinessCardEntity p WHERE p.participantId IN :ids",
+                                              DBBusinessCardEntity.class)
+                                .setParameter ("ids", aParticipantIDs)
+                                .executeUpdate ();
+        if (LOGGER.isDebugEnabled () && nDeleted > 0)
+          LOGGER.debug ("Deleted " + nDeleted + " existing DBBusinessCardEntity rows");
+
+        for (final SMPBusinessCard aBusinessCard : aNewBusinessCards)
+          for (final SMPBusinessCardEntity aEntity : aBusinessCard.getAllEntities ())
+            aEM.persist (_createDBEntity (aBusinessCard.getServiceGroup (), aEntity));
+
+        // Write everything in batches and keep the persistence context small
+        aEM.flush ();
+        aEM.clear ();
+      });
+
+      if (aResult.hasException ())
+      {
+        // Fall back to one transaction per business card to isolate the
+        // erroneous ones
+        LOGGER.warn ("Failed to write " +
+                     aChunk.size () +
+                     " business cards in one transaction - writing them one by one",
+                     aResult.getException ());
+        for (final ISMPBusinessCard aBusinessCard : aChunk)
+        {
+          final ISMPBusinessCard aNewBusinessCard = createOrUpdateSMPBusinessCard (aBusinessCard.getServiceGroup (),
+                                                                                  aBusinessCard.getAllEntities ());
+          if (aNewBusinessCard != null)
+            ret.add (aNewBusinessCard);
+        }
+      }
+      else
+      {
+        // Invoke generic callbacks
+        for (final SMPBusinessCard aNewBusinessCard : aNewBusinessCards)
+          m_aCBs.forEach (x -> x.onCreateOrUpdateSMPBusinessCard (aNewBusinessCard));
+        ret.addAll (aNewBusinessCards);
+      }
+    });
+    return ret;
+  }
+
   @Nonnull
   public EChange deleteSMPBusinessCard (@Nullable final ISMPBusinessCard aSMPBusinessCard)
   {
@@ -344,6 +453,12 @@ public final class SMPBusinessCardManagerSQL extends AbstractSMPJPAEnabledManage
     return _convert (aServiceGroup.getParticpantIdentifier (), ret.get ());
   }
 
+  @Override
+  public boolean containsSMPBusinessCardOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  {
+    return m_aExistenceCache.containsServiceGroup (aServiceGroup);
+  }
+
   @Nullable
   public ISMPBusinessCard getSMPBusinessCardOfID (@Nullable final String sID)
   {
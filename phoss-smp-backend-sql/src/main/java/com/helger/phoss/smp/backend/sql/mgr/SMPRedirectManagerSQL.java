@@ -11,6 +11,7 @@
 package com.helger.phoss.smp.backend.sql.mgr;
 
 import java.security.cert.X509Certificate;
+import java.sql.SQLException;
 import java.util.List;
 
 import javax.annotation.Nonnegative;
@@ -34,6 +35,8 @@ import com.helger.commons.state.EChange;
 import com.helger.db.jpa.JPAExecutionResult;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.phoss.smp.backend.sql.AbstractSMPJPAEnabledManager;
+import com.helger.phoss.smp.backend.sql.SMPJDBCFastReader;
+import com.helger.phoss.smp.backend.sql.SMPJPAConfiguration;
 import com.helger.phoss.smp.backend.sql.model.DBServiceMetadataRedirection;
 import com.helger.phoss.smp.backend.sql.model.DBServiceMetadataRedirectionID;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
@@ -53,6 +56,7 @@ public final class SMPRedirectManagerSQL extends AbstractSMPJPAEnabledManager im
 {
   private final ISMPServiceGroupManager m_aServiceGroupMgr;
   private final CallbackList <ISMPRedirectCallback> m_aCallbacks = new CallbackList <> ();
+  private final boolean m_bFastRead = SMPJPAConfiguration.isFastReadEnabled ();
 
   public SMPRedirectManagerSQL (@Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
@@ -280,6 +284,23 @@ public final class SMPRedirectManagerSQL extends AbstractSMPJPAEnabledManager im
     if (aDocTypeID == null)
       return null;
 
+    if (m_bFastRead)
+    {
+      try
+      {
+        return SMPJDBCFastReader.getInstance ().getRedirect (aServiceGroup, aDocTypeID);
+      }
+      catch (final SQLException ex)
+      {
+        LOGGER.warn ("Fast read of redirect '" +
+                     aServiceGroup.getParticpantIdentifier ().getURIEncoded () +
+                     "' / '" +
+                     aDocTypeID.getURIEncoded () +
+                     "' failed - falling back to JPA",
+                     ex);
+      }
+    }
+
     JPAExecutionResult <DBServiceMetadataRedirection> ret;
     ret = doInTransaction ( () -> {
       // Disable caching here
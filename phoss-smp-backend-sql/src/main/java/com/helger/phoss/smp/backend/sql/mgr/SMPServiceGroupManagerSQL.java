@@ -10,12 +10,16 @@
  */
 package com.helger.phoss.smp.backend.sql.mgr;
 
+import java.sql.SQLException;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 
 import org.eclipse.persistence.config.CacheUsage;
 
@@ -26,15 +30,21 @@ import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.equals.EqualsHelper;
 import com.helger.commons.mutable.MutableBoolean;
 import com.helger.commons.state.EChange;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.wrapper.Wrapper;
 import com.helger.db.jpa.JPAExecutionResult;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.phoss.smp.backend.sql.AbstractSMPJPAEnabledManager;
+import com.helger.phoss.smp.backend.sql.SMPJDBCFastReader;
+import com.helger.phoss.smp.backend.sql.SMPJPAConfiguration;
 import com.helger.phoss.smp.backend.sql.model.DBOwnership;
 import com.helger.phoss.smp.backend.sql.model.DBOwnershipID;
 import com.helger.phoss.smp.backend.sql.model.DBServiceGroup;
@@ -56,10 +66,26 @@ import com.helger.phoss.smp.smlhook.RegistrationHookFactory;
 public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManager implements ISMPServiceGroupManager
 {
   private final CallbackList <ISMPServiceGroupCallback> m_aCBs = new CallbackList <> ();
+  // Set by the business card manager of this backend, if it is used
+  private volatile SMPBusinessCardManagerSQL m_aBusinessCardMgr;
+  private final boolean m_bFastRead = SMPJPAConfiguration.isFastReadEnabled ();
 
   public SMPServiceGroupManagerSQL ()
   {}
 
+  /**
+   * Set the business card manager that is notified about the business cards
+   * deleted together with a service group.
+   *
+   * @param aBusinessCardMgr
+   *        The business card manager to use. May not be <code>null</code>.
+   */
+  void setBusinessCardMgr (@Nonnull final SMPBusinessCardManagerSQL aBusinessCardMgr)
+  {
+    ValueEnforcer.notNull (aBusinessCardMgr, "BusinessCardMgr");
+    m_aBusinessCardMgr = aBusinessCardMgr;
+  }
+
   @Nonnull
   @ReturnsMutableObject ("by design")
   public CallbackList <ISMPServiceGroupCallback> serviceGroupCallbacks ()
@@ -155,6 +181,144 @@ public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManage
     return aServiceGroup;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceGroup> createSMPServiceGroups (@Nonnull final Iterable <? extends ISMPServiceGroup> aServiceGroups,
+                                                                 @Nullable final BiConsumer <? super ISMPServiceGroup, ? super SMPServerException> aErrorHandler)
+  {
+    ValueEnforcer.notNull (aServiceGroups, "ServiceGroups");
+
+    final IRegistrationHook aHook = RegistrationHookFactory.getInstance ();
+    final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
+    forEachChunk (aServiceGroups, SMPJPAConfiguration.getBulkTransactionSize (), aChunk -> {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("createSMPServiceGroups (" + aChunk.size () + " service groups)");
+
+      final ICommonsMap <IParticipantIdentifier, RegistrationHookException> aSMLFailures = new CommonsHashMap <> ();
+      final ICommonsList <IParticipantIdentifier> aCreatedInSML = new CommonsArrayList <> ();
+      final ICommonsList <SMPServiceGroup> aCreated = new CommonsArrayList <> ();
+
+      // Check all preconditions before the SML is touched
+      JPAExecutionResult <?> aResult = doInTransaction ( () -> {
+        final EntityManager aEM = getEntityManager ();
+        final ICommonsSet <String> aCheckedOwners = new CommonsHashSet <> ();
+        for (final ISMPServiceGroup aServiceGroup : aChunk)
+        {
+          final String sOwnerID = aServiceGroup.getOwnerID ();
+          final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+          if (aEM.find (DBServiceGroup.class, new DBServiceGroupID (aParticipantID)) != null)
+            throw new IllegalStateException ("The service group with ID " +
+                                             aParticipantID.getURIEncoded () +
+                                             " already exists!");
+
+          if (aCheckedOwners.add (sOwnerID) && aEM.find (DBUser.class, sOwnerID) == null)
+            throw new SMPUnknownUserException (sOwnerID);
+        }
+      });
+
+      if (aResult.isSuccess ())
+      {
+        // Register all in the SML at once - outside of a DB transaction so
+        // that no DB connection and locks are held during the remote calls
+        try
+        {
+          aSMLFailures.putAll (aHook.createServiceGroups (aChunk.getAllMapped (ISMPServiceGroup::getParticpantIdentifier)));
+        }
+        catch (final RuntimeException ex)
+        {
+          // The SML state is unknown - let the single creation sort it out
+          aResult = JPAExecutionResult.createFailure (ex);
+        }
+      }
+
+      if (aResult.isSuccess ())
+      {
+        for (final ISMPServiceGroup aServiceGroup : aChunk)
+        {
+          final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+          if (!aSMLFailures.containsKey (aParticipantID))
+            aCreatedInSML.add (aParticipantID);
+        }
+
+        aResult = doInTransaction ( () -> {
+          final EntityManager aEM = getEntityManager ();
+          final ICommonsMap <String, DBUser> aUsers = new CommonsHashMap <> ();
+          for (final ISMPServiceGroup aServiceGroup : aChunk)
+          {
+            final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+            if (aSMLFailures.containsKey (aParticipantID))
+              continue;
+
+            final String sOwnerID = aServiceGroup.getOwnerID ();
+            final String sExtension = aServiceGroup.getExtensionsAsString ();
+            final DBUser aDBUser = aUsers.computeIfAbsent (sOwnerID, k -> aEM.find (DBUser.class, k));
+            final DBOwnershipID aDBOwnershipID = new DBOwnershipID (sOwnerID, aParticipantID);
+            final DBOwnership aOwnership = new DBOwnership (aDBOwnershipID, aDBUser, (DBServiceGroup) null);
+            final DBServiceGroup aDBServiceGroup = new DBServiceGroup (new DBServiceGroupID (aParticipantID),
+                                                                       sExtension,
+                                                                       aOwnership,
+                                                                       null);
+            aEM.persist (aDBServiceGroup);
+            aEM.persist (aOwnership);
+            aCreated.add (new SMPServiceGroup (sOwnerID, aParticipantID, sExtension));
+          }
+
+          // Write everything in batches and keep the persistence context small
+          aEM.flush ();
+          aEM.clear ();
+        });
+      }
+
+      if (aResult.isFailure ())
+      {
+        // Undo all creations in SML
+        aHook.undoCreateServiceGroups (aCreatedInSML)
+             .forEach ( (k, v) -> LOGGER.error ("Failed to undoCreateServiceGroup (" + k.getURIEncoded () + ")", v));
+
+        // Fall back to one transaction per service group to isolate the
+        // erroneous ones
+        LOGGER.warn ("Failed to create " +
+                     aChunk.size () +
+                     " service groups in one transaction - creating them one by one",
+                     aResult.getException ());
+        for (final ISMPServiceGroup aServiceGroup : aChunk)
+          try
+          {
+            ret.add (createSMPServiceGroup (aServiceGroup.getOwnerID (),
+                                           aServiceGroup.getParticpantIdentifier (),
+                                           aServiceGroup.getExtensionsAsString ()));
+          }
+          catch (final SMPServerException ex)
+          {
+            if (aErrorHandler != null)
+              aErrorHandler.accept (aServiceGroup, ex);
+          }
+      }
+      else
+      {
+        if (aErrorHandler != null)
+          for (final ISMPServiceGroup aServiceGroup : aChunk)
+          {
+            final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+            final RegistrationHookException aSMLFailure = aSMLFailures.get (aParticipantID);
+            if (aSMLFailure != null)
+              aErrorHandler.accept (aServiceGroup,
+                                    new SMPSMLException ("Failed to create '" +
+                                                         aParticipantID.getURIEncoded () +
+                                                         "' in SML",
+                                                         aSMLFailure));
+          }
+
+        // Callbacks outside of the transaction
+        for (final SMPServiceGroup aServiceGroup : aCreated)
+          m_aCBs.forEach (x -> x.onSMPServiceGroupCreated (aServiceGroup));
+        ret.addAll (aCreated);
+      }
+    });
+    return ret;
+  }
+
   @Nonnull
   public EChange updateSMPServiceGroup (@Nonnull final IParticipantIdentifier aParticipantID,
                                         @Nonnull @Nonempty final String sNewOwnerID,
@@ -237,6 +401,7 @@ public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManage
 
     final IRegistrationHook aHook = RegistrationHookFactory.getInstance ();
     final MutableBoolean aDeletedServiceGroupInSML = new MutableBoolean (false);
+    final Wrapper <ISMPServiceGroup> aDeletedBusinessCardOf = new Wrapper <> ();
 
     JPAExecutionResult <EChange> ret;
     ret = doInTransaction ( () -> {
@@ -254,7 +419,16 @@ public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManage
         aDeletedServiceGroupInSML.set (true);
       }
 
-      aEM.remove (aDBServiceGroup);
+      // Remember the object for the business card callbacks
+      final DBOwnership aDBOwnership = aDBServiceGroup.getOwnership ();
+      final ISMPServiceGroup aServiceGroup = new SMPServiceGroup (aDBOwnership.getId ().getUsername (),
+                                                                  aParticipantID,
+                                                                  aDBServiceGroup.getExtension ());
+      // The loaded object is deleted in bulk below
+      aEM.detach (aDBServiceGroup);
+
+      if (_deleteServiceGroupRows (aEM, aDBServiceGroupID, aParticipantID) > 0)
+        aDeletedBusinessCardOf.set (aServiceGroup);
       return EChange.CHANGED;
     });
 
@@ -293,12 +467,60 @@ public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManage
 
     if (eChange.isChanged ())
     {
+      final SMPBusinessCardManagerSQL aBusinessCardMgr = m_aBusinessCardMgr;
+      if (aDeletedBusinessCardOf.isSet () && aBusinessCardMgr != null)
+        aBusinessCardMgr.onSMPBusinessCardDeletedWithServiceGroup (aDeletedBusinessCardOf.get ());
       m_aCBs.forEach (x -> x.onSMPServiceGroupDeleted (aParticipantID));
     }
 
     return eChange;
   }
 
+  /**
+   * Delete all rows belonging to a single service group with a fixed number of
+   * bulk statements, children first. This avoids loading and removing every
+   * endpoint, process and service metadata entity one by one.
+   *
+   * @param aEM
+   *        The entity manager with an active transaction. May not be
+   *        <code>null</code>.
+   * @param aDBServiceGroupID
+   *        The ID of the service group to delete. May not be <code>null</code>.
+   * @param aParticipantID
+   *        The participant ID of the service group. May not be
+   *        <code>null</code>.
+   * @return The number of deleted business card entity rows. Always &ge; 0.
+   */
+  @Nonnegative
+  private static int _deleteServiceGroupRows (@Nonnull final EntityManager aEM,
+                                              @Nonnull final DBServiceGroupID aDBServiceGroupID,
+                                              @Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    final String sScheme = aDBServiceGroupID.getBusinessIdentifierScheme ();
+    final String sValue = aDBServiceGroupID.getBusinessIdentifier ();
+    int nRows = 0;
+    for (final String sEntity : new String [] { "DBEndpoint",
+                                                "DBProcess",
+                                                "DBServiceMetadata",
+                                                "DBServiceMetadataRedirection",
+                                                "DBOwnership",
+                                                "DBServiceGroup" })
+    {
+      nRows += aEM.createQuery ("DELETE FROM " +
+                                sEntity +
+                                " p WHERE p.id.businessIdentifierScheme = :scheme AND p.id.businessIdentifier = :value")
+                  .setParameter ("scheme", sScheme)
+                  .setParameter ("value", sValue)
+                  .executeUpdate ();
+    }
+    final int nBCRows = aEM.createQuery ("DELETE FROM DBBusinessCardEntity p WHERE p.participantId = :id")
+                           .setParameter ("id", aParticipantID.getURIEncoded ())
+                           .executeUpdate ();
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Deleted " + nRows + " service group rows and " + nBCRows + " business card rows");
+    return nBCRows;
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroups ()
@@ -335,6 +557,61 @@ public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManage
     return ret.get ();
   }
 
+  @Override
+  @Nonnull
+  public ESuccess forEachSMPServiceGroup (@Nonnull final Consumer <? super ISMPServiceGroup> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("forEachSMPServiceGroup()");
+
+    // Keyset pagination along the primary key
+    DBServiceGroupID aLastID = null;
+    while (true)
+    {
+      final DBServiceGroupID aAfterID = aLastID;
+      final JPAExecutionResult <ICommonsList <DBServiceGroup>> ret = doSelect ( () -> {
+        final EntityManager aEM = getEntityManager ();
+        final TypedQuery <DBServiceGroup> aQuery;
+        if (aAfterID == null)
+          aQuery = aEM.createQuery ("SELECT p FROM DBServiceGroup p JOIN FETCH p.ownership" +
+                                    " ORDER BY p.id.businessIdentifierScheme, p.id.businessIdentifier",
+                                    DBServiceGroup.class);
+        else
+          aQuery = aEM.createQuery ("SELECT p FROM DBServiceGroup p JOIN FETCH p.ownership" +
+                                    " WHERE p.id.businessIdentifierScheme > :scheme" +
+                                    " OR (p.id.businessIdentifierScheme = :scheme AND p.id.businessIdentifier > :value)" +
+                                    " ORDER BY p.id.businessIdentifierScheme, p.id.businessIdentifier",
+                                    DBServiceGroup.class)
+                      .setParameter ("scheme", aAfterID.getBusinessIdentifierScheme ())
+                      .setParameter ("value", aAfterID.getBusinessIdentifier ());
+        final ICommonsList <DBServiceGroup> aPage = new CommonsArrayList <> (aQuery.setMaxResults (STREAM_PAGE_SIZE)
+                                                                                   .getResultList ());
+        // Don't keep the read objects in the persistence context
+        aEM.clear ();
+        return aPage;
+      });
+      if (ret.hasException ())
+      {
+        LOGGER.error ("Failed to read the service groups after " +
+                      (aAfterID == null ? "the start" : aAfterID.getAsBusinessIdentifier ().getURIEncoded ()) +
+                      " - aborting the iteration",
+                      ret.getException ());
+        return ESuccess.FAILURE;
+      }
+
+      final ICommonsList <DBServiceGroup> aPage = ret.get ();
+      for (final DBServiceGroup aDBServiceGroup : aPage)
+        aConsumer.accept (new SMPServiceGroup (aDBServiceGroup.getOwnership ().getId ().getUsername (),
+                                               aDBServiceGroup.getId ().getAsBusinessIdentifier (),
+                                               aDBServiceGroup.getExtension ()));
+
+      if (aPage.size () < STREAM_PAGE_SIZE)
+        return ESuccess.SUCCESS;
+      aLastID = aPage.getLast ().getId ();
+    }
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroupsOfOwner (@Nonnull final String sOwnerID)
@@ -396,6 +673,21 @@ public final class SMPServiceGroupManagerSQL extends AbstractSMPJPAEnabledManage
     if (aParticipantID == null)
       return null;
 
+    if (m_bFastRead)
+    {
+      try
+      {
+        return SMPJDBCFastReader.getInstance ().getServiceGroupOfID (aParticipantID);
+      }
+      catch (final SQLException ex)
+      {
+        LOGGER.warn ("Fast read of service group '" +
+                     aParticipantID.getURIEncoded () +
+                     "' failed - falling back to JPA",
+                     ex);
+      }
+    }
+
     JPAExecutionResult <SMPServiceGroup> ret;
     ret = doSelect ( () -> {
       final DBServiceGroup aDBServiceGroup = getEntityManager ().find (DBServiceGroup.class,
@@ -10,14 +10,19 @@
  */
 package com.helger.phoss.smp.backend.sql.mgr;
 
+import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 
+import org.eclipse.persistence.annotations.BatchFetchType;
 import org.eclipse.persistence.config.CacheUsage;
+import org.eclipse.persistence.config.QueryHints;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
@@ -28,7 +33,6 @@ import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
-import com.helger.commons.mutable.MutableBoolean;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.wrapper.Wrapper;
@@ -37,6 +41,8 @@ import com.helger.peppol.smp.ISMPTransportProfile;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.phoss.smp.backend.sql.AbstractSMPJPAEnabledManager;
+import com.helger.phoss.smp.backend.sql.SMPJDBCFastReader;
+import com.helger.phoss.smp.backend.sql.SMPJPAConfiguration;
 import com.helger.phoss.smp.backend.sql.model.DBEndpoint;
 import com.helger.phoss.smp.backend.sql.model.DBEndpointID;
 import com.helger.phoss.smp.backend.sql.model.DBProcess;
@@ -48,6 +54,7 @@ import com.helger.phoss.smp.backend.sql.model.DBServiceMetadataID;
 import com.helger.phoss.smp.backend.sql.model.DBServiceMetadataRedirection;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
@@ -67,6 +74,7 @@ public final class SMPServiceInformationManagerSQL extends AbstractSMPJPAEnabled
 {
   private final ISMPServiceGroupManager m_aServiceGroupMgr;
   private final CallbackList <ISMPServiceInformationCallback> m_aCBs = new CallbackList <> ();
+  private final boolean m_bFastRead = SMPJPAConfiguration.isFastReadEnabled ();
 
   public SMPServiceInformationManagerSQL (@Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
@@ -214,56 +222,121 @@ public final class SMPServiceInformationManagerSQL extends AbstractSMPJPAEnabled
     aDBMetadata.setExtension (aServiceInfo.getExtensionsAsString ());
   }
 
+  /**
+   * Create or update the provided service information in the current
+   * transaction.
+   *
+   * @param aEM
+   *        The entity manager to use. May not be <code>null</code>.
+   * @param aSMPServiceInformation
+   *        The service information to write. May not be <code>null</code>.
+   * @return <code>true</code> if an existing service information was updated,
+   *         <code>false</code> if a new one was created.
+   */
+  private static boolean _merge (@Nonnull final EntityManager aEM,
+                                 @Nonnull final ISMPServiceInformation aSMPServiceInformation)
+  {
+    final DBServiceMetadataID aDBMetadataID = new DBServiceMetadataID (aSMPServiceInformation.getServiceGroup ()
+                                                                                             .getParticpantIdentifier (),
+                                                                       aSMPServiceInformation.getDocumentTypeIdentifier ());
+    DBServiceMetadata aDBMetadata = aEM.find (DBServiceMetadata.class, aDBMetadataID);
+    if (aDBMetadata != null)
+    {
+      // Edit an existing one
+      _update (aEM, aDBMetadata, aSMPServiceInformation);
+      aEM.merge (aDBMetadata);
+      return true;
+    }
+
+    // Create a new one
+    final DBServiceGroupID aDBServiceGroupID = new DBServiceGroupID (aSMPServiceInformation.getServiceGroup ()
+                                                                                           .getParticpantIdentifier ());
+    final DBServiceGroup aDBServiceGroup = aEM.find (DBServiceGroup.class, aDBServiceGroupID);
+    if (aDBServiceGroup == null)
+      throw new IllegalStateException ("Failed to resolve service group for " + aSMPServiceInformation);
+
+    aDBMetadata = new DBServiceMetadata (aDBMetadataID, aDBServiceGroup, aSMPServiceInformation.getExtensionsAsString ());
+    _update (aEM, aDBMetadata, aSMPServiceInformation);
+    aEM.persist (aDBMetadata);
+    return false;
+  }
+
+  private void _invokeMergeCallbacks (@Nonnull final ISMPServiceInformation aSMPServiceInformation,
+                                      final boolean bUpdated)
+  {
+    if (bUpdated)
+      m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSMPServiceInformation));
+    else
+      m_aCBs.forEach (x -> x.onSMPServiceInformationCreated (aSMPServiceInformation));
+  }
+
   @Nonnull
   public ESuccess mergeSMPServiceInformation (@Nonnull final ISMPServiceInformation aSMPServiceInformation)
   {
     ValueEnforcer.notNull (aSMPServiceInformation, "ServiceInformation");
 
-    final MutableBoolean aUpdated = new MutableBoolean (false);
-    JPAExecutionResult <DBServiceMetadata> ret;
-    ret = doInTransaction ( () -> {
-      final EntityManager aEM = getEntityManager ();
-      final DBServiceMetadataID aDBMetadataID = new DBServiceMetadataID (aSMPServiceInformation.getServiceGroup ()
-                                                                                               .getParticpantIdentifier (),
-                                                                         aSMPServiceInformation.getDocumentTypeIdentifier ());
-      DBServiceMetadata aDBMetadata = aEM.find (DBServiceMetadata.class, aDBMetadataID);
-      aUpdated.set (aDBMetadata != null);
-      if (aDBMetadata != null)
-      {
-        // Edit an existing one
-        _update (aEM, aDBMetadata, aSMPServiceInformation);
-        aEM.merge (aDBMetadata);
-      }
-      else
-      {
-        // Create a new one
-        final DBServiceGroupID aDBServiceGroupID = new DBServiceGroupID (aSMPServiceInformation.getServiceGroup ()
-                                                                                               .getParticpantIdentifier ());
-        final DBServiceGroup aDBServiceGroup = aEM.find (DBServiceGroup.class, aDBServiceGroupID);
-        if (aDBServiceGroup == null)
-          throw new IllegalStateException ("Failed to resolve service group for " + aSMPServiceInformation);
-
-        aDBMetadata = new DBServiceMetadata (aDBMetadataID,
-                                             aDBServiceGroup,
-                                             aSMPServiceInformation.getExtensionsAsString ());
-        _update (aEM, aDBMetadata, aSMPServiceInformation);
-        aEM.persist (aDBMetadata);
-      }
-      return aDBMetadata;
-    });
+    JPAExecutionResult <Boolean> ret;
+    ret = doInTransaction ( () -> Boolean.valueOf (_merge (getEntityManager (), aSMPServiceInformation)));
 
     if (ret.hasException ())
       return ESuccess.FAILURE;
 
     // Callback outside of transaction
-    if (aUpdated.booleanValue ())
-      m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSMPServiceInformation));
-    else
-      m_aCBs.forEach (x -> x.onSMPServiceInformationCreated (aSMPServiceInformation));
+    _invokeMergeCallbacks (aSMPServiceInformation, ret.get ().booleanValue ());
 
     return ESuccess.SUCCESS;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceInformation> mergeSMPServiceInformations (@Nonnull final Iterable <? extends ISMPServiceInformation> aServiceInformations)
+  {
+    ValueEnforcer.notNull (aServiceInformations, "ServiceInformations");
+
+    final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
+    forEachChunk (aServiceInformations, SMPJPAConfiguration.getBulkTransactionSize (), aChunk -> {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("mergeSMPServiceInformations (" + aChunk.size () + " service informations)");
+
+      final JPAExecutionResult <boolean []> aResult = doInTransaction ( () -> {
+        final EntityManager aEM = getEntityManager ();
+        final boolean [] aUpdated = new boolean [aChunk.size ()];
+        int nIndex = 0;
+        for (final ISMPServiceInformation aSMPServiceInformation : aChunk)
+          aUpdated[nIndex++] = _merge (aEM, aSMPServiceInformation);
+
+        // Write everything in batches and keep the persistence context small
+        aEM.flush ();
+        aEM.clear ();
+        return aUpdated;
+      });
+
+      if (aResult.hasException ())
+      {
+        // Fall back to one transaction per object to isolate the erroneous
+        // ones
+        LOGGER.warn ("Failed to merge " +
+                     aChunk.size () +
+                     " service informations in one transaction - merging them one by one",
+                     aResult.getException ());
+        for (final ISMPServiceInformation aSMPServiceInformation : aChunk)
+          if (mergeSMPServiceInformation (aSMPServiceInformation).isSuccess ())
+            ret.add (aSMPServiceInformation);
+      }
+      else
+      {
+        // Callbacks outside of transaction
+        final boolean [] aUpdated = aResult.get ();
+        int nIndex = 0;
+        for (final ISMPServiceInformation aSMPServiceInformation : aChunk)
+          _invokeMergeCallbacks (aSMPServiceInformation, aUpdated[nIndex++]);
+        ret.addAll (aChunk);
+      }
+    });
+    return ret;
+  }
+
   @Nullable
   public ISMPServiceInformation findServiceInformation (@Nullable final ISMPServiceGroup aServiceGroup,
                                                         @Nullable final IDocumentTypeIdentifier aDocTypeID,
@@ -395,6 +468,14 @@ public final class SMPServiceInformationManagerSQL extends AbstractSMPJPAEnabled
 
   @Nonnull
   private SMPServiceInformation _convert (@Nonnull final DBServiceMetadata aDBMetadata)
+  {
+    return _convert (aDBMetadata,
+                     m_aServiceGroupMgr.getSMPServiceGroupOfID (aDBMetadata.getId ().getAsBusinessIdentifier ()));
+  }
+
+  @Nonnull
+  private static SMPServiceInformation _convert (@Nonnull final DBServiceMetadata aDBMetadata,
+                                                 @Nonnull final ISMPServiceGroup aServiceGroup)
   {
     final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
     for (final DBProcess aDBProcess : aDBMetadata.getProcesses ())
@@ -420,8 +501,7 @@ public final class SMPServiceInformationManagerSQL extends AbstractSMPJPAEnabled
                                                   aDBProcess.getExtension ());
       aProcesses.add (aProcess);
     }
-    return new SMPServiceInformation (m_aServiceGroupMgr.getSMPServiceGroupOfID (aDBMetadata.getId ()
-                                                                                            .getAsBusinessIdentifier ()),
+    return new SMPServiceInformation (aServiceGroup,
                                       aDBMetadata.getId ().getAsDocumentTypeIdentifier (),
                                       aProcesses,
                                       aDBMetadata.getExtension ());
@@ -444,6 +524,84 @@ public final class SMPServiceInformationManagerSQL extends AbstractSMPJPAEnabled
     return aServiceInformations;
   }
 
+  @Override
+  @Nonnull
+  public ESuccess forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+
+    // Keyset pagination along the primary key
+    DBServiceMetadataID aLastID = null;
+    while (true)
+    {
+      final DBServiceMetadataID aAfterID = aLastID;
+      final JPAExecutionResult <ICommonsList <ISMPServiceInformation>> ret = doSelect ( () -> {
+        final EntityManager aEM = getEntityManager ();
+        final String sOrderBy = " ORDER BY p.id.businessIdentifierScheme, p.id.businessIdentifier," +
+                                " p.id.documentTypeIdentifierScheme, p.id.documentTypeIdentifier";
+        final TypedQuery <DBServiceMetadata> aQuery;
+        if (aAfterID == null)
+          aQuery = aEM.createQuery ("SELECT p FROM DBServiceMetadata p" + sOrderBy, DBServiceMetadata.class);
+        else
+          aQuery = aEM.createQuery ("SELECT p FROM DBServiceMetadata p WHERE" +
+                                    " p.id.businessIdentifierScheme > :bis" +
+                                    " OR (p.id.businessIdentifierScheme = :bis AND p.id.businessIdentifier > :bi)" +
+                                    " OR (p.id.businessIdentifierScheme = :bis AND p.id.businessIdentifier = :bi" +
+                                    " AND p.id.documentTypeIdentifierScheme > :dtis)" +
+                                    " OR (p.id.businessIdentifierScheme = :bis AND p.id.businessIdentifier = :bi" +
+                                    " AND p.id.documentTypeIdentifierScheme = :dtis AND p.id.documentTypeIdentifier > :dti)" +
+                                    sOrderBy,
+                                    DBServiceMetadata.class)
+                      .setParameter ("bis", aAfterID.getBusinessIdentifierScheme ())
+                      .setParameter ("bi", aAfterID.getBusinessIdentifier ())
+                      .setParameter ("dtis", aAfterID.getDocumentTypeIdentifierScheme ())
+                      .setParameter ("dti", aAfterID.getDocumentTypeIdentifier ());
+        // Load the service groups with the page and the processes and endpoints
+        // in one query each, instead of one query per service information
+        aQuery.setHint (QueryHints.FETCH, "p.serviceGroup.ownership")
+              .setHint (QueryHints.BATCH_TYPE, BatchFetchType.IN)
+              .setHint (QueryHints.BATCH, "p.processes")
+              .setHint (QueryHints.BATCH, "p.processes.endpoints")
+              .setMaxResults (STREAM_PAGE_SIZE);
+
+        final ICommonsList <ISMPServiceInformation> aPage = new CommonsArrayList <> ();
+        for (final DBServiceMetadata aDBMetadata : aQuery.getResultList ())
+        {
+          final DBServiceGroup aDBServiceGroup = aDBMetadata.getServiceGroup ();
+          final SMPServiceGroup aServiceGroup = new SMPServiceGroup (aDBServiceGroup.getOwnership ()
+                                                                                    .getId ()
+                                                                                    .getUsername (),
+                                                                     aDBServiceGroup.getId ().getAsBusinessIdentifier (),
+                                                                     aDBServiceGroup.getExtension ());
+          aPage.add (_convert (aDBMetadata, aServiceGroup));
+        }
+        // Don't keep the read objects in the persistence context
+        aEM.clear ();
+        return aPage;
+      });
+      if (ret.hasException ())
+      {
+        LOGGER.error ("Failed to read the service information after " +
+                      (aAfterID == null ? "the start"
+                                        : aAfterID.getAsBusinessIdentifier ().getURIEncoded () +
+                                          " and " +
+                                          aAfterID.getAsDocumentTypeIdentifier ().getURIEncoded ()) +
+                      " - aborting the iteration",
+                      ret.getException ());
+        return ESuccess.FAILURE;
+      }
+
+      final ICommonsList <ISMPServiceInformation> aPage = ret.get ();
+      aPage.forEach (aConsumer);
+
+      if (aPage.size () < STREAM_PAGE_SIZE)
+        return ESuccess.SUCCESS;
+      final ISMPServiceInformation aLast = aPage.getLast ();
+      aLastID = new DBServiceMetadataID (aLast.getServiceGroup ().getParticpantIdentifier (),
+                                         aLast.getDocumentTypeIdentifier ());
+    }
+  }
+
   @Nonnegative
   public long getSMPServiceInformationCount ()
   {
@@ -523,6 +681,23 @@ public final class SMPServiceInformationManagerSQL extends AbstractSMPJPAEnabled
   public ISMPServiceInformation getSMPServiceInformationOfServiceGroupAndDocumentType (@Nullable final ISMPServiceGroup aServiceGroup,
                                                                                        @Nullable final IDocumentTypeIdentifier aDocTypeID)
   {
+    if (m_bFastRead && aServiceGroup != null && aDocTypeID != null)
+    {
+      try
+      {
+        return SMPJDBCFastReader.getInstance ().getServiceInformation (aServiceGroup, aDocTypeID);
+      }
+      catch (final SQLException ex)
+      {
+        LOGGER.warn ("Fast read of service information '" +
+                     aServiceGroup.getParticpantIdentifier ().getURIEncoded () +
+                     "' / '" +
+                     aDocTypeID.getURIEncoded () +
+                     "' failed - falling back to JPA",
+                     ex);
+      }
+    }
+
     final DBServiceMetadata aDBMetadata = _getSMPServiceInformationOfServiceGroupAndDocumentType (aServiceGroup,
                                                                                                   aDocTypeID);
     if (aDBMetadata == null)
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * A single versioned step of the SQL schema migration.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public interface ISMPSchemaMigration
+{
+  /**
+   * @return The unique version of this migration. Migrations are applied in
+   *         ascending version order. Must be &gt; 0.
+   */
+  @Nonnegative
+  int getVersion ();
+
+  /**
+   * @return A human readable description of this migration. May neither be
+   *         <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  String getDescription ();
+
+  /**
+   * Apply this migration. Each implementation should be robust enough to be
+   * applied on a schema that already contains parts of the changes (e.g.
+   * created by the EclipseLink DDL generation).
+   *
+   * @param aConnection
+   *        The JDBC connection to use. Never <code>null</code>.
+   * @throws SQLException
+   *         On database error
+   */
+  void migrate (@Nonnull Connection aConnection) throws SQLException;
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.PresentForCodeCoverage;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.state.EChange;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * Vendor independent helper methods for schema migrations, based on the JDBC
+ * {@link DatabaseMetaData}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPSchemaHelper
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPSchemaHelper.class);
+
+  @PresentForCodeCoverage
+  private static final SMPSchemaHelper s_aInstance = new SMPSchemaHelper ();
+
+  private SMPSchemaHelper ()
+  {}
+
+  /**
+   * Resolve the name of a table as stored in the database. Depending on the
+   * database, unquoted table names are stored in upper case, lower case or as
+   * created.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param sTableName
+   *        The table name to search. May neither be <code>null</code> nor
+   *        empty.
+   * @return <code>null</code> if no such table exists.
+   * @throws SQLException
+   *         On database error
+   */
+  @Nullable
+  public static String getExistingTableName (@Nonnull final Connection aConnection,
+                                             @Nonnull @Nonempty final String sTableName) throws SQLException
+  {
+    ValueEnforcer.notNull (aConnection, "Connection");
+    ValueEnforcer.notEmpty (sTableName, "TableName");
+
+    final DatabaseMetaData aMetaData = aConnection.getMetaData ();
+    try (final ResultSet aRS = aMetaData.getTables (aConnection.getCatalog (), null, "%", new String [] { "TABLE" }))
+    {
+      while (aRS.next ())
+      {
+        final String sName = aRS.getString ("TABLE_NAME");
+        if (sTableName.equalsIgnoreCase (sName))
+          return sName;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check if the provided table exists.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param sTableName
+   *        The table name to search. May neither be <code>null</code> nor
+   *        empty.
+   * @return <code>true</code> if the table exists, <code>false</code> if not.
+   * @throws SQLException
+   *         On database error
+   */
+  public static boolean existsTable (@Nonnull final Connection aConnection,
+                                     @Nonnull @Nonempty final String sTableName) throws SQLException
+  {
+    return getExistingTableName (aConnection, sTableName) != null;
+  }
+
+  /**
+   * Check if an index (including the primary key) exists, that starts with the
+   * provided columns in the provided order. Such an index can be used for
+   * queries on these columns.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param sTableName
+   *        The table name. May neither be <code>null</code> nor empty.
+   * @param aColumnNames
+   *        The column names the index must start with. May neither be
+   *        <code>null</code> nor empty.
+   * @return <code>true</code> if such an index exists.
+   * @throws SQLException
+   *         On database error
+   */
+  public static boolean existsIndexStartingWith (@Nonnull final Connection aConnection,
+                                                 @Nonnull @Nonempty final String sTableName,
+                                                 @Nonnull @Nonempty final String... aColumnNames) throws SQLException
+  {
+    ValueEnforcer.notEmptyNoNullValue (aColumnNames, "ColumnNames");
+
+    final String sRealTableName = getExistingTableName (aConnection, sTableName);
+    if (sRealTableName == null)
+      return false;
+
+    // Index name to ordered column names
+    final ICommonsMap <String, ICommonsSortedMap <Integer, String>> aIndexes = new CommonsHashMap <> ();
+    final DatabaseMetaData aMetaData = aConnection.getMetaData ();
+    try (final ResultSet aRS = aMetaData.getIndexInfo (aConnection.getCatalog (), null, sRealTableName, false, true))
+    {
+      while (aRS.next ())
+      {
+        final String sIndexName = aRS.getString ("INDEX_NAME");
+        final String sColumnName = aRS.getString ("COLUMN_NAME");
+        if (sIndexName != null && sColumnName != null)
+          aIndexes.computeIfAbsent (sIndexName, k -> new CommonsTreeMap <> ())
+                  .put (Integer.valueOf (aRS.getShort ("ORDINAL_POSITION")), sColumnName);
+      }
+    }
+
+    for (final ICommonsSortedMap <Integer, String> aIndexColumns : aIndexes.values ())
+    {
+      final ICommonsList <String> aColumns = new CommonsArrayList <> (aIndexColumns.values ());
+      if (aColumns.size () >= aColumnNames.length)
+      {
+        boolean bMatch = true;
+        for (int i = 0; i < aColumnNames.length; ++i)
+          if (!aColumnNames[i].equalsIgnoreCase (aColumns.get (i)))
+          {
+            bMatch = false;
+            break;
+          }
+        if (bMatch)
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Create an index on the provided columns, if no index starting with these
+   * columns is already present.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param sIndexName
+   *        The name of the index to create. May neither be <code>null</code>
+   *        nor empty.
+   * @param sTableName
+   *        The table name. May neither be <code>null</code> nor empty.
+   * @param aColumnNames
+   *        The column names of the index. May neither be <code>null</code> nor
+   *        empty.
+   * @return {@link EChange#CHANGED} if the index was created.
+   * @throws SQLException
+   *         On database error
+   */
+  @Nonnull
+  public static EChange createIndexIfMissing (@Nonnull final Connection aConnection,
+                                              @Nonnull @Nonempty final String sIndexName,
+                                              @Nonnull @Nonempty final String sTableName,
+                                              @Nonnull @Nonempty final String... aColumnNames) throws SQLException
+  {
+    ValueEnforcer.notEmpty (sIndexName, "IndexName");
+
+    if (existsIndexStartingWith (aConnection, sTableName, aColumnNames))
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("An index on " +
+                      sTableName +
+                      " (" +
+                      StringHelper.getImploded (", ", aColumnNames) +
+                      ") is already present");
+      return EChange.UNCHANGED;
+    }
+
+    final String sSQL = "CREATE INDEX " +
+                        sIndexName +
+                        " ON " +
+                        sTableName +
+                        " (" +
+                        StringHelper.getImploded (", ", aColumnNames) +
+                        ")";
+    LOGGER.info ("Executing '" + sSQL + "'");
+    try (final Statement aStmt = aConnection.createStatement ())
+    {
+      aStmt.execute (sSQL);
+    }
+    return EChange.CHANGED;
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.helger.commons.annotation.Nonempty;
+
+/**
+ * Schema version 1: create the secondary indexes needed by the lookups that do
+ * not use the full primary key. The index names are identical to the ones
+ * declared on the JPA entities.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+final class SMPSchemaMigrationSecondaryIndexes implements ISMPSchemaMigration
+{
+  @Nonnegative
+  public int getVersion ()
+  {
+    return 1;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getDescription ()
+  {
+    return "Secondary indexes for business card, ownership, service metadata, redirect and process lookups";
+  }
+
+  public void migrate (@Nonnull final Connection aConnection) throws SQLException
+  {
+    // Business card read and delete by participant
+    SMPSchemaHelper.createIndexIfMissing (aConnection, "idx_smp_bce_pid", "smp_bce", "pid");
+    // Service groups of a user
+    SMPSchemaHelper.createIndexIfMissing (aConnection, "idx_smp_ownership_username", "smp_ownership", "username");
+    // Service information and redirects of a service group
+    SMPSchemaHelper.createIndexIfMissing (aConnection,
+                                          "idx_smp_sm_business",
+                                          "smp_service_metadata",
+                                          "businessIdentifierScheme",
+                                          "businessIdentifier");
+    SMPSchemaHelper.createIndexIfMissing (aConnection,
+                                          "idx_smp_smr_business",
+                                          "smp_service_metadata_redirection",
+                                          "businessIdentifierScheme",
+                                          "businessIdentifier");
+    // Processes of a service information
+    SMPSchemaHelper.createIndexIfMissing (aConnection,
+                                          "idx_smp_process_sm",
+                                          "smp_process",
+                                          "businessIdentifierScheme",
+                                          "businessIdentifier",
+                                          "documentIdentifierScheme",
+                                          "documentIdentifier");
+  }
+}
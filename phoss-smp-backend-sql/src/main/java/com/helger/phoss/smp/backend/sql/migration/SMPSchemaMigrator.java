@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Comparator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.PresentForCodeCoverage;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.state.ESuccess;
+
+/**
+ * Versioned schema migration for the SQL backend. The applied versions are
+ * stored in the table {@value #TABLE_SCHEMA_VERSION}. All migrations that are
+ * not yet applied are executed in ascending version order, each one in its own
+ * transaction (as far as the database supports transactional DDL).<br>
+ * The base tables must exist before migrations can be applied - they are
+ * either created by the EclipseLink DDL generation or manually.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPSchemaMigrator
+{
+  public static final String TABLE_SCHEMA_VERSION = "smp_schema_version";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPSchemaMigrator.class);
+
+  /** The table that must exist, before any migration is applied */
+  private static final String BASE_TABLE = "smp_service_group";
+
+  private static final ICommonsList <ISMPSchemaMigration> MIGRATIONS = new CommonsArrayList <> ();
+  static
+  {
+    MIGRATIONS.add (new SMPSchemaMigrationSecondaryIndexes ());
+    MIGRATIONS.sort (Comparator.comparingInt (ISMPSchemaMigration::getVersion));
+  }
+
+  @PresentForCodeCoverage
+  private static final SMPSchemaMigrator s_aInstance = new SMPSchemaMigrator ();
+
+  private SMPSchemaMigrator ()
+  {}
+
+  /**
+   * @return All known migrations in ascending version order. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <ISMPSchemaMigration> getAllMigrations ()
+  {
+    return MIGRATIONS.getClone ();
+  }
+
+  /**
+   * @return The latest schema version known to this code.
+   */
+  public static int getLatestVersion ()
+  {
+    return MIGRATIONS.isEmpty () ? 0 : MIGRATIONS.getLast ().getVersion ();
+  }
+
+  private static void _ensureVersionTable (@Nonnull final Connection aConnection) throws SQLException
+  {
+    if (!SMPSchemaHelper.existsTable (aConnection, TABLE_SCHEMA_VERSION))
+    {
+      LOGGER.info ("Creating schema version table '" + TABLE_SCHEMA_VERSION + "'");
+      try (final Statement aStmt = aConnection.createStatement ())
+      {
+        aStmt.execute ("CREATE TABLE " +
+                       TABLE_SCHEMA_VERSION +
+                       " (version INTEGER NOT NULL, description VARCHAR(256) NOT NULL, installed TIMESTAMP NOT NULL, PRIMARY KEY (version))");
+      }
+    }
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  private static ICommonsSet <Integer> _getAppliedVersions (@Nonnull final Connection aConnection) throws SQLException
+  {
+    final ICommonsSet <Integer> ret = new CommonsHashSet <> ();
+    try (final Statement aStmt = aConnection.createStatement ();
+         final ResultSet aRS = aStmt.executeQuery ("SELECT version FROM " + TABLE_SCHEMA_VERSION))
+    {
+      while (aRS.next ())
+        ret.add (Integer.valueOf (aRS.getInt (1)));
+    }
+    return ret;
+  }
+
+  /**
+   * Apply all pending migrations on the provided connection. The auto commit
+   * state of the connection is restored afterwards.
+   *
+   * @param aConnection
+   *        The JDBC connection to use. May not be <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the schema is up to date,
+   *         {@link ESuccess#FAILURE} if the base tables are missing or a
+   *         migration failed.
+   * @throws SQLException
+   *         On unexpected database error
+   */
+  @Nonnull
+  public static ESuccess migrate (@Nonnull final Connection aConnection) throws SQLException
+  {
+    ValueEnforcer.notNull (aConnection, "Connection");
+
+    if (!SMPSchemaHelper.existsTable (aConnection, BASE_TABLE))
+    {
+      LOGGER.warn ("The SMP database tables are not yet present - schema migration is skipped");
+      return ESuccess.FAILURE;
+    }
+
+    _ensureVersionTable (aConnection);
+    final ICommonsSet <Integer> aApplied = _getAppliedVersions (aConnection);
+
+    final boolean bOldAutoCommit = aConnection.getAutoCommit ();
+    aConnection.setAutoCommit (false);
+    try
+    {
+      for (final ISMPSchemaMigration aMigration : MIGRATIONS)
+        if (!aApplied.contains (Integer.valueOf (aMigration.getVersion ())))
+        {
+          LOGGER.info ("Applying SQL schema migration " +
+                       aMigration.getVersion () +
+                       ": " +
+                       aMigration.getDescription ());
+          try
+          {
+            aMigration.migrate (aConnection);
+            try (final PreparedStatement aPS = aConnection.prepareStatement ("INSERT INTO " +
+                                                                             TABLE_SCHEMA_VERSION +
+                                                                             " (version, description, installed) VALUES (?, ?, ?)"))
+            {
+              aPS.setInt (1, aMigration.getVersion ());
+              aPS.setString (2, aMigration.getDescription ());
+              aPS.setTimestamp (3, Timestamp.valueOf (PDTFactory.getCurrentLocalDateTime ()));
+              aPS.executeUpdate ();
+            }
+            aConnection.commit ();
+          }
+          catch (final SQLException ex)
+          {
+            aConnection.rollback ();
+            LOGGER.error ("Failed to apply SQL schema migration " + aMigration.getVersion (), ex);
+            return ESuccess.FAILURE;
+          }
+        }
+    }
+    finally
+    {
+      aConnection.setAutoCommit (bOldAutoCommit);
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("SQL schema is up to date with version " + getLatestVersion ());
+    return ESuccess.SUCCESS;
+  }
+}
@@ -17,6 +17,7 @@ import javax.annotation.Nonnull;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
@@ -35,7 +36,7 @@ import com.helger.phoss.smp.domain.SMPMetaManager;
  * @author Philip Helger
  */
 @Entity
-@Table (name = "smp_bce")
+@Table (name = "smp_bce", indexes = @Index (name = "idx_smp_bce_pid", columnList = "pid"))
 @Converter (name = "localdate", converterClass = JPALocalDateConverter.class)
 public class DBBusinessCardEntity implements Serializable
 {
@@ -15,6 +15,7 @@ import java.io.Serializable;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinColumns;
 import javax.persistence.ManyToOne;
@@ -30,7 +31,7 @@ import com.helger.db.jpa.annotation.UsedOnlyByJPA;
  * @author PEPPOL.AT, BRZ, Philip Helger
  */
 @Entity
-@Table (name = "smp_ownership")
+@Table (name = "smp_ownership", indexes = @Index (name = "idx_smp_ownership_username", columnList = "username"))
 public class DBOwnership implements Serializable
 {
   private DBOwnershipID m_aID;
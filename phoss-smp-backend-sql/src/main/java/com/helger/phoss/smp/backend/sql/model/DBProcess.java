@@ -20,6 +20,7 @@ import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinColumns;
 import javax.persistence.Lob;
@@ -41,7 +42,9 @@ import com.helger.peppol.smp.SMPExtensionConverter;
  * @author PEPPOL.AT, BRZ, Philip Helger
  */
 @Entity
-@Table (name = "smp_process")
+@Table (name = "smp_process",
+        indexes = @Index (name = "idx_smp_process_sm",
+                          columnList = "businessIdentifierScheme,businessIdentifier,documentIdentifierScheme,documentIdentifier"))
 public class DBProcess implements Serializable
 {
   private DBProcessID m_aID;
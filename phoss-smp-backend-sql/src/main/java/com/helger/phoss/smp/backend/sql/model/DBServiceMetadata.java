@@ -20,6 +20,7 @@ import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinColumns;
 import javax.persistence.Lob;
@@ -38,7 +39,8 @@ import com.helger.db.jpa.annotation.UsedOnlyByJPA;
  * @author PEPPOL.AT, BRZ, Philip Helger
  */
 @Entity
-@Table (name = "smp_service_metadata")
+@Table (name = "smp_service_metadata",
+        indexes = @Index (name = "idx_smp_sm_business", columnList = "businessIdentifierScheme,businessIdentifier"))
 public class DBServiceMetadata implements Serializable
 {
   private DBServiceMetadataID m_aID;
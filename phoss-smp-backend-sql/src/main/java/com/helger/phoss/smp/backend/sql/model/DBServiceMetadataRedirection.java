@@ -16,6 +16,7 @@ import javax.annotation.Nullable;
 import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 
@@ -27,7 +28,8 @@ import com.helger.db.jpa.annotation.UsedOnlyByJPA;
  * @author PEPPOL.AT, BRZ, Philip Helger
  */
 @Entity
-@Table (name = "smp_service_metadata_redirection")
+@Table (name = "smp_service_metadata_redirection",
+        indexes = @Index (name = "idx_smp_smr_business", columnList = "businessIdentifierScheme,businessIdentifier"))
 public class DBServiceMetadataRedirection implements Serializable
 {
   private DBServiceMetadataRedirectionID m_aID;
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.timing.StopWatch;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.SimpleIdentifierFactory;
+import com.helger.phoss.smp.backend.sql.mgr.SMPRedirectManagerSQL;
+import com.helger.phoss.smp.backend.sql.mgr.SMPServiceGroupManagerSQL;
+import com.helger.phoss.smp.backend.sql.mgr.SMPServiceInformationManagerSQL;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.scope.mgr.ScopeManager;
+
+/**
+ * Compare the JPA read path with the plain JDBC read path of
+ * {@link SMPJDBCFastReader}. Run this as an application against a filled
+ * database (configured in <code>smp-server.properties</code> with
+ * <code>jdbc.fast-read.enabled=false</code>), passing an existing participant
+ * ID and document type ID in URI encoding as arguments.
+ *
+ * @author Philip Helger
+ */
+public final class MainBenchmarkJDBCFastReader
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (MainBenchmarkJDBCFastReader.class);
+  private static final int WARMUP = 1_000;
+  private static final int RUNS = 10_000;
+
+  @FunctionalInterface
+  private interface IRunnable
+  {
+    void run () throws SQLException;
+  }
+
+  private static void _run (final String sName, final IRunnable aRunnable) throws SQLException
+  {
+    for (int i = 0; i < WARMUP; ++i)
+      aRunnable.run ();
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < RUNS; ++i)
+      aRunnable.run ();
+    final long nNanos = aSW.stopAndGetNanos ();
+    LOGGER.info (sName + ": " + RUNS + " runs in " + (nNanos / 1_000_000L) + "ms = " + (nNanos / RUNS / 1000L) + "µs/run");
+  }
+
+  public static void main (final String [] args) throws SQLException
+  {
+    if (args.length < 2)
+      throw new IllegalArgumentException ("Usage: <participantID> <documentTypeID>");
+
+    final IParticipantIdentifier aPID = SimpleIdentifierFactory.INSTANCE.parseParticipantIdentifier (args[0]);
+    final IDocumentTypeIdentifier aDTID = SimpleIdentifierFactory.INSTANCE.parseDocumentTypeIdentifier (args[1]);
+    if (aPID == null || aDTID == null)
+      throw new IllegalArgumentException ("Failed to parse the provided identifiers");
+
+    ScopeManager.onGlobalBegin ("benchmark");
+    try
+    {
+      final SMPServiceGroupManagerSQL aSGMgr = new SMPServiceGroupManagerSQL ();
+      final SMPRedirectManagerSQL aRedirectMgr = new SMPRedirectManagerSQL (aSGMgr);
+      final SMPServiceInformationManagerSQL aSIMgr = new SMPServiceInformationManagerSQL (aSGMgr);
+      final SMPJDBCFastReader aFastReader = SMPJDBCFastReader.getInstance ();
+
+      ScopeManager.onRequestBegin ("benchmark", "request");
+      try
+      {
+        final ISMPServiceGroup aSG = aSGMgr.getSMPServiceGroupOfID (aPID);
+        if (aSG == null)
+          throw new IllegalArgumentException ("No such service group " + aPID.getURIEncoded ());
+
+        _run ("JPA  service group", () -> aSGMgr.getSMPServiceGroupOfID (aPID));
+        _run ("JDBC service group", () -> aFastReader.getServiceGroupOfID (aPID));
+        _run ("JPA  redirect", () -> aRedirectMgr.getSMPRedirectOfServiceGroupAndDocumentType (aSG, aDTID));
+        _run ("JDBC redirect", () -> aFastReader.getRedirect (aSG, aDTID));
+        _run ("JPA  service information",
+              () -> aSIMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG, aDTID));
+        _run ("JDBC service information", () -> aFastReader.getServiceInformation (aSG, aDTID));
+      }
+      finally
+      {
+        ScopeManager.onRequestEnd ();
+      }
+    }
+    finally
+    {
+      ScopeManager.onGlobalEnd ();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.redirect.SMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.domain.user.ISMPUserManager;
+import com.helger.phoss.smp.exception.SMPServerException;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+
+/**
+ * Test class for class {@link SMPJDBCFastReader}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPJDBCFastReaderTest
+{
+  private static final String USER_ID = "junitfastread";
+
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule (ClassPathResource.getAsFile ("test-smp-server-h2.properties")
+                                                                                       .getAbsolutePath ());
+
+  @Test
+  public void testSameAsJPA () throws SMPServerException, SQLException
+  {
+    final ISMPUserManager aUserMgr = SMPMetaManager.getUserMgr ();
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
+    final IIdentifierFactory aIF = SMPMetaManager.getIdentifierFactory ();
+    final IParticipantIdentifier aPI = aIF.createParticipantIdentifier ("junit", "fastread");
+    final IDocumentTypeIdentifier aDocTypeID1 = aIF.createDocumentTypeIdentifier ("junit", "doc1");
+    final IDocumentTypeIdentifier aDocTypeID2 = aIF.createDocumentTypeIdentifier ("junit", "doc2");
+    final IProcessIdentifier aProcessID1 = aIF.createProcessIdentifier ("junit", "proc1");
+    final IProcessIdentifier aProcessID2 = aIF.createProcessIdentifier ("junit", "proc2");
+    final SMPJDBCFastReader aReader = SMPJDBCFastReader.getInstance ();
+
+    assertTrue (aUserMgr.createUser (USER_ID, "bla").isSuccess ());
+    try
+    {
+      assertNull (aReader.getServiceGroupOfID (aPI));
+
+      final ISMPServiceGroup aSG = aServiceGroupMgr.createSMPServiceGroup (USER_ID, aPI, "<sgext/>");
+      final SMPServiceGroup aFastSG = aReader.getServiceGroupOfID (aPI);
+      assertNotNull (aFastSG);
+      assertEquals (aSG.getOwnerID (), aFastSG.getOwnerID ());
+      assertEquals (aSG.getExtensionsAsString (), aFastSG.getExtensionsAsString ());
+
+      // Two processes with two and one endpoints
+      final SMPProcess aProcess1 = new SMPProcess (aProcessID1,
+                                                   new CommonsArrayList <> (new SMPEndpoint ("tp1",
+                                                                                             "http://localhost/as2",
+                                                                                             false,
+                                                                                             null,
+                                                                                             null,
+                                                                                             null,
+                                                                                             "cert",
+                                                                                             "sd",
+                                                                                             "tc",
+                                                                                             "ti",
+                                                                                             null),
+                                                                            new SMPEndpoint ("tp2",
+                                                                                             "http://localhost/as4",
+                                                                                             true,
+                                                                                             "minauth",
+                                                                                             null,
+                                                                                             null,
+                                                                                             "cert2",
+                                                                                             "sd2",
+                                                                                             "tc2",
+                                                                                             "ti2",
+                                                                                             "<epext/>")),
+                                                   "<procext/>");
+      final SMPProcess aProcess2 = new SMPProcess (aProcessID2,
+                                                   new CommonsArrayList <> (new SMPEndpoint ("tp1",
+                                                                                             "http://localhost/other",
+                                                                                             false,
+                                                                                             null,
+                                                                                             null,
+                                                                                             null,
+                                                                                             "cert3",
+                                                                                             "sd3",
+                                                                                             "tc3",
+                                                                                             "ti3",
+                                                                                             null)),
+                                                   null);
+      assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                         aDocTypeID1,
+                                                                                         new CommonsArrayList <> (aProcess1,
+                                                                                                                  aProcess2),
+                                                                                         "<siext/>"))
+                                 .isSuccess ());
+
+      final ISMPServiceInformation aSI = aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG,
+                                                                                                                aDocTypeID1);
+      final SMPServiceInformation aFastSI = aReader.getServiceInformation (aSG, aDocTypeID1);
+      assertNotNull (aSI);
+      assertNotNull (aFastSI);
+      assertEquals (aSI.getExtensionsAsString (), aFastSI.getExtensionsAsString ());
+      // The process order of the JPA entities is undefined
+      assertEquals (aSI.getProcessCount (), aFastSI.getProcessCount ());
+      for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+        assertEquals (aProcess, aFastSI.getProcessOfID (aProcess.getProcessIdentifier ()));
+      assertNull (aReader.getServiceInformation (aSG, aDocTypeID2));
+
+      final ISMPRedirect aRedirect = aRedirectMgr.createOrUpdateSMPRedirect (aSG,
+                                                                            aDocTypeID2,
+                                                                            "http://localhost/redirect",
+                                                                            "subject",
+                                                                            null,
+                                                                            "<redext/>");
+      final SMPRedirect aFastRedirect = aReader.getRedirect (aSG, aDocTypeID2);
+      assertNotNull (aRedirect);
+      assertNotNull (aFastRedirect);
+      assertEquals (aRedirect.getTargetHref (), aFastRedirect.getTargetHref ());
+      assertEquals (aRedirect.getSubjectUniqueIdentifier (), aFastRedirect.getSubjectUniqueIdentifier ());
+      assertEquals (aRedirect.getExtensionsAsString (), aFastRedirect.getExtensionsAsString ());
+      assertNull (aReader.getRedirect (aSG, aDocTypeID1));
+    }
+    finally
+    {
+      aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI);
+      aUserMgr.deleteUser (USER_ID);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.mutable.MutableInt;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.domain.user.ISMPUserManager;
+import com.helger.phoss.smp.exception.SMPServerException;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+
+/**
+ * Test class for class {@link SMPServiceGroupManagerSQL}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPServiceGroupManagerSQLTest
+{
+  private static final String USER_ID = "junitsql";
+
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule (ClassPathResource.getAsFile ("test-smp-server-h2.properties")
+                                                                                       .getAbsolutePath ());
+
+  @Nonnull
+  private static SMPEndpoint _createEndpoint ()
+  {
+    return new SMPEndpoint ("tp", "http://localhost/as2", false, "minauth", null, null, "cert", "sd", "tc", "ti", null);
+  }
+
+  @Test
+  public void testBulkCreateAndIterate () throws SMPServerException
+  {
+    final ISMPUserManager aUserMgr = SMPMetaManager.getUserMgr ();
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final IIdentifierFactory aIF = SMPMetaManager.getIdentifierFactory ();
+
+    assertTrue (aUserMgr.createUser (USER_ID, "bla").isSuccess ());
+    try
+    {
+      // More than two stream pages and multiple bulk transactions
+      final int nCount = 1100;
+      final ICommonsList <ISMPServiceGroup> aSGs = new CommonsArrayList <> ();
+      for (int i = 0; i < nCount; ++i)
+        aSGs.add (new SMPServiceGroup (USER_ID,
+                                       aIF.createParticipantIdentifier ("junit", "bulk-" + i),
+                                       i % 2 == 0 ? null : "<ext" + i + "/>"));
+
+      final MutableInt aErrors = new MutableInt (0);
+      final ICommonsList <ISMPServiceGroup> aCreated = aServiceGroupMgr.createSMPServiceGroups (aSGs,
+                                                                                               (aSG, ex) -> aErrors.inc ());
+      assertEquals (0, aErrors.intValue ());
+      assertEquals (nCount, aCreated.size ());
+      assertEquals (nCount, aServiceGroupMgr.getSMPServiceGroupCount ());
+
+      // Existing ones are reported to the error handler
+      final ICommonsList <ISMPServiceGroup> aCreated2 = aServiceGroupMgr.createSMPServiceGroups (aSGs.subList (0, 3),
+                                                                                                (aSG, ex) -> aErrors.inc ());
+      assertEquals (0, aCreated2.size ());
+      assertEquals (3, aErrors.intValue ());
+
+      // Keyset paging must visit each service group exactly once
+      final ICommonsSet <String> aVisited = new CommonsHashSet <> ();
+      final MutableInt aVisitCount = new MutableInt (0);
+      assertTrue (aServiceGroupMgr.forEachSMPServiceGroup (aSG -> {
+        aVisited.add (aSG.getID ());
+        aVisitCount.inc ();
+      }).isSuccess ());
+      assertEquals (nCount, aVisitCount.intValue ());
+      assertEquals (nCount, aVisited.size ());
+
+      final ISMPServiceGroup aSG1 = aServiceGroupMgr.getSMPServiceGroupOfID (aIF.createParticipantIdentifier ("junit",
+                                                                                                            "bulk-1"));
+      assertNotNull (aSG1);
+      assertNotNull (aSG1.getFirstExtensionXML ());
+
+      // Batched service information writes
+      final IDocumentTypeIdentifier aDocTypeID = aIF.createDocumentTypeIdentifier ("junit", "doc");
+      final IProcessIdentifier aProcessID = aIF.createProcessIdentifier ("junit", "proc");
+      final ICommonsList <SMPServiceInformation> aSIs = new CommonsArrayList <> ();
+      for (final ISMPServiceGroup aSG : aCreated.subList (0, 300))
+        aSIs.add (new SMPServiceInformation (aSG,
+                                             aDocTypeID,
+                                             new CommonsArrayList <> (new SMPProcess (aProcessID,
+                                                                                      new CommonsArrayList <> (_createEndpoint ()),
+                                                                                      null)),
+                                             null));
+      assertEquals (300, aServiceInfoMgr.mergeSMPServiceInformations (aSIs).size ());
+      assertEquals (300, aServiceInfoMgr.getSMPServiceInformationCount ());
+      aVisitCount.set (0);
+      assertTrue (aServiceInfoMgr.forEachSMPServiceInformation (aSI -> aVisitCount.inc ()).isSuccess ());
+      assertEquals (300, aVisitCount.intValue ());
+
+      for (final ISMPServiceGroup aSG : aSGs)
+        aServiceGroupMgr.deleteSMPServiceGroup (aSG.getParticpantIdentifier ());
+      assertEquals (0, aServiceGroupMgr.getSMPServiceGroupCount ());
+      assertEquals (0, aServiceInfoMgr.getSMPServiceInformationCount ());
+    }
+    finally
+    {
+      aUserMgr.deleteUser (USER_ID);
+    }
+  }
+
+  @Test
+  public void testDeleteWithChildren () throws SMPServerException
+  {
+    final ISMPUserManager aUserMgr = SMPMetaManager.getUserMgr ();
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
+    final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+    final IIdentifierFactory aIF = SMPMetaManager.getIdentifierFactory ();
+    final IParticipantIdentifier aPI = aIF.createParticipantIdentifier ("junit", "children");
+    final IDocumentTypeIdentifier aDocTypeID1 = aIF.createDocumentTypeIdentifier ("junit", "doc1");
+    final IDocumentTypeIdentifier aDocTypeID2 = aIF.createDocumentTypeIdentifier ("junit", "doc2");
+    final IProcessIdentifier aProcessID = aIF.createProcessIdentifier ("junit", "proc");
+
+    assertTrue (aUserMgr.createUser (USER_ID, "bla").isSuccess ());
+    try
+    {
+      final ISMPServiceGroup aSG = aServiceGroupMgr.createSMPServiceGroup (USER_ID, aPI, null);
+      assertNotNull (aSG);
+
+      final SMPProcess aProcess = new SMPProcess (aProcessID, new CommonsArrayList <> (_createEndpoint ()), null);
+      assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                         aDocTypeID1,
+                                                                                         new CommonsArrayList <> (aProcess),
+                                                                                         null))
+                                 .isSuccess ());
+      assertNotNull (aRedirectMgr.createOrUpdateSMPRedirect (aSG,
+                                                             aDocTypeID2,
+                                                             "http://localhost/redirect",
+                                                             "subject",
+                                                             null,
+                                                             null));
+      final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity ();
+      aEntity.names ().add (new SMPBusinessCardName ("Test entity", null));
+      aEntity.setCountryCode ("AT");
+      assertNotNull (aBusinessCardMgr.createOrUpdateSMPBusinessCard (aSG, new CommonsArrayList <> (aEntity)));
+
+      assertEquals (1, aServiceInfoMgr.getSMPServiceInformationCount ());
+      assertEquals (1, aRedirectMgr.getSMPRedirectCount ());
+      assertEquals (1, aBusinessCardMgr.getSMPBusinessCardCount ());
+      final MutableInt aSICount = new MutableInt (0);
+      assertTrue (aServiceInfoMgr.forEachSMPServiceInformation (aSI -> aSICount.inc ()).isSuccess ());
+      assertEquals (1, aSICount.intValue ());
+
+      // Deletes all children with bulk statements
+      assertTrue (aBusinessCardMgr.isDeletedWithServiceGroup ());
+      final MutableInt aBCDeleteCount = new MutableInt (0);
+      final ISMPBusinessCardCallback aBCCallback = new ISMPBusinessCardCallback ()
+      {
+        public void onCreateOrUpdateSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+        {}
+
+        public void onDeleteSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+        {
+          assertEquals (aSG.getID (), aBusinessCard.getID ());
+          aBCDeleteCount.inc ();
+        }
+      };
+      aBusinessCardMgr.bcCallbacks ().add (aBCCallback);
+      try
+      {
+        assertTrue (aServiceGroupMgr.deleteSMPServiceGroup (aPI).isChanged ());
+      }
+      finally
+      {
+        aBusinessCardMgr.bcCallbacks ().removeObject (aBCCallback);
+      }
+      assertEquals (1, aBCDeleteCount.intValue ());
+      assertNull (aServiceGroupMgr.getSMPServiceGroupOfID (aPI));
+      assertEquals (0, aServiceInfoMgr.getSMPServiceInformationCount ());
+      assertEquals (0, aRedirectMgr.getSMPRedirectCount ());
+      assertEquals (0, aBusinessCardMgr.getSMPBusinessCardCount ());
+    }
+    finally
+    {
+      aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI);
+      aUserMgr.deleteUser (USER_ID);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.backend.sql.SMPEntityManagerFactory;
+import com.helger.phoss.smp.backend.sql.SMPJPAConfiguration;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.settings.exchange.configfile.ConfigFile;
+
+/**
+ * Test class for class {@link SMPSchemaMigrator}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPSchemaMigratorTest
+{
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule (ClassPathResource.getAsFile ("test-smp-server-h2.properties")
+                                                                                       .getAbsolutePath ());
+
+  private static Connection _getConnection () throws SQLException
+  {
+    final ConfigFile aConfigFile = SMPServerConfiguration.getConfigFile ();
+    return DriverManager.getConnection (aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_URL),
+                                        aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_USER),
+                                        aConfigFile.getAsString (SMPJPAConfiguration.CONFIG_JDBC_PASSWORD));
+  }
+
+  @Test
+  public void testMigrationApplied () throws SQLException
+  {
+    // Creates the tables and runs the migration
+    SMPEntityManagerFactory.getInstance ();
+
+    try (final Connection aConnection = _getConnection ())
+    {
+      assertTrue (SMPSchemaHelper.existsTable (aConnection, SMPSchemaMigrator.TABLE_SCHEMA_VERSION));
+      assertTrue (SMPSchemaHelper.existsIndexStartingWith (aConnection, "smp_ownership", "username"));
+      assertTrue (SMPSchemaHelper.existsIndexStartingWith (aConnection,
+                                                           "smp_service_metadata",
+                                                           "businessIdentifierScheme",
+                                                           "businessIdentifier"));
+      assertFalse (SMPSchemaHelper.existsIndexStartingWith (aConnection, "smp_ownership", "businessIdentifier"));
+
+      // Running it again must not change anything
+      assertTrue (SMPSchemaMigrator.migrate (aConnection).isSuccess ());
+      assertTrue (SMPSchemaHelper.createIndexIfMissing (aConnection, "idx_dummy", "smp_bce", "pid").isUnchanged ());
+
+      try (final Statement aStmt = aConnection.createStatement ();
+           final ResultSet aRS = aStmt.executeQuery ("SELECT COUNT(*) FROM " + SMPSchemaMigrator.TABLE_SCHEMA_VERSION))
+      {
+        assertTrue (aRS.next ());
+        assertEquals (SMPSchemaMigrator.getAllMigrations ().size (), aRS.getInt (1));
+      }
+    }
+  }
+
+  @Test
+  public void testMissingBaseTables () throws SQLException
+  {
+    try (final Connection aConnection = DriverManager.getConnection ("jdbc:h2:mem:smp-empty", "sa", ""))
+    {
+      assertTrue (SMPSchemaMigrator.migrate (aConnection).isFailure ());
+      assertFalse (SMPSchemaHelper.existsTable (aConnection, SMPSchemaMigrator.TABLE_SCHEMA_VERSION));
+    }
+  }
+}
@@ -16,6 +16,8 @@
  */
 package com.helger.phoss.smp.backend.xml.mgr;
 
+import java.util.function.BiConsumer;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -28,7 +30,9 @@ import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.state.EChange;
 import com.helger.commons.string.StringHelper;
 import com.helger.dao.DAOException;
@@ -42,6 +46,7 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.exception.SMPInternalErrorException;
 import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPSMLException;
 import com.helger.phoss.smp.exception.SMPServerException;
@@ -144,6 +149,78 @@ public final class SMPServiceGroupManagerXML extends AbstractPhotonMapBasedWALDA
     return aSMPServiceGroup;
   }
 
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceGroup> createSMPServiceGroups (@Nonnull final Iterable <? extends ISMPServiceGroup> aServiceGroups,
+                                                                 @Nullable final BiConsumer <? super ISMPServiceGroup, ? super SMPServerException> aErrorHandler)
+  {
+    ValueEnforcer.notNull (aServiceGroups, "ServiceGroups");
+
+    // Register all in the SML first - at once
+    final IRegistrationHook aHook = RegistrationHookFactory.getInstance ();
+    final ICommonsList <ISMPServiceGroup> aAll = new CommonsArrayList <> (aServiceGroups);
+    final ICommonsMap <IParticipantIdentifier, RegistrationHookException> aSMLFailures;
+    aSMLFailures = aHook.createServiceGroups (aAll.getAllMapped (ISMPServiceGroup::getParticpantIdentifier));
+
+    final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
+    final ICommonsList <IParticipantIdentifier> aStoringFailed = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aServiceGroup : aAll)
+    {
+      final IParticipantIdentifier aParticipantID = aServiceGroup.getParticpantIdentifier ();
+      final RegistrationHookException aSMLFailure = aSMLFailures.get (aParticipantID);
+      if (aSMLFailure != null)
+      {
+        if (aErrorHandler != null)
+          aErrorHandler.accept (aServiceGroup,
+                                new SMPSMLException ("Failed to create '" + aParticipantID.getURIEncoded () + "' in SML",
+                                                     aSMLFailure));
+        continue;
+      }
+
+      final SMPServiceGroup aSMPServiceGroup = new SMPServiceGroup (aServiceGroup.getOwnerID (),
+                                                                    aParticipantID,
+                                                                    aServiceGroup.getExtensionsAsString ());
+      m_aRWLock.writeLock ().lock ();
+      try
+      {
+        internalCreateItem (aSMPServiceGroup);
+      }
+      catch (final RuntimeException ex)
+      {
+        // Storing failed - remove from SML again afterwards
+        aStoringFailed.add (aParticipantID);
+        if (aErrorHandler != null)
+          aErrorHandler.accept (aServiceGroup,
+                                new SMPInternalErrorException ("Failed to store service group '" +
+                                                               aParticipantID.getURIEncoded () +
+                                                               "'",
+                                                               ex));
+        continue;
+      }
+      finally
+      {
+        m_aRWLock.writeLock ().unlock ();
+      }
+
+      AuditHelper.onAuditCreateSuccess (SMPServiceGroup.OT,
+                                        aSMPServiceGroup.getID (),
+                                        aSMPServiceGroup.getOwnerID (),
+                                        aParticipantID.getURIEncoded (),
+                                        aSMPServiceGroup.getExtensionsAsString ());
+      m_aCBs.forEach (x -> x.onSMPServiceGroupCreated (aSMPServiceGroup));
+      ret.add (aSMPServiceGroup);
+    }
+
+    if (aStoringFailed.isNotEmpty ())
+      aHook.undoCreateServiceGroups (aStoringFailed)
+           .forEach ( (k, v) -> LOGGER.error ("Failed to undoCreateServiceGroup (" + k.getURIEncoded () + ")", v));
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("createSMPServiceGroups - created " + ret.size () + " objects");
+    return ret;
+  }
+
   @Nonnull
   public EChange updateSMPServiceGroup (@Nonnull final IParticipantIdentifier aParticipantID,
                                         @Nonnull @Nonempty final String sNewOwnerID,
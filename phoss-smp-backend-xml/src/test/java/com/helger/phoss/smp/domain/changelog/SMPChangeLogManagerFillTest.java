@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for the filling of class {@link SMPChangeLogManager}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPChangeLogManagerFillTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  private static ICommonsMap <String, ISMPChangeLogEntry> _getServiceGroupChanges (final SMPChangeLogManager aMgr,
+                                                                                final long nSequence)
+  {
+    final ICommonsMap <String, ISMPChangeLogEntry> ret = new CommonsHashMap <> ();
+    for (final ISMPChangeLogEntry aEntry : aMgr.getAllChangesSince (nSequence, Integer.MAX_VALUE))
+      if (aEntry.getItemType () == ESMPChangeItemType.SERVICE_GROUP)
+        ret.put (aEntry.getServiceGroupID (), aEntry);
+    return ret;
+  }
+
+  @Test
+  public void testFillAndRefill () throws Exception
+  {
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final IParticipantIdentifier aPI1 = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:changelogfill1");
+    final IParticipantIdentifier aPI2 = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:changelogfill2");
+    aSGMgr.deleteSMPServiceGroupNoEx (aPI1);
+    aSGMgr.deleteSMPServiceGroupNoEx (aPI2);
+    final ISMPServiceGroup aSG1 = aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI1, null);
+    final ISMPServiceGroup aSG2 = aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI2, null);
+    try
+    {
+      final String sFilename = "test-changelog-fill-" + System.nanoTime () + ".xml";
+      SMPChangeLogManager aMgr = new SMPChangeLogManager (sFilename);
+      assertFalse (aMgr.isFillCompleted ());
+      assertTrue (aMgr.initialFill (aSGMgr,
+                                    SMPMetaManager.getServiceInformationMgr (),
+                                    SMPMetaManager.getRedirectMgr (),
+                                    SMPMetaManager.getBusinessCardMgr ())
+                      .isSuccess ());
+      assertTrue (aMgr.isFillCompleted ());
+
+      ICommonsMap <String, ISMPChangeLogEntry> aChanges = _getServiceGroupChanges (aMgr, 0);
+      assertFalse (aChanges.get (aSG1.getID ()).isDeleted ());
+      assertFalse (aChanges.get (aSG2.getID ()).isDeleted ());
+
+      // Simulate a change while the change log was disabled
+      SMPChangeLogManager.markIncomplete (sFilename);
+      aSGMgr.deleteSMPServiceGroup (aPI2);
+
+      // Restart
+      aMgr = new SMPChangeLogManager (sFilename);
+      assertFalse (aMgr.isFillCompleted ());
+      final long nLastSequence = aMgr.getLastSequence ();
+      assertTrue (aMgr.initialFill (aSGMgr,
+                                    SMPMetaManager.getServiceInformationMgr (),
+                                    SMPMetaManager.getRedirectMgr (),
+                                    SMPMetaManager.getBusinessCardMgr ())
+                      .isSuccess ());
+      assertTrue (aMgr.isFillCompleted ());
+
+      // Consumers at the old sequence see the existing and the deleted one
+      aChanges = _getServiceGroupChanges (aMgr, nLastSequence);
+      assertNotNull (aChanges.get (aSG1.getID ()));
+      assertFalse (aChanges.get (aSG1.getID ()).isDeleted ());
+      assertNotNull (aChanges.get (aSG2.getID ()));
+      assertTrue (aChanges.get (aSG2.getID ()).isDeleted ());
+
+      // The sequence order is kept
+      long nPrev = nLastSequence;
+      for (final ISMPChangeLogEntry aEntry : aMgr.getAllChangesSince (nLastSequence, Integer.MAX_VALUE))
+      {
+        assertTrue (aEntry.getSequence () > nPrev);
+        nPrev = aEntry.getSequence ();
+      }
+      assertEquals (aMgr.getLastSequence (), nPrev);
+    }
+    finally
+    {
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI1);
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI2);
+    }
+  }
+}
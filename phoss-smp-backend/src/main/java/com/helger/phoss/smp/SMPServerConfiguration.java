@@ -12,6 +12,7 @@ package com.helger.phoss.smp;
 
 import java.net.Proxy;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -76,6 +77,8 @@ public final class SMPServerConfiguration
   public static final String KEY_SMP_REST_TYPE = "smp.rest.type";
   public static final String KEY_SMP_REST_WRITABLE_API_DISABLED = "smp.rest.writableapi.disabled";
   public static final String KEY_SMP_REST_LOG_EXCEPTIONS = "smp.rest.log.exceptions";
+  public static final String KEY_SMP_REST_ASYNC_ENABLED = "smp.rest.async.enabled";
+  public static final String KEY_SMP_REST_ASYNC_THREADS = "smp.rest.async.threads";
   public static final String KEY_SMP_STATUS_ENABLED = "smp.status.enabled";
   /* legacy name */
   public static final String KEY_SMP_DIRECTORY_INTEGRATION_ENABLED = "smp.peppol.directory.integration.enabled";
@@ -94,16 +97,31 @@ public final class SMPServerConfiguration
   public static final String KEY_SML_SMP_HOSTNAME = "sml.smp.hostname";
   public static final String KEY_SML_CONNECTION_TIMEOUT_MS = "sml.connection.timeout.ms";
   public static final String KEY_SML_REQUEST_TIMEOUT_MS = "sml.request.timeout.ms";
+  public static final String KEY_SML_OUTBOX_ENABLED = "sml.outbox.enabled";
+  public static final String KEY_SML_OUTBOX_MAX_ATTEMPTS = "sml.outbox.maxattempts";
+  public static final String KEY_SML_OUTBOX_RETRY_MS = "sml.outbox.retry.ms";
+  public static final String KEY_SML_OUTBOX_FAILED_MAX_AGE_HOURS = "sml.outbox.failed.maxage.hours";
+  public static final String KEY_SML_RECONCILIATION_THREADS = "sml.reconciliation.threads";
+  public static final String KEY_SML_RECONCILIATION_RATE_PER_SECOND = "sml.reconciliation.ratepersecond";
+  public static final String KEY_SMP_CHANGELOG_ENABLED = "smp.changelog.enabled";
 
   public static final boolean DEFAULT_SMP_FORCEROOT = false;
   public static final ESMPIdentifierType DEFAULT_SMP_IDENTIFIER_TYPE = ESMPIdentifierType.PEPPOL;
   public static final ESMPRESTType DEFAULT_SMP_REST_TYPE = ESMPRESTType.PEPPOL;
   public static final boolean DEFAULT_SMP_REST_WRITABLE_API_DISABLED = false;
   public static final boolean DEFAULT_SMP_REST_LOG_EXCEPTIONS = false;
+  public static final boolean DEFAULT_SMP_REST_ASYNC_ENABLED = false;
   public static final boolean DEFAULT_SMP_STATUS_ENABLED = true;
   public static final boolean DEFAULT_SML_REQUIRED = true;
   public static final boolean DEFAULT_SML_ENABLED = false;
   public static final int DEFAULT_SML_REQUEST_TIMEOUT_MS = 30 * (int) CGlobal.MILLISECONDS_PER_SECOND;
+  public static final boolean DEFAULT_SML_OUTBOX_ENABLED = false;
+  public static final int DEFAULT_SML_OUTBOX_MAX_ATTEMPTS = 10;
+  public static final long DEFAULT_SML_OUTBOX_RETRY_MS = 10 * CGlobal.MILLISECONDS_PER_SECOND;
+  public static final int DEFAULT_SML_OUTBOX_FAILED_MAX_AGE_HOURS = 30 * CGlobal.HOURS_PER_DAY;
+  public static final int DEFAULT_SML_RECONCILIATION_THREADS = 4;
+  public static final int DEFAULT_SML_RECONCILIATION_RATE_PER_SECOND = 5;
+  public static final boolean DEFAULT_SMP_CHANGELOG_ENABLED = false;
   public static final boolean DEFAULT_SMP_DIRECTORY_INTEGRATION_REQUIRED = true;
   public static final boolean DEFAULT_SMP_DIRECTORY_INTEGRATION_ENABLED = true;
   public static final boolean DEFAULT_SMP_DIRECTORY_INTEGRATION_AUTO_UPDATE = true;
@@ -328,6 +346,31 @@ public final class SMPServerConfiguration
     return getConfigFile ().getAsBoolean (KEY_SMP_REST_LOG_EXCEPTIONS, DEFAULT_SMP_REST_LOG_EXCEPTIONS);
   }
 
+  /**
+   * @return <code>true</code> if the public service metadata lookups of the
+   *         REST API should be handled asynchronously, <code>false</code> if
+   *         not. This only has an effect if the asynchronous REST filter is
+   *         configured in the web.xml. By default it is disabled.
+   * @since 5.2.0
+   */
+  public static boolean isRESTAsyncEnabled ()
+  {
+    return getConfigFile ().getAsBoolean (KEY_SMP_REST_ASYNC_ENABLED, DEFAULT_SMP_REST_ASYNC_ENABLED);
+  }
+
+  /**
+   * @return The number of threads used to sign and write the responses of
+   *         asynchronously handled REST requests. Defaults to the number of
+   *         available processors. Always &gt; 0.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getRESTAsyncThreadCount ()
+  {
+    final int ret = getConfigFile ().getAsInt (KEY_SMP_REST_ASYNC_THREADS, -1);
+    return ret > 0 ? ret : Runtime.getRuntime ().availableProcessors ();
+  }
+
   /**
    * @return <code>true</code> if the status servlet at
    *         <code>/smp-status/</code> is enabled, <code>false</code> if it is
@@ -402,6 +445,100 @@ public final class SMPServerConfiguration
     return getConfigFile ().getAsInt (KEY_SML_REQUEST_TIMEOUT_MS, DEFAULT_SML_REQUEST_TIMEOUT_MS);
   }
 
+  /**
+   * @return <code>true</code> if SML registrations should be written to the
+   *         persistent outbox and delivered asynchronously, <code>false</code>
+   *         if the SML should be called synchronously. Only relevant when SML
+   *         connection is active. Property <code>sml.outbox.enabled</code>. By
+   *         default it is disabled.
+   * @since 5.2.0
+   */
+  public static boolean isSMLOutboxEnabled ()
+  {
+    return getConfigFile ().getAsBoolean (KEY_SML_OUTBOX_ENABLED, DEFAULT_SML_OUTBOX_ENABLED);
+  }
+
+  /**
+   * @return The maximum number of delivery attempts of a single SML outbox
+   *         entry, before it is marked as failed. Property
+   *         <code>sml.outbox.maxattempts</code>. Default is 10. Always &gt; 0.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getSMLOutboxMaxAttempts ()
+  {
+    final int ret = getConfigFile ().getAsInt (KEY_SML_OUTBOX_MAX_ATTEMPTS, DEFAULT_SML_OUTBOX_MAX_ATTEMPTS);
+    return ret > 0 ? ret : DEFAULT_SML_OUTBOX_MAX_ATTEMPTS;
+  }
+
+  /**
+   * @return The initial retry delay in milliseconds of a failed SML outbox
+   *         entry. It is doubled with every failed attempt. Property
+   *         <code>sml.outbox.retry.ms</code>. Default is 10 seconds.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static long getSMLOutboxRetryMS ()
+  {
+    final long ret = getConfigFile ().getAsLong (KEY_SML_OUTBOX_RETRY_MS, DEFAULT_SML_OUTBOX_RETRY_MS);
+    return ret > 0 ? ret : DEFAULT_SML_OUTBOX_RETRY_MS;
+  }
+
+  /**
+   * @return The number of hours after which failed SML outbox entries are
+   *         discarded. Property <code>sml.outbox.failed.maxage.hours</code>.
+   *         Default is 30 days. Always &gt; 0.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getSMLOutboxFailedMaxAgeHours ()
+  {
+    final int ret = getConfigFile ().getAsInt (KEY_SML_OUTBOX_FAILED_MAX_AGE_HOURS,
+                                               DEFAULT_SML_OUTBOX_FAILED_MAX_AGE_HOURS);
+    return ret > 0 ? ret : DEFAULT_SML_OUTBOX_FAILED_MAX_AGE_HOURS;
+  }
+
+  /**
+   * @return The number of parallel SML calls of the SML reconciliation.
+   *         Property <code>sml.reconciliation.threads</code>. Default is 4.
+   *         Always &gt; 0.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getSMLReconciliationThreadCount ()
+  {
+    final int ret = getConfigFile ().getAsInt (KEY_SML_RECONCILIATION_THREADS, DEFAULT_SML_RECONCILIATION_THREADS);
+    return ret > 0 ? ret : DEFAULT_SML_RECONCILIATION_THREADS;
+  }
+
+  /**
+   * @return The maximum number of SML calls per second of the SML
+   *         reconciliation. Each call handles up to 100 participants. Values
+   *         &le; 0 mean unlimited. Property
+   *         <code>sml.reconciliation.ratepersecond</code>. Default is 5.
+   * @since 5.2.0
+   */
+  public static int getSMLReconciliationRatePerSecond ()
+  {
+    return getConfigFile ().getAsInt (KEY_SML_RECONCILIATION_RATE_PER_SECOND,
+                                      DEFAULT_SML_RECONCILIATION_RATE_PER_SECOND);
+  }
+
+  /**
+   * @return <code>true</code> if all changes of service groups, service
+   *         information, redirects and business cards should be tracked in
+   *         the change log, <code>false</code> if not. Property
+   *         <code>smp.changelog.enabled</code>. By default it is disabled.
+   *         The change log is stored locally and only contains the changes
+   *         performed on this node, so it must not be used if multiple nodes
+   *         share the same database.
+   * @since 5.2.0
+   */
+  public static boolean isChangeLogEnabled ()
+  {
+    return getConfigFile ().getAsBoolean (KEY_SMP_CHANGELOG_ENABLED, DEFAULT_SMP_CHANGELOG_ENABLED);
+  }
+
   /**
    * @return The proxy host to be used for "http" calls. May be
    *         <code>null</code>.
@@ -15,6 +15,8 @@ import javax.annotation.Nonnull;
 import com.helger.commons.annotation.IsSPIImplementation;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardMicroTypeConverter;
+import com.helger.phoss.smp.domain.changelog.SMPChangeLogEntry;
+import com.helger.phoss.smp.domain.changelog.SMPChangeLogEntryMicroTypeConverter;
 import com.helger.phoss.smp.domain.redirect.SMPRedirect;
 import com.helger.phoss.smp.domain.redirect.SMPRedirectMicroTypeConverter;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
@@ -39,6 +41,7 @@ public final class MicroTypeConverterRegistrarSMPServer implements IMicroTypeCon
   public void registerMicroTypeConverter (@Nonnull final IMicroTypeConverterRegistry aRegistry)
   {
     aRegistry.registerMicroElementTypeConverter (SMPBusinessCard.class, new SMPBusinessCardMicroTypeConverter ());
+    aRegistry.registerMicroElementTypeConverter (SMPChangeLogEntry.class, new SMPChangeLogEntryMicroTypeConverter ());
     aRegistry.registerMicroElementTypeConverter (SMPEndpoint.class, new SMPEndpointMicroTypeConverter ());
     aRegistry.registerMicroElementTypeConverter (SMPProcess.class, new SMPProcessMicroTypeConverter ());
     aRegistry.registerMicroElementTypeConverter (SMPRedirect.class, new SMPRedirectMicroTypeConverter ());
@@ -38,6 +38,10 @@ public class BusinessCardSMPServiceGroupCallback implements ISMPServiceGroupCall
   @Override
   public void onSMPServiceGroupDeleted (@Nonnull final IParticipantIdentifier aParticipantID)
   {
+    // Already deleted and notified by the backend
+    if (m_aBusinessCardMgr.isDeletedWithServiceGroup ())
+      return;
+
     // If service group is deleted, also delete respective business card
     final String sServiceGroupID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
     final ISMPBusinessCard aBusinessCard = m_aBusinessCardMgr.getSMPBusinessCardOfID (sServiceGroupID);
@@ -19,6 +19,8 @@ import org.slf4j.LoggerFactory;
 import com.helger.commons.annotation.UsedViaReflection;
 import com.helger.commons.exception.InitializationException;
 import com.helger.commons.lang.ClassHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.dao.DAOException;
 import com.helger.peppol.url.IPeppolURLProvider;
 import com.helger.peppolid.factory.BDXR1IdentifierFactory;
 import com.helger.peppolid.factory.BDXR2IdentifierFactory;
@@ -29,6 +31,8 @@ import com.helger.phoss.smp.ESMPIdentifierType;
 import com.helger.phoss.smp.SMPServerConfiguration;
 import com.helger.phoss.smp.backend.SMPBackendRegistry;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
+import com.helger.phoss.smp.domain.changelog.SMPChangeLogManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.LoggingSMPServiceGroupCallback;
@@ -64,6 +68,8 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
   private ISMPRedirectManager m_aRedirectMgr;
   private ISMPServiceInformationManager m_aServiceInformationMgr;
   private ISMPBusinessCardManager m_aBusinessCardMgr;
+  private SMPBusinessCardSearchIndex m_aBusinessCardSearchIndex;
+  private SMPChangeLogManager m_aChangeLogMgr;
 
   /**
    * Set the manager provider to be used. This must be called exactly once
@@ -108,7 +114,7 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
   public SMPMetaManager ()
   {}
 
-  private void _initCallbacks ()
+  private void _initCallbacks () throws DAOException
   {
     // Always log
     m_aServiceGroupMgr.serviceGroupCallbacks ().add (new LoggingSMPServiceGroupCallback ());
@@ -116,6 +122,45 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     {
       // If service group is deleted, also delete respective business card
       m_aServiceGroupMgr.serviceGroupCallbacks ().add (new BusinessCardSMPServiceGroupCallback (m_aBusinessCardMgr));
+
+      // Keep the search index up to date
+      m_aBusinessCardSearchIndex = new SMPBusinessCardSearchIndex (m_aBusinessCardMgr);
+      m_aBusinessCardMgr.bcCallbacks ().add (m_aBusinessCardSearchIndex);
+    }
+
+    // One change log per backend
+    final String sBackendID = SMPServerConfiguration.getBackend ();
+    final String sChangeLogFilename = StringHelper.hasText (sBackendID) ? "smp-changelog-" + sBackendID + ".xml"
+                                                                        : "smp-changelog.xml";
+    if (SMPServerConfiguration.isChangeLogEnabled ())
+    {
+      if (!"xml".equals (sBackendID))
+        LOGGER.warn ("The change log only tracks the changes performed on this node. Don't use it if multiple nodes share the same '" +
+                     sBackendID +
+                     "' backend.");
+
+      m_aChangeLogMgr = new SMPChangeLogManager (sChangeLogFilename);
+      if (!m_aChangeLogMgr.isFillCompleted ())
+      {
+        // Newly created, interrupted or disabled in between - add all
+        // existing items
+        if (m_aChangeLogMgr.initialFill (m_aServiceGroupMgr,
+                                         m_aServiceInformationMgr,
+                                         m_aRedirectMgr,
+                                         m_aBusinessCardMgr)
+                           .isFailure ())
+          throw new IllegalStateException ("Failed to fill the change log '" + sChangeLogFilename + "'");
+      }
+      m_aServiceGroupMgr.serviceGroupCallbacks ().add (m_aChangeLogMgr);
+      m_aServiceInformationMgr.serviceInformationCallbacks ().add (m_aChangeLogMgr);
+      m_aRedirectMgr.redirectCallbacks ().add (m_aChangeLogMgr);
+      if (m_aBusinessCardMgr != null)
+        m_aBusinessCardMgr.bcCallbacks ().add (m_aChangeLogMgr);
+    }
+    else
+    {
+      // Changes are not tracked from now on
+      SMPChangeLogManager.markIncomplete (sChangeLogFilename);
     }
   }
 
@@ -289,6 +334,30 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     return getBusinessCardMgr () != null;
   }
 
+  /**
+   * @return The in-memory search index over all business cards. Only
+   *         <code>null</code> if no business card manager is present.
+   * @since 5.2.0
+   */
+  @Nullable
+  public static SMPBusinessCardSearchIndex getBusinessCardSearchIndex ()
+  {
+    return getInstance ().m_aBusinessCardSearchIndex;
+  }
+
+  /**
+   * @return The change log of all service groups, service information,
+   *         redirects and business cards. Only <code>null</code> if the change
+   *         log is disabled.
+   * @see SMPServerConfiguration#isChangeLogEnabled()
+   * @since 5.2.0
+   */
+  @Nullable
+  public static SMPChangeLogManager getChangeLogMgr ()
+  {
+    return getInstance ().m_aChangeLogMgr;
+  }
+
   /**
    * This is the initialization routine that must be called upon application
    * startup. It performs the SPI initialization of all registered manager
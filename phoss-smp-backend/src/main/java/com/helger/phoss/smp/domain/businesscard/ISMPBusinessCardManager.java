@@ -11,14 +11,17 @@
 package com.helger.phoss.smp.domain.businesscard;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.state.EChange;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
@@ -43,6 +46,20 @@ public interface ISMPBusinessCardManager
   @ReturnsMutableObject
   CallbackList <ISMPBusinessCardCallback> bcCallbacks ();
 
+  /**
+   * @return <code>true</code> if the service group manager of the same backend
+   *         deletes the business card together with its service group and this
+   *         manager invokes the callbacks for it, <code>false</code> if the
+   *         business card must be deleted explicitly after the service group
+   *         was deleted. The default is <code>false</code>.
+   * @see com.helger.phoss.smp.domain.BusinessCardSMPServiceGroupCallback
+   * @since 5.2.0
+   */
+  default boolean isDeletedWithServiceGroup ()
+  {
+    return false;
+  }
+
   /**
    * Create or update a business card for a service group.
    *
@@ -57,6 +74,38 @@ public interface ISMPBusinessCardManager
   ISMPBusinessCard createOrUpdateSMPBusinessCard (@Nonnull ISMPServiceGroup aServiceGroup,
                                                   @Nonnull Collection <SMPBusinessCardEntity> aEntities);
 
+  /**
+   * Create or update multiple business cards at once. Implementations may write
+   * them in fewer, larger transactions than
+   * {@link #createOrUpdateSMPBusinessCard(ISMPServiceGroup, Collection)} would
+   * do. The failure of a single business card does not stop the processing of
+   * the remaining ones. The default implementation simply handles one business
+   * card after the other.
+   *
+   * @param aBusinessCards
+   *        The business cards to be created or updated. May not be
+   *        <code>null</code>.
+   * @return The list of all successfully created or updated business cards.
+   *         Never <code>null</code> but maybe empty.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <ISMPBusinessCard> createOrUpdateSMPBusinessCards (@Nonnull final Iterable <? extends ISMPBusinessCard> aBusinessCards)
+  {
+    ValueEnforcer.notNull (aBusinessCards, "BusinessCards");
+
+    final ICommonsList <ISMPBusinessCard> ret = new CommonsArrayList <> ();
+    for (final ISMPBusinessCard aBusinessCard : aBusinessCards)
+    {
+      final ISMPBusinessCard aResult = createOrUpdateSMPBusinessCard (aBusinessCard.getServiceGroup (),
+                                                                      aBusinessCard.getAllEntities ());
+      if (aResult != null)
+        ret.add (aResult);
+    }
+    return ret;
+  }
+
   /**
    * Delete the passed SMP business card.
    *
@@ -75,6 +124,23 @@ public interface ISMPBusinessCardManager
   @ReturnsMutableCopy
   ICommonsList <ISMPBusinessCard> getAllSMPBusinessCards ();
 
+  /**
+   * Invoke the provided consumer for every contained business card. In
+   * contrast to {@link #getAllSMPBusinessCards()} implementations may read the
+   * business cards one after the other, so that they don't need to be in
+   * memory at the same time. The default implementation iterates
+   * {@link #getAllSMPBusinessCards()}.
+   *
+   * @param aConsumer
+   *        The consumer to be invoked. May not be <code>null</code>.
+   * @since 5.2.0
+   */
+  default void forEachSMPBusinessCard (@Nonnull final Consumer <? super ISMPBusinessCard> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    getAllSMPBusinessCards ().forEach (aConsumer);
+  }
+
   /**
    * Get the business card of the passed service group.
    *
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.StringHelper;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+
+/**
+ * An in-memory set of the IDs of all service groups that have a business
+ * card. It is meant for business card managers with a remote persistence
+ * layer, so that existence checks don't require a backend query. The set is
+ * filled lazily upon the first query, using
+ * {@link ISMPBusinessCardManager#forEachSMPBusinessCard(java.util.function.Consumer)},
+ * and is kept up to date by registering this object as a business card
+ * callback <b>before</b> all other callbacks.<br>
+ * Changes performed by other nodes sharing the same backend are not seen. Call
+ * {@link #reset()} to force a reload upon the next query.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPBusinessCardExistenceCache implements ISMPBusinessCardCallback
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardExistenceCache.class);
+
+  private final ISMPBusinessCardManager m_aBusinessCardMgr;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // null means "not yet loaded"
+  @GuardedBy ("m_aRWLock")
+  private ICommonsSet <String> m_aIDs;
+
+  public SMPBusinessCardExistenceCache (@Nonnull final ISMPBusinessCardManager aBusinessCardMgr)
+  {
+    ValueEnforcer.notNull (aBusinessCardMgr, "BusinessCardMgr");
+    m_aBusinessCardMgr = aBusinessCardMgr;
+  }
+
+  @Nonnull
+  private ICommonsSet <String> _getOrLoadIDs ()
+  {
+    final ICommonsSet <String> ret = m_aRWLock.readLocked ( () -> m_aIDs);
+    if (ret != null)
+      return ret;
+
+    // The write lock is held while loading, so that no callback gets lost
+    return m_aRWLock.writeLocked ( () -> {
+      if (m_aIDs == null)
+      {
+        final ICommonsSet <String> aIDs = new CommonsHashSet <> ();
+        m_aBusinessCardMgr.forEachSMPBusinessCard (x -> aIDs.add (x.getID ()));
+        m_aIDs = aIDs;
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Loaded the IDs of " + aIDs.size () + " business cards");
+      }
+      return m_aIDs;
+    });
+  }
+
+  /**
+   * Check if a business card with the provided ID (= service group ID) exists.
+   *
+   * @param sID
+   *        The ID to check. May be <code>null</code>.
+   * @return <code>true</code> if a business card with this ID exists.
+   */
+  public boolean containsID (@Nullable final String sID)
+  {
+    if (StringHelper.hasNoText (sID))
+      return false;
+
+    final ICommonsSet <String> aIDs = _getOrLoadIDs ();
+    return m_aRWLock.readLocked ( () -> aIDs.contains (sID));
+  }
+
+  /**
+   * Check if a business card for the provided service group exists.
+   *
+   * @param aServiceGroup
+   *        The service group to check. May be <code>null</code>.
+   * @return <code>true</code> if a business card for this service group
+   *         exists.
+   */
+  public boolean containsServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  {
+    return aServiceGroup != null && containsID (aServiceGroup.getID ());
+  }
+
+  /**
+   * @return The number of contained IDs. Triggers the initial load if
+   *         necessary. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    final ICommonsSet <String> aIDs = _getOrLoadIDs ();
+    return m_aRWLock.readLocked ( () -> aIDs.size ());
+  }
+
+  /**
+   * Discard all cached IDs, so that they are reloaded from the manager upon
+   * the next query.
+   */
+  public void reset ()
+  {
+    m_aRWLock.writeLocked ( () -> m_aIDs = null);
+  }
+
+  public void onCreateOrUpdateSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    // Nothing to do, if not yet loaded
+    m_aRWLock.writeLocked ( () -> {
+      if (m_aIDs != null)
+        m_aIDs.add (aBusinessCard.getID ());
+    });
+  }
+
+  public void onDeleteSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      if (m_aIDs != null)
+        m_aIDs.remove (aBusinessCard.getID ());
+    });
+  }
+}
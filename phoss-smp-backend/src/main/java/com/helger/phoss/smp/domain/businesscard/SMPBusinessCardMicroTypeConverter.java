@@ -41,7 +41,7 @@ import com.helger.xml.microdom.util.MicroHelper;
  */
 public final class SMPBusinessCardMicroTypeConverter implements IMicroTypeConverter <SMPBusinessCard>
 {
-  private static final IMicroQName ATTR_SERVICE_GROUP_ID = new MicroQName ("servicegroupid");
+  public static final IMicroQName ATTR_SERVICE_GROUP_ID = new MicroQName ("servicegroupid");
   private static final String ELEMENT_ENTITY = "entity";
   private static final IMicroQName ATTR_ID = new MicroQName ("id");
   private static final String ELEMENT_NAME = "name";
@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * An in-memory inverted index over all business cards, so that they can be
+ * searched without loading them from the backend. The index contains the
+ * tokens of the participant identifier and of the names, country codes,
+ * geographical information and identifiers of all entities. A query is split
+ * into tokens the same way, and each query token matches all index tokens
+ * starting with it. A business card matches, if all query tokens match.<br>
+ * The index is filled lazily upon the first query, using
+ * {@link ISMPBusinessCardManager#forEachSMPBusinessCard(java.util.function.Consumer)},
+ * and is kept up to date by registering it as a business card callback.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPBusinessCardSearchIndex implements ISMPBusinessCardCallback
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardSearchIndex.class);
+
+  private final ISMPBusinessCardManager m_aBusinessCardMgr;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private boolean m_bLoaded = false;
+  // Business card per service group ID, sorted by ID
+  @GuardedBy ("m_aRWLock")
+  private final NavigableMap <String, ISMPBusinessCard> m_aBusinessCards = new TreeMap <> ();
+  // Service group IDs per token, sorted by token for prefix search
+  @GuardedBy ("m_aRWLock")
+  private final NavigableMap <String, ICommonsSet <String>> m_aTokens = new TreeMap <> ();
+  // Service group IDs per upper case country code
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, ICommonsSet <String>> m_aCountries = new CommonsHashMap <> ();
+
+  public SMPBusinessCardSearchIndex (@Nonnull final ISMPBusinessCardManager aBusinessCardMgr)
+  {
+    ValueEnforcer.notNull (aBusinessCardMgr, "BusinessCardMgr");
+    m_aBusinessCardMgr = aBusinessCardMgr;
+  }
+
+  /**
+   * Split the provided text into lower case tokens, consisting of letters and
+   * digits only.
+   *
+   * @param sText
+   *        The text to split. May be <code>null</code>.
+   * @param aTarget
+   *        The set to add the tokens to. May not be <code>null</code>.
+   */
+  static void tokenize (@Nullable final String sText, @Nonnull final ICommonsSet <String> aTarget)
+  {
+    if (StringHelper.hasText (sText))
+    {
+      final String sLC = sText.toLowerCase (Locale.ROOT);
+      int nStart = -1;
+      for (int i = 0; i <= sLC.length (); ++i)
+      {
+        final boolean bPartOfToken = i < sLC.length () && Character.isLetterOrDigit (sLC.charAt (i));
+        if (bPartOfToken)
+        {
+          if (nStart < 0)
+            nStart = i;
+        }
+        else
+          if (nStart >= 0)
+          {
+            aTarget.add (sLC.substring (nStart, i));
+            nStart = -1;
+          }
+      }
+    }
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  private static ICommonsSet <String> _getAllTokens (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    final ICommonsSet <String> ret = new CommonsHashSet <> ();
+    tokenize (aBusinessCard.getServiceGroup ().getParticpantIdentifier ().getValue (), ret);
+    for (final SMPBusinessCardEntity aEntity : aBusinessCard.getAllEntities ())
+    {
+      for (final SMPBusinessCardName aName : aEntity.names ())
+        tokenize (aName.getName (), ret);
+      tokenize (aEntity.getCountryCode (), ret);
+      tokenize (aEntity.getGeographicalInformation (), ret);
+      for (final SMPBusinessCardIdentifier aIdentifier : aEntity.identifiers ())
+        tokenize (aIdentifier.getValue (), ret);
+    }
+    return ret;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  private static ICommonsSet <String> _getAllCountryCodes (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    final ICommonsSet <String> ret = new CommonsHashSet <> ();
+    for (final SMPBusinessCardEntity aEntity : aBusinessCard.getAllEntities ())
+      if (StringHelper.hasText (aEntity.getCountryCode ()))
+        ret.add (aEntity.getCountryCode ().toUpperCase (Locale.ROOT));
+    return ret;
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _remove (@Nonnull final String sID)
+  {
+    final ISMPBusinessCard aOld = m_aBusinessCards.remove (sID);
+    if (aOld != null)
+    {
+      for (final String sToken : _getAllTokens (aOld))
+      {
+        final ICommonsSet <String> aIDs = m_aTokens.get (sToken);
+        if (aIDs != null && aIDs.remove (sID) && aIDs.isEmpty ())
+          m_aTokens.remove (sToken);
+      }
+      for (final String sCountryCode : _getAllCountryCodes (aOld))
+      {
+        final ICommonsSet <String> aIDs = m_aCountries.get (sCountryCode);
+        if (aIDs != null && aIDs.remove (sID) && aIDs.isEmpty ())
+          m_aCountries.remove (sCountryCode);
+      }
+    }
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _add (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    final String sID = aBusinessCard.getID ();
+    _remove (sID);
+    m_aBusinessCards.put (sID, aBusinessCard);
+    for (final String sToken : _getAllTokens (aBusinessCard))
+      m_aTokens.computeIfAbsent (sToken, k -> new CommonsHashSet <> ()).add (sID);
+    for (final String sCountryCode : _getAllCountryCodes (aBusinessCard))
+      m_aCountries.computeIfAbsent (sCountryCode, k -> new CommonsHashSet <> ()).add (sID);
+  }
+
+  private void _loadIfNecessary ()
+  {
+    if (m_aRWLock.readLocked ( () -> m_bLoaded))
+      return;
+
+    // The write lock is held while loading, so that no callback gets lost
+    m_aRWLock.writeLocked ( () -> {
+      if (!m_bLoaded)
+      {
+        m_aBusinessCardMgr.forEachSMPBusinessCard (this::_add);
+        m_bLoaded = true;
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Indexed " + m_aBusinessCards.size () + " business cards with " + m_aTokens.size () + " tokens");
+      }
+    });
+  }
+
+  /**
+   * @return The number of indexed business cards. Triggers the initial load if
+   *         necessary. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getBusinessCardCount ()
+  {
+    _loadIfNecessary ();
+    return m_aRWLock.readLocked ( () -> m_aBusinessCards.size ());
+  }
+
+  @GuardedBy ("m_aRWLock")
+  @Nullable
+  private ICommonsSet <String> _getAllMatchingIDs (@Nonnull final ICommonsSet <String> aQueryTokens,
+                                                   @Nullable final String sCountryCode)
+  {
+    // Determine the candidates per criterion, smallest first
+    final ICommonsList <ICommonsSet <String>> aCandidates = new CommonsArrayList <> ();
+    if (StringHelper.hasText (sCountryCode))
+      aCandidates.add (m_aCountries.getOrDefault (sCountryCode.toUpperCase (Locale.ROOT), new CommonsHashSet <> ()));
+    for (final String sQueryToken : aQueryTokens)
+    {
+      // All tokens starting with the query token
+      final ICommonsSet <String> aIDs = new CommonsHashSet <> ();
+      for (final ICommonsSet <String> aTokenIDs : m_aTokens.subMap (sQueryToken, true, sQueryToken + Character.MAX_VALUE, false)
+                                                           .values ())
+        aIDs.addAll (aTokenIDs);
+      aCandidates.add (aIDs);
+    }
+    if (aCandidates.isEmpty ())
+    {
+      // No criteria - everything matches
+      return null;
+    }
+    aCandidates.sort ( (x, y) -> Integer.compare (x.size (), y.size ()));
+
+    final ICommonsSet <String> ret = aCandidates.getFirst ().getClone ();
+    for (int i = 1; i < aCandidates.size () && ret.isNotEmpty (); ++i)
+      ret.retainAll (aCandidates.get (i));
+    return ret;
+  }
+
+  /**
+   * Search for business cards.
+   *
+   * @param sQuery
+   *        The free text query. Each token of the query is used as a prefix. May
+   *        be <code>null</code>.
+   * @param sCountryCode
+   *        The country code at least one entity of the business card must have.
+   *        May be <code>null</code>.
+   * @param nOffset
+   *        The 0-based index of the first result to return. Must be &ge; 0.
+   * @param nMaxCount
+   *        The maximum number of results to return. Must be &gt; 0.
+   * @return The requested page of business cards, ordered by service group ID.
+   *         Never <code>null</code>. If neither a query nor a country code is
+   *         provided, all business cards are returned.
+   */
+  @Nonnull
+  public SMPBusinessCardSearchResult search (@Nullable final String sQuery,
+                                             @Nullable final String sCountryCode,
+                                             @Nonnegative final int nOffset,
+                                             @Nonnegative final int nMaxCount)
+  {
+    ValueEnforcer.isGE0 (nOffset, "Offset");
+    ValueEnforcer.isGT0 (nMaxCount, "MaxCount");
+
+    final ICommonsSet <String> aQueryTokens = new CommonsHashSet <> ();
+    tokenize (sQuery, aQueryTokens);
+
+    _loadIfNecessary ();
+    return m_aRWLock.readLocked ( () -> {
+      final ICommonsSet <String> aMatchingIDs = _getAllMatchingIDs (aQueryTokens, sCountryCode);
+      final ICommonsList <ISMPBusinessCard> aPage = new CommonsArrayList <> ();
+      final int nTotalCount;
+      if (aMatchingIDs == null)
+      {
+        nTotalCount = m_aBusinessCards.size ();
+        m_aBusinessCards.values ().stream ().skip (nOffset).limit (nMaxCount).forEach (aPage::add);
+      }
+      else
+      {
+        nTotalCount = aMatchingIDs.size ();
+        if (nOffset < nTotalCount)
+        {
+          final ICommonsList <String> aSortedIDs = aMatchingIDs.getSorted (String::compareTo);
+          final int nEnd = Math.min (nTotalCount, nOffset + nMaxCount);
+          for (int i = nOffset; i < nEnd; ++i)
+            aPage.add (m_aBusinessCards.get (aSortedIDs.get (i)));
+        }
+      }
+      return new SMPBusinessCardSearchResult (nTotalCount, nOffset, aPage);
+    });
+  }
+
+  /**
+   * Discard the complete index, so that it is rebuilt from the manager upon
+   * the next query.
+   */
+  public void reset ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      m_aBusinessCards.clear ();
+      m_aTokens.clear ();
+      m_aCountries.clear ();
+      m_bLoaded = false;
+    });
+  }
+
+  public void onCreateOrUpdateSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    // Nothing to do, if not yet loaded
+    m_aRWLock.writeLocked ( () -> {
+      if (m_bLoaded)
+        _add (aBusinessCard);
+    });
+  }
+
+  public void onDeleteSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      if (m_bLoaded)
+        _remove (aBusinessCard.getID ());
+    });
+  }
+}
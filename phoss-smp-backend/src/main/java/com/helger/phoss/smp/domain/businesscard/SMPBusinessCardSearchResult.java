@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single page of business cards found by the
+ * {@link SMPBusinessCardSearchIndex}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPBusinessCardSearchResult
+{
+  private final int m_nTotalCount;
+  private final int m_nOffset;
+  private final ICommonsList <ISMPBusinessCard> m_aBusinessCards;
+
+  public SMPBusinessCardSearchResult (@Nonnegative final int nTotalCount,
+                                      @Nonnegative final int nOffset,
+                                      @Nonnull final ICommonsList <ISMPBusinessCard> aBusinessCards)
+  {
+    ValueEnforcer.isGE0 (nTotalCount, "TotalCount");
+    ValueEnforcer.isGE0 (nOffset, "Offset");
+    ValueEnforcer.notNull (aBusinessCards, "BusinessCards");
+    m_nTotalCount = nTotalCount;
+    m_nOffset = nOffset;
+    m_aBusinessCards = aBusinessCards;
+  }
+
+  /**
+   * @return The number of all business cards matching the query, independent
+   *         of the page. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getTotalCount ()
+  {
+    return m_nTotalCount;
+  }
+
+  /**
+   * @return The 0-based index of the first result of this page within all
+   *         results. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getOffset ()
+  {
+    return m_nOffset;
+  }
+
+  /**
+   * @return The business cards of this page, ordered by service group ID.
+   *         Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPBusinessCard> getAllBusinessCards ()
+  {
+    return m_aBusinessCards.getClone ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("TotalCount", m_nTotalCount)
+                                       .append ("Offset", m_nOffset)
+                                       .append ("BusinessCards", m_aBusinessCards)
+                                       .getToString ();
+  }
+}
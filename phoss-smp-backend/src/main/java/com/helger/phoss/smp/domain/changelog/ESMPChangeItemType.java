@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The types of items tracked in the {@link SMPChangeLogManager}. The IDs are
+ * identical to the element names used in the exchange format.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public enum ESMPChangeItemType implements IHasID <String>
+{
+  SERVICE_GROUP ("servicegroup"),
+  SERVICE_INFORMATION ("serviceinfo"),
+  REDIRECT ("redirect"),
+  BUSINESS_CARD ("businesscard");
+
+  private final String m_sID;
+
+  private ESMPChangeItemType (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static ESMPChangeItemType getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ESMPChangeItemType.class, sID);
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import java.io.Serializable;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+
+/**
+ * Read-only interface for a single entry of the {@link SMPChangeLogManager}.
+ * There is at most one entry per item, that contains the sequence number of
+ * the last change.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public interface ISMPChangeLogEntry extends IHasID <String>, Serializable
+{
+  /**
+   * @return The sequence number of the last change of this item. Always &gt;
+   *         0.
+   */
+  @Nonnegative
+  long getSequence ();
+
+  /**
+   * @return The type of the changed item. Never <code>null</code>.
+   */
+  @Nonnull
+  ESMPChangeItemType getItemType ();
+
+  /**
+   * @return The ID of the service group the changed item belongs to. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  String getServiceGroupID ();
+
+  /**
+   * @return The URI encoded document type identifier for service information
+   *         and redirects, <code>null</code> for service groups and business
+   *         cards.
+   */
+  @Nullable
+  String getDocumentTypeID ();
+
+  /**
+   * @return <code>true</code> if the item was deleted (tombstone),
+   *         <code>false</code> if it was created or updated.
+   */
+  boolean isDeleted ();
+
+  /**
+   * @return The time of the last change in milliseconds since the epoch.
+   */
+  long getChangeMS ();
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Default implementation of {@link ISMPChangeLogEntry}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPChangeLogEntry implements ISMPChangeLogEntry
+{
+  private final String m_sID;
+  private final long m_nSequence;
+  private final ESMPChangeItemType m_eItemType;
+  private final String m_sServiceGroupID;
+  private final String m_sDocumentTypeID;
+  private final boolean m_bDeleted;
+  private final long m_nChangeMS;
+
+  public SMPChangeLogEntry (@Nonnegative final long nSequence,
+                            @Nonnull final ESMPChangeItemType eItemType,
+                            @Nonnull @Nonempty final String sServiceGroupID,
+                            @Nullable final String sDocumentTypeID,
+                            final boolean bDeleted,
+                            final long nChangeMS)
+  {
+    ValueEnforcer.isGT0 (nSequence, "Sequence");
+    ValueEnforcer.notNull (eItemType, "ItemType");
+    ValueEnforcer.notEmpty (sServiceGroupID, "ServiceGroupID");
+    m_sID = createID (eItemType, sServiceGroupID, sDocumentTypeID);
+    m_nSequence = nSequence;
+    m_eItemType = eItemType;
+    m_sServiceGroupID = sServiceGroupID;
+    m_sDocumentTypeID = sDocumentTypeID;
+    m_bDeleted = bDeleted;
+    m_nChangeMS = nChangeMS;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nonnegative
+  public long getSequence ()
+  {
+    return m_nSequence;
+  }
+
+  @Nonnull
+  public ESMPChangeItemType getItemType ()
+  {
+    return m_eItemType;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getServiceGroupID ()
+  {
+    return m_sServiceGroupID;
+  }
+
+  @Nullable
+  public String getDocumentTypeID ()
+  {
+    return m_sDocumentTypeID;
+  }
+
+  public boolean isDeleted ()
+  {
+    return m_bDeleted;
+  }
+
+  public long getChangeMS ()
+  {
+    return m_nChangeMS;
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+
+    final SMPChangeLogEntry rhs = (SMPChangeLogEntry) o;
+    return m_sID.equals (rhs.m_sID) &&
+           m_nSequence == rhs.m_nSequence &&
+           m_bDeleted == rhs.m_bDeleted &&
+           m_nChangeMS == rhs.m_nChangeMS &&
+           EqualsHelper.equals (m_sDocumentTypeID, rhs.m_sDocumentTypeID);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_sID)
+                                       .append (m_nSequence)
+                                       .append (m_bDeleted)
+                                       .append (m_nChangeMS)
+                                       .append (m_sDocumentTypeID)
+                                       .getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ID", m_sID)
+                                       .append ("Sequence", m_nSequence)
+                                       .append ("ItemType", m_eItemType)
+                                       .append ("ServiceGroupID", m_sServiceGroupID)
+                                       .appendIfNotNull ("DocumentTypeID", m_sDocumentTypeID)
+                                       .append ("Deleted", m_bDeleted)
+                                       .append ("ChangeMS", m_nChangeMS)
+                                       .getToString ();
+  }
+
+  /**
+   * Create the unique ID of a change log entry.
+   *
+   * @param eItemType
+   *        The item type. May not be <code>null</code>.
+   * @param sServiceGroupID
+   *        The service group ID. May neither be <code>null</code> nor empty.
+   * @param sDocumentTypeID
+   *        The URI encoded document type ID. May be <code>null</code>.
+   * @return The ID. Never <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public static String createID (@Nonnull final ESMPChangeItemType eItemType,
+                                 @Nonnull @Nonempty final String sServiceGroupID,
+                                 @Nullable final String sDocumentTypeID)
+  {
+    // URI encoded identifiers contain no spaces
+    final String ret = eItemType.getID () + ' ' + sServiceGroupID;
+    return sDocumentTypeID == null ? ret : ret + ' ' + sDocumentTypeID;
+  }
+}
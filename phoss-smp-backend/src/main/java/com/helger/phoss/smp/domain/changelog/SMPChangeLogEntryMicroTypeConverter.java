@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.StringParser;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroElement;
+import com.helger.xml.microdom.convert.IMicroTypeConverter;
+
+/**
+ * This class is internally used to convert {@link SMPChangeLogEntry} from and
+ * to XML.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class SMPChangeLogEntryMicroTypeConverter implements IMicroTypeConverter <SMPChangeLogEntry>
+{
+  private static final String ATTR_SEQUENCE = "sequence";
+  private static final String ATTR_ITEM_TYPE = "itemtype";
+  private static final String ATTR_SERVICE_GROUP_ID = "servicegroupid";
+  private static final String ATTR_DOCUMENT_TYPE_ID = "doctypeid";
+  private static final String ATTR_DELETED = "deleted";
+  private static final String ATTR_CHANGE_MS = "changems";
+
+  @Nonnull
+  public IMicroElement convertToMicroElement (@Nonnull final SMPChangeLogEntry aValue,
+                                              @Nullable final String sNamespaceURI,
+                                              @Nonnull @Nonempty final String sTagName)
+  {
+    final IMicroElement aElement = new MicroElement (sNamespaceURI, sTagName);
+    aElement.setAttribute (ATTR_SEQUENCE, aValue.getSequence ());
+    aElement.setAttribute (ATTR_ITEM_TYPE, aValue.getItemType ().getID ());
+    aElement.setAttribute (ATTR_SERVICE_GROUP_ID, aValue.getServiceGroupID ());
+    aElement.setAttribute (ATTR_DOCUMENT_TYPE_ID, aValue.getDocumentTypeID ());
+    if (aValue.isDeleted ())
+      aElement.setAttribute (ATTR_DELETED, true);
+    aElement.setAttribute (ATTR_CHANGE_MS, aValue.getChangeMS ());
+    return aElement;
+  }
+
+  @Nonnull
+  public SMPChangeLogEntry convertToNative (@Nonnull final IMicroElement aElement)
+  {
+    final String sItemType = aElement.getAttributeValue (ATTR_ITEM_TYPE);
+    final ESMPChangeItemType eItemType = ESMPChangeItemType.getFromIDOrNull (sItemType);
+    if (eItemType == null)
+      throw new IllegalStateException ("Failed to resolve change item type '" + sItemType + "'");
+
+    return new SMPChangeLogEntry (StringParser.parseLong (aElement.getAttributeValue (ATTR_SEQUENCE), 0),
+                                  eItemType,
+                                  aElement.getAttributeValue (ATTR_SERVICE_GROUP_ID),
+                                  aElement.getAttributeValue (ATTR_DOCUMENT_TYPE_ID),
+                                  StringParser.parseBool (aElement.getAttributeValue (ATTR_DELETED), false),
+                                  StringParser.parseLong (aElement.getAttributeValue (ATTR_CHANGE_MS), 0));
+  }
+}
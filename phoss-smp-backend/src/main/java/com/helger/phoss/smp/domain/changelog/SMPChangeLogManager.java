@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ELockType;
+import com.helger.commons.annotation.IsLocked;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.io.file.FileOperationManager;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.state.ESuccess;
+import com.helger.dao.DAOException;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectCallback;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.photon.app.dao.AbstractPhotonMapBasedWALDAO;
+import com.helger.photon.app.io.WebFileIO;
+
+/**
+ * Tracks the changes of service groups, service information, redirects and
+ * business cards with a monotonically increasing sequence number. It is
+ * registered as callback at the managers, so it works the same for all
+ * backends. There is one entry per item, that is updated with every change.
+ * Deleted items are kept as tombstones, so that consumers of the change feed
+ * also see the deletions. If a service group is deleted, all items of that
+ * service group become tombstones as well.<br>
+ * The entries are stored in a separate file in the data directory, per
+ * backend. A marker file next to it states that the change log contains all
+ * items of the backend. If it is missing (e.g. because the change log was
+ * disabled in between or the initial fill was interrupted), the change log
+ * needs to be filled again via
+ * {@link #initialFill(ISMPServiceGroupManager, ISMPServiceInformationManager, ISMPRedirectManager, ISMPBusinessCardManager)}.<br>
+ * Note: the sequence is maintained locally by this node. The change log only
+ * contains the changes performed on this node, so it is not suitable for
+ * multiple nodes sharing the same SQL or MongoDB database.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class SMPChangeLogManager extends AbstractPhotonMapBasedWALDAO <ISMPChangeLogEntry, SMPChangeLogEntry>
+                                       implements
+                                       ISMPServiceGroupCallback,
+                                       ISMPServiceInformationCallback,
+                                       ISMPRedirectCallback,
+                                       ISMPBusinessCardCallback
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPChangeLogManager.class);
+
+  private final String m_sFilename;
+  private long m_nLastSequence;
+  // All entries by their sequence
+  private final NavigableMap <Long, SMPChangeLogEntry> m_aBySequence = new TreeMap <> ();
+  // The IDs of all entries of a service group that are not service groups and
+  // not deleted
+  private final ICommonsMap <String, ICommonsSet <String>> m_aChildIDsByServiceGroup = new CommonsHashMap <> ();
+
+  public SMPChangeLogManager (@Nonnull @Nonempty final String sFilename) throws DAOException
+  {
+    super (SMPChangeLogEntry.class, sFilename);
+    m_sFilename = sFilename;
+    m_aRWLock.writeLocked ( () -> internalForEachValue (x -> {
+      // Tombstones are never removed, so the sequence can be restored
+      m_nLastSequence = Math.max (m_nLastSequence, x.getSequence ());
+      _index (x);
+    }));
+  }
+
+  @Nonnull
+  private static File _getFillMarkerFile (@Nonnull @Nonempty final String sFilename)
+  {
+    return WebFileIO.getDataIO ().getFile (sFilename + ".filled");
+  }
+
+  /**
+   * Mark the change log with the provided filename as incomplete, so that it
+   * is filled again, the next time it is used. This must be called while the
+   * change log is disabled, as changes are not tracked then.
+   *
+   * @param sFilename
+   *        The filename of the change log. May neither be <code>null</code>
+   *        nor empty.
+   */
+  public static void markIncomplete (@Nonnull @Nonempty final String sFilename)
+  {
+    ValueEnforcer.notEmpty (sFilename, "Filename");
+    final File aMarkerFile = _getFillMarkerFile (sFilename);
+    if (aMarkerFile.exists ())
+    {
+      LOGGER.info ("Marking the change log '" + sFilename + "' as incomplete");
+      FileOperationManager.INSTANCE.deleteFileIfExisting (aMarkerFile);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the change log contains all items of the
+   *         backend, <code>false</code> if
+   *         {@link #initialFill(ISMPServiceGroupManager, ISMPServiceInformationManager, ISMPRedirectManager, ISMPBusinessCardManager)}
+   *         needs to be called.
+   */
+  public boolean isFillCompleted ()
+  {
+    return _getFillMarkerFile (m_sFilename).exists ();
+  }
+
+  @IsLocked (ELockType.WRITE)
+  private void _index (@Nonnull final SMPChangeLogEntry aEntry)
+  {
+    m_aBySequence.put (Long.valueOf (aEntry.getSequence ()), aEntry);
+    if (aEntry.getItemType () != ESMPChangeItemType.SERVICE_GROUP)
+    {
+      if (aEntry.isDeleted ())
+      {
+        final ICommonsSet <String> aIDs = m_aChildIDsByServiceGroup.get (aEntry.getServiceGroupID ());
+        if (aIDs != null)
+        {
+          aIDs.remove (aEntry.getID ());
+          if (aIDs.isEmpty ())
+            m_aChildIDsByServiceGroup.remove (aEntry.getServiceGroupID ());
+        }
+      }
+      else
+        m_aChildIDsByServiceGroup.computeIfAbsent (aEntry.getServiceGroupID (), k -> new CommonsHashSet <> ())
+                                 .add (aEntry.getID ());
+    }
+  }
+
+  /**
+   * @return The sequence number of the last change. 0 if no change was
+   *         recorded yet.
+   */
+  @Nonnegative
+  public long getLastSequence ()
+  {
+    return m_aRWLock.readLocked ( () -> m_nLastSequence);
+  }
+
+  @IsLocked (ELockType.WRITE)
+  private void _record (@Nonnull final ESMPChangeItemType eItemType,
+                        @Nonnull @Nonempty final String sServiceGroupID,
+                        @Nullable final String sDocumentTypeID,
+                        final boolean bDeleted)
+  {
+    final SMPChangeLogEntry aEntry = new SMPChangeLogEntry (++m_nLastSequence,
+                                                            eItemType,
+                                                            sServiceGroupID,
+                                                            sDocumentTypeID,
+                                                            bDeleted,
+                                                            PDTFactory.getCurrentMillis ());
+    final SMPChangeLogEntry aOld = internalGetOfID (aEntry.getID ());
+    if (aOld != null)
+    {
+      m_aBySequence.remove (Long.valueOf (aOld.getSequence ()));
+      internalUpdateItem (aEntry);
+    }
+    else
+      internalCreateItem (aEntry);
+    _index (aEntry);
+  }
+
+  private void _recordChange (@Nonnull final ESMPChangeItemType eItemType,
+                              @Nonnull @Nonempty final String sServiceGroupID,
+                              @Nullable final String sDocumentTypeID,
+                              final boolean bDeleted)
+  {
+    m_aRWLock.writeLocked ( () -> _record (eItemType, sServiceGroupID, sDocumentTypeID, bDeleted));
+  }
+
+  public void onSMPServiceGroupCreated (@Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    _recordChange (ESMPChangeItemType.SERVICE_GROUP, aServiceGroup.getID (), null, false);
+  }
+
+  public void onSMPServiceGroupUpdated (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    _recordChange (ESMPChangeItemType.SERVICE_GROUP, SMPServiceGroup.createSMPServiceGroupID (aParticipantID), null, false);
+  }
+
+  public void onSMPServiceGroupDeleted (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    final String sServiceGroupID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
+    m_aRWLock.writeLocked ( () -> {
+      // Not all backends invoke the callbacks for the implicitly deleted items
+      final ICommonsSet <String> aChildIDs = m_aChildIDsByServiceGroup.get (sServiceGroupID);
+      if (aChildIDs != null)
+        for (final String sChildID : new CommonsArrayList <> (aChildIDs))
+        {
+          final SMPChangeLogEntry aChild = internalGetOfID (sChildID);
+          _record (aChild.getItemType (), sServiceGroupID, aChild.getDocumentTypeID (), true);
+        }
+      _record (ESMPChangeItemType.SERVICE_GROUP, sServiceGroupID, null, true);
+    });
+  }
+
+  public void onSMPServiceInformationCreated (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _recordChange (ESMPChangeItemType.SERVICE_INFORMATION,
+                   aServiceInformation.getServiceGroupID (),
+                   aServiceInformation.getDocumentTypeIdentifier ().getURIEncoded (),
+                   false);
+  }
+
+  public void onSMPServiceInformationUpdated (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    onSMPServiceInformationCreated (aServiceInformation);
+  }
+
+  public void onSMPServiceInformationDeleted (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _recordChange (ESMPChangeItemType.SERVICE_INFORMATION,
+                   aServiceInformation.getServiceGroupID (),
+                   aServiceInformation.getDocumentTypeIdentifier ().getURIEncoded (),
+                   true);
+  }
+
+  public void onSMPRedirectCreated (@Nonnull final ISMPRedirect aRedirect)
+  {
+    _recordChange (ESMPChangeItemType.REDIRECT,
+                   aRedirect.getServiceGroupID (),
+                   aRedirect.getDocumentTypeIdentifier ().getURIEncoded (),
+                   false);
+  }
+
+  public void onSMPRedirectUpdated (@Nonnull final ISMPRedirect aRedirect)
+  {
+    onSMPRedirectCreated (aRedirect);
+  }
+
+  public void onSMPRedirectDeleted (@Nonnull final ISMPRedirect aRedirect)
+  {
+    _recordChange (ESMPChangeItemType.REDIRECT,
+                   aRedirect.getServiceGroupID (),
+                   aRedirect.getDocumentTypeIdentifier ().getURIEncoded (),
+                   true);
+  }
+
+  public void onCreateOrUpdateSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    _recordChange (ESMPChangeItemType.BUSINESS_CARD, aBusinessCard.getServiceGroupID (), null, false);
+  }
+
+  public void onDeleteSMPBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    _recordChange (ESMPChangeItemType.BUSINESS_CARD, aBusinessCard.getServiceGroupID (), null, true);
+  }
+
+  /**
+   * Record all existing items as changed and all items that no longer exist
+   * as deleted. This is used when the change log is created or was marked
+   * incomplete, so that a change feed starting at sequence 0 contains the
+   * complete data and consumers at an older sequence see all changes they may
+   * have missed. Only if all items could be read, the change log is marked as
+   * complete.
+   *
+   * @param aServiceGroupMgr
+   *        Service group manager. May not be <code>null</code>.
+   * @param aServiceInfoMgr
+   *        Service information manager. May not be <code>null</code>.
+   * @param aRedirectMgr
+   *        Redirect manager. May not be <code>null</code>.
+   * @param aBusinessCardMgr
+   *        Business card manager. May be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if not all items could be read.
+   */
+  @Nonnull
+  public ESuccess initialFill (@Nonnull final ISMPServiceGroupManager aServiceGroupMgr,
+                               @Nonnull final ISMPServiceInformationManager aServiceInfoMgr,
+                               @Nonnull final ISMPRedirectManager aRedirectMgr,
+                               @Nullable final ISMPBusinessCardManager aBusinessCardMgr)
+  {
+    ValueEnforcer.notNull (aServiceGroupMgr, "ServiceGroupMgr");
+    ValueEnforcer.notNull (aServiceInfoMgr, "ServiceInfoMgr");
+    ValueEnforcer.notNull (aRedirectMgr, "RedirectMgr");
+
+    // In case the fill is interrupted
+    markIncomplete (m_sFilename);
+
+    final long nFirstSequence = getLastSequence () + 1;
+    final ICommonsSet <String> aExistingIDs = new CommonsHashSet <> ();
+    if (aServiceGroupMgr.forEachSMPServiceGroup (x -> {
+      onSMPServiceGroupCreated (x);
+      aExistingIDs.add (SMPChangeLogEntry.createID (ESMPChangeItemType.SERVICE_GROUP, x.getID (), null));
+    }).isFailure ())
+    {
+      LOGGER.error ("Failed to read all service groups for the change log");
+      return ESuccess.FAILURE;
+    }
+    if (aServiceInfoMgr.forEachSMPServiceInformation (x -> {
+      onSMPServiceInformationCreated (x);
+      aExistingIDs.add (SMPChangeLogEntry.createID (ESMPChangeItemType.SERVICE_INFORMATION,
+                                                    x.getServiceGroupID (),
+                                                    x.getDocumentTypeIdentifier ().getURIEncoded ()));
+    }).isFailure ())
+    {
+      LOGGER.error ("Failed to read all service information for the change log");
+      return ESuccess.FAILURE;
+    }
+    for (final ISMPRedirect aRedirect : aRedirectMgr.getAllSMPRedirects ())
+    {
+      onSMPRedirectCreated (aRedirect);
+      aExistingIDs.add (SMPChangeLogEntry.createID (ESMPChangeItemType.REDIRECT,
+                                                    aRedirect.getServiceGroupID (),
+                                                    aRedirect.getDocumentTypeIdentifier ().getURIEncoded ()));
+    }
+    if (aBusinessCardMgr != null)
+      aBusinessCardMgr.forEachSMPBusinessCard (x -> {
+        onCreateOrUpdateSMPBusinessCard (x);
+        aExistingIDs.add (SMPChangeLogEntry.createID (ESMPChangeItemType.BUSINESS_CARD, x.getServiceGroupID (), null));
+      });
+
+    // Everything else was deleted while the changes were not tracked
+    final int nDeleted = m_aRWLock.writeLocked ( () -> {
+      final ICommonsList <SMPChangeLogEntry> aGone = internalGetAll (x -> !x.isDeleted () &&
+                                                                           x.getSequence () < nFirstSequence &&
+                                                                           !aExistingIDs.contains (x.getID ()));
+      for (final SMPChangeLogEntry aEntry : aGone)
+        _record (aEntry.getItemType (), aEntry.getServiceGroupID (), aEntry.getDocumentTypeID (), true);
+      return aGone.size ();
+    });
+
+    final long nLastSequence = getLastSequence ();
+    if (SimpleFileIO.writeFile (_getFillMarkerFile (m_sFilename),
+                                Long.toString (nLastSequence),
+                                StandardCharsets.UTF_8)
+                    .isFailure ())
+    {
+      LOGGER.error ("Failed to mark the change log '" + m_sFilename + "' as complete");
+      return ESuccess.FAILURE;
+    }
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Filled the change log with " +
+                   (nLastSequence - nFirstSequence + 1 - nDeleted) +
+                   " existing and " +
+                   nDeleted +
+                   " deleted items");
+    return ESuccess.SUCCESS;
+  }
+
+  /**
+   * Get all entries changed after the provided sequence number, ordered by
+   * sequence.
+   *
+   * @param nSequence
+   *        The last sequence number already known by the caller. Use 0 to get
+   *        all entries.
+   * @param nMaxCount
+   *        The maximum number of entries to return. Must be &gt; 0.
+   * @return A non-<code>null</code> but maybe empty list.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPChangeLogEntry> getAllChangesSince (final long nSequence, @Nonnegative final int nMaxCount)
+  {
+    ValueEnforcer.isGT0 (nMaxCount, "MaxCount");
+
+    return m_aRWLock.readLocked ( () -> {
+      final ICommonsList <ISMPChangeLogEntry> ret = new CommonsArrayList <> ();
+      for (final Map.Entry <Long, SMPChangeLogEntry> aItem : m_aBySequence.tailMap (Long.valueOf (nSequence), false)
+                                                                         .entrySet ())
+      {
+        ret.add (aItem.getValue ());
+        if (ret.size () >= nMaxCount)
+          break;
+      }
+      return ret;
+    });
+  }
+}
@@ -11,6 +11,7 @@
 package com.helger.phoss.smp.domain.redirect;
 
 import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -132,4 +133,34 @@ public interface ISMPRedirectManager
   @Nullable
   ISMPRedirect getSMPRedirectOfServiceGroupAndDocumentType (@Nullable ISMPServiceGroup aServiceGroup,
                                                             @Nullable IDocumentTypeIdentifier aDocTypeID);
+
+  /**
+   * Asynchronous version of
+   * {@link #getSMPRedirectOfServiceGroupAndDocumentType(ISMPServiceGroup, IDocumentTypeIdentifier)}.
+   * The default implementation performs the synchronous lookup in the calling
+   * thread. Backends with a non-blocking driver should override this method.
+   *
+   * @param aServiceGroup
+   *        The service group to query. May be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type to query. May be <code>null</code>.
+   * @return The future that is completed with the redirect or with
+   *         <code>null</code>. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  default CompletableFuture <ISMPRedirect> getSMPRedirectOfServiceGroupAndDocumentTypeAsync (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                                                            @Nullable final IDocumentTypeIdentifier aDocTypeID)
+  {
+    final CompletableFuture <ISMPRedirect> ret = new CompletableFuture <> ();
+    try
+    {
+      ret.complete (getSMPRedirectOfServiceGroupAndDocumentType (aServiceGroup, aDocTypeID));
+    }
+    catch (final RuntimeException ex)
+    {
+      ret.completeExceptionally (ex);
+    }
+    return ret;
+  }
 }
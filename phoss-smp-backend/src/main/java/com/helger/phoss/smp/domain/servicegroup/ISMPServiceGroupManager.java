@@ -10,16 +10,23 @@
  */
 package com.helger.phoss.smp.domain.servicegroup;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.state.EChange;
+import com.helger.commons.state.ESuccess;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
@@ -62,6 +69,46 @@ public interface ISMPServiceGroupManager extends ISMPServiceGroupProvider
                                           @Nonnull IParticipantIdentifier aParticipantIdentifier,
                                           @Nullable String sExtension) throws SMPServerException;
 
+  /**
+   * Create multiple service groups at once. Implementations may write them in
+   * fewer, larger transactions than {@link #createSMPServiceGroup(String,
+   * IParticipantIdentifier, String)} would do. The failure of a single service
+   * group does not stop the processing of the remaining ones. The default
+   * implementation simply creates one service group after the other.
+   *
+   * @param aServiceGroups
+   *        The service groups to be created. Owner ID, participant ID and
+   *        extension are taken from the objects. May not be <code>null</code>.
+   * @param aErrorHandler
+   *        The handler to be invoked for every service group that could not be
+   *        created. May be <code>null</code>.
+   * @return The list of successfully created service groups. Never
+   *         <code>null</code> but maybe empty.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <ISMPServiceGroup> createSMPServiceGroups (@Nonnull final Iterable <? extends ISMPServiceGroup> aServiceGroups,
+                                                                  @Nullable final BiConsumer <? super ISMPServiceGroup, ? super SMPServerException> aErrorHandler)
+  {
+    ValueEnforcer.notNull (aServiceGroups, "ServiceGroups");
+
+    final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aServiceGroup : aServiceGroups)
+      try
+      {
+        ret.add (createSMPServiceGroup (aServiceGroup.getOwnerID (),
+                                       aServiceGroup.getParticpantIdentifier (),
+                                       aServiceGroup.getExtensionsAsString ()));
+      }
+      catch (final SMPServerException ex)
+      {
+        if (aErrorHandler != null)
+          aErrorHandler.accept (aServiceGroup, ex);
+      }
+    return ret;
+  }
+
   /**
    * Update an existing service group. Note: the participant ID of a service
    * group cannot be changed.
@@ -152,6 +199,29 @@ public interface ISMPServiceGroupManager extends ISMPServiceGroupProvider
   @ReturnsMutableCopy
   ICommonsList <ISMPServiceGroup> getAllSMPServiceGroups ();
 
+  /**
+   * Invoke the provided consumer for every contained service group. In
+   * contrast to {@link #getAllSMPServiceGroups()} implementations may read the
+   * service groups page by page, so that they don't need to be in memory at
+   * the same time. The default implementation iterates
+   * {@link #getAllSMPServiceGroups()}.
+   *
+   * @param aConsumer
+   *        The consumer to be invoked. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if the iteration was aborted because of
+   *         an error. In that case the consumer was not invoked for all
+   *         service groups and the caller must not treat the result as
+   *         complete. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  default ESuccess forEachSMPServiceGroup (@Nonnull final Consumer <? super ISMPServiceGroup> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    getAllSMPServiceGroups ().forEach (aConsumer);
+    return ESuccess.SUCCESS;
+  }
+
   /**
    * Get all service groups that belong to the passed owner ID.
    *
@@ -190,4 +260,33 @@ public interface ISMPServiceGroupManager extends ISMPServiceGroupProvider
    */
   @Nonnegative
   long getSMPServiceGroupCount ();
+
+  /**
+   * Asynchronous version of
+   * {@link #getSMPServiceGroupOfID(IParticipantIdentifier)}. The default
+   * implementation performs the synchronous lookup in the calling thread.
+   * Backends with a non-blocking driver should override this method.
+   *
+   * @param aParticipantIdentifier
+   *        The participant identifier to search. May be <code>null</code>.
+   * @return The future that is completed with the service group or with
+   *         <code>null</code> if the participant identifier is
+   *         <code>null</code> or if it is not contained. Never
+   *         <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  default CompletableFuture <ISMPServiceGroup> getSMPServiceGroupOfIDAsync (@Nullable final IParticipantIdentifier aParticipantIdentifier)
+  {
+    final CompletableFuture <ISMPServiceGroup> ret = new CompletableFuture <> ();
+    try
+    {
+      ret.complete (getSMPServiceGroupOfID (aParticipantIdentifier));
+    }
+    catch (final RuntimeException ex)
+    {
+      ret.completeExceptionally (ex);
+    }
+    return ret;
+  }
 }
@@ -10,13 +10,18 @@
  */
 package com.helger.phoss.smp.domain.serviceinfo;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
@@ -53,6 +58,33 @@ public interface ISMPServiceInformationManager
   @Nonnull
   ESuccess mergeSMPServiceInformation (@Nonnull ISMPServiceInformation aServiceInformation);
 
+  /**
+   * Create or update multiple SMP service information objects at once.
+   * Implementations may write them in fewer, larger transactions than
+   * {@link #mergeSMPServiceInformation(ISMPServiceInformation)} would do. The
+   * failure of a single object does not stop the processing of the remaining
+   * ones. The default implementation simply merges one object after the other.
+   *
+   * @param aServiceInformations
+   *        The service information objects to handle. May not be
+   *        <code>null</code>.
+   * @return The list of all successfully merged service information objects.
+   *         Never <code>null</code> but maybe empty.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <ISMPServiceInformation> mergeSMPServiceInformations (@Nonnull final Iterable <? extends ISMPServiceInformation> aServiceInformations)
+  {
+    ValueEnforcer.notNull (aServiceInformations, "ServiceInformations");
+
+    final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
+    for (final ISMPServiceInformation aServiceInformation : aServiceInformations)
+      if (mergeSMPServiceInformation (aServiceInformation).isSuccess ())
+        ret.add (aServiceInformation);
+    return ret;
+  }
+
   /**
    * Find the service information matching the passed quadruple of parameters.
    * If one of the parameters is <code>null</code> no match should be found and
@@ -131,6 +163,29 @@ public interface ISMPServiceInformationManager
   @ReturnsMutableCopy
   ICommonsList <ISMPServiceInformation> getAllSMPServiceInformation ();
 
+  /**
+   * Invoke the provided consumer for every contained service information. In
+   * contrast to {@link #getAllSMPServiceInformation()} implementations may read
+   * the service information objects page by page, so that they don't need to be
+   * in memory at the same time. The default implementation iterates
+   * {@link #getAllSMPServiceInformation()}.
+   *
+   * @param aConsumer
+   *        The consumer to be invoked. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if the iteration was aborted because of
+   *         an error. In that case the consumer was not invoked for all
+   *         service information objects and the caller must not treat the
+   *         result as complete. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  default ESuccess forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    getAllSMPServiceInformation ().forEach (aConsumer);
+    return ESuccess.SUCCESS;
+  }
+
   /**
    * @return The count of all service information objects. Always &ge; 0.
    */
@@ -186,4 +241,34 @@ public interface ISMPServiceInformationManager
   @Nullable
   ISMPServiceInformation getSMPServiceInformationOfServiceGroupAndDocumentType (@Nullable ISMPServiceGroup aServiceGroup,
                                                                                 @Nullable IDocumentTypeIdentifier aDocumentTypeIdentifier);
+
+  /**
+   * Asynchronous version of
+   * {@link #getSMPServiceInformationOfServiceGroupAndDocumentType(ISMPServiceGroup, IDocumentTypeIdentifier)}.
+   * The default implementation performs the synchronous lookup in the calling
+   * thread. Backends with a non-blocking driver should override this method.
+   *
+   * @param aServiceGroup
+   *        The service group of interest. May be <code>null</code>.
+   * @param aDocumentTypeIdentifier
+   *        The document type identifier to search. May be <code>null</code>.
+   * @return The future that is completed with the service information or with
+   *         <code>null</code>. Never <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  default CompletableFuture <ISMPServiceInformation> getSMPServiceInformationOfServiceGroupAndDocumentTypeAsync (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                                                                               @Nullable final IDocumentTypeIdentifier aDocumentTypeIdentifier)
+  {
+    final CompletableFuture <ISMPServiceInformation> ret = new CompletableFuture <> ();
+    try
+    {
+      ret.complete (getSMPServiceInformationOfServiceGroupAndDocumentType (aServiceGroup, aDocumentTypeIdentifier));
+    }
+    catch (final RuntimeException ex)
+    {
+      ret.completeExceptionally (ex);
+    }
+    return ret;
+  }
 }
@@ -12,6 +12,8 @@ package com.helger.phoss.smp.restapi;
 
 import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.annotation.Nonnull;
 
@@ -86,6 +88,20 @@ public final class SMPServerAPI
     m_aAPIProvider = ValueEnforcer.notNull (aDataProvider, "DataProvider");
   }
 
+  @Nonnull
+  private SMPServiceRegistrationLookup <SignedServiceMetadataType> _createServiceRegistrationLookup ()
+  {
+    return new SMPServiceRegistrationLookup <> (m_aAPIProvider, aRedirect -> {
+      final SignedServiceMetadataType ret = new SignedServiceMetadataType ();
+      ret.setServiceMetadata (aRedirect.getAsJAXBObjectPeppol ());
+      return ret;
+    }, aServiceInfo -> {
+      final SignedServiceMetadataType ret = new SignedServiceMetadataType ();
+      ret.setServiceMetadata (aServiceInfo.getAsJAXBObjectPeppol ());
+      return ret;
+    });
+  }
+
   @Nonnull
   public CompleteServiceGroupType getCompleteServiceGroup (final String sServiceGroupID) throws SMPServerException
   {
@@ -404,57 +420,8 @@ public final class SMPServerAPI
 
     try
     {
-      final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
-      final IParticipantIdentifier aServiceGroupID = aIdentifierFactory.parseParticipantIdentifier (sServiceGroupID);
-      if (aServiceGroupID == null)
-      {
-        // Invalid identifier
-        throw new SMPBadRequestException ("Failed to parse serviceGroup '" + sServiceGroupID + "'",
-                                          m_aAPIProvider.getCurrentURI ());
-      }
-
-      final ISMPServiceGroup aServiceGroup = SMPMetaManager.getServiceGroupMgr ()
-                                                           .getSMPServiceGroupOfID (aServiceGroupID);
-      if (aServiceGroup == null)
-      {
-        throw new SMPNotFoundException ("No such serviceGroup '" + sServiceGroupID + "'",
-                                        m_aAPIProvider.getCurrentURI ());
-      }
-
-      final IDocumentTypeIdentifier aDocTypeID = aIdentifierFactory.parseDocumentTypeIdentifier (sDocumentTypeID);
-      if (aDocTypeID == null)
-      {
-        throw new SMPBadRequestException ("Failed to parse documentTypeID '" + sServiceGroupID + "'",
-                                          m_aAPIProvider.getCurrentURI ());
-      }
-
-      // First check for redirection, then for actual service
-      final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
-      final ISMPRedirect aRedirect = aRedirectMgr.getSMPRedirectOfServiceGroupAndDocumentType (aServiceGroup,
-                                                                                               aDocTypeID);
-
-      final SignedServiceMetadataType aSignedServiceMetadata = new SignedServiceMetadataType ();
-      if (aRedirect != null)
-      {
-        aSignedServiceMetadata.setServiceMetadata (aRedirect.getAsJAXBObjectPeppol ());
-      }
-      else
-      {
-        // Get as regular service information
-        final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
-        final ISMPServiceInformation aServiceInfo = aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aServiceGroup,
-                                                                                                                           aDocTypeID);
-        if (aServiceInfo != null)
-        {
-          aSignedServiceMetadata.setServiceMetadata (aServiceInfo.getAsJAXBObjectPeppol ());
-        }
-        else
-        {
-          // Neither nor is present
-          throw new SMPNotFoundException ("service(" + sServiceGroupID + "," + sDocumentTypeID + ")",
-                                          m_aAPIProvider.getCurrentURI ());
-        }
-      }
+      final SignedServiceMetadataType aSignedServiceMetadata = _createServiceRegistrationLookup ().getServiceRegistration (sServiceGroupID,
+                                                                                                                         sDocumentTypeID);
 
       // Signature must be added by the rest service
 
@@ -472,6 +439,57 @@ public final class SMPServerAPI
     }
   }
 
+  /**
+   * Asynchronous version of {@link #getServiceRegistration(String, String)}
+   * that uses the asynchronous lookup methods of the managers. The signature
+   * must be added by the caller.
+   *
+   * @param sServiceGroupID
+   *        The service group ID from the URL. May not be <code>null</code>.
+   * @param sDocumentTypeID
+   *        The document type ID from the URL. May not be <code>null</code>.
+   * @return The future that is completed with the unsigned response or with an
+   *         {@link SMPServerException} (or any other exception). Never
+   *         <code>null</code>.
+   * @since 5.2.0
+   */
+  @Nonnull
+  public CompletableFuture <SignedServiceMetadataType> getServiceRegistrationAsync (@Nonnull final String sServiceGroupID,
+                                                                                   @Nonnull final String sDocumentTypeID)
+  {
+    final String sLog = LOG_PREFIX + "GET /" + sServiceGroupID + "/services/" + sDocumentTypeID;
+    final String sAction = "getServiceRegistration";
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info (sLog);
+    s_aStatsCounterInvocation.increment (sAction);
+
+    final CompletableFuture <SignedServiceMetadataType> ret = new CompletableFuture <> ();
+    _createServiceRegistrationLookup ().getServiceRegistrationAsync (sServiceGroupID, sDocumentTypeID)
+                                       .whenComplete ( (aSignedServiceMetadata, aThrowable) -> {
+                                         if (aThrowable == null)
+                                         {
+                                           // Signature must be added by the
+                                           // rest service
+                                           if (LOGGER.isInfoEnabled ())
+                                             LOGGER.info (sLog + " SUCCESS");
+                                           s_aStatsCounterSuccess.increment (sAction);
+                                           ret.complete (aSignedServiceMetadata);
+                                         }
+                                         else
+                                         {
+                                           final Throwable aCause = aThrowable instanceof CompletionException &&
+                                                                    aThrowable.getCause () != null ? aThrowable.getCause ()
+                                                                                                   : aThrowable;
+                                           if (LOGGER.isWarnEnabled ())
+                                             LOGGER.warn (sLog + " ERROR - " + aCause.getMessage ());
+                                           s_aStatsCounterError.increment (sAction);
+                                           ret.completeExceptionally (aCause);
+                                         }
+                                       });
+    return ret;
+  }
+
   @Nonnull
   public ESuccess saveServiceRegistration (@Nonnull final String sServiceGroupID,
                                            @Nonnull final String sDocumentTypeID,
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.restapi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.exception.SMPBadRequestException;
+import com.helger.phoss.smp.exception.SMPNotFoundException;
+import com.helger.phoss.smp.exception.SMPServerException;
+
+/**
+ * The lookup of a single service registration (redirect or service
+ * information) that is shared by the synchronous and the asynchronous variant
+ * of the PEPPOL and the BDXR REST API. Only the conversion of the domain object
+ * into the response object differs.
+ *
+ * @author Philip Helger
+ * @param <T>
+ *        The response type
+ * @since 5.2.0
+ */
+final class SMPServiceRegistrationLookup <T>
+{
+  private final ISMPServerAPIDataProvider m_aAPIProvider;
+  private final Function <? super ISMPRedirect, ? extends T> m_aRedirectConverter;
+  private final Function <? super ISMPServiceInformation, ? extends T> m_aServiceInfoConverter;
+
+  SMPServiceRegistrationLookup (@Nonnull final ISMPServerAPIDataProvider aAPIProvider,
+                                @Nonnull final Function <? super ISMPRedirect, ? extends T> aRedirectConverter,
+                                @Nonnull final Function <? super ISMPServiceInformation, ? extends T> aServiceInfoConverter)
+  {
+    ValueEnforcer.notNull (aAPIProvider, "APIProvider");
+    ValueEnforcer.notNull (aRedirectConverter, "RedirectConverter");
+    ValueEnforcer.notNull (aServiceInfoConverter, "ServiceInfoConverter");
+    m_aAPIProvider = aAPIProvider;
+    m_aRedirectConverter = aRedirectConverter;
+    m_aServiceInfoConverter = aServiceInfoConverter;
+  }
+
+  @Nonnull
+  private IParticipantIdentifier _parseServiceGroupID (@Nonnull final String sServiceGroupID) throws SMPBadRequestException
+  {
+    final IParticipantIdentifier aServiceGroupID = SMPMetaManager.getIdentifierFactory ()
+                                                                 .parseParticipantIdentifier (sServiceGroupID);
+    if (aServiceGroupID == null)
+    {
+      // Invalid identifier
+      throw new SMPBadRequestException ("Failed to parse serviceGroup '" + sServiceGroupID + "'",
+                                        m_aAPIProvider.getCurrentURI ());
+    }
+    return aServiceGroupID;
+  }
+
+  @Nonnull
+  private IDocumentTypeIdentifier _checkServiceGroupAndParseDocTypeID (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                                      @Nonnull final String sServiceGroupID,
+                                                                      @Nonnull final String sDocumentTypeID) throws SMPServerException
+  {
+    if (aServiceGroup == null)
+    {
+      throw new SMPNotFoundException ("No such serviceGroup '" + sServiceGroupID + "'",
+                                      m_aAPIProvider.getCurrentURI ());
+    }
+
+    final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
+    final IDocumentTypeIdentifier aDocTypeID = aIdentifierFactory.parseDocumentTypeIdentifier (sDocumentTypeID);
+    if (aDocTypeID == null)
+    {
+      throw new SMPBadRequestException ("Failed to parse documentTypeID '" + sServiceGroupID + "'",
+                                        m_aAPIProvider.getCurrentURI ());
+    }
+    return aDocTypeID;
+  }
+
+  @Nonnull
+  private T _convertServiceInfo (@Nullable final ISMPServiceInformation aServiceInfo,
+                                 @Nonnull final String sServiceGroupID,
+                                 @Nonnull final String sDocumentTypeID) throws SMPNotFoundException
+  {
+    if (aServiceInfo == null)
+    {
+      // Neither nor is present
+      throw new SMPNotFoundException ("service(" + sServiceGroupID + "," + sDocumentTypeID + ")",
+                                      m_aAPIProvider.getCurrentURI ());
+    }
+    return m_aServiceInfoConverter.apply (aServiceInfo);
+  }
+
+  /**
+   * Find the redirect or service information of the provided IDs.
+   *
+   * @param sServiceGroupID
+   *        The service group ID from the URL. May not be <code>null</code>.
+   * @param sDocumentTypeID
+   *        The document type ID from the URL. May not be <code>null</code>.
+   * @return The converted response object. Never <code>null</code>.
+   * @throws SMPServerException
+   *         If an ID is invalid or nothing was found
+   */
+  @Nonnull
+  T getServiceRegistration (@Nonnull final String sServiceGroupID,
+                            @Nonnull final String sDocumentTypeID) throws SMPServerException
+  {
+    final IParticipantIdentifier aServiceGroupID = _parseServiceGroupID (sServiceGroupID);
+    final ISMPServiceGroup aServiceGroup = SMPMetaManager.getServiceGroupMgr ()
+                                                         .getSMPServiceGroupOfID (aServiceGroupID);
+    final IDocumentTypeIdentifier aDocTypeID = _checkServiceGroupAndParseDocTypeID (aServiceGroup,
+                                                                                   sServiceGroupID,
+                                                                                   sDocumentTypeID);
+
+    // First check for redirection, then for actual service
+    final ISMPRedirect aRedirect = SMPMetaManager.getRedirectMgr ()
+                                                 .getSMPRedirectOfServiceGroupAndDocumentType (aServiceGroup,
+                                                                                               aDocTypeID);
+    if (aRedirect != null)
+      return m_aRedirectConverter.apply (aRedirect);
+
+    // Get as regular service information
+    final ISMPServiceInformation aServiceInfo = SMPMetaManager.getServiceInformationMgr ()
+                                                              .getSMPServiceInformationOfServiceGroupAndDocumentType (aServiceGroup,
+                                                                                                                      aDocTypeID);
+    return _convertServiceInfo (aServiceInfo, sServiceGroupID, sDocumentTypeID);
+  }
+
+  /**
+   * Asynchronous version of {@link #getServiceRegistration(String, String)}
+   * that uses the asynchronous lookup methods of the managers.
+   *
+   * @param sServiceGroupID
+   *        The service group ID from the URL. May not be <code>null</code>.
+   * @param sDocumentTypeID
+   *        The document type ID from the URL. May not be <code>null</code>.
+   * @return The future that is completed with the converted response object
+   *         or with a {@link CompletionException} wrapping the
+   *         {@link SMPServerException} (or any other exception). Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  CompletableFuture <T> getServiceRegistrationAsync (@Nonnull final String sServiceGroupID,
+                                                    @Nonnull final String sDocumentTypeID)
+  {
+    final IParticipantIdentifier aServiceGroupID;
+    try
+    {
+      aServiceGroupID = _parseServiceGroupID (sServiceGroupID);
+    }
+    catch (final SMPServerException ex)
+    {
+      final CompletableFuture <T> ret = new CompletableFuture <> ();
+      ret.completeExceptionally (ex);
+      return ret;
+    }
+
+    return SMPMetaManager.getServiceGroupMgr ()
+                         .getSMPServiceGroupOfIDAsync (aServiceGroupID)
+                         .thenCompose (aServiceGroup -> {
+                           final IDocumentTypeIdentifier aDocTypeID;
+                           try
+                           {
+                             aDocTypeID = _checkServiceGroupAndParseDocTypeID (aServiceGroup,
+                                                                               sServiceGroupID,
+                                                                               sDocumentTypeID);
+                           }
+                           catch (final SMPServerException ex)
+                           {
+                             throw new CompletionException (ex);
+                           }
+
+                           // First check for redirection, then for actual
+                           // service
+                           return SMPMetaManager.getRedirectMgr ()
+                                                .getSMPRedirectOfServiceGroupAndDocumentTypeAsync (aServiceGroup,
+                                                                                                   aDocTypeID)
+                                                .thenCompose (aRedirect -> {
+                                                  if (aRedirect != null)
+                                                    return CompletableFuture.<T> completedFuture (m_aRedirectConverter.apply (aRedirect));
+
+                                                  // Get as regular service
+                                                  // information
+                                                  return SMPMetaManager.getServiceInformationMgr ()
+                                                                       .getSMPServiceInformationOfServiceGroupAndDocumentTypeAsync (aServiceGroup,
+                                                                                                                                    aDocTypeID)
+                                                                       .thenApply (aServiceInfo -> {
+                                                                         try
+                                                                         {
+                                                                           return _convertServiceInfo (aServiceInfo,
+                                                                                                       sServiceGroupID,
+                                                                                                       sDocumentTypeID);
+                                                                         }
+                                                                         catch (final SMPServerException ex)
+                                                                         {
+                                                                           throw new CompletionException (ex);
+                                                                         }
+                                                                       });
+                                                });
+                         });
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The operations that can be queued in the {@link SMLOutbox}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public enum ESMLOutboxOperation implements IHasID <String>
+{
+  /** Register a participant in the SML */
+  CREATE ("create"),
+  /** Remove a participant from the SML */
+  DELETE ("delete");
+
+  private final String m_sID;
+
+  private ESMLOutboxOperation (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return The operation that reverts this operation. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public ESMLOutboxOperation getInverse ()
+  {
+    return this == CREATE ? DELETE : CREATE;
+  }
+
+  @Nullable
+  public static ESMLOutboxOperation getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ESMLOutboxOperation.class, sID);
+  }
+}
@@ -12,6 +12,10 @@ package com.helger.phoss.smp.smlhook;
 
 import javax.annotation.Nonnull;
 
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.peppolid.IParticipantIdentifier;
 
 /**
@@ -61,4 +65,97 @@ public interface IRegistrationHook
    *         If something goes wrong.
    */
   void undoDeleteServiceGroup (@Nonnull IParticipantIdentifier aPI) throws RegistrationHookException;
+
+  /**
+   * Create multiple participants in the SML. The failure of a single
+   * participant does not stop the processing of the remaining ones. The
+   * default implementation calls {@link #createServiceGroup(IParticipantIdentifier)}
+   * for each participant.
+   *
+   * @param aPIs
+   *        The participants to be created. May not be <code>null</code>.
+   * @return The participants that could not be created, together with the
+   *         respective exception. Never <code>null</code> but maybe empty.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> createServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+
+    final ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> ret = new CommonsLinkedHashMap <> ();
+    for (final IParticipantIdentifier aPI : aPIs)
+      try
+      {
+        createServiceGroup (aPI);
+      }
+      catch (final RegistrationHookException ex)
+      {
+        ret.put (aPI, ex);
+      }
+    return ret;
+  }
+
+  /**
+   * Delete multiple participants in the SML because the internal adding in the
+   * SMP failed. The default implementation calls
+   * {@link #undoCreateServiceGroup(IParticipantIdentifier)} for each
+   * participant.
+   *
+   * @param aPIs
+   *        The participants to be deleted. May not be <code>null</code>.
+   * @return The participants that could not be deleted, together with the
+   *         respective exception. Never <code>null</code> but maybe empty.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> undoCreateServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+
+    final ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> ret = new CommonsLinkedHashMap <> ();
+    for (final IParticipantIdentifier aPI : aPIs)
+      try
+      {
+        undoCreateServiceGroup (aPI);
+      }
+      catch (final RegistrationHookException ex)
+      {
+        ret.put (aPI, ex);
+      }
+    return ret;
+  }
+
+  /**
+   * Delete multiple participants in the SML. The failure of a single
+   * participant does not stop the processing of the remaining ones. The
+   * default implementation calls {@link #deleteServiceGroup(IParticipantIdentifier)}
+   * for each participant.
+   *
+   * @param aPIs
+   *        The participants to be deleted. May not be <code>null</code>.
+   * @return The participants that could not be deleted, together with the
+   *         respective exception. Never <code>null</code> but maybe empty.
+   * @since 5.2.0
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> deleteServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+
+    final ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> ret = new CommonsLinkedHashMap <> ();
+    for (final IParticipantIdentifier aPI : aPIs)
+      try
+      {
+        deleteServiceGroup (aPI);
+      }
+      catch (final RegistrationHookException ex)
+      {
+        ret.put (aPI, ex);
+      }
+    return ret;
+  }
 }
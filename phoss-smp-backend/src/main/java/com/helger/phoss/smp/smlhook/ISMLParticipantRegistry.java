@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * Read access to the participants registered in the SML for this SMP. This is
+ * the counterpart of the {@link IRegistrationHook} that only writes to the
+ * SML.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public interface ISMLParticipantRegistry
+{
+  /**
+   * Iterate all participants that are registered in the SML for this SMP. The
+   * participants may be read page by page, so that not all of them need to be
+   * in memory at the same time.
+   *
+   * @param aConsumer
+   *        The consumer to be invoked for each registered participant. May not
+   *        be <code>null</code>.
+   * @throws RegistrationHookException
+   *         If the SML could not be queried.
+   */
+  void forEachRegisteredParticipant (@Nonnull Consumer <? super IParticipantIdentifier> aConsumer) throws RegistrationHookException;
+}
@@ -10,9 +10,12 @@
  */
 package com.helger.phoss.smp.smlhook;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 
+import com.helger.phoss.smp.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 
 /**
@@ -26,21 +29,51 @@ public final class RegistrationHookFactory
 {
   private static final RegistrationHookDoNothing s_aDoNothing = new RegistrationHookDoNothing ();
   private static final RegistrationHookWriteToSML s_aWriteToSML = new RegistrationHookWriteToSML ();
+  private static final RegistrationHookOutbox s_aOutbox = new RegistrationHookOutbox ();
+  private static final AtomicBoolean s_aSMLDisabled = new AtomicBoolean (false);
 
   private RegistrationHookFactory ()
   {}
 
+  /**
+   * @return <code>true</code> if all SML calls are disabled, independent of the
+   *         settings. Default is <code>false</code>.
+   * @since 5.2.0
+   */
+  public static boolean isSMLDisabled ()
+  {
+    return s_aSMLDisabled.get ();
+  }
+
+  /**
+   * Disable all SML calls independent of the settings. This is meant for
+   * offline tools like the backend migration, that copy data of participants
+   * that are already registered in the SML.
+   *
+   * @param bSMLDisabled
+   *        <code>true</code> to disable all SML calls, <code>false</code> to
+   *        use the settings again.
+   * @since 5.2.0
+   */
+  public static void setSMLDisabled (final boolean bSMLDisabled)
+  {
+    s_aSMLDisabled.set (bSMLDisabled);
+  }
+
   /**
    * Get the one and only instance.
    *
    * @return A non-<code>null</code> instance of {@link IRegistrationHook}
    *         according to the current setting. This can be either an instance of
-   *         {@link RegistrationHookDoNothing} or an instance of
-   *         {@link RegistrationHookWriteToSML}.
+   *         {@link RegistrationHookDoNothing}, an instance of
+   *         {@link RegistrationHookWriteToSML} or an instance of
+   *         {@link RegistrationHookOutbox} if the SML outbox is enabled.
    */
   @Nonnull
   public static IRegistrationHook getInstance ()
   {
-    return SMPMetaManager.getSettings ().isSMLEnabled () ? s_aWriteToSML : s_aDoNothing;
+    if (s_aSMLDisabled.get () || !SMPMetaManager.getSettings ().isSMLEnabled ())
+      return s_aDoNothing;
+    return SMPServerConfiguration.isSMLOutboxEnabled () ? s_aOutbox : s_aWriteToSML;
   }
 }
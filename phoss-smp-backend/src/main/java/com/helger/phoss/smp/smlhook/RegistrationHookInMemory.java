@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppol.smlclient.participant.BadRequestFault;
+import com.helger.peppol.smlclient.participant.FaultType;
+import com.helger.peppol.smlclient.participant.NotFoundFault;
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * A local, in-memory stand-in for the SML. It behaves like the SML for the
+ * operations of {@link IRegistrationHook}: creating an existing participant
+ * fails with a {@link BadRequestFault} and deleting an unknown participant
+ * fails with a {@link NotFoundFault}. This allows to test the SML related
+ * functionality without network access.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public class RegistrationHookInMemory implements IRegistrationHook, ISMLParticipantRegistry
+{
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  private final ICommonsSortedMap <String, IParticipantIdentifier> m_aMap = new CommonsTreeMap <> ();
+
+  public RegistrationHookInMemory ()
+  {}
+
+  @Nonnull
+  private static FaultType _createFault (@Nonnull final String sMsg)
+  {
+    final FaultType ret = new FaultType ();
+    ret.setFaultMessage (sMsg);
+    return ret;
+  }
+
+  private void _create (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    ValueEnforcer.notNull (aPI, "PI");
+
+    final String sKey = aPI.getURIEncoded ();
+    final boolean bAdded = m_aRWLock.writeLocked ( () -> m_aMap.putIfAbsent (sKey, aPI) == null);
+    if (!bAdded)
+    {
+      final String sMsg = "The participant identifier '" + sKey + "' is already registered";
+      throw new RegistrationHookException (sMsg, new BadRequestFault (sMsg, _createFault (sMsg)));
+    }
+  }
+
+  private void _delete (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    ValueEnforcer.notNull (aPI, "PI");
+
+    final String sKey = aPI.getURIEncoded ();
+    final boolean bRemoved = m_aRWLock.writeLocked ( () -> m_aMap.remove (sKey) != null);
+    if (!bRemoved)
+    {
+      final String sMsg = "The participant identifier '" + sKey + "' is not registered";
+      throw new RegistrationHookException (sMsg, new NotFoundFault (sMsg, _createFault (sMsg)));
+    }
+  }
+
+  public void createServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _create (aPI);
+  }
+
+  public void undoCreateServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _delete (aPI);
+  }
+
+  public void deleteServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _delete (aPI);
+  }
+
+  public void undoDeleteServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _create (aPI);
+  }
+
+  public void forEachRegisteredParticipant (@Nonnull final Consumer <? super IParticipantIdentifier> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+
+    // Iterate a copy, so that the consumer may modify this object
+    final ICommonsList <IParticipantIdentifier> aCopy = m_aRWLock.readLocked ( () -> m_aMap.copyOfValues ());
+    aCopy.forEach (aConsumer);
+  }
+
+  /**
+   * @param aPI
+   *        The participant to check. May be <code>null</code>.
+   * @return <code>true</code> if the participant is registered,
+   *         <code>false</code> if not.
+   */
+  public boolean isRegistered (@Nullable final IParticipantIdentifier aPI)
+  {
+    return aPI != null && m_aRWLock.readLocked ( () -> m_aMap.containsKey (aPI.getURIEncoded ()));
+  }
+
+  /**
+   * @return The number of registered participants. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getRegisteredCount ()
+  {
+    return m_aRWLock.readLocked ( () -> m_aMap.size ());
+  }
+
+  /**
+   * @return The URI encoded IDs of all registered participants in sorted
+   *         order. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsSortedSet <String> getAllRegisteredParticipantIDs ()
+  {
+    return m_aRWLock.readLocked ( () -> m_aMap.copyOfKeySet ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("RegisteredCount", getRegisteredCount ()).getToString ();
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * An implementation of {@link IRegistrationHook} that only writes the SML
+ * operations to the {@link SMLOutbox}. The delivery to the SML happens
+ * asynchronously. An undo operation cancels the original operation, if it was
+ * not yet delivered.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public class RegistrationHookOutbox implements IRegistrationHook
+{
+  public RegistrationHookOutbox ()
+  {}
+
+  private static void _enqueue (@Nonnull final IParticipantIdentifier aPI,
+                                @Nonnull final ESMLOutboxOperation eOperation) throws RegistrationHookException
+  {
+    SMLOutbox.getInstance ().enqueue (new CommonsArrayList <> (aPI), eOperation);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  private static ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> _enqueue (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs,
+                                                                                                  @Nonnull final ESMLOutboxOperation eOperation)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+
+    final ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> ret = new CommonsLinkedHashMap <> ();
+    try
+    {
+      SMLOutbox.getInstance ().enqueue (aPIs, eOperation);
+    }
+    catch (final RegistrationHookException ex)
+    {
+      // Nothing was enqueued
+      for (final IParticipantIdentifier aPI : aPIs)
+        ret.put (aPI, ex);
+    }
+    return ret;
+  }
+
+  public void createServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _enqueue (aPI, ESMLOutboxOperation.CREATE);
+  }
+
+  public void undoCreateServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _enqueue (aPI, ESMLOutboxOperation.DELETE);
+  }
+
+  public void deleteServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _enqueue (aPI, ESMLOutboxOperation.DELETE);
+  }
+
+  public void undoDeleteServiceGroup (@Nonnull final IParticipantIdentifier aPI) throws RegistrationHookException
+  {
+    _enqueue (aPI, ESMLOutboxOperation.CREATE);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> createServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    return _enqueue (aPIs, ESMLOutboxOperation.CREATE);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> undoCreateServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    return _enqueue (aPIs, ESMLOutboxOperation.DELETE);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> deleteServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    return _enqueue (aPIs, ESMLOutboxOperation.DELETE);
+  }
+}
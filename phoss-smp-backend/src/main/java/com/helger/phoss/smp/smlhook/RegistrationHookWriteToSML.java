@@ -11,9 +11,14 @@
 package com.helger.phoss.smp.smlhook;
 
 import java.net.URL;
+import java.security.KeyStore;
 import java.util.Locale;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSocketFactory;
@@ -21,17 +26,28 @@ import javax.net.ssl.SSLSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.equals.EqualsHelper;
 import com.helger.commons.exception.InitializationException;
+import com.helger.commons.string.StringHelper;
 import com.helger.commons.ws.HostnameVerifierVerifyAll;
 import com.helger.peppol.sml.ISMLInfo;
 import com.helger.peppol.smlclient.ManageParticipantIdentifierServiceCaller;
 import com.helger.peppol.smlclient.participant.NotFoundFault;
+import com.helger.peppol.smlclient.participant.ParticipantIdentifierPageType;
 import com.helger.peppol.smlclient.participant.UnauthorizedFault;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.ParticipantIdentifierType;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
 import com.helger.phoss.smp.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.security.SMPKeyManager;
+import com.helger.phoss.smp.security.SMPTrustManager;
 
 /**
  * An implementation of the RegistrationHook that informs the SML of updates to
@@ -42,42 +58,84 @@ import com.helger.phoss.smp.security.SMPKeyManager;
  * @author PEPPOL.AT, BRZ, Philip Helger
  */
 @NotThreadSafe
-public class RegistrationHookWriteToSML implements IRegistrationHook
+public class RegistrationHookWriteToSML implements IRegistrationHook, ISMLParticipantRegistry
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (RegistrationHookWriteToSML.class);
 
   // SMP ID is static and cannot change
   private static final String SMP_ID = SMPServerConfiguration.getSMLSMPID ();
 
+  /** The maximum number of participants per SML list call */
+  private static final int SML_LIST_SIZE = 100;
+
   static
   {}
 
   public RegistrationHookWriteToSML ()
   {}
 
-  @Nonnull
-  private static ManageParticipantIdentifierServiceCaller _createSMLCaller ()
+  /**
+   * An SML caller together with all the settings it was created from. As long
+   * as the settings don't change, the caller and its SSL socket factory can be
+   * reused. This avoids the creation of a new SSLContext and the JAX-WS client
+   * setup per call, and it allows the JDK to reuse TLS sessions and HTTP
+   * connections.
+   */
+  @Immutable
+  private static final class CachedSMLCaller
   {
-    // SML endpoint (incl. the service name)
-    final ISMLInfo aSMLInfo = SMPMetaManager.getSettings ().getSMLInfo ();
-    if (aSMLInfo == null)
-      throw new IllegalStateException ("Failed to get SML manage participant endpoint URL");
-    final URL aSMLEndpointURL = aSMLInfo.getManageParticipantIdentifierEndpointAddress ();
-    final String sEndpointURL = aSMLEndpointURL.toExternalForm ();
-    final String sLowerURL = sEndpointURL.toLowerCase (Locale.US);
+    private final String m_sEndpointURL;
+    private final KeyStore m_aKeyStore;
+    private final KeyStore m_aTrustStore;
+    private final Integer m_aConnectionTimeoutMS;
+    private final int m_nRequestTimeoutMS;
+    private final ManageParticipantIdentifierServiceCaller m_aCaller;
 
-    if (LOGGER.isInfoEnabled ())
-      LOGGER.info ("Performing SML query to '" + sEndpointURL + "'");
+    CachedSMLCaller (@Nonnull final String sEndpointURL,
+                     @Nullable final KeyStore aKeyStore,
+                     @Nullable final KeyStore aTrustStore,
+                     @Nullable final Integer aConnectionTimeoutMS,
+                     final int nRequestTimeoutMS,
+                     @Nonnull final ManageParticipantIdentifierServiceCaller aCaller)
+    {
+      m_sEndpointURL = sEndpointURL;
+      m_aKeyStore = aKeyStore;
+      m_aTrustStore = aTrustStore;
+      m_aConnectionTimeoutMS = aConnectionTimeoutMS;
+      m_nRequestTimeoutMS = nRequestTimeoutMS;
+      m_aCaller = aCaller;
+    }
 
+    boolean isUpToDate (@Nonnull final String sEndpointURL,
+                        @Nullable final KeyStore aKeyStore,
+                        @Nullable final KeyStore aTrustStore,
+                        @Nullable final Integer aConnectionTimeoutMS,
+                        final int nRequestTimeoutMS)
+    {
+      // Key and trust store are newly created upon reload, so the identity is
+      // sufficient
+      return m_sEndpointURL.equals (sEndpointURL) &&
+             m_aKeyStore == aKeyStore &&
+             m_aTrustStore == aTrustStore &&
+             EqualsHelper.equals (m_aConnectionTimeoutMS, aConnectionTimeoutMS) &&
+             m_nRequestTimeoutMS == nRequestTimeoutMS;
+    }
+  }
+
+  @GuardedBy ("RegistrationHookWriteToSML.class")
+  private static CachedSMLCaller s_aCachedSMLCaller;
+
+  @Nonnull
+  private static ManageParticipantIdentifierServiceCaller _createSMLCaller (@Nonnull final URL aSMLEndpointURL,
+                                                                            @Nonnull final String sLowerURL,
+                                                                            @Nullable final Integer aConnectionTimeoutMS,
+                                                                            final int nRequestTimeoutMS)
+  {
     // SSL socket factory
     SSLSocketFactory aSocketFactory;
     if (sLowerURL.startsWith ("https://"))
     {
       // https connection
-      if (!SMPKeyManager.isCertificateValid ())
-        throw new InitializationException ("Cannot init registration hook to SML, because private key/certificate setup has errors: " +
-                                           SMPKeyManager.getInitializationError ());
-
       try
       {
         aSocketFactory = SMPKeyManager.getInstance ().createSSLContext ().getSocketFactory ();
@@ -107,15 +165,66 @@ public class RegistrationHookWriteToSML implements IRegistrationHook
     final ManageParticipantIdentifierServiceCaller ret = new ManageParticipantIdentifierServiceCaller (aSMLEndpointURL);
     ret.setSSLSocketFactory (aSocketFactory);
     ret.setHostnameVerifier (aHostnameVerifier);
-    final Integer aConnectionTimeoutMS = SMPServerConfiguration.getSMLConnectionTimeoutMS ();
     if (aConnectionTimeoutMS != null)
       ret.setConnectionTimeoutMS (aConnectionTimeoutMS.intValue ());
-    final int nRequestTimeoutMS = SMPServerConfiguration.getSMLRequestTimeoutMS ();
     if (nRequestTimeoutMS >= 0)
       ret.setRequestTimeoutMS (nRequestTimeoutMS);
     return ret;
   }
 
+  /**
+   * Get the SML caller for the current settings. The caller is created once
+   * and reused as long as the SML endpoint, the key store, the trust store and
+   * the timeouts stay the same. The returned object must not be modified.
+   *
+   * @return The SML caller to use. Never <code>null</code>.
+   */
+  @Nonnull
+  private static synchronized ManageParticipantIdentifierServiceCaller _getSMLCaller ()
+  {
+    // SML endpoint (incl. the service name)
+    final ISMLInfo aSMLInfo = SMPMetaManager.getSettings ().getSMLInfo ();
+    if (aSMLInfo == null)
+      throw new IllegalStateException ("Failed to get SML manage participant endpoint URL");
+    final URL aSMLEndpointURL = aSMLInfo.getManageParticipantIdentifierEndpointAddress ();
+    final String sEndpointURL = aSMLEndpointURL.toExternalForm ();
+    final String sLowerURL = sEndpointURL.toLowerCase (Locale.US);
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Performing SML query to '" + sEndpointURL + "'");
+
+    KeyStore aKeyStore = null;
+    KeyStore aTrustStore = null;
+    if (sLowerURL.startsWith ("https://"))
+    {
+      if (!SMPKeyManager.isCertificateValid ())
+        throw new InitializationException ("Cannot init registration hook to SML, because private key/certificate setup has errors: " +
+                                           SMPKeyManager.getInitializationError ());
+      aKeyStore = SMPKeyManager.getInstance ().getKeyStore ();
+      if (SMPTrustManager.isCertificateValid ())
+        aTrustStore = SMPTrustManager.getInstance ().getTrustStore ();
+    }
+    final Integer aConnectionTimeoutMS = SMPServerConfiguration.getSMLConnectionTimeoutMS ();
+    final int nRequestTimeoutMS = SMPServerConfiguration.getSMLRequestTimeoutMS ();
+
+    if (s_aCachedSMLCaller == null ||
+        !s_aCachedSMLCaller.isUpToDate (sEndpointURL, aKeyStore, aTrustStore, aConnectionTimeoutMS, nRequestTimeoutMS))
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Creating new SML caller for '" + sEndpointURL + "'");
+      s_aCachedSMLCaller = new CachedSMLCaller (sEndpointURL,
+                                                aKeyStore,
+                                                aTrustStore,
+                                                aConnectionTimeoutMS,
+                                                nRequestTimeoutMS,
+                                                _createSMLCaller (aSMLEndpointURL,
+                                                                  sLowerURL,
+                                                                  aConnectionTimeoutMS,
+                                                                  nRequestTimeoutMS));
+    }
+    return s_aCachedSMLCaller.m_aCaller;
+  }
+
   public void createServiceGroup (@Nonnull final IParticipantIdentifier aBusinessIdentifier) throws RegistrationHookException
   {
     final String sParticipantID = aBusinessIdentifier.getURIEncoded ();
@@ -125,7 +234,7 @@ public class RegistrationHookWriteToSML implements IRegistrationHook
     try
     {
       // Explicit constructor call is needed here!
-      _createSMLCaller ().create (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
+      _getSMLCaller ().create (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
       if (LOGGER.isInfoEnabled ())
         LOGGER.info ("Succeeded in CREATE business " + sParticipantID + " in SML");
     }
@@ -155,7 +264,7 @@ public class RegistrationHookWriteToSML implements IRegistrationHook
     {
       // Undo create
       // Explicit constructor call is needed here!
-      _createSMLCaller ().delete (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
+      _getSMLCaller ().delete (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
       if (LOGGER.isWarnEnabled ())
         LOGGER.warn ("Succeeded in deleting again business " + sParticipantID + " from SML.");
     }
@@ -176,7 +285,7 @@ public class RegistrationHookWriteToSML implements IRegistrationHook
     {
       // Use the version with the SMP ID to be on the safe side
       // Explicit constructor call is needed here!
-      _createSMLCaller ().delete (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
+      _getSMLCaller ().delete (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
       if (LOGGER.isInfoEnabled ())
         LOGGER.info ("Succeeded in deleting business " + sParticipantID + " from SML");
     }
@@ -208,7 +317,7 @@ public class RegistrationHookWriteToSML implements IRegistrationHook
     {
       // Undo delete
       // Explicit constructor call is needed here!
-      _createSMLCaller ().create (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
+      _getSMLCaller ().create (SMP_ID, new SimpleParticipantIdentifier (aBusinessIdentifier));
       if (LOGGER.isWarnEnabled ())
         LOGGER.warn ("Succeeded in creating again business " + sParticipantID + " in SML.");
     }
@@ -218,4 +327,154 @@ public class RegistrationHookWriteToSML implements IRegistrationHook
       throw new RegistrationHookException (sMsg, ex);
     }
   }
+
+  /**
+   * Split the provided participants into lists of at most
+   * {@link #SML_LIST_SIZE} elements, as needed by the SML list operations.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  private static ICommonsList <ICommonsList <IParticipantIdentifier>> _getChunks (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    final ICommonsList <ICommonsList <IParticipantIdentifier>> ret = new CommonsArrayList <> ();
+    ICommonsList <IParticipantIdentifier> aChunk = null;
+    for (final IParticipantIdentifier aPI : aPIs)
+    {
+      if (aChunk == null || aChunk.size () >= SML_LIST_SIZE)
+      {
+        aChunk = new CommonsArrayList <> (SML_LIST_SIZE);
+        ret.add (aChunk);
+      }
+      aChunk.add (aPI);
+    }
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> createServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+
+    final ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> ret = new CommonsLinkedHashMap <> ();
+    for (final ICommonsList <IParticipantIdentifier> aChunk : _getChunks (aPIs))
+    {
+      if (LOGGER.isInfoEnabled ())
+        LOGGER.info ("Trying to CREATE " + aChunk.size () + " businesses for " + SMP_ID + " in SML");
+
+      try
+      {
+        // Explicit constructor call is needed here!
+        _getSMLCaller ().createList (new CommonsArrayList <> (aChunk, SimpleParticipantIdentifier::new), SMP_ID);
+        if (LOGGER.isInfoEnabled ())
+          LOGGER.info ("Succeeded in CREATE " + aChunk.size () + " businesses in SML");
+      }
+      catch (final Exception ex)
+      {
+        // The list is handled as a whole by the SML - find the failing ones
+        LOGGER.warn ("Could not create " +
+                     aChunk.size () +
+                     " businesses at once in SML - creating them one by one. Technical details: " +
+                     ex.getMessage ());
+        ret.putAll (IRegistrationHook.super.createServiceGroups (aChunk));
+      }
+    }
+    return ret;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  private ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> _deleteList (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs,
+                                                                                              final boolean bUndo)
+  {
+    final ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> ret = new CommonsLinkedHashMap <> ();
+    for (final ICommonsList <IParticipantIdentifier> aChunk : _getChunks (aPIs))
+    {
+      if (LOGGER.isInfoEnabled ())
+        LOGGER.info ("Trying to DELETE " + aChunk.size () + " businesses for " + SMP_ID + " from SML");
+
+      try
+      {
+        // Explicit constructor call is needed here!
+        _getSMLCaller ().deleteList (new CommonsArrayList <> (aChunk, SimpleParticipantIdentifier::new));
+        if (LOGGER.isInfoEnabled ())
+          LOGGER.info ("Succeeded in deleting " + aChunk.size () + " businesses from SML");
+      }
+      catch (final Exception ex)
+      {
+        // The list is handled as a whole by the SML - find the failing ones
+        LOGGER.warn ("Could not delete " +
+                     aChunk.size () +
+                     " businesses at once from SML - deleting them one by one. Technical details: " +
+                     ex.getMessage ());
+        ret.putAll (bUndo ? IRegistrationHook.super.undoCreateServiceGroups (aChunk)
+                          : IRegistrationHook.super.deleteServiceGroups (aChunk));
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> undoCreateServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+    return _deleteList (aPIs, true);
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <IParticipantIdentifier, RegistrationHookException> deleteServiceGroups (@Nonnull final Iterable <? extends IParticipantIdentifier> aPIs)
+  {
+    ValueEnforcer.notNull (aPIs, "PIs");
+    return _deleteList (aPIs, false);
+  }
+
+  public void forEachRegisteredParticipant (@Nonnull final Consumer <? super IParticipantIdentifier> aConsumer) throws RegistrationHookException
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Trying to LIST all businesses of " + SMP_ID + " in SML");
+
+    int nPages = 0;
+    int nCount = 0;
+    String sPageID = "";
+    try
+    {
+      while (true)
+      {
+        final ParticipantIdentifierPageType aPage = _getSMLCaller ().list (sPageID, SMP_ID);
+        nPages++;
+        for (final ParticipantIdentifierType aItem : aPage.getParticipantIdentifier ())
+        {
+          // Use the identifier factory to get the same representation as in
+          // the SMP
+          IParticipantIdentifier aPI = SMPMetaManager.getIdentifierFactory ()
+                                                     .createParticipantIdentifier (aItem.getScheme (),
+                                                                                   aItem.getValue ());
+          if (aPI == null)
+            aPI = new SimpleParticipantIdentifier (aItem.getScheme (), aItem.getValue ());
+          aConsumer.accept (aPI);
+          nCount++;
+        }
+
+        final String sNextPageID = aPage.getNextPageIdentifier ();
+        if (aPage.hasNoParticipantIdentifierEntries () ||
+            StringHelper.hasNoText (sNextPageID) ||
+            sNextPageID.equals (sPageID))
+          break;
+        sPageID = sNextPageID;
+      }
+      if (LOGGER.isInfoEnabled ())
+        LOGGER.info ("Succeeded in LIST " + nCount + " businesses in " + nPages + " pages from SML");
+    }
+    catch (final Exception ex)
+    {
+      throw new RegistrationHookException ("Could not list the businesses of " + SMP_ID + " in SML", ex);
+    }
+  }
 }
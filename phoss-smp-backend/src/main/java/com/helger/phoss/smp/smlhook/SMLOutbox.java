@@ -0,0 +1,677 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.state.ESuccess;
+import com.helger.peppol.smlclient.participant.BadRequestFault;
+import com.helger.peppol.smlclient.participant.NotFoundFault;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.photon.app.io.WebFileIO;
+import com.helger.scope.IScope;
+import com.helger.scope.singleton.AbstractGlobalSingleton;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroDocument;
+import com.helger.xml.microdom.MicroElement;
+import com.helger.peppol.smlclient.participant.FaultType;
+import com.helger.xml.microdom.serialize.MicroReader;
+import com.helger.xml.microdom.serialize.MicroWriter;
+
+/**
+ * A persistent outbox for SML operations. Operations are written to a file in
+ * the data directory before the local change is performed, and a background
+ * thread delivers them to the SML using the list operations of
+ * {@link RegistrationHookWriteToSML}. Failed deliveries are retried with an
+ * exponential backoff until the maximum number of attempts is reached. After
+ * that the entry stays in the outbox as failed, so that the status is visible
+ * per participant.<br>
+ * There is at most one entry per participant. A new operation replaces the
+ * pending one, and an operation that was never attempted is cancelled by its
+ * inverse. Because a failed attempt may still have reached the SML, a
+ * repeated creation that is rejected because the participant already exists
+ * and a deletion of an unknown participant are considered successful.<br>
+ * Failed entries are discarded after a configurable time and their number is
+ * limited.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMLOutbox extends AbstractGlobalSingleton
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMLOutbox.class);
+  private static final String FILENAME = "sml-outbox.xml";
+  private static final String ELEMENT_ROOT = "smloutbox";
+  private static final String ELEMENT_ITEM = "item";
+  private static final String ATTR_PARTICIPANT_ID = "participantid";
+  private static final String ATTR_OPERATION = "operation";
+  private static final String ATTR_ENQUEUED = "enqueued";
+  private static final String ATTR_ATTEMPTS = "attempts";
+  private static final String ATTR_FAILED = "failed";
+  private static final String ATTR_PREVIOUS_STATE_KNOWN = "previousstateknown";
+  private static final String ELEMENT_LAST_ERROR = "lasterror";
+  // Interval in which due entries are delivered
+  private static final long DELIVERY_INTERVAL_MS = CGlobal.MILLISECONDS_PER_SECOND;
+  // Maximum number of entries delivered in one run
+  private static final int MAX_BATCH_SIZE = 1_000;
+  private static final long MAX_BACKOFF_MS = CGlobal.MILLISECONDS_PER_HOUR;
+  // Maximum number of failed entries that are kept
+  private static final int MAX_FAILED_ENTRIES = 10_000;
+  // Interval in which failed entries are checked for expiry
+  private static final long EXPIRY_CHECK_INTERVAL_MS = CGlobal.MILLISECONDS_PER_MINUTE;
+
+  private static final class OutboxEntry
+  {
+    private final IParticipantIdentifier m_aParticipantID;
+    private ESMLOutboxOperation m_eOperation;
+    // true if the SML state before this operation is known to be the inverse
+    // of the operation, because no other operation was pending
+    private boolean m_bPreviousStateKnown;
+    private long m_nEnqueuedMS;
+    private int m_nAttempts;
+    private boolean m_bFailed;
+    private String m_sLastError;
+    private long m_nDueMS;
+    private boolean m_bInFlight;
+    private boolean m_bChangedInFlight;
+
+    OutboxEntry (@Nonnull final IParticipantIdentifier aParticipantID,
+                 @Nonnull final ESMLOutboxOperation eOperation,
+                 final boolean bPreviousStateKnown,
+                 final long nEnqueuedMS)
+    {
+      m_aParticipantID = aParticipantID;
+      m_eOperation = eOperation;
+      m_bPreviousStateKnown = bPreviousStateKnown;
+      m_nEnqueuedMS = nEnqueuedMS;
+      m_nDueMS = nEnqueuedMS;
+    }
+
+    @Nonnull
+    SMLOutboxStatus getStatus ()
+    {
+      return new SMLOutboxStatus (m_aParticipantID, m_eOperation, m_bFailed, m_nAttempts, m_nEnqueuedMS, m_sLastError);
+    }
+  }
+
+  private final ICommonsOrderedMap <String, OutboxEntry> m_aMap = new CommonsLinkedHashMap <> ();
+  private boolean m_bDirty = false;
+  private long m_nLastExpiryCheckMS = 0;
+  private final RegistrationHookWriteToSML m_aSMLHook = new RegistrationHookWriteToSML ();
+  private ScheduledExecutorService m_aDeliverer;
+
+  @Deprecated
+  @UsedViaReflection
+  public SMLOutbox ()
+  {}
+
+  @Nonnull
+  public static SMLOutbox getInstance ()
+  {
+    return getGlobalSingleton (SMLOutbox.class);
+  }
+
+  @Nonnull
+  private static File _getFile ()
+  {
+    return WebFileIO.getDataIO ().getFile (FILENAME);
+  }
+
+  @Override
+  protected void onAfterInstantiation (@Nonnull final IScope aScope)
+  {
+    _readPersistedEntries ();
+
+    m_aDeliverer = Executors.newSingleThreadScheduledExecutor (new BasicThreadFactory.Builder ().setNamingPattern ("smp-sml-outbox-%d")
+                                                                                                .setDaemon (true)
+                                                                                                .build ());
+    m_aDeliverer.scheduleWithFixedDelay (this::_deliver,
+                                         DELIVERY_INTERVAL_MS,
+                                         DELIVERY_INTERVAL_MS,
+                                         TimeUnit.MILLISECONDS);
+    LOGGER.info ("Started SML outbox");
+  }
+
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed)
+  {
+    if (m_aDeliverer != null)
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aDeliverer);
+      m_aDeliverer = null;
+    }
+    _persistIfDirty ();
+  }
+
+  private void _readPersistedEntries ()
+  {
+    final File aFile = _getFile ();
+    if (!aFile.exists ())
+      return;
+
+    final IMicroDocument aDoc = MicroReader.readMicroXML (aFile);
+    if (aDoc == null || aDoc.getDocumentElement () == null)
+    {
+      // Keep the file for manual inspection, as it would be overwritten with
+      // the next change otherwise
+      final File aQuarantineFile = new File (aFile.getParentFile (),
+                                             aFile.getName () + ".corrupt-" + System.currentTimeMillis ());
+      if (!aFile.renameTo (aQuarantineFile))
+        throw new IllegalStateException ("Failed to read persisted SML outbox from '" +
+                                         aFile.getAbsolutePath () +
+                                         "' and failed to move it away");
+      LOGGER.error ("Failed to read persisted SML outbox from '" +
+                    aFile.getAbsolutePath () +
+                    "' - moved it to '" +
+                    aQuarantineFile.getAbsolutePath () +
+                    "' and starting with an empty outbox. Pending SML operations may be lost - consider running the SML reconciliation.");
+      return;
+    }
+
+    final long nNow = System.currentTimeMillis ();
+    m_aRWLock.writeLocked ( () -> {
+      for (final IMicroElement eItem : aDoc.getDocumentElement ().getAllChildElements (ELEMENT_ITEM))
+      {
+        final IParticipantIdentifier aParticipantID = SMPMetaManager.getIdentifierFactory ()
+                                                                    .parseParticipantIdentifier (eItem.getAttributeValue (ATTR_PARTICIPANT_ID));
+        final ESMLOutboxOperation eOperation = ESMLOutboxOperation.getFromIDOrNull (eItem.getAttributeValue (ATTR_OPERATION));
+        if (aParticipantID == null || eOperation == null)
+        {
+          LOGGER.error ("Ignoring invalid persisted SML outbox entry for participant ID '" +
+                        eItem.getAttributeValue (ATTR_PARTICIPANT_ID) +
+                        "' and operation '" +
+                        eItem.getAttributeValue (ATTR_OPERATION) +
+                        "'");
+          continue;
+        }
+        final OutboxEntry aEntry = new OutboxEntry (aParticipantID,
+                                                    eOperation,
+                                                    eItem.getAttributeValueAsBool (ATTR_PREVIOUS_STATE_KNOWN, false),
+                                                    eItem.getAttributeValueAsLong (ATTR_ENQUEUED, nNow));
+        aEntry.m_nAttempts = eItem.getAttributeValueAsInt (ATTR_ATTEMPTS, 0);
+        aEntry.m_bFailed = eItem.getAttributeValueAsBool (ATTR_FAILED, false);
+        final IMicroElement eLastError = eItem.getFirstChildElement (ELEMENT_LAST_ERROR);
+        if (eLastError != null)
+          aEntry.m_sLastError = eLastError.getTextContent ();
+        aEntry.m_nDueMS = nNow;
+        m_aMap.put (aParticipantID.getURIEncoded (), aEntry);
+      }
+    });
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Read " + m_aMap.size () + " SML outbox entries from '" + aFile.getAbsolutePath () + "'");
+  }
+
+  @Nonnull
+  private static IMicroElement _createItem (@Nonnull final OutboxEntry aEntry)
+  {
+    final IMicroElement eItem = new MicroElement (ELEMENT_ITEM);
+    eItem.setAttribute (ATTR_PARTICIPANT_ID, aEntry.m_aParticipantID.getURIEncoded ())
+         .setAttribute (ATTR_OPERATION, aEntry.m_eOperation.getID ())
+         .setAttribute (ATTR_ENQUEUED, Long.toString (aEntry.m_nEnqueuedMS))
+         .setAttribute (ATTR_ATTEMPTS, Integer.toString (aEntry.m_nAttempts));
+    if (aEntry.m_bPreviousStateKnown)
+      eItem.setAttribute (ATTR_PREVIOUS_STATE_KNOWN, Boolean.TRUE.toString ());
+    if (aEntry.m_bFailed)
+      eItem.setAttribute (ATTR_FAILED, Boolean.TRUE.toString ());
+    if (aEntry.m_sLastError != null)
+      eItem.appendElement (ELEMENT_LAST_ERROR).appendText (aEntry.m_sLastError);
+    return eItem;
+  }
+
+  /**
+   * Write the current entries together with the provided changes. Must be
+   * called with the write lock held.
+   *
+   * @param aChanges
+   *        The changes that are not yet applied. A <code>null</code> value
+   *        means that the entry is removed. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  private ESuccess _writeFile (@Nonnull final ICommonsMap <String, OutboxEntry> aChanges)
+  {
+    final IMicroDocument aDoc = new MicroDocument ();
+    final IMicroElement eRoot = aDoc.appendElement (ELEMENT_ROOT);
+    for (final Map.Entry <String, OutboxEntry> aItem : m_aMap.entrySet ())
+      if (!aChanges.containsKey (aItem.getKey ()))
+        eRoot.appendChild (_createItem (aItem.getValue ()));
+    for (final OutboxEntry aEntry : aChanges.values ())
+      if (aEntry != null)
+        eRoot.appendChild (_createItem (aEntry));
+
+    final File aFile = _getFile ();
+    try
+    {
+      _writeAtomically (MicroWriter.getNodeAsBytes (aDoc), aFile);
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      LOGGER.error ("Failed to persist the SML outbox to '" + aFile.getAbsolutePath () + "'", ex);
+      return ESuccess.FAILURE;
+    }
+    return ESuccess.SUCCESS;
+  }
+
+  /**
+   * Write the content to a temporary file that is synced to disk and replaces
+   * the target file afterwards, so that a crash never leaves a partially
+   * written outbox.
+   */
+  private static void _writeAtomically (@Nonnull final byte [] aBytes, @Nonnull final File aFile) throws IOException
+  {
+    final File aTempFile = new File (aFile.getParentFile (), aFile.getName () + ".tmp");
+    try (final FileOutputStream aFOS = new FileOutputStream (aTempFile))
+    {
+      aFOS.write (aBytes);
+      aFOS.getFD ().sync ();
+    }
+    Files.move (aTempFile.toPath (),
+                aFile.toPath (),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void _persistIfDirty ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      if (m_bDirty && _writeFile (new CommonsHashMap <> ()).isSuccess ())
+        m_bDirty = false;
+    });
+  }
+
+  /**
+   * Enqueue an SML operation for all provided participants. The outbox is
+   * persisted before this method returns, so the operations will be
+   * delivered, even if the application is restarted in between.
+   *
+   * @param aParticipantIDs
+   *        The participants to enqueue the operation for. May not be
+   *        <code>null</code>.
+   * @param eOperation
+   *        The SML operation to be performed. May not be <code>null</code>.
+   * @throws RegistrationHookException
+   *         If the outbox could not be persisted. In this case nothing was
+   *         enqueued.
+   */
+  public void enqueue (@Nonnull final Iterable <? extends IParticipantIdentifier> aParticipantIDs,
+                       @Nonnull final ESMLOutboxOperation eOperation) throws RegistrationHookException
+  {
+    ValueEnforcer.notNull (aParticipantIDs, "ParticipantIDs");
+    ValueEnforcer.notNull (eOperation, "Operation");
+
+    final long nNow = System.currentTimeMillis ();
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      // Determine all changes first
+      final ICommonsOrderedMap <String, OutboxEntry> aChanges = new CommonsLinkedHashMap <> ();
+      for (final IParticipantIdentifier aParticipantID : aParticipantIDs)
+      {
+        final String sKey = aParticipantID.getURIEncoded ();
+        final OutboxEntry aExisting = m_aMap.get (sKey);
+        if (aExisting == null)
+          aChanges.put (sKey, new OutboxEntry (aParticipantID, eOperation, true, nNow));
+        else
+          if (aExisting.m_eOperation == eOperation)
+          {
+            // Same operation again - only a failed one needs to be restarted
+            if (aExisting.m_bFailed)
+              aChanges.put (sKey, new OutboxEntry (aParticipantID, eOperation, false, nNow));
+          }
+          else
+            if (aExisting.m_bPreviousStateKnown && aExisting.m_nAttempts == 0 && !aExisting.m_bInFlight)
+            {
+              // Never attempted - the operations cancel each other out
+              aChanges.put (sKey, null);
+            }
+            else
+              aChanges.put (sKey, new OutboxEntry (aParticipantID, eOperation, false, nNow));
+      }
+      if (aChanges.isEmpty ())
+        return;
+
+      // Persist before the changes are applied
+      if (_writeFile (aChanges).isFailure ())
+        throw new RegistrationHookException ("Failed to persist " +
+                                             eOperation.getID () +
+                                             " operation in the SML outbox for " +
+                                             aChanges.size () +
+                                             " participant(s)",
+                                             null);
+
+      for (final Map.Entry <String, OutboxEntry> aItem : aChanges.entrySet ())
+      {
+        final String sKey = aItem.getKey ();
+        final OutboxEntry aNew = aItem.getValue ();
+        final OutboxEntry aExisting = m_aMap.get (sKey);
+        if (aNew == null)
+          m_aMap.remove (sKey);
+        else
+          if (aExisting != null && aExisting.m_bInFlight)
+          {
+            // Keep the object of the running delivery, but make it due again
+            aExisting.m_eOperation = aNew.m_eOperation;
+            aExisting.m_bPreviousStateKnown = aNew.m_bPreviousStateKnown;
+            aExisting.m_nEnqueuedMS = aNew.m_nEnqueuedMS;
+            aExisting.m_nAttempts = 0;
+            aExisting.m_bFailed = false;
+            aExisting.m_sLastError = null;
+            aExisting.m_nDueMS = nNow;
+            aExisting.m_bChangedInFlight = true;
+          }
+          else
+            m_aMap.put (sKey, aNew);
+      }
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Enqueued SML " + eOperation.getID () + " operation");
+  }
+
+  /**
+   * Check if the SML rejected a creation because the participant is already
+   * registered. Other bad requests (e.g. an invalid identifier or a
+   * participant owned by another SMP) are real failures.
+   */
+  static boolean isParticipantAlreadyRegistered (@Nonnull final BadRequestFault aFault)
+  {
+    final FaultType aFaultInfo = aFault.getFaultInfo ();
+    final String sMsg = aFaultInfo != null && aFaultInfo.getFaultMessage () != null ? aFaultInfo.getFaultMessage ()
+                                                                                    : aFault.getMessage ();
+    if (sMsg == null)
+      return false;
+    final String sLC = sMsg.toLowerCase (Locale.US);
+    // Owned by another SMP must not be considered as done
+    return (sLC.contains ("already exist") || sLC.contains ("already registered")) && !sLC.contains ("another smp");
+  }
+
+  /**
+   * Check if the failure of a delivery means, that the SML is already in the
+   * desired state.
+   */
+  private static boolean _isAlreadyDone (@Nonnull final OutboxEntry aEntry,
+                                         @Nonnull final ESMLOutboxOperation eOperation,
+                                         @Nonnull final RegistrationHookException ex)
+  {
+    final Throwable aCause = ex.getCause ();
+    if (eOperation == ESMLOutboxOperation.DELETE)
+      return aCause instanceof NotFoundFault;
+    // A previous attempt or operation may have registered the participant
+    // already
+    return (!aEntry.m_bPreviousStateKnown || aEntry.m_nAttempts > 0) &&
+           aCause instanceof BadRequestFault &&
+           isParticipantAlreadyRegistered ((BadRequestFault) aCause);
+  }
+
+  /**
+   * Discard failed entries that are older than the configured maximum age and
+   * the oldest ones if there are too many.
+   */
+  private void _expireFailedEntries (final long nNow)
+  {
+    final long nMaxAgeMS = SMPServerConfiguration.getSMLOutboxFailedMaxAgeHours () * CGlobal.MILLISECONDS_PER_HOUR;
+    m_aRWLock.writeLocked ( () -> {
+      final ICommonsList <OutboxEntry> aFailed = new CommonsArrayList <> ();
+      for (final OutboxEntry aEntry : m_aMap.values ())
+        if (aEntry.m_bFailed)
+          aFailed.add (aEntry);
+      if (aFailed.isEmpty ())
+        return;
+
+      // Oldest first
+      aFailed.sort (Comparator.comparingLong (x -> x.m_nEnqueuedMS));
+      final int nTooMany = aFailed.size () - MAX_FAILED_ENTRIES;
+      int nIndex = 0;
+      for (final OutboxEntry aEntry : aFailed)
+      {
+        if (nIndex >= nTooMany && aEntry.m_nEnqueuedMS >= nNow - nMaxAgeMS)
+          break;
+        LOGGER.error ("Discarding failed SML " +
+                      aEntry.m_eOperation.getID () +
+                      " of '" +
+                      aEntry.m_aParticipantID.getURIEncoded () +
+                      "': " +
+                      aEntry.m_sLastError);
+        m_aMap.remove (aEntry.m_aParticipantID.getURIEncoded ());
+        m_bDirty = true;
+        nIndex++;
+      }
+    });
+  }
+
+  private void _deliver ()
+  {
+    try
+    {
+      final long nStart = System.currentTimeMillis ();
+      if (nStart - m_nLastExpiryCheckMS >= EXPIRY_CHECK_INTERVAL_MS)
+      {
+        m_nLastExpiryCheckMS = nStart;
+        _expireFailedEntries (nStart);
+        _persistIfDirty ();
+      }
+
+      if (!SMPMetaManager.getSettings ().isSMLEnabled ())
+        return;
+
+      final ICommonsList <OutboxEntry> aBatch = new CommonsArrayList <> ();
+      final ICommonsList <IParticipantIdentifier> aCreate = new CommonsArrayList <> ();
+      final ICommonsList <IParticipantIdentifier> aDelete = new CommonsArrayList <> ();
+      final ICommonsMap <OutboxEntry, ESMLOutboxOperation> aOperations = new CommonsHashMap <> ();
+      m_aRWLock.writeLocked ( () -> {
+        for (final OutboxEntry aEntry : m_aMap.values ())
+          if (!aEntry.m_bFailed && !aEntry.m_bInFlight && aEntry.m_nDueMS <= nStart)
+          {
+            aEntry.m_bInFlight = true;
+            aEntry.m_bChangedInFlight = false;
+            aBatch.add (aEntry);
+            aOperations.put (aEntry, aEntry.m_eOperation);
+            if (aEntry.m_eOperation == ESMLOutboxOperation.CREATE)
+              aCreate.add (aEntry.m_aParticipantID);
+            else
+              aDelete.add (aEntry.m_aParticipantID);
+            if (aBatch.size () >= MAX_BATCH_SIZE)
+              break;
+          }
+      });
+      if (aBatch.isEmpty ())
+        return;
+
+      if (LOGGER.isInfoEnabled ())
+        LOGGER.info ("Delivering " + aCreate.size () + " SML creations and " + aDelete.size () + " SML deletions");
+
+      final ICommonsMap <String, RegistrationHookException> aFailures = new CommonsHashMap <> ();
+      RuntimeException aGeneralFailure = null;
+      try
+      {
+        if (aCreate.isNotEmpty ())
+          m_aSMLHook.createServiceGroups (aCreate).forEach ( (k, v) -> aFailures.put (k.getURIEncoded (), v));
+        if (aDelete.isNotEmpty ())
+          m_aSMLHook.deleteServiceGroups (aDelete).forEach ( (k, v) -> aFailures.put (k.getURIEncoded (), v));
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Error delivering SML outbox entries", ex);
+        aGeneralFailure = ex;
+      }
+
+      final RuntimeException aFinalGeneralFailure = aGeneralFailure;
+      final long nNow = System.currentTimeMillis ();
+      final int nMaxAttempts = SMPServerConfiguration.getSMLOutboxMaxAttempts ();
+      final long nRetryMS = SMPServerConfiguration.getSMLOutboxRetryMS ();
+      m_aRWLock.writeLocked ( () -> {
+        for (final OutboxEntry aEntry : aBatch)
+        {
+          aEntry.m_bInFlight = false;
+          if (aEntry.m_bChangedInFlight)
+          {
+            // Changed while delivering - keep it, it is already due again
+            continue;
+          }
+
+          final String sKey = aEntry.m_aParticipantID.getURIEncoded ();
+          final ESMLOutboxOperation eOperation = aOperations.get (aEntry);
+          final RegistrationHookException aFailure = aFailures.get (sKey);
+          if (aFinalGeneralFailure == null &&
+              (aFailure == null || _isAlreadyDone (aEntry, eOperation, aFailure)))
+          {
+            if (aFailure != null)
+              LOGGER.info ("SML " + eOperation.getID () + " of '" + sKey + "' was already performed");
+            m_aMap.remove (sKey);
+          }
+          else
+          {
+            aEntry.m_nAttempts++;
+            aEntry.m_sLastError = (aFinalGeneralFailure != null ? aFinalGeneralFailure : aFailure).getMessage ();
+            if (aEntry.m_nAttempts >= nMaxAttempts)
+            {
+              aEntry.m_bFailed = true;
+              LOGGER.error ("Giving up SML " +
+                            eOperation.getID () +
+                            " of '" +
+                            sKey +
+                            "' after " +
+                            aEntry.m_nAttempts +
+                            " attempts: " +
+                            aEntry.m_sLastError);
+            }
+            else
+            {
+              final long nBackoffMS = Math.min (nRetryMS << Math.min (aEntry.m_nAttempts - 1, 20), MAX_BACKOFF_MS);
+              aEntry.m_nDueMS = nNow + nBackoffMS;
+              LOGGER.warn ("Failed SML " +
+                           eOperation.getID () +
+                           " of '" +
+                           sKey +
+                           "' - retrying in " +
+                           nBackoffMS +
+                           " ms");
+            }
+          }
+        }
+        m_bDirty = true;
+      });
+
+      _persistIfDirty ();
+    }
+    catch (final RuntimeException ex)
+    {
+      // Never let an exception end the scheduled delivery
+      LOGGER.error ("Error delivering the SML outbox", ex);
+    }
+  }
+
+  /**
+   * Get the status of the outbox entry of the provided participant.
+   *
+   * @param aParticipantID
+   *        The participant to check. May not be <code>null</code>.
+   * @return <code>null</code> if there is no pending or failed SML operation
+   *         for the participant.
+   */
+  @Nullable
+  public SMLOutboxStatus getStatus (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    ValueEnforcer.notNull (aParticipantID, "ParticipantID");
+
+    return m_aRWLock.readLocked ( () -> {
+      final OutboxEntry aEntry = m_aMap.get (aParticipantID.getURIEncoded ());
+      return aEntry == null ? null : aEntry.getStatus ();
+    });
+  }
+
+  /**
+   * @return The number of entries that are still to be delivered. Always &ge;
+   *         0.
+   */
+  @Nonnegative
+  public int getPendingCount ()
+  {
+    return m_aRWLock.readLocked ( () -> (int) m_aMap.values ().stream ().filter (x -> !x.m_bFailed).count ());
+  }
+
+  /**
+   * @return The number of entries that are no longer retried. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getFailedCount ()
+  {
+    return m_aRWLock.readLocked ( () -> (int) m_aMap.values ().stream ().filter (x -> x.m_bFailed).count ());
+  }
+
+  /**
+   * Restart the delivery of all failed entries.
+   *
+   * @return The number of restarted entries. Always &ge; 0.
+   */
+  @Nonnegative
+  public int retryAllFailed ()
+  {
+    final long nNow = System.currentTimeMillis ();
+    final int ret = m_aRWLock.writeLocked ( () -> {
+      int nCount = 0;
+      for (final OutboxEntry aEntry : m_aMap.values ())
+        if (aEntry.m_bFailed)
+        {
+          aEntry.m_bFailed = false;
+          // It was attempted before, so it must not be cancelled
+          aEntry.m_bPreviousStateKnown = false;
+          aEntry.m_nAttempts = 0;
+          aEntry.m_nDueMS = nNow;
+          nCount++;
+        }
+      if (nCount > 0)
+        m_bDirty = true;
+      return nCount;
+    });
+    _persistIfDirty ();
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Restarted " + ret + " failed SML outbox entries");
+    return ret;
+  }
+}
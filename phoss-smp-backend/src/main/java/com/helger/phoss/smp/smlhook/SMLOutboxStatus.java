@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * A snapshot of a single entry of the {@link SMLOutbox}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMLOutboxStatus
+{
+  private final IParticipantIdentifier m_aParticipantID;
+  private final ESMLOutboxOperation m_eOperation;
+  private final boolean m_bFailed;
+  private final int m_nAttempts;
+  private final long m_nEnqueuedMS;
+  private final String m_sLastError;
+
+  public SMLOutboxStatus (@Nonnull final IParticipantIdentifier aParticipantID,
+                          @Nonnull final ESMLOutboxOperation eOperation,
+                          final boolean bFailed,
+                          @Nonnegative final int nAttempts,
+                          final long nEnqueuedMS,
+                          @Nullable final String sLastError)
+  {
+    m_aParticipantID = aParticipantID;
+    m_eOperation = eOperation;
+    m_bFailed = bFailed;
+    m_nAttempts = nAttempts;
+    m_nEnqueuedMS = nEnqueuedMS;
+    m_sLastError = sLastError;
+  }
+
+  /**
+   * @return The participant the operation belongs to. Never <code>null</code>.
+   */
+  @Nonnull
+  public IParticipantIdentifier getParticipantID ()
+  {
+    return m_aParticipantID;
+  }
+
+  /**
+   * @return The SML operation to be performed. Never <code>null</code>.
+   */
+  @Nonnull
+  public ESMLOutboxOperation getOperation ()
+  {
+    return m_eOperation;
+  }
+
+  /**
+   * @return <code>true</code> if all delivery attempts failed and the entry
+   *         is no longer retried, <code>false</code> if the delivery is still
+   *         pending.
+   */
+  public boolean isFailed ()
+  {
+    return m_bFailed;
+  }
+
+  /**
+   * @return The number of failed delivery attempts so far. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getAttempts ()
+  {
+    return m_nAttempts;
+  }
+
+  /**
+   * @return The time in milliseconds since the epoch when the operation was
+   *         enqueued.
+   */
+  public long getEnqueuedMS ()
+  {
+    return m_nEnqueuedMS;
+  }
+
+  /**
+   * @return The error message of the last failed delivery attempt. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public String getLastError ()
+  {
+    return m_sLastError;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ParticipantID", m_aParticipantID)
+                                       .append ("Operation", m_eOperation)
+                                       .append ("Failed", m_bFailed)
+                                       .append ("Attempts", m_nAttempts)
+                                       .append ("EnqueuedMS", m_nEnqueuedMS)
+                                       .appendIfNotNull ("LastError", m_sLastError)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,441 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.commons.mutable.MutableInt;
+import com.helger.commons.mutable.MutableLong;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.wrapper.Wrapper;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+
+/**
+ * Compare the local service groups with the participants registered in the
+ * SML for this SMP, and optionally repair the differences. The registered
+ * participants are read via {@link ISMLParticipantRegistry} first, as the SML
+ * has no lookup for single participants. Afterwards the local service groups
+ * are streamed and compared. Missing and stale participants are handled in
+ * batches that are sent to the SML in parallel and with a rate limit.<br>
+ * Changes that happen while the reconciliation is running may show up as
+ * differences. Use {@link #setIgnoreFilter(Predicate)} to skip participants
+ * with a pending SML operation.<br>
+ * Stale participants are only determined (and deleted) if all local service
+ * groups could be read, as otherwise every unread participant would be
+ * considered stale.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@NotThreadSafe
+public final class SMLReconciler
+{
+  /** The default number of participants per SML call */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  /** The default number of parallel SML calls */
+  public static final int DEFAULT_THREAD_COUNT = 4;
+  /** The maximum number of IDs per list in the result */
+  public static final int MAX_REPORTED_IDS = 10_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMLReconciler.class);
+
+  private final ISMLParticipantRegistry m_aRegistry;
+  private final IRegistrationHook m_aHook;
+  private int m_nBatchSize = DEFAULT_BATCH_SIZE;
+  private int m_nThreadCount = DEFAULT_THREAD_COUNT;
+  private int m_nBatchesPerSecond = 0;
+  private boolean m_bRepair = false;
+  private Predicate <? super IParticipantIdentifier> m_aIgnoreFilter;
+  private BooleanSupplier m_aStopRequested = () -> false;
+
+  // Rate limiting
+  private final Object m_aRateLock = new Object ();
+  private long m_nNextSlotNS;
+
+  // State of the current run
+  private final Object m_aResultLock = new Object ();
+  private int m_nRepaired;
+  private int m_nRepairFailed;
+  private final ICommonsList <String> m_aRepairFailedIDs = new CommonsArrayList <> ();
+
+  /**
+   * Constructor
+   *
+   * @param aRegistry
+   *        The source of the participants registered in the SML. May not be
+   *        <code>null</code>.
+   * @param aHook
+   *        The hook to be used to repair differences. May not be
+   *        <code>null</code>.
+   */
+  public SMLReconciler (@Nonnull final ISMLParticipantRegistry aRegistry, @Nonnull final IRegistrationHook aHook)
+  {
+    ValueEnforcer.notNull (aRegistry, "Registry");
+    ValueEnforcer.notNull (aHook, "Hook");
+    m_aRegistry = aRegistry;
+    m_aHook = aHook;
+  }
+
+  /**
+   * @param nBatchSize
+   *        The number of participants per SML call. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMLReconciler setBatchSize (@Nonnegative final int nBatchSize)
+  {
+    ValueEnforcer.isGT0 (nBatchSize, "BatchSize");
+    m_nBatchSize = nBatchSize;
+    return this;
+  }
+
+  /**
+   * @param nThreadCount
+   *        The number of parallel SML calls. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMLReconciler setThreadCount (@Nonnegative final int nThreadCount)
+  {
+    ValueEnforcer.isGT0 (nThreadCount, "ThreadCount");
+    m_nThreadCount = nThreadCount;
+    return this;
+  }
+
+  /**
+   * @param nBatchesPerSecond
+   *        The maximum number of SML calls per second. Values &le; 0 mean
+   *        unlimited.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMLReconciler setBatchesPerSecond (final int nBatchesPerSecond)
+  {
+    m_nBatchesPerSecond = nBatchesPerSecond;
+    return this;
+  }
+
+  /**
+   * @param bRepair
+   *        <code>true</code> to register missing participants in the SML and
+   *        to delete stale ones, <code>false</code> to only report them.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMLReconciler setRepair (final boolean bRepair)
+  {
+    m_bRepair = bRepair;
+    return this;
+  }
+
+  /**
+   * @param aIgnoreFilter
+   *        An optional filter for participants that should not be checked.
+   *        May be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMLReconciler setIgnoreFilter (@Nullable final Predicate <? super IParticipantIdentifier> aIgnoreFilter)
+  {
+    m_aIgnoreFilter = aIgnoreFilter;
+    return this;
+  }
+
+  /**
+   * @param aStopRequested
+   *        Checked regularly to stop a running reconciliation. May not be
+   *        <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMLReconciler setStopRequested (@Nonnull final BooleanSupplier aStopRequested)
+  {
+    ValueEnforcer.notNull (aStopRequested, "StopRequested");
+    m_aStopRequested = aStopRequested;
+    return this;
+  }
+
+  private boolean _isIgnored (@Nonnull final IParticipantIdentifier aPI)
+  {
+    return m_aIgnoreFilter != null && m_aIgnoreFilter.test (aPI);
+  }
+
+  private void _acquireRatePermit ()
+  {
+    if (m_nBatchesPerSecond <= 0)
+      return;
+
+    final long nIntervalNS = TimeUnit.SECONDS.toNanos (1) / m_nBatchesPerSecond;
+    final long nWaitNS;
+    synchronized (m_aRateLock)
+    {
+      final long nNow = System.nanoTime ();
+      if (m_nNextSlotNS < nNow)
+        m_nNextSlotNS = nNow;
+      nWaitNS = m_nNextSlotNS - nNow;
+      m_nNextSlotNS += nIntervalNS;
+    }
+    if (nWaitNS > 0)
+      ThreadHelper.sleep (nWaitNS, TimeUnit.NANOSECONDS);
+  }
+
+  private void _repair (@Nonnull final ICommonsList <IParticipantIdentifier> aBatch,
+                        @Nonnull final Function <ICommonsList <IParticipantIdentifier>, ICommonsMap <IParticipantIdentifier, RegistrationHookException>> aAction,
+                        @Nonnull final String sAction)
+  {
+    _acquireRatePermit ();
+    ICommonsMap <IParticipantIdentifier, RegistrationHookException> aFailures;
+    try
+    {
+      aFailures = aAction.apply (aBatch);
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Error trying to " + sAction + " " + aBatch.size () + " participants in the SML", ex);
+      aFailures = null;
+    }
+
+    synchronized (m_aResultLock)
+    {
+      for (final IParticipantIdentifier aPI : aBatch)
+      {
+        final RegistrationHookException aFailure = aFailures == null ? null : aFailures.get (aPI);
+        if (aFailures != null && aFailure == null)
+          m_nRepaired++;
+        else
+        {
+          m_nRepairFailed++;
+          if (m_aRepairFailedIDs.size () < MAX_REPORTED_IDS)
+            m_aRepairFailedIDs.add (aPI.getURIEncoded ());
+          if (aFailure != null)
+            LOGGER.warn ("Failed to " + sAction + " '" + aPI.getURIEncoded () + "' in the SML: " + aFailure.getMessage ());
+        }
+      }
+    }
+  }
+
+  /**
+   * Reconcile the local service groups of the provided manager with the SML.
+   * The local service groups are considered incomplete, if the iteration
+   * failed or visited fewer service groups than the manager contains.
+   *
+   * @param aServiceGroupMgr
+   *        The service group manager to use. May not be <code>null</code>.
+   * @return The result of the reconciliation. Never <code>null</code>.
+   * @throws RegistrationHookException
+   *         If the registered participants could not be read from the SML
+   */
+  @Nonnull
+  public SMLReconciliationResult reconcile (@Nonnull final ISMPServiceGroupManager aServiceGroupMgr) throws RegistrationHookException
+  {
+    ValueEnforcer.notNull (aServiceGroupMgr, "ServiceGroupMgr");
+    final long nCountBefore = aServiceGroupMgr.getSMPServiceGroupCount ();
+    return reconcile (aConsumer -> {
+      final MutableLong aVisited = new MutableLong (0);
+      if (aServiceGroupMgr.forEachSMPServiceGroup (x -> {
+        aVisited.inc ();
+        aConsumer.accept (x.getParticpantIdentifier ());
+      }).isFailure ())
+        return ESuccess.FAILURE;
+
+      // Service groups deleted in the meantime are not visited
+      final long nExpected = Math.min (nCountBefore, aServiceGroupMgr.getSMPServiceGroupCount ());
+      if (aVisited.longValue () < nExpected)
+      {
+        LOGGER.error ("Only " + aVisited.longValue () + " of " + nExpected + " local service groups were read");
+        return ESuccess.FAILURE;
+      }
+      return ESuccess.SUCCESS;
+    });
+  }
+
+  /**
+   * Reconcile the provided local participants with the SML.
+   *
+   * @param aLocalParticipants
+   *        The source of all local participants. It is invoked exactly once
+   *        with the consumer for all local participants and must return
+   *        {@link ESuccess#FAILURE} if not all local participants were
+   *        provided. In that case no stale participants are determined or
+   *        deleted. May not be <code>null</code>.
+   * @return The result of the reconciliation. Never <code>null</code>.
+   * @throws RegistrationHookException
+   *         If the registered participants could not be read from the SML
+   */
+  @Nonnull
+  public SMLReconciliationResult reconcile (@Nonnull final Function <Consumer <IParticipantIdentifier>, ESuccess> aLocalParticipants) throws RegistrationHookException
+  {
+    ValueEnforcer.notNull (aLocalParticipants, "LocalParticipants");
+
+    m_nRepaired = 0;
+    m_nRepairFailed = 0;
+    m_aRepairFailedIDs.clear ();
+
+    // 1. read all registered participants - sorted for a stable report
+    final ICommonsSortedMap <String, IParticipantIdentifier> aRegistered = new CommonsTreeMap <> ();
+    m_aRegistry.forEachRegisteredParticipant (x -> aRegistered.put (x.getURIEncoded (), x));
+    final int nRegisteredCount = aRegistered.size ();
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Found " + nRegisteredCount + " participants registered in the SML");
+
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (m_nThreadCount,
+                                                                    new BasicThreadFactory.Builder ().setNamingPattern ("smp-sml-reconcile-%d")
+                                                                                                     .setDaemon (true)
+                                                                                                     .build ());
+    // Don't queue more batches than can be processed
+    final Semaphore aPending = new Semaphore (m_nThreadCount * 2);
+    final Consumer <Runnable> aSubmitter = aTask -> {
+      aPending.acquireUninterruptibly ();
+      aExecutor.submit ( () -> {
+        try
+        {
+          aTask.run ();
+        }
+        finally
+        {
+          aPending.release ();
+        }
+      });
+    };
+
+    final MutableInt aLocalCount = new MutableInt (0);
+    final MutableInt aIgnoredCount = new MutableInt (0);
+    final MutableInt aMissingCount = new MutableInt (0);
+    final ICommonsList <String> aMissingIDs = new CommonsArrayList <> ();
+    final ICommonsList <String> aStaleIDs = new CommonsArrayList <> ();
+    int nStaleCount = 0;
+    boolean bCompleted = false;
+    try
+    {
+      // 2. stream all local participants and find the missing ones
+      final Wrapper <ICommonsList <IParticipantIdentifier>> aCurrentBatch = new Wrapper <> (new CommonsArrayList <> ());
+      final ESuccess eLocalComplete = aLocalParticipants.apply (aPI -> {
+        aLocalCount.inc ();
+        // Always remove, so that it is not considered stale
+        final boolean bIsRegistered = aRegistered.remove (aPI.getURIEncoded ()) != null;
+        if (_isIgnored (aPI))
+        {
+          aIgnoredCount.inc ();
+          return;
+        }
+        if (bIsRegistered)
+          return;
+
+        aMissingCount.inc ();
+        if (aMissingIDs.size () < MAX_REPORTED_IDS)
+          aMissingIDs.add (aPI.getURIEncoded ());
+        if (m_bRepair && !m_aStopRequested.getAsBoolean ())
+        {
+          final ICommonsList <IParticipantIdentifier> aBatch = aCurrentBatch.get ();
+          aBatch.add (aPI);
+          if (aBatch.size () >= m_nBatchSize)
+          {
+            aSubmitter.accept ( () -> _repair (aBatch, m_aHook::createServiceGroups, "create"));
+            aCurrentBatch.set (new CommonsArrayList <> ());
+          }
+        }
+      });
+      if (m_bRepair && aCurrentBatch.get ().isNotEmpty () && !m_aStopRequested.getAsBoolean ())
+      {
+        final ICommonsList <IParticipantIdentifier> aBatch = aCurrentBatch.get ();
+        aSubmitter.accept ( () -> _repair (aBatch, m_aHook::createServiceGroups, "create"));
+      }
+
+      if (eLocalComplete.isSuccess ())
+      {
+        // 3. everything still registered has no local service group
+        ICommonsList <IParticipantIdentifier> aBatch = new CommonsArrayList <> ();
+        for (final IParticipantIdentifier aPI : aRegistered.values ())
+        {
+          if (_isIgnored (aPI))
+          {
+            aIgnoredCount.inc ();
+            continue;
+          }
+
+          nStaleCount++;
+          if (aStaleIDs.size () < MAX_REPORTED_IDS)
+            aStaleIDs.add (aPI.getURIEncoded ());
+          if (m_bRepair && !m_aStopRequested.getAsBoolean ())
+          {
+            aBatch.add (aPI);
+            if (aBatch.size () >= m_nBatchSize)
+            {
+              final ICommonsList <IParticipantIdentifier> aFinalBatch = aBatch;
+              aSubmitter.accept ( () -> _repair (aFinalBatch, m_aHook::deleteServiceGroups, "delete"));
+              aBatch = new CommonsArrayList <> ();
+            }
+          }
+        }
+        if (m_bRepair && aBatch.isNotEmpty () && !m_aStopRequested.getAsBoolean ())
+        {
+          final ICommonsList <IParticipantIdentifier> aFinalBatch = aBatch;
+          aSubmitter.accept ( () -> _repair (aFinalBatch, m_aHook::deleteServiceGroups, "delete"));
+        }
+      }
+      else
+      {
+        // Every participant that was not read would be considered stale
+        LOGGER.error ("Failed to read all local service groups - not checking for stale SML participants");
+      }
+      bCompleted = eLocalComplete.isSuccess () && !m_aStopRequested.getAsBoolean ();
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+    }
+
+    final SMLReconciliationResult ret;
+    synchronized (m_aResultLock)
+    {
+      ret = new SMLReconciliationResult (m_bRepair,
+                                         bCompleted,
+                                         aLocalCount.intValue (),
+                                         nRegisteredCount,
+                                         aIgnoredCount.intValue (),
+                                         aMissingCount.intValue (),
+                                         nStaleCount,
+                                         m_nRepaired,
+                                         m_nRepairFailed,
+                                         aMissingIDs,
+                                         aStaleIDs,
+                                         m_aRepairFailedIDs);
+    }
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("SML reconciliation finished: " + ret);
+    return ret;
+  }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The result of a single {@link SMLReconciler} run. The lists of participant
+ * IDs are limited to {@link SMLReconciler#MAX_REPORTED_IDS} entries each,
+ * whereas the counts are always complete.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMLReconciliationResult
+{
+  private final boolean m_bRepair;
+  private final boolean m_bCompleted;
+  private final int m_nLocalCount;
+  private final int m_nRegisteredCount;
+  private final int m_nIgnoredCount;
+  private final int m_nMissingCount;
+  private final int m_nStaleCount;
+  private final int m_nRepairedCount;
+  private final int m_nRepairFailedCount;
+  private final ICommonsList <String> m_aMissingIDs;
+  private final ICommonsList <String> m_aStaleIDs;
+  private final ICommonsList <String> m_aRepairFailedIDs;
+
+  public SMLReconciliationResult (final boolean bRepair,
+                                  final boolean bCompleted,
+                                  @Nonnegative final int nLocalCount,
+                                  @Nonnegative final int nRegisteredCount,
+                                  @Nonnegative final int nIgnoredCount,
+                                  @Nonnegative final int nMissingCount,
+                                  @Nonnegative final int nStaleCount,
+                                  @Nonnegative final int nRepairedCount,
+                                  @Nonnegative final int nRepairFailedCount,
+                                  @Nonnull final Iterable <String> aMissingIDs,
+                                  @Nonnull final Iterable <String> aStaleIDs,
+                                  @Nonnull final Iterable <String> aRepairFailedIDs)
+  {
+    m_bRepair = bRepair;
+    m_bCompleted = bCompleted;
+    m_nLocalCount = nLocalCount;
+    m_nRegisteredCount = nRegisteredCount;
+    m_nIgnoredCount = nIgnoredCount;
+    m_nMissingCount = nMissingCount;
+    m_nStaleCount = nStaleCount;
+    m_nRepairedCount = nRepairedCount;
+    m_nRepairFailedCount = nRepairFailedCount;
+    m_aMissingIDs = new CommonsArrayList <> (aMissingIDs);
+    m_aStaleIDs = new CommonsArrayList <> (aStaleIDs);
+    m_aRepairFailedIDs = new CommonsArrayList <> (aRepairFailedIDs);
+  }
+
+  /**
+   * @return <code>true</code> if the differences were repaired,
+   *         <code>false</code> if they were only reported.
+   */
+  public boolean isRepair ()
+  {
+    return m_bRepair;
+  }
+
+  /**
+   * @return <code>true</code> if all participants were checked,
+   *         <code>false</code> if the run was stopped before or not all
+   *         local service groups could be read.
+   */
+  public boolean isCompleted ()
+  {
+    return m_bCompleted;
+  }
+
+  /**
+   * @return The number of local service groups. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getLocalCount ()
+  {
+    return m_nLocalCount;
+  }
+
+  /**
+   * @return The number of participants registered in the SML for this SMP.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public int getRegisteredCount ()
+  {
+    return m_nRegisteredCount;
+  }
+
+  /**
+   * @return The number of participants that were not checked, e.g. because an
+   *         SML operation is still pending. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getIgnoredCount ()
+  {
+    return m_nIgnoredCount;
+  }
+
+  /**
+   * @return The number of local service groups not registered in the SML.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public int getMissingCount ()
+  {
+    return m_nMissingCount;
+  }
+
+  /**
+   * @return The number of participants registered in the SML without a local
+   *         service group. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getStaleCount ()
+  {
+    return m_nStaleCount;
+  }
+
+  /**
+   * @return The number of successfully repaired differences. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getRepairedCount ()
+  {
+    return m_nRepairedCount;
+  }
+
+  /**
+   * @return The number of differences that could not be repaired. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getRepairFailedCount ()
+  {
+    return m_nRepairFailedCount;
+  }
+
+  /**
+   * @return <code>true</code> if the local service groups and the SML are
+   *         consistent.
+   */
+  public boolean isConsistent ()
+  {
+    return m_nMissingCount == 0 && m_nStaleCount == 0;
+  }
+
+  /**
+   * @return The URI encoded IDs of the local service groups not registered in
+   *         the SML. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> getAllMissingIDs ()
+  {
+    return m_aMissingIDs.getClone ();
+  }
+
+  /**
+   * @return The URI encoded IDs of the participants registered in the SML
+   *         without a local service group. Never <code>null</code> but maybe
+   *         empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> getAllStaleIDs ()
+  {
+    return m_aStaleIDs.getClone ();
+  }
+
+  /**
+   * @return The URI encoded IDs of the participants that could not be
+   *         repaired. Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> getAllRepairFailedIDs ()
+  {
+    return m_aRepairFailedIDs.getClone ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Repair", m_bRepair)
+                                       .append ("Completed", m_bCompleted)
+                                       .append ("LocalCount", m_nLocalCount)
+                                       .append ("RegisteredCount", m_nRegisteredCount)
+                                       .append ("IgnoredCount", m_nIgnoredCount)
+                                       .append ("MissingCount", m_nMissingCount)
+                                       .append ("StaleCount", m_nStaleCount)
+                                       .append ("RepairedCount", m_nRepairedCount)
+                                       .append ("RepairFailedCount", m_nRepairFailedCount)
+                                       .getToString ();
+  }
+}
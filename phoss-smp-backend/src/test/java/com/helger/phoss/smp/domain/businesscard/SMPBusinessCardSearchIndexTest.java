@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for class {@link SMPBusinessCardSearchIndex}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPBusinessCardSearchIndexTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  private static ISMPBusinessCard _createBC (final String sParticipantID,
+                                             final String sName,
+                                             final String sCountryCode,
+                                             final String sIdentifierValue)
+  {
+    final IParticipantIdentifier aPI = SMPMetaManager.getIdentifierFactory ()
+                                                     .createParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                                                   sParticipantID);
+    final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity ();
+    aEntity.names ().add (new SMPBusinessCardName (sName, null));
+    aEntity.setCountryCode (sCountryCode);
+    aEntity.identifiers ().add (new SMPBusinessCardIdentifier ("VAT", sIdentifierValue));
+    return new SMPBusinessCard (new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null),
+                                new CommonsArrayList <> (aEntity));
+  }
+
+  @Test
+  public void testSearch ()
+  {
+    final SMPBusinessCardSearchIndex aIndex = SMPMetaManager.getBusinessCardSearchIndex ();
+    assertNotNull (aIndex);
+    aIndex.reset ();
+    // Triggers the initial load
+    assertEquals (0, aIndex.getBusinessCardCount ());
+
+    final ISMPBusinessCard aBC1 = _createBC ("9915:acme", "ACME Corporation", "AT", "ATU12345678");
+    final ISMPBusinessCard aBC2 = _createBC ("9915:globex", "Globex Corp.", "DE", "DE987654321");
+    aIndex.onCreateOrUpdateSMPBusinessCard (aBC1);
+    aIndex.onCreateOrUpdateSMPBusinessCard (aBC2);
+    assertEquals (2, aIndex.getBusinessCardCount ());
+
+    // Prefix and token search
+    assertEquals (2, aIndex.search ("corp", null, 0, 10).getTotalCount ());
+    assertEquals (1, aIndex.search ("ACME corp", null, 0, 10).getTotalCount ());
+    assertEquals (0, aIndex.search ("acme globex", null, 0, 10).getTotalCount ());
+    assertEquals (1, aIndex.search ("atu123", null, 0, 10).getTotalCount ());
+    assertEquals (1, aIndex.search (null, "de", 0, 10).getTotalCount ());
+    assertEquals (0, aIndex.search ("acme", "DE", 0, 10).getTotalCount ());
+
+    // Paging
+    final SMPBusinessCardSearchResult aResult = aIndex.search (null, null, 1, 10);
+    assertEquals (2, aResult.getTotalCount ());
+    assertEquals (1, aResult.getAllBusinessCards ().size ());
+    assertEquals (aBC2.getID (), aResult.getAllBusinessCards ().getFirst ().getID ());
+
+    // Update replaces the old tokens
+    aIndex.onCreateOrUpdateSMPBusinessCard (_createBC ("9915:acme", "Initech", "AT", "ATU12345678"));
+    assertEquals (0, aIndex.search ("acme corporation", null, 0, 10).getTotalCount ());
+    assertEquals (1, aIndex.search ("initech", null, 0, 10).getTotalCount ());
+
+    aIndex.onDeleteSMPBusinessCard (aBC2);
+    assertEquals (0, aIndex.search ("globex", null, 0, 10).getTotalCount ());
+    assertEquals (1, aIndex.getBusinessCardCount ());
+  }
+}
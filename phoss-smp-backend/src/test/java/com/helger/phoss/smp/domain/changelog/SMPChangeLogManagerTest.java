@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.changelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCard;
+import com.helger.phoss.smp.domain.redirect.SMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for class {@link SMPChangeLogManager}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class SMPChangeLogManagerTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  @Test
+  public void testChanges () throws Exception
+  {
+    final SMPChangeLogManager aMgr = new SMPChangeLogManager ("test-changelog-" + System.nanoTime () + ".xml");
+    assertEquals (0, aMgr.getLastSequence ());
+
+    final IParticipantIdentifier aPI = new SimpleParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                                        "0088:dummy");
+    final IDocumentTypeIdentifier aDocTypeID = new SimpleDocumentTypeIdentifier (PeppolIdentifierHelper.DEFAULT_DOCUMENT_TYPE_SCHEME,
+                                                                                 "doctype4711");
+    final SMPServiceGroup aSG = new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null);
+    final SMPRedirect aRedirect = new SMPRedirect (aSG, aDocTypeID, "target", "suid", null, null);
+
+    aMgr.onSMPServiceGroupCreated (aSG);
+    aMgr.onSMPRedirectCreated (aRedirect);
+    aMgr.onCreateOrUpdateSMPBusinessCard (new SMPBusinessCard (aSG, new CommonsArrayList <> ()));
+    assertEquals (3, aMgr.getLastSequence ());
+
+    // Update replaces the entry
+    aMgr.onSMPRedirectUpdated (aRedirect);
+    assertEquals (4, aMgr.getLastSequence ());
+    ICommonsList <ISMPChangeLogEntry> aChanges = aMgr.getAllChangesSince (0, 100);
+    assertEquals (3, aChanges.size ());
+    assertEquals (ESMPChangeItemType.SERVICE_GROUP, aChanges.get (0).getItemType ());
+    assertNull (aChanges.get (0).getDocumentTypeID ());
+    assertEquals (ESMPChangeItemType.BUSINESS_CARD, aChanges.get (1).getItemType ());
+    assertEquals (ESMPChangeItemType.REDIRECT, aChanges.get (2).getItemType ());
+    assertEquals (4, aChanges.get (2).getSequence ());
+    assertEquals (aDocTypeID.getURIEncoded (), aChanges.get (2).getDocumentTypeID ());
+
+    // Limits
+    assertEquals (1, aMgr.getAllChangesSince (0, 1).size ());
+    assertEquals (1, aMgr.getAllChangesSince (3, 100).size ());
+    assertTrue (aMgr.getAllChangesSince (4, 100).isEmpty ());
+
+    // Deleting the service group creates tombstones for all items
+    aMgr.onSMPServiceGroupDeleted (aPI);
+    assertEquals (7, aMgr.getLastSequence ());
+    aChanges = aMgr.getAllChangesSince (4, 100);
+    assertEquals (3, aChanges.size ());
+    for (final ISMPChangeLogEntry aEntry : aChanges)
+    {
+      assertTrue (aEntry.isDeleted ());
+      assertEquals (aSG.getID (), aEntry.getServiceGroupID ());
+    }
+    assertEquals (ESMPChangeItemType.SERVICE_GROUP, aChanges.getLast ().getItemType ());
+
+    // Re-creation
+    aMgr.onSMPServiceGroupCreated (aSG);
+    aChanges = aMgr.getAllChangesSince (7, 100);
+    assertEquals (1, aChanges.size ());
+    assertFalse (aChanges.get (0).isDeleted ());
+    assertEquals (8, aChanges.get (0).getSequence ());
+  }
+}
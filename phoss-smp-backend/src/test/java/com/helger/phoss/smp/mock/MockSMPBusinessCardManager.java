@@ -16,6 +16,7 @@ import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.state.EChange;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
@@ -31,11 +32,13 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
  */
 final class MockSMPBusinessCardManager implements ISMPBusinessCardManager
 {
+  private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+
   @Nonnull
   @ReturnsMutableObject
   public CallbackList <ISMPBusinessCardCallback> bcCallbacks ()
   {
-    throw new UnsupportedOperationException ();
+    return m_aCBs;
   }
 
   public ISMPBusinessCard getSMPBusinessCardOfServiceGroup (final ISMPServiceGroup aServiceGroup)
@@ -55,7 +58,7 @@ final class MockSMPBusinessCardManager implements ISMPBusinessCardManager
 
   public ICommonsList <ISMPBusinessCard> getAllSMPBusinessCards ()
   {
-    throw new UnsupportedOperationException ();
+    return new CommonsArrayList <> ();
   }
 
   public EChange deleteSMPBusinessCard (final ISMPBusinessCard aSMPBusinessCard)
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.helger.peppol.smlclient.participant.BadRequestFault;
+import com.helger.peppol.smlclient.participant.FaultType;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+
+/**
+ * Test class for class {@link SMLOutbox}.
+ *
+ * @author Philip Helger
+ */
+public final class SMLOutboxTest
+{
+  private static BadRequestFault _fault (final String sMsg)
+  {
+    final FaultType aFaultInfo = new FaultType ();
+    aFaultInfo.setFaultMessage (sMsg);
+    return new BadRequestFault ("Bad request", aFaultInfo);
+  }
+
+  @Test
+  public void testIsParticipantAlreadyRegistered () throws RegistrationHookException
+  {
+    assertTrue (SMLOutbox.isParticipantAlreadyRegistered (_fault ("[ERR-106] The participant identifier already exists")));
+    assertTrue (SMLOutbox.isParticipantAlreadyRegistered (_fault ("The participant identifier 'x' is already registered")));
+    assertFalse (SMLOutbox.isParticipantAlreadyRegistered (_fault ("[ERR-106] The participant identifier already exists for another SMP")));
+    assertFalse (SMLOutbox.isParticipantAlreadyRegistered (_fault ("The participant identifier is invalid")));
+    assertFalse (SMLOutbox.isParticipantAlreadyRegistered (_fault (null)));
+
+    // The fault created by the in-memory SML must be recognized
+    final RegistrationHookInMemory aSML = new RegistrationHookInMemory ();
+    aSML.createServiceGroup (PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:outbox"));
+    try
+    {
+      aSML.createServiceGroup (PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:outbox"));
+      fail ();
+    }
+    catch (final RegistrationHookException ex)
+    {
+      assertTrue (SMLOutbox.isParticipantAlreadyRegistered ((BadRequestFault) ex.getCause ()));
+    }
+  }
+}
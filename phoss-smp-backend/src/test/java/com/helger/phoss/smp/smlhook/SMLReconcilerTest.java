@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The PEPPOL project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.smlhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+
+/**
+ * Test class for class {@link SMLReconciler}.
+ *
+ * @author Philip Helger
+ */
+public final class SMLReconcilerTest
+{
+  private static IParticipantIdentifier _pi (final String sValue)
+  {
+    return PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme (sValue);
+  }
+
+  private static Function <Consumer <IParticipantIdentifier>, ESuccess> _local (final IParticipantIdentifier... aPIs)
+  {
+    final ICommonsList <IParticipantIdentifier> aList = new CommonsArrayList <> (aPIs);
+    return x -> {
+      aList.forEach (x);
+      return ESuccess.SUCCESS;
+    };
+  }
+
+  @Test
+  public void testReportAndRepair () throws RegistrationHookException
+  {
+    final RegistrationHookInMemory aSML = new RegistrationHookInMemory ();
+    aSML.createServiceGroup (_pi ("9915:a"));
+    aSML.createServiceGroup (_pi ("9915:b"));
+    aSML.createServiceGroup (_pi ("9915:stale"));
+
+    final Function <Consumer <IParticipantIdentifier>, ESuccess> aLocal = _local (_pi ("9915:a"),
+                                                                         _pi ("9915:b"),
+                                                                         _pi ("9915:missing1"),
+                                                                         _pi ("9915:missing2"));
+
+    // Report only
+    SMLReconciliationResult aResult = new SMLReconciler (aSML, aSML).setBatchSize (1).reconcile (aLocal);
+    assertTrue (aResult.isCompleted ());
+    assertFalse (aResult.isConsistent ());
+    assertEquals (4, aResult.getLocalCount ());
+    assertEquals (3, aResult.getRegisteredCount ());
+    assertEquals (2, aResult.getMissingCount ());
+    assertEquals (1, aResult.getStaleCount ());
+    assertEquals (new CommonsArrayList <> ("iso6523-actorid-upis::9915:stale"), aResult.getAllStaleIDs ());
+    assertEquals (0, aResult.getRepairedCount ());
+    assertEquals (3, aSML.getRegisteredCount ());
+
+    // Repair
+    aResult = new SMLReconciler (aSML, aSML).setBatchSize (1).setThreadCount (2).setRepair (true).reconcile (aLocal);
+    assertEquals (3, aResult.getRepairedCount ());
+    assertEquals (0, aResult.getRepairFailedCount ());
+    assertEquals (4, aSML.getRegisteredCount ());
+    assertTrue (aSML.isRegistered (_pi ("9915:missing1")));
+    assertFalse (aSML.isRegistered (_pi ("9915:stale")));
+
+    // Now everything is consistent
+    aResult = new SMLReconciler (aSML, aSML).reconcile (aLocal);
+    assertTrue (aResult.isConsistent ());
+  }
+
+  @Test
+  public void testIgnoreFilter () throws RegistrationHookException
+  {
+    final RegistrationHookInMemory aSML = new RegistrationHookInMemory ();
+    aSML.createServiceGroup (_pi ("9915:pendingdelete"));
+
+    final SMLReconciliationResult aResult = new SMLReconciler (aSML, aSML).setRepair (true)
+                                                                          .setIgnoreFilter (x -> x.getValue ()
+                                                                                                  .startsWith ("9915:pending"))
+                                                                          .reconcile (_local (_pi ("9915:pendingcreate")));
+    assertTrue (aResult.isConsistent ());
+    assertEquals (2, aResult.getIgnoredCount ());
+    assertEquals (0, aResult.getRepairedCount ());
+    assertTrue (aSML.isRegistered (_pi ("9915:pendingdelete")));
+    assertFalse (aSML.isRegistered (_pi ("9915:pendingcreate")));
+  }
+
+  @Test
+  public void testIncompleteLocalParticipants () throws RegistrationHookException
+  {
+    final RegistrationHookInMemory aSML = new RegistrationHookInMemory ();
+    aSML.createServiceGroup (_pi ("9915:a"));
+    aSML.createServiceGroup (_pi ("9915:b"));
+
+    // The iteration aborts after the first participant
+    final SMLReconciliationResult aResult = new SMLReconciler (aSML, aSML).setRepair (true).reconcile (x -> {
+      x.accept (_pi ("9915:a"));
+      x.accept (_pi ("9915:missing"));
+      return ESuccess.FAILURE;
+    });
+    assertFalse (aResult.isCompleted ());
+    assertEquals (1, aResult.getMissingCount ());
+    // Nothing may be considered stale
+    assertEquals (0, aResult.getStaleCount ());
+    assertTrue (aSML.isRegistered (_pi ("9915:b")));
+    // Creating the missing ones is still safe
+    assertTrue (aSML.isRegistered (_pi ("9915:missing")));
+  }
+}
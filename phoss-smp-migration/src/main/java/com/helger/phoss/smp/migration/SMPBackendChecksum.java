@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.migration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardMicroTypeConverter;
+import com.helger.phoss.smp.domain.changelog.ESMPChangeItemType;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
+import com.helger.phoss.smp.domain.user.ISMPUser;
+import com.helger.phoss.smp.domain.user.ISMPUserManager;
+import com.helger.security.messagedigest.EMessageDigestAlgorithm;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.convert.MicroTypeConverter;
+import com.helger.xml.microdom.serialize.MicroWriter;
+
+/**
+ * The number of items and a checksum per item type of a single SMP backend.
+ * The checksum of each item is a hash over its content, and the checksums are
+ * summed up, so that it is independent of the iteration order of the backend.
+ * Lists inside an item (processes, endpoints and business card entities) are
+ * hashed element by element for the same reason. Owners are compared by login
+ * name, because the user IDs differ between the user management variants.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPBackendChecksum
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBackendChecksum.class);
+  private static final char SEPARATOR = '\u0000';
+
+  private final Map <ESMPChangeItemType, LongAdder> m_aCounts = new EnumMap <> (ESMPChangeItemType.class);
+  private final Map <ESMPChangeItemType, LongAdder> m_aChecksums = new EnumMap <> (ESMPChangeItemType.class);
+  // Only modified in create
+  private final Set <ESMPChangeItemType> m_aIncomplete = EnumSet.noneOf (ESMPChangeItemType.class);
+
+  private SMPBackendChecksum ()
+  {
+    for (final ESMPChangeItemType eItemType : ESMPChangeItemType.values ())
+    {
+      m_aCounts.put (eItemType, new LongAdder ());
+      m_aChecksums.put (eItemType, new LongAdder ());
+    }
+  }
+
+  private static long _getHash (@Nonnull final String... aParts)
+  {
+    final MessageDigest aMD = EMessageDigestAlgorithm.SHA_256.createMessageDigest ();
+    for (final String sPart : aParts)
+    {
+      if (sPart != null)
+        aMD.update (sPart.getBytes (StandardCharsets.UTF_8));
+      aMD.update ((byte) SEPARATOR);
+    }
+    return ByteBuffer.wrap (aMD.digest ()).getLong ();
+  }
+
+  private void _addPart (@Nonnull final ESMPChangeItemType eItemType, @Nonnull final String... aParts)
+  {
+    m_aChecksums.get (eItemType).add (_getHash (aParts));
+  }
+
+  private void _addItem (@Nonnull final ESMPChangeItemType eItemType, @Nonnull final String... aParts)
+  {
+    m_aCounts.get (eItemType).increment ();
+    _addPart (eItemType, aParts);
+  }
+
+  private void _setIncomplete (@Nonnull final SMPMigrationBackend aBackend, @Nonnull final ESMPChangeItemType eItemType)
+  {
+    LOGGER.error ("Failed to read all '" + eItemType.getID () + "' items of backend '" + aBackend.getBackendID () + "'");
+    m_aIncomplete.add (eItemType);
+  }
+
+  @Nonnull
+  private static String _getAsString (@Nonnull final Object aObject, @Nonnull final String sTagName)
+  {
+    return MicroWriter.getNodeAsString (MicroTypeConverter.convertToMicroElement (aObject, sTagName));
+  }
+
+  /**
+   * @param eItemType
+   *        The item type to query. May not be <code>null</code>.
+   * @return The number of items of the provided type.
+   */
+  public long getCount (@Nonnull final ESMPChangeItemType eItemType)
+  {
+    return m_aCounts.get (eItemType).sum ();
+  }
+
+  /**
+   * @param eItemType
+   *        The item type to query. May not be <code>null</code>.
+   * @return The checksum over all items of the provided type.
+   */
+  public long getChecksum (@Nonnull final ESMPChangeItemType eItemType)
+  {
+    return m_aChecksums.get (eItemType).sum ();
+  }
+
+  /**
+   * @param eItemType
+   *        The item type to query. May not be <code>null</code>.
+   * @return <code>true</code> if all items of the provided type could be read
+   *         from the backend, <code>false</code> if the count and the checksum
+   *         only cover a part of them.
+   */
+  public boolean isComplete (@Nonnull final ESMPChangeItemType eItemType)
+  {
+    return !m_aIncomplete.contains (eItemType);
+  }
+
+  /**
+   * Compare this checksum with another one. Item types that could not be read
+   * completely on either side are always reported as a difference.
+   *
+   * @param aOther
+   *        The checksum to compare to. May not be <code>null</code>.
+   * @return A list with one text per difference. Never <code>null</code> but
+   *         empty if both are identical.
+   */
+  @Nonnull
+  public ICommonsList <String> getAllDifferences (@Nonnull final SMPBackendChecksum aOther)
+  {
+    ValueEnforcer.notNull (aOther, "Other");
+
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    for (final ESMPChangeItemType eItemType : ESMPChangeItemType.values ())
+    {
+      if (!isComplete (eItemType) || !aOther.isComplete (eItemType))
+      {
+        ret.add ("The '" + eItemType.getID () + "' items could not be read completely");
+        continue;
+      }
+
+      final long nCount = getCount (eItemType);
+      final long nOtherCount = aOther.getCount (eItemType);
+      if (nCount != nOtherCount)
+        ret.add ("The number of '" + eItemType.getID () + "' items differs: " + nCount + " vs. " + nOtherCount);
+      else
+        if (getChecksum (eItemType) != aOther.getChecksum (eItemType))
+          ret.add ("The checksum of the " + nCount + " '" + eItemType.getID () + "' items differs");
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    final ToStringGenerator ret = new ToStringGenerator (this);
+    for (final ESMPChangeItemType eItemType : ESMPChangeItemType.values ())
+      ret.append (eItemType.getID (), getCount (eItemType) + "/" + Long.toHexString (getChecksum (eItemType)));
+    return ret.getToString ();
+  }
+
+  /**
+   * Calculate the checksum of all service groups, service information,
+   * redirects and business cards of the provided backend.
+   *
+   * @param aBackend
+   *        The backend to use. May not be <code>null</code>.
+   * @return The new checksum. Never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPBackendChecksum create (@Nonnull final SMPMigrationBackend aBackend)
+  {
+    ValueEnforcer.notNull (aBackend, "Backend");
+
+    final SMPBackendChecksum ret = new SMPBackendChecksum ();
+
+    // Resolve each owner only once
+    final ISMPUserManager aUserMgr = aBackend.getUserMgr ();
+    final Map <String, String> aOwnerNames = new ConcurrentHashMap <> ();
+    if (aBackend.getServiceGroupMgr ().forEachSMPServiceGroup (aServiceGroup -> {
+      final String sOwnerName = aOwnerNames.computeIfAbsent (aServiceGroup.getOwnerID (), sOwnerID -> {
+        final ISMPUser aOwner = aUserMgr.getUserOfID (sOwnerID);
+        return aOwner == null ? sOwnerID : SMPMigrationBackend.getLoginName (aOwner);
+      });
+      ret._addItem (ESMPChangeItemType.SERVICE_GROUP,
+                    aServiceGroup.getID (),
+                    sOwnerName,
+                    aServiceGroup.getExtensionsAsString ());
+    }).isFailure ())
+      ret._setIncomplete (aBackend, ESMPChangeItemType.SERVICE_GROUP);
+
+    if (aBackend.getServiceInformationMgr ().forEachSMPServiceInformation (aServiceInfo -> {
+      final String sServiceGroupID = aServiceInfo.getServiceGroupID ();
+      final String sDocTypeID = aServiceInfo.getDocumentTypeIdentifier ().getURIEncoded ();
+      ret._addItem (ESMPChangeItemType.SERVICE_INFORMATION,
+                    sServiceGroupID,
+                    sDocTypeID,
+                    aServiceInfo.getExtensionsAsString ());
+      for (final ISMPProcess aProcess : aServiceInfo.getAllProcesses ())
+      {
+        final String sProcessID = aProcess.getProcessIdentifier ().getURIEncoded ();
+        ret._addPart (ESMPChangeItemType.SERVICE_INFORMATION,
+                      sServiceGroupID,
+                      sDocTypeID,
+                      sProcessID,
+                      aProcess.getExtensionsAsString ());
+        for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+          ret._addPart (ESMPChangeItemType.SERVICE_INFORMATION,
+                        sServiceGroupID,
+                        sDocTypeID,
+                        sProcessID,
+                        _getAsString (aEndpoint, "endpoint"));
+      }
+    }).isFailure ())
+      ret._setIncomplete (aBackend, ESMPChangeItemType.SERVICE_INFORMATION);
+
+    for (final ISMPRedirect aRedirect : aBackend.getRedirectMgr ().getAllSMPRedirects ())
+      ret._addItem (ESMPChangeItemType.REDIRECT, _getAsString (aRedirect, "redirect"));
+
+    final ISMPBusinessCardManager aBusinessCardMgr = aBackend.getBusinessCardMgr ();
+    if (aBusinessCardMgr != null)
+      try
+      {
+        // Iterating business cards has no result - failures are exceptions
+        aBusinessCardMgr.forEachSMPBusinessCard (aBusinessCard -> _addBusinessCard (ret, aBusinessCard));
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Error iterating the business cards of backend '" + aBackend.getBackendID () + "'", ex);
+        ret._setIncomplete (aBackend, ESMPChangeItemType.BUSINESS_CARD);
+      }
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Checksum of backend '" + aBackend.getBackendID () + "': " + ret);
+    return ret;
+  }
+
+  private static void _addBusinessCard (@Nonnull final SMPBackendChecksum aTarget,
+                                        @Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    final String sServiceGroupID = aBusinessCard.getServiceGroupID ();
+    aTarget._addItem (ESMPChangeItemType.BUSINESS_CARD, sServiceGroupID);
+
+    // The entity IDs are technical and not part of the checksum
+    final IMicroElement eBusinessCard = SMPBusinessCardMicroTypeConverter.convertToMicroElement (aBusinessCard,
+                                                                                                null,
+                                                                                                "businesscard",
+                                                                                                true);
+    for (final IMicroElement eEntity : eBusinessCard.getAllChildElements ())
+      aTarget._addPart (ESMPChangeItemType.BUSINESS_CARD, sServiceGroupID, MicroWriter.getNodeAsString (eEntity));
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.migration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.domain.ISMPManagerProvider;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.user.ISMPUser;
+import com.helger.phoss.smp.domain.user.ISMPUserManager;
+import com.helger.phoss.smp.domain.user.SMPUserPhoton;
+
+/**
+ * The managers of a single SMP backend that take part in a migration.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPMigrationBackend
+{
+  private final String m_sBackendID;
+  private final ISMPUserManager m_aUserMgr;
+  private final ISMPServiceGroupManager m_aServiceGroupMgr;
+  private final ISMPServiceInformationManager m_aServiceInfoMgr;
+  private final ISMPRedirectManager m_aRedirectMgr;
+  private final ISMPBusinessCardManager m_aBusinessCardMgr;
+
+  public SMPMigrationBackend (@Nonnull @Nonempty final String sBackendID,
+                              @Nonnull final ISMPUserManager aUserMgr,
+                              @Nonnull final ISMPServiceGroupManager aServiceGroupMgr,
+                              @Nonnull final ISMPServiceInformationManager aServiceInfoMgr,
+                              @Nonnull final ISMPRedirectManager aRedirectMgr,
+                              @Nullable final ISMPBusinessCardManager aBusinessCardMgr)
+  {
+    ValueEnforcer.notEmpty (sBackendID, "BackendID");
+    ValueEnforcer.notNull (aUserMgr, "UserMgr");
+    ValueEnforcer.notNull (aServiceGroupMgr, "ServiceGroupMgr");
+    ValueEnforcer.notNull (aServiceInfoMgr, "ServiceInfoMgr");
+    ValueEnforcer.notNull (aRedirectMgr, "RedirectMgr");
+    m_sBackendID = sBackendID;
+    m_aUserMgr = aUserMgr;
+    m_aServiceGroupMgr = aServiceGroupMgr;
+    m_aServiceInfoMgr = aServiceInfoMgr;
+    m_aRedirectMgr = aRedirectMgr;
+    m_aBusinessCardMgr = aBusinessCardMgr;
+  }
+
+  /**
+   * @return The ID of the backend as used in the {@link
+   *         com.helger.phoss.smp.backend.SMPBackendRegistry}. Neither
+   *         <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getBackendID ()
+  {
+    return m_sBackendID;
+  }
+
+  @Nonnull
+  public ISMPUserManager getUserMgr ()
+  {
+    return m_aUserMgr;
+  }
+
+  @Nonnull
+  public ISMPServiceGroupManager getServiceGroupMgr ()
+  {
+    return m_aServiceGroupMgr;
+  }
+
+  @Nonnull
+  public ISMPServiceInformationManager getServiceInformationMgr ()
+  {
+    return m_aServiceInfoMgr;
+  }
+
+  @Nonnull
+  public ISMPRedirectManager getRedirectMgr ()
+  {
+    return m_aRedirectMgr;
+  }
+
+  /**
+   * @return The business card manager. May be <code>null</code> if the
+   *         backend does not support business cards.
+   */
+  @Nullable
+  public ISMPBusinessCardManager getBusinessCardMgr ()
+  {
+    return m_aBusinessCardMgr;
+  }
+
+  /**
+   * Get the name a user logs in with. This is used to match the users of
+   * different user management variants.
+   *
+   * @param aUser
+   *        The user to use. May not be <code>null</code>.
+   * @return The login name of the user. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public static String getLoginName (@Nonnull final ISMPUser aUser)
+  {
+    // The user name of Photon users contains the display name as well
+    if (aUser instanceof SMPUserPhoton)
+      return ((SMPUserPhoton) aUser).getUser ().getLoginName ();
+    return aUser.getUserName ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BackendID", m_sBackendID).getToString ();
+  }
+
+  /**
+   * Create all managers of a backend from its manager provider. The managers
+   * are independent of the ones of {@link SMPMetaManager}.
+   *
+   * @param sBackendID
+   *        The backend ID. May neither be <code>null</code> nor empty.
+   * @param aManagerProvider
+   *        The manager provider of the backend. May not be <code>null</code>.
+   * @param aIdentifierFactory
+   *        The identifier factory to use. May not be <code>null</code>.
+   * @return The new backend. Never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPMigrationBackend createFromManagerProvider (@Nonnull @Nonempty final String sBackendID,
+                                                               @Nonnull final ISMPManagerProvider aManagerProvider,
+                                                               @Nonnull final IIdentifierFactory aIdentifierFactory)
+  {
+    ValueEnforcer.notNull (aManagerProvider, "ManagerProvider");
+    ValueEnforcer.notNull (aIdentifierFactory, "IdentifierFactory");
+
+    final ISMPUserManager aUserMgr = aManagerProvider.createUserMgr ();
+    // Service group manager must be before redirect and service information!
+    final ISMPServiceGroupManager aServiceGroupMgr = aManagerProvider.createServiceGroupMgr ();
+    final ISMPRedirectManager aRedirectMgr = aManagerProvider.createRedirectMgr (aIdentifierFactory, aServiceGroupMgr);
+    final ISMPServiceInformationManager aServiceInfoMgr = aManagerProvider.createServiceInformationMgr (aIdentifierFactory,
+                                                                                                       aServiceGroupMgr);
+    final ISMPBusinessCardManager aBusinessCardMgr = aManagerProvider.createBusinessCardMgr (aIdentifierFactory,
+                                                                                           aServiceGroupMgr);
+    return new SMPMigrationBackend (sBackendID,
+                                    aUserMgr,
+                                    aServiceGroupMgr,
+                                    aServiceInfoMgr,
+                                    aRedirectMgr,
+                                    aBusinessCardMgr);
+  }
+
+  /**
+   * Use the managers of the initialized {@link SMPMetaManager}.
+   *
+   * @param sBackendID
+   *        The ID of the backend {@link SMPMetaManager} was initialized with.
+   *        May neither be <code>null</code> nor empty.
+   * @return The new backend. Never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPMigrationBackend createFromMetaManager (@Nonnull @Nonempty final String sBackendID)
+  {
+    return new SMPMigrationBackend (sBackendID,
+                                    SMPMetaManager.getUserMgr (),
+                                    SMPMetaManager.getServiceGroupMgr (),
+                                    SMPMetaManager.getServiceInformationMgr (),
+                                    SMPMetaManager.getRedirectMgr (),
+                                    SMPMetaManager.getBusinessCardMgr ());
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.migration;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+import com.helger.commons.system.SystemProperties;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.backend.SMPBackendRegistry;
+import com.helger.phoss.smp.domain.ISMPManagerProvider;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.smlhook.RegistrationHookFactory;
+import com.helger.photon.app.io.WebFileIO;
+import com.helger.scope.mgr.ScopeManager;
+import com.helger.scope.mgr.Scoped;
+
+/**
+ * Command line tool to copy all data from one SMP backend to another one and
+ * verify the result. The configuration of both backends (e.g. the JDBC and
+ * the MongoDB settings) is read from the same smp-server.properties file. The
+ * XML backend and the users of the XML and MongoDB backend are read from and
+ * written to the data directory. No SML calls are performed.<br>
+ * Exit code 0 means success, 1 means that the migration or the verification
+ * failed and 2 means invalid arguments.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPMigrationTool
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPMigrationTool.class);
+
+  private static final String ARG_SOURCE = "-source";
+  private static final String ARG_TARGET = "-target";
+  private static final String ARG_DATA_PATH = "-datapath";
+  private static final String ARG_CONFIG = "-config";
+  private static final String ARG_THREADS = "-threads";
+  private static final String ARG_BATCH_SIZE = "-batchsize";
+  private static final String ARG_VERIFY_ONLY = "-verifyonly";
+
+  private static final int EXIT_SUCCESS = 0;
+  private static final int EXIT_FAILURE = 1;
+  private static final int EXIT_USAGE = 2;
+
+  private SMPMigrationTool ()
+  {}
+
+  private static int _usage (@Nonnull final String sMsg)
+  {
+    LOGGER.error (sMsg);
+    LOGGER.info ("Usage: " +
+                 SMPMigrationTool.class.getName () +
+                 " " +
+                 ARG_SOURCE +
+                 " <backend> " +
+                 ARG_TARGET +
+                 " <backend> " +
+                 ARG_DATA_PATH +
+                 " <directory> [" +
+                 ARG_CONFIG +
+                 " <smp-server.properties>] [" +
+                 ARG_THREADS +
+                 " <count>] [" +
+                 ARG_BATCH_SIZE +
+                 " <count>] [" +
+                 ARG_VERIFY_ONLY +
+                 "]");
+    LOGGER.info ("Supported backends are: " + SMPBackendRegistry.getInstance ().getAllBackendIDs ());
+    return EXIT_USAGE;
+  }
+
+  private static int _run (@Nonnull final String sSourceID,
+                           @Nonnull final String sTargetID,
+                           final int nThreadCount,
+                           final int nBatchSize,
+                           final boolean bVerifyOnly)
+  {
+    final SMPBackendRegistry aBackendRegistry = SMPBackendRegistry.getInstance ();
+    final ISMPManagerProvider aSourceProvider = aBackendRegistry.getManagerProvider (sSourceID);
+    if (aSourceProvider == null)
+      return _usage ("Invalid source backend '" + sSourceID + "' provided");
+    final ISMPManagerProvider aTargetProvider = aBackendRegistry.getManagerProvider (sTargetID);
+    if (aTargetProvider == null)
+      return _usage ("Invalid target backend '" + sTargetID + "' provided");
+
+    // The participants are already registered in the SML
+    RegistrationHookFactory.setSMLDisabled (true);
+
+    // The managers of the SQL backend need a request scope
+    try (final Scoped aScoped = new Scoped ())
+    {
+      // The target is the main backend, so that all internal lookups go there
+      SMPMetaManager.setManagerProvider (aTargetProvider);
+      SMPMetaManager.getInstance ();
+      final SMPMigrationBackend aTarget = SMPMigrationBackend.createFromMetaManager (sTargetID);
+      final SMPMigrationBackend aSource = SMPMigrationBackend.createFromManagerProvider (sSourceID,
+                                                                                       aSourceProvider,
+                                                                                       SMPMetaManager.getIdentifierFactory ());
+
+      final SMPMigrator aMigrator = new SMPMigrator (aSource, aTarget).setThreadCount (nThreadCount)
+                                                                      .setBatchSize (nBatchSize);
+      boolean bSuccess = true;
+      if (!bVerifyOnly)
+        bSuccess = aMigrator.migrate ().isSuccess ();
+
+      final ICommonsList <String> aDifferences = aMigrator.verify ();
+      for (final String sDifference : aDifferences)
+        LOGGER.error (sDifference);
+      if (aDifferences.isEmpty ())
+        LOGGER.info ("The verification of the source and the target backend succeeded");
+      else
+        bSuccess = false;
+      return bSuccess ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+  }
+
+  public static int run (@Nonnull final String... aArgs)
+  {
+    String sSourceID = null;
+    String sTargetID = null;
+    String sDataPath = null;
+    String sConfigPath = null;
+    int nThreadCount = SMPMigrator.DEFAULT_THREAD_COUNT;
+    int nBatchSize = SMPMigrator.DEFAULT_BATCH_SIZE;
+    boolean bVerifyOnly = false;
+
+    for (int i = 0; i < aArgs.length; ++i)
+    {
+      final String sArg = aArgs[i];
+      if (ARG_VERIFY_ONLY.equals (sArg))
+      {
+        bVerifyOnly = true;
+        continue;
+      }
+      if (i + 1 >= aArgs.length)
+        return _usage ("Missing value for argument '" + sArg + "'");
+      final String sValue = aArgs[++i];
+      switch (sArg)
+      {
+        case ARG_SOURCE:
+          sSourceID = sValue;
+          break;
+        case ARG_TARGET:
+          sTargetID = sValue;
+          break;
+        case ARG_DATA_PATH:
+          sDataPath = sValue;
+          break;
+        case ARG_CONFIG:
+          sConfigPath = sValue;
+          break;
+        case ARG_THREADS:
+          nThreadCount = StringParser.parseInt (sValue, -1);
+          if (nThreadCount <= 0)
+            return _usage ("Invalid thread count '" + sValue + "' provided");
+          break;
+        case ARG_BATCH_SIZE:
+          nBatchSize = StringParser.parseInt (sValue, -1);
+          if (nBatchSize <= 0)
+            return _usage ("Invalid batch size '" + sValue + "' provided");
+          break;
+        default:
+          return _usage ("Unknown argument '" + sArg + "'");
+      }
+    }
+
+    if (StringHelper.hasNoText (sSourceID))
+      return _usage ("The source backend is missing");
+    if (StringHelper.hasNoText (sTargetID))
+      return _usage ("The target backend is missing");
+    if (sSourceID.equals (sTargetID))
+      return _usage ("Source and target backend must be different");
+    if (StringHelper.hasNoText (sDataPath))
+      return _usage ("The data path is missing");
+
+    if (StringHelper.hasText (sConfigPath))
+    {
+      SystemProperties.setPropertyValue (SMPServerConfiguration.SYSTEM_PROPERTY_SMP_SERVER_PROPERTIES_PATH, sConfigPath);
+      SMPServerConfiguration.reloadConfiguration ();
+    }
+
+    ScopeManager.onGlobalBegin ("smp-migration");
+    try
+    {
+      final File aDataPath = new File (sDataPath).getAbsoluteFile ();
+      WebFileIO.initPaths (aDataPath, aDataPath.getAbsolutePath (), false);
+      return _run (sSourceID, sTargetID, nThreadCount, nBatchSize, bVerifyOnly);
+    }
+    finally
+    {
+      WebFileIO.resetPaths ();
+      ScopeManager.onGlobalEnd ();
+    }
+  }
+
+  public static void main (final String [] aArgs)
+  {
+    System.exit (run (aArgs));
+  }
+}
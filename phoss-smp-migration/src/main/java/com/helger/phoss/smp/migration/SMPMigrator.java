@@ -0,0 +1,474 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.migration;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.wrapper.Wrapper;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCard;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.domain.user.ISMPUser;
+import com.helger.phoss.smp.domain.user.ISMPUserEditable;
+import com.helger.phoss.smp.domain.user.ISMPUserManager;
+import com.helger.photon.security.mgr.PhotonSecurityManager;
+import com.helger.photon.security.user.IUser;
+import com.helger.photon.security.user.UserManager;
+import com.helger.scope.mgr.Scoped;
+
+/**
+ * Copy all users, service groups, service information, redirects and business
+ * cards from one SMP backend to another one. The service groups are read
+ * one by one from the source backend and written to the target backend in
+ * batches by multiple threads. The target backend should be empty - existing
+ * service groups are reported as errors and are not overwritten.<br>
+ * No SML calls are performed by this class, as long as
+ * {@link com.helger.phoss.smp.smlhook.RegistrationHookFactory#setSMLDisabled(boolean)}
+ * was called before.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPMigrator
+{
+  public static final int DEFAULT_THREAD_COUNT = 4;
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPMigrator.class);
+
+  private final SMPMigrationBackend m_aSource;
+  private final SMPMigrationBackend m_aTarget;
+  private int m_nThreadCount = DEFAULT_THREAD_COUNT;
+  private int m_nBatchSize = DEFAULT_BATCH_SIZE;
+
+  // Source owner ID to target owner ID - only filled if the user management
+  // differs; written before the first service group is migrated
+  private final ICommonsMap <String, String> m_aOwnerIDs = new CommonsHashMap <> ();
+  private final AtomicInteger m_aUsers = new AtomicInteger (0);
+  private final AtomicInteger m_aServiceGroups = new AtomicInteger (0);
+  private final AtomicInteger m_aServiceInfos = new AtomicInteger (0);
+  private final AtomicInteger m_aRedirects = new AtomicInteger (0);
+  private final AtomicInteger m_aBusinessCards = new AtomicInteger (0);
+  private final AtomicInteger m_aErrors = new AtomicInteger (0);
+
+  public SMPMigrator (@Nonnull final SMPMigrationBackend aSource, @Nonnull final SMPMigrationBackend aTarget)
+  {
+    ValueEnforcer.notNull (aSource, "Source");
+    ValueEnforcer.notNull (aTarget, "Target");
+    ValueEnforcer.isFalse (aSource.getBackendID ().equals (aTarget.getBackendID ()),
+                           "Source and target backend must be different");
+    m_aSource = aSource;
+    m_aTarget = aTarget;
+  }
+
+  @Nonnull
+  public SMPMigrator setThreadCount (final int nThreadCount)
+  {
+    ValueEnforcer.isGT0 (nThreadCount, "ThreadCount");
+    m_nThreadCount = nThreadCount;
+    return this;
+  }
+
+  @Nonnull
+  public SMPMigrator setBatchSize (final int nBatchSize)
+  {
+    ValueEnforcer.isGT0 (nBatchSize, "BatchSize");
+    m_nBatchSize = nBatchSize;
+    return this;
+  }
+
+  private void _error (@Nonnull final String sMsg, @Nullable final Throwable t)
+  {
+    m_aErrors.incrementAndGet ();
+    LOGGER.error (sMsg, t);
+  }
+
+  @Nullable
+  private String _getOrCreatePhotonUser (@Nonnull final ISMPUser aSourceUser)
+  {
+    final String sLoginName = SMPMigrationBackend.getLoginName (aSourceUser);
+    final UserManager aUserMgr = PhotonSecurityManager.getUserMgr ();
+    IUser aUser = aUserMgr.getUserOfLoginName (sLoginName);
+    if (aUser == null)
+    {
+      if (!(aSourceUser instanceof ISMPUserEditable))
+      {
+        _error ("Cannot read the password of user '" + sLoginName + "'", null);
+        return null;
+      }
+      aUser = aUserMgr.createNewUser (sLoginName,
+                                      null,
+                                      ((ISMPUserEditable) aSourceUser).getPassword (),
+                                      null,
+                                      sLoginName,
+                                      null,
+                                      Locale.US,
+                                      null,
+                                      false);
+      if (aUser == null)
+      {
+        _error ("Failed to create user '" + sLoginName + "'", null);
+        return null;
+      }
+      m_aUsers.incrementAndGet ();
+    }
+    return aUser.getID ();
+  }
+
+  @Nullable
+  private String _getOrCreateUser (@Nonnull final ISMPUserManager aTargetUserMgr, @Nonnull final ISMPUser aSourceUser)
+  {
+    // The user name is the ID
+    final String sUserName = SMPMigrationBackend.getLoginName (aSourceUser);
+    if (aTargetUserMgr.getUserOfID (sUserName) == null)
+    {
+      final String sPassword;
+      if (aSourceUser instanceof ISMPUserEditable)
+        sPassword = ((ISMPUserEditable) aSourceUser).getPassword ();
+      else
+      {
+        // Only the password hash is available
+        sPassword = UUID.randomUUID ().toString ();
+        LOGGER.warn ("User '" + sUserName + "' was created with a random password that must be changed");
+      }
+      if (aTargetUserMgr.createUser (sUserName, sPassword).isFailure ())
+      {
+        _error ("Failed to create user '" + sUserName + "'", null);
+        return null;
+      }
+      m_aUsers.incrementAndGet ();
+    }
+    return sUserName;
+  }
+
+  private void _migrateUsers ()
+  {
+    final ISMPUserManager aSourceUserMgr = m_aSource.getUserMgr ();
+    final ISMPUserManager aTargetUserMgr = m_aTarget.getUserMgr ();
+    if (!aSourceUserMgr.isSpecialUserManagementNeeded () && !aTargetUserMgr.isSpecialUserManagementNeeded ())
+    {
+      LOGGER.info ("Source and target backend share the same user management - no users need to be migrated");
+      return;
+    }
+
+    for (final ISMPUser aSourceUser : aSourceUserMgr.getAllUsers ())
+    {
+      final String sTargetOwnerID = aTargetUserMgr.isSpecialUserManagementNeeded () ? _getOrCreateUser (aTargetUserMgr,
+                                                                                                         aSourceUser)
+                                                                                     : _getOrCreatePhotonUser (aSourceUser);
+      if (sTargetOwnerID != null)
+        m_aOwnerIDs.put (aSourceUser.getID (), sTargetOwnerID);
+    }
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Migrated " + m_aUsers.get () + " of " + m_aOwnerIDs.size () + " user(s)");
+  }
+
+  @Nullable
+  private String _getTargetOwnerID (@Nonnull final String sSourceOwnerID)
+  {
+    if (!m_aSource.getUserMgr ().isSpecialUserManagementNeeded () &&
+        !m_aTarget.getUserMgr ().isSpecialUserManagementNeeded ())
+      return sSourceOwnerID;
+    return m_aOwnerIDs.get (sSourceOwnerID);
+  }
+
+  private void _migrateBatch (@Nonnull final ICommonsList <ISMPServiceGroup> aBatch)
+  {
+    // 1. create all service groups at once
+    final ICommonsMap <String, ISMPServiceGroup> aSourceServiceGroups = new CommonsHashMap <> ();
+    final ICommonsList <ISMPServiceGroup> aNewServiceGroups = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aSourceServiceGroup : aBatch)
+    {
+      final String sOwnerID = _getTargetOwnerID (aSourceServiceGroup.getOwnerID ());
+      if (sOwnerID == null)
+        _error ("Owner '" +
+                aSourceServiceGroup.getOwnerID () +
+                "' of service group " +
+                aSourceServiceGroup.getID () +
+                " is not present in the target backend",
+                null);
+      else
+      {
+        aSourceServiceGroups.put (aSourceServiceGroup.getID (), aSourceServiceGroup);
+        aNewServiceGroups.add (new SMPServiceGroup (sOwnerID,
+                                                    aSourceServiceGroup.getParticpantIdentifier (),
+                                                    aSourceServiceGroup.getExtensionsAsString ()));
+      }
+    }
+    final ICommonsList <ISMPServiceGroup> aCreatedServiceGroups = m_aTarget.getServiceGroupMgr ()
+                                                                           .createSMPServiceGroups (aNewServiceGroups,
+                                                                                                    (aServiceGroup,
+                                                                                                     ex) -> _error ("Failed to create service group " +
+                                                                                                                    aServiceGroup.getID (),
+                                                                                                                    ex));
+    m_aServiceGroups.addAndGet (aCreatedServiceGroups.size ());
+
+    // 2. create all service information at once
+    final ICommonsList <ISMPServiceInformation> aNewServiceInfos = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aCreatedServiceGroup : aCreatedServiceGroups)
+    {
+      final ISMPServiceGroup aSourceServiceGroup = aSourceServiceGroups.get (aCreatedServiceGroup.getID ());
+      for (final ISMPServiceInformation aServiceInfo : m_aSource.getServiceInformationMgr ()
+                                                                .getAllSMPServiceInformationOfServiceGroup (aSourceServiceGroup))
+      {
+        final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
+        for (final ISMPProcess aProcess : aServiceInfo.getAllProcesses ())
+          aProcesses.add ((SMPProcess) aProcess);
+        aNewServiceInfos.add (new SMPServiceInformation (aCreatedServiceGroup,
+                                                         aServiceInfo.getDocumentTypeIdentifier (),
+                                                         aProcesses,
+                                                         aServiceInfo.getExtensionsAsString ()));
+      }
+    }
+    if (aNewServiceInfos.isNotEmpty ())
+    {
+      final int nCreated = m_aTarget.getServiceInformationMgr ().mergeSMPServiceInformations (aNewServiceInfos).size ();
+      m_aServiceInfos.addAndGet (nCreated);
+      if (nCreated < aNewServiceInfos.size ())
+        _error ("Failed to create " + (aNewServiceInfos.size () - nCreated) + " service information(s)", null);
+    }
+
+    // 3. create all redirects
+    for (final ISMPServiceGroup aCreatedServiceGroup : aCreatedServiceGroups)
+    {
+      final ISMPServiceGroup aSourceServiceGroup = aSourceServiceGroups.get (aCreatedServiceGroup.getID ());
+      for (final ISMPRedirect aRedirect : m_aSource.getRedirectMgr ()
+                                                   .getAllSMPRedirectsOfServiceGroup (aSourceServiceGroup))
+        try
+        {
+          if (m_aTarget.getRedirectMgr ()
+                       .createOrUpdateSMPRedirect (aCreatedServiceGroup,
+                                                   aRedirect.getDocumentTypeIdentifier (),
+                                                   aRedirect.getTargetHref (),
+                                                   aRedirect.getSubjectUniqueIdentifier (),
+                                                   aRedirect.getCertificate (),
+                                                   aRedirect.getExtensionsAsString ()) != null)
+            m_aRedirects.incrementAndGet ();
+          else
+            _error ("Failed to create redirect of service group " + aCreatedServiceGroup.getID (), null);
+        }
+        catch (final RuntimeException ex)
+        {
+          _error ("Failed to create redirect of service group " + aCreatedServiceGroup.getID (), ex);
+        }
+    }
+
+    // 4. create all business cards at once
+    final ISMPBusinessCardManager aSourceBusinessCardMgr = m_aSource.getBusinessCardMgr ();
+    final ISMPBusinessCardManager aTargetBusinessCardMgr = m_aTarget.getBusinessCardMgr ();
+    if (aSourceBusinessCardMgr != null && aTargetBusinessCardMgr != null)
+    {
+      final ICommonsList <ISMPBusinessCard> aNewBusinessCards = new CommonsArrayList <> ();
+      for (final ISMPServiceGroup aCreatedServiceGroup : aCreatedServiceGroups)
+      {
+        final ISMPBusinessCard aBusinessCard = aSourceBusinessCardMgr.getSMPBusinessCardOfServiceGroup (aSourceServiceGroups.get (aCreatedServiceGroup.getID ()));
+        if (aBusinessCard != null)
+          aNewBusinessCards.add (new SMPBusinessCard (aCreatedServiceGroup, aBusinessCard.getAllEntities ()));
+      }
+      if (aNewBusinessCards.isNotEmpty ())
+        try
+        {
+          final int nCreated = aTargetBusinessCardMgr.createOrUpdateSMPBusinessCards (aNewBusinessCards).size ();
+          m_aBusinessCards.addAndGet (nCreated);
+          if (nCreated < aNewBusinessCards.size ())
+            _error ("Failed to create " + (aNewBusinessCards.size () - nCreated) + " business card(s)", null);
+        }
+        catch (final RuntimeException ex)
+        {
+          _error ("Failed to create " + aNewBusinessCards.size () + " business card(s)", ex);
+        }
+    }
+  }
+
+  private void _migrateServiceGroups ()
+  {
+    if (m_aSource.getBusinessCardMgr () != null && m_aTarget.getBusinessCardMgr () == null)
+      LOGGER.warn ("The target backend does not support business cards - they are not migrated");
+
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (m_nThreadCount,
+                                                                    new BasicThreadFactory.Builder ().setNamingPattern ("smp-migration-%d")
+                                                                                                     .setDaemon (true)
+                                                                                                     .build ());
+    // Don't read more batches than can be processed
+    final Semaphore aPending = new Semaphore (m_nThreadCount * 2);
+    final Consumer <ICommonsList <ISMPServiceGroup>> aSubmitter = aBatch -> {
+      aPending.acquireUninterruptibly ();
+      aExecutor.submit ( () -> {
+        // The managers of the SQL backend need a request scope
+        try (final Scoped aScoped = new Scoped ())
+        {
+          _migrateBatch (aBatch);
+        }
+        catch (final RuntimeException ex)
+        {
+          _error ("Failed to migrate a batch of " + aBatch.size () + " service group(s)", ex);
+        }
+        finally
+        {
+          aPending.release ();
+        }
+      });
+    };
+
+    try
+    {
+      final Wrapper <ICommonsList <ISMPServiceGroup>> aCurrentBatch = new Wrapper <> (new CommonsArrayList <> ());
+      if (m_aSource.getServiceGroupMgr ().forEachSMPServiceGroup (aServiceGroup -> {
+        final ICommonsList <ISMPServiceGroup> aBatch = aCurrentBatch.get ();
+        aBatch.add (aServiceGroup);
+        if (aBatch.size () >= m_nBatchSize)
+        {
+          aSubmitter.accept (aBatch);
+          aCurrentBatch.set (new CommonsArrayList <> ());
+        }
+      }).isFailure ())
+        _error ("Failed to read all service groups of the source backend", null);
+      if (aCurrentBatch.get ().isNotEmpty ())
+        aSubmitter.accept (aCurrentBatch.get ());
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+    }
+  }
+
+  /**
+   * Copy all data from the source to the target backend.
+   *
+   * @return {@link ESuccess#SUCCESS} if all items were copied without an
+   *         error.
+   */
+  @Nonnull
+  public ESuccess migrate ()
+  {
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Migrating from backend '" +
+                   m_aSource.getBackendID () +
+                   "' to backend '" +
+                   m_aTarget.getBackendID () +
+                   "' using " +
+                   m_nThreadCount +
+                   " thread(s) and a batch size of " +
+                   m_nBatchSize);
+
+    _migrateUsers ();
+    _migrateServiceGroups ();
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Migrated " +
+                   m_aUsers.get () +
+                   " user(s), " +
+                   m_aServiceGroups.get () +
+                   " service group(s), " +
+                   m_aServiceInfos.get () +
+                   " service information(s), " +
+                   m_aRedirects.get () +
+                   " redirect(s) and " +
+                   m_aBusinessCards.get () +
+                   " business card(s) with " +
+                   m_aErrors.get () +
+                   " error(s)");
+    return ESuccess.valueOf (m_aErrors.get () == 0);
+  }
+
+  /**
+   * Compare the data of the source and the target backend.
+   *
+   * @return A list with one text per difference. Never <code>null</code> but
+   *         empty if both backends contain the same data.
+   */
+  @Nonnull
+  public ICommonsList <String> verify ()
+  {
+    final SMPBackendChecksum aSourceChecksum = SMPBackendChecksum.create (m_aSource);
+    final SMPBackendChecksum aTargetChecksum = SMPBackendChecksum.create (m_aTarget);
+    final ICommonsList <String> ret = aSourceChecksum.getAllDifferences (aTargetChecksum);
+
+    // All users of the source must be present in the target
+    final ISMPUserManager aTargetUserMgr = m_aTarget.getUserMgr ();
+    final UserManager aPhotonUserMgr = aTargetUserMgr.isSpecialUserManagementNeeded () ? null
+                                                                                        : PhotonSecurityManager.getUserMgr ();
+    for (final ISMPUser aSourceUser : m_aSource.getUserMgr ().getAllUsers ())
+    {
+      final String sLoginName = SMPMigrationBackend.getLoginName (aSourceUser);
+      final boolean bPresent = aPhotonUserMgr != null ? aPhotonUserMgr.getUserOfLoginName (sLoginName) != null
+                                                      : aTargetUserMgr.getUserOfID (sLoginName) != null;
+      if (!bPresent)
+        ret.add ("User '" + sLoginName + "' is missing in the target backend");
+    }
+    return ret;
+  }
+
+  public int getMigratedUserCount ()
+  {
+    return m_aUsers.get ();
+  }
+
+  public int getMigratedServiceGroupCount ()
+  {
+    return m_aServiceGroups.get ();
+  }
+
+  public int getMigratedServiceInformationCount ()
+  {
+    return m_aServiceInfos.get ();
+  }
+
+  public int getMigratedRedirectCount ()
+  {
+    return m_aRedirects.get ();
+  }
+
+  public int getMigratedBusinessCardCount ()
+  {
+    return m_aBusinessCards.get ();
+  }
+
+  public int getErrorCount ()
+  {
+    return m_aErrors.get ();
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.migration;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link SMPMigrationTool}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPMigrationToolTest
+{
+  @Test
+  public void testInvalidArguments ()
+  {
+    assertEquals (2, SMPMigrationTool.run ());
+    assertEquals (2, SMPMigrationTool.run ("-source"));
+    assertEquals (2, SMPMigrationTool.run ("-source", "xml", "-target", "xml", "-datapath", "target/data"));
+    assertEquals (2, SMPMigrationTool.run ("-source", "xml", "-target", "sql"));
+    assertEquals (2, SMPMigrationTool.run ("-source", "xml", "-target", "sql", "-threads", "0", "-datapath", "x"));
+    assertEquals (2, SMPMigrationTool.run ("-source", "xml", "-target", "sql", "-foo", "bar"));
+  }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2015-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.backend.xml.mgr.SMPManagerProviderXML;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.changelog.ESMPChangeItemType;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.exception.SMPServerException;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for class {@link SMPMigrator}. Migrates from the XML backend to
+ * the SQL backend with an in-memory H2 database.
+ *
+ * @author Philip Helger
+ */
+public final class SMPMigratorTest
+{
+  private static final int SERVICE_GROUP_COUNT = 5;
+
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule (ClassPathResource.getAsFile ("test-smp-server-h2.properties")
+                                                                                       .getAbsolutePath ());
+
+  private static void _deleteSource (@Nonnull final SMPMigrationBackend aSource,
+                                     @Nonnull final ICommonsList <IParticipantIdentifier> aPIs)
+  {
+    for (final IParticipantIdentifier aPI : aPIs)
+    {
+      final ISMPServiceGroup aSG = aSource.getServiceGroupMgr ().getSMPServiceGroupOfID (aPI);
+      if (aSG != null)
+      {
+        // The service group manager only deletes the children of the main
+        // backend
+        aSource.getServiceInformationMgr ().deleteAllSMPServiceInformationOfServiceGroup (aSG);
+        aSource.getRedirectMgr ().deleteAllSMPRedirectsOfServiceGroup (aSG);
+        aSource.getBusinessCardMgr ().deleteSMPBusinessCard (aSource.getBusinessCardMgr ()
+                                                                    .getSMPBusinessCardOfServiceGroup (aSG));
+        aSource.getServiceGroupMgr ().deleteSMPServiceGroupNoEx (aPI);
+      }
+    }
+  }
+
+  @Test
+  public void testMigrateXMLToSQL () throws SMPServerException
+  {
+    final IIdentifierFactory aIF = SMPMetaManager.getIdentifierFactory ();
+    final SMPMigrationBackend aTarget = SMPMigrationBackend.createFromMetaManager ("sql");
+    final SMPMigrationBackend aSource = SMPMigrationBackend.createFromManagerProvider ("xml",
+                                                                                     new SMPManagerProviderXML (),
+                                                                                     aIF);
+    final IDocumentTypeIdentifier aDocTypeID1 = aIF.createDocumentTypeIdentifier ("junit", "doc1");
+    final IDocumentTypeIdentifier aDocTypeID2 = aIF.createDocumentTypeIdentifier ("junit", "doc2");
+    final IProcessIdentifier aProcessID = aIF.createProcessIdentifier ("junit", "proc");
+
+    final ICommonsList <IParticipantIdentifier> aPIs = new CommonsArrayList <> ();
+    for (int i = 0; i < SERVICE_GROUP_COUNT; ++i)
+      aPIs.add (aIF.createParticipantIdentifier ("junit", "migration-" + i));
+    // Leftovers of a previous run
+    _deleteSource (aSource, aPIs);
+    try
+    {
+      for (int i = 0; i < SERVICE_GROUP_COUNT; ++i)
+      {
+        final ISMPServiceGroup aSG = aSource.getServiceGroupMgr ()
+                                            .createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                                                    aPIs.get (i),
+                                                                    i % 2 == 0 ? null : "<ext" + i + "/>");
+        assertNotNull (aSG);
+        final SMPEndpoint aEndpoint = new SMPEndpoint ("tp",
+                                                       "http://localhost/as2/" + i,
+                                                       false,
+                                                       "minauth",
+                                                       null,
+                                                       null,
+                                                       "cert",
+                                                       "sd",
+                                                       "tc",
+                                                       "ti",
+                                                       null);
+        assertTrue (aSource.getServiceInformationMgr ()
+                           .mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                   aDocTypeID1,
+                                                                                   new CommonsArrayList <> (new SMPProcess (aProcessID,
+                                                                                                                            new CommonsArrayList <> (aEndpoint),
+                                                                                                                            null)),
+                                                                                   null))
+                           .isSuccess ());
+        assertNotNull (aSource.getRedirectMgr ()
+                              .createOrUpdateSMPRedirect (aSG,
+                                                          aDocTypeID2,
+                                                          "http://localhost/redirect/" + i,
+                                                          "subject",
+                                                          null,
+                                                          null));
+        final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity ();
+        aEntity.names ().add (new SMPBusinessCardName ("Entity " + i, null));
+        aEntity.setCountryCode ("AT");
+        assertNotNull (aSource.getBusinessCardMgr ()
+                              .createOrUpdateSMPBusinessCard (aSG, new CommonsArrayList <> (aEntity)));
+      }
+      final long nSourceCount = aSource.getServiceGroupMgr ().getSMPServiceGroupCount ();
+
+      // The target is different before the migration
+      assertFalse (new SMPMigrator (aSource, aTarget).verify ().isEmpty ());
+
+      // Multiple batches on multiple threads
+      final SMPMigrator aMigrator = new SMPMigrator (aSource, aTarget).setThreadCount (2).setBatchSize (2);
+      assertTrue (aMigrator.migrate ().isSuccess ());
+      assertEquals (0, aMigrator.getErrorCount ());
+      assertEquals (nSourceCount, aMigrator.getMigratedServiceGroupCount ());
+      assertEquals (nSourceCount, aTarget.getServiceGroupMgr ().getSMPServiceGroupCount ());
+      assertTrue (aMigrator.getMigratedServiceInformationCount () >= SERVICE_GROUP_COUNT);
+      assertTrue (aMigrator.getMigratedRedirectCount () >= SERVICE_GROUP_COUNT);
+      assertTrue (aMigrator.getMigratedBusinessCardCount () >= SERVICE_GROUP_COUNT);
+      assertEquals (aSource.getServiceInformationMgr ().getSMPServiceInformationCount (),
+                    aTarget.getServiceInformationMgr ().getSMPServiceInformationCount ());
+      assertEquals (aSource.getRedirectMgr ().getSMPRedirectCount (), aTarget.getRedirectMgr ().getSMPRedirectCount ());
+      assertEquals (aSource.getBusinessCardMgr ().getSMPBusinessCardCount (),
+                    aTarget.getBusinessCardMgr ().getSMPBusinessCardCount ());
+
+      // Both backends contain the same data
+      assertEquals (new CommonsArrayList <> (), aMigrator.verify ());
+      final SMPBackendChecksum aSourceChecksum = SMPBackendChecksum.create (aSource);
+      final SMPBackendChecksum aTargetChecksum = SMPBackendChecksum.create (aTarget);
+      for (final ESMPChangeItemType eItemType : ESMPChangeItemType.values ())
+      {
+        assertTrue (aSourceChecksum.isComplete (eItemType));
+        assertTrue (aTargetChecksum.isComplete (eItemType));
+      }
+      assertEquals (nSourceCount, aTargetChecksum.getCount (ESMPChangeItemType.SERVICE_GROUP));
+
+      // A changed endpoint is detected although the counts are identical
+      final ISMPServiceGroup aTargetSG = aTarget.getServiceGroupMgr ().getSMPServiceGroupOfID (aPIs.getFirst ());
+      assertNotNull (aTargetSG);
+      final SMPEndpoint aChangedEndpoint = new SMPEndpoint ("tp",
+                                                            "http://localhost/changed",
+                                                            false,
+                                                            "minauth",
+                                                            null,
+                                                            null,
+                                                            "cert",
+                                                            "sd",
+                                                            "tc",
+                                                            "ti",
+                                                            null);
+      assertTrue (aTarget.getServiceInformationMgr ()
+                         .mergeSMPServiceInformation (new SMPServiceInformation (aTargetSG,
+                                                                                 aDocTypeID1,
+                                                                                 new CommonsArrayList <> (new SMPProcess (aProcessID,
+                                                                                                                          new CommonsArrayList <> (aChangedEndpoint),
+                                                                                                                          null)),
+                                                                                 null))
+                         .isSuccess ());
+      final ICommonsList <String> aDifferences = aMigrator.verify ();
+      assertEquals (aDifferences.toString (), 1, aDifferences.size ());
+      assertTrue (aDifferences.getFirst ().contains (ESMPChangeItemType.SERVICE_INFORMATION.getID ()));
+    }
+    finally
+    {
+      // The XML service group manager deletes the children in the SQL backend
+      for (final IParticipantIdentifier aPI : aPIs)
+        aTarget.getServiceGroupMgr ().deleteSMPServiceGroupNoEx (aPI);
+      _deleteSource (aSource, aPIs);
+    }
+  }
+}
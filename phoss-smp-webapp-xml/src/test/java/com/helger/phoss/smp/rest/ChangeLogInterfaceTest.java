@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.serialize.JsonReader;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.changelog.ESMPChangeItemType;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.mock.SMPServerRESTTestRule;
+import com.helger.phoss.smp.rest2.APIExecutorChangesGet;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for class {@link APIExecutorChangesGet}
+ *
+ * @author Philip Helger
+ */
+public final class ChangeLogInterfaceTest
+{
+  private static final BasicAuthClientCredentials CREDENTIALS = new BasicAuthClientCredentials (CSecurity.USER_ADMINISTRATOR_EMAIL,
+                                                                                                CSecurity.USER_ADMINISTRATOR_PASSWORD);
+
+  @Rule
+  public final SMPServerRESTTestRule m_aRule = new SMPServerRESTTestRule (ClassPathResource.getAsFile ("test-smp-server-xml-changelog.properties")
+                                                                                           .getAbsolutePath ());
+
+  @Nonnull
+  private static Builder _addCredentials (@Nonnull final Builder aBuilder)
+  {
+    // Use default credentials for XML backend
+    return aBuilder.header (CHttpHeader.AUTHORIZATION, CREDENTIALS.getRequestValue ());
+  }
+
+  @Nonnull
+  private static IJsonObject _readJson (@Nonnull final Response aResponse, final int nExpectedStatus)
+  {
+    final String sResponse = aResponse.readEntity (String.class);
+    assertEquals (sResponse, nExpectedStatus, aResponse.getStatus ());
+    final IJsonObject ret = (IJsonObject) JsonReader.readFromString (sResponse);
+    assertNotNull (sResponse, ret);
+    return ret;
+  }
+
+  @Nonnull
+  private static IJsonObject _getChanges (@Nonnull final WebTarget aTarget, final long nSince)
+  {
+    return _readJson (_addCredentials (aTarget.queryParam (APIExecutorChangesGet.PARAM_SINCE, Long.toString (nSince))
+                                              .request ()).get (),
+                      200);
+  }
+
+  @Test
+  public void testGetChanges () throws Exception
+  {
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final IParticipantIdentifier aPI1 = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9999:changes1");
+    final IParticipantIdentifier aPI2 = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9999:changes2");
+    final WebTarget aTarget = ClientBuilder.newClient ().target (m_aRule.getFullURL ()).path ("changelog/changes");
+
+    // No credentials
+    assertEquals (403, aTarget.request ().get ().getStatus ());
+
+    // Invalid parameters
+    assertEquals (400,
+                  _addCredentials (aTarget.queryParam (APIExecutorChangesGet.PARAM_MAX, "0").request ()).get ()
+                                                                                                      .getStatus ());
+
+    final long nStartSequence = SMPMetaManager.getChangeLogMgr ().getLastSequence ();
+    try
+    {
+      aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI1, null);
+      aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI2, null);
+
+      // Both changes are in the feed
+      IJsonObject aJson = _getChanges (aTarget, nStartSequence);
+      assertEquals (nStartSequence, aJson.getAsLong ("since"));
+      assertEquals (nStartSequence + 2, aJson.getAsLong ("lastsequence"));
+      assertEquals (nStartSequence + 2, aJson.getAsLong ("next"));
+      IJsonArray aChanges = aJson.getAsArray ("changes");
+      assertEquals (2, aChanges.size ());
+      for (int i = 0; i < aChanges.size (); ++i)
+      {
+        final IJsonObject aChange = aChanges.getObjectAtIndex (i);
+        assertEquals (ESMPChangeItemType.SERVICE_GROUP.getID (), aChange.getAsString ("type"));
+        assertFalse (aChange.getAsBoolean ("deleted"));
+      }
+      assertEquals (aPI1.getURIEncoded (), aChanges.getObjectAtIndex (0).getAsString ("servicegroupid"));
+      assertEquals (aPI2.getURIEncoded (), aChanges.getObjectAtIndex (1).getAsString ("servicegroupid"));
+
+      // Paging
+      aJson = _readJson (_addCredentials (aTarget.queryParam (APIExecutorChangesGet.PARAM_SINCE,
+                                                              Long.toString (nStartSequence))
+                                                 .queryParam (APIExecutorChangesGet.PARAM_MAX, "1")
+                                                 .request ()).get (),
+                         200);
+      assertEquals (1, aJson.getAsArray ("changes").size ());
+      assertEquals (nStartSequence + 1, aJson.getAsLong ("next"));
+
+      // The deletion replaces the creation
+      aSGMgr.deleteSMPServiceGroup (aPI1);
+      aJson = _getChanges (aTarget, nStartSequence + 2);
+      aChanges = aJson.getAsArray ("changes");
+      assertEquals (1, aChanges.size ());
+      assertEquals (aPI1.getURIEncoded (), aChanges.getObjectAtIndex (0).getAsString ("servicegroupid"));
+      assertTrue (aChanges.getObjectAtIndex (0).getAsBoolean ("deleted"));
+      assertEquals (2, _getChanges (aTarget, nStartSequence).getAsArray ("changes").size ());
+
+      // Up to date
+      aJson = _getChanges (aTarget, nStartSequence + 3);
+      assertEquals (0, aJson.getAsArray ("changes").size ());
+      assertEquals (nStartSequence + 3, aJson.getAsLong ("next"));
+    }
+    finally
+    {
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI1);
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI2);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonObject;
+import com.helger.json.serialize.JsonReader;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.app.CSMPExchange;
+import com.helger.phoss.smp.app.SMPExchangeWriter;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerRESTTestRule;
+import com.helger.phoss.smp.rest2.APIExecutorImportPost;
+import com.helger.photon.security.CSecurity;
+import com.helger.xml.microdom.convert.MicroTypeConverter;
+
+/**
+ * Test class for class {@link APIExecutorImportPost}
+ *
+ * @author Philip Helger
+ */
+public final class ImportInterfaceTest
+{
+  private static final BasicAuthClientCredentials CREDENTIALS = new BasicAuthClientCredentials (CSecurity.USER_ADMINISTRATOR_EMAIL,
+                                                                                                CSecurity.USER_ADMINISTRATOR_PASSWORD);
+
+  @Rule
+  public final SMPServerRESTTestRule m_aRule = new SMPServerRESTTestRule (ClassPathResource.getAsFile ("test-smp-server-xml.properties")
+                                                                                           .getAbsolutePath ());
+
+  @Nonnull
+  private static Builder _addCredentials (@Nonnull final Builder aBuilder)
+  {
+    // Use default credentials for XML backend
+    return aBuilder.header (CHttpHeader.AUTHORIZATION, CREDENTIALS.getRequestValue ());
+  }
+
+  @Nonnull
+  private static byte [] _createExchangeFile (@Nonnull final IParticipantIdentifier aPI) throws Exception
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    try (final SMPExchangeWriter aWriter = new SMPExchangeWriter (aBAOS))
+    {
+      aWriter.writeElement (MicroTypeConverter.convertToMicroElement (new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                                                                           aPI,
+                                                                                           null),
+                                                                      CSMPExchange.ELEMENT_SERVICEGROUP));
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  @Nonnull
+  private static IJsonObject _readJson (@Nonnull final Response aResponse, final int nExpectedStatus)
+  {
+    final String sResponse = aResponse.readEntity (String.class);
+    assertEquals (sResponse, nExpectedStatus, aResponse.getStatus ());
+    final IJsonObject ret = (IJsonObject) JsonReader.readFromString (sResponse);
+    assertNotNull (sResponse, ret);
+    return ret;
+  }
+
+  @Test
+  public void testImport () throws Exception
+  {
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9999:import");
+    final byte [] aFile = _createExchangeFile (aPI);
+    final WebTarget aTarget = ClientBuilder.newClient ().target (m_aRule.getFullURL ());
+
+    // No credentials
+    assertEquals (403, aTarget.path ("import").request ().post (Entity.xml (aFile)).getStatus ());
+
+    try
+    {
+      // Dry run - nothing is created
+      IJsonObject aJson = _readJson (_addCredentials (aTarget.path ("import")
+                                                             .queryParam (APIExecutorImportPost.PARAM_DRY_RUN, "true")
+                                                             .request ()).post (Entity.xml (aFile)),
+                                     200);
+      assertTrue (aJson.getAsBoolean ("dryrun"));
+      assertFalse (aJson.getAsBoolean ("written"));
+      assertEquals (1, aJson.getAsInt ("servicegroupstoimport"));
+      assertEquals (0, aJson.getAsInt ("createdservicegroups"));
+      assertFalse (aSGMgr.containsSMPServiceGroupWithID (aPI));
+
+      // Real import
+      aJson = _readJson (_addCredentials (aTarget.path ("import").request ()).post (Entity.xml (aFile)), 200);
+      assertTrue (aJson.getAsBoolean ("success"));
+      assertEquals (1, aJson.getAsInt ("createdservicegroups"));
+      assertTrue (aSGMgr.containsSMPServiceGroupWithID (aPI));
+
+      // Import again - ignored, because overwrite is not enabled
+      aJson = _readJson (_addCredentials (aTarget.path ("import").request ()).post (Entity.xml (aFile)), 200);
+      assertEquals (0, aJson.getAsInt ("servicegroupstoimport"));
+      assertEquals (1, aJson.getAsInt ("servicegroupsignored"));
+
+      // Invalid file
+      aJson = _readJson (_addCredentials (aTarget.path ("import").request ()).post (Entity.xml ("<smp-data")), 400);
+      assertFalse (aJson.getAsBoolean ("success"));
+      assertEquals (1, aJson.getAsArray ("errors").size ());
+    }
+    finally
+    {
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI);
+    }
+  }
+}
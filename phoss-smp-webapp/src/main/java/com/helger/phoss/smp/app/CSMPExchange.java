@@ -34,6 +34,16 @@ public final class CSMPExchange
   public static final String ELEMENT_REDIRECT = "redirect";
   public static final String ELEMENT_BUSINESSCARD = "businesscard";
 
+  // Delta export (since 5.2.0)
+  public static final String ELEMENT_CHANGES = "changes";
+  public static final String ATTR_SINCE = "since";
+  public static final String ATTR_LAST_SEQUENCE = "lastsequence";
+  public static final String ELEMENT_DELETED = "deleted";
+  public static final String ATTR_SEQUENCE = "sequence";
+  public static final String ATTR_TYPE = "type";
+  public static final String ATTR_SERVICEGROUP_ID = "servicegroupid";
+  public static final String ATTR_DOCTYPE_ID = "doctypeid";
+
   private CSMPExchange ()
   {}
 }
@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.state.ESuccess;
+import com.helger.pd.client.PDClient;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.app.PDPendingNotifications.EAction;
+import com.helger.phoss.smp.app.PDPendingNotifications.Entry;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.photon.app.io.WebFileIO;
+import com.helger.scope.IScope;
+import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.serialize.MicroReader;
+import com.helger.xml.microdom.serialize.MicroWriter;
+
+/**
+ * A background queue for the notifications of the Directory server. Multiple
+ * notifications for the same participant are coalesced into a single one
+ * which is only sent after a debounce period. Sending happens with a bounded
+ * number of parallel threads and failed notifications are retried with an
+ * exponential backoff. Pending notifications are persisted in the data
+ * directory so that they survive a restart.<br>
+ * If the queue is disabled in the configuration, notifications are sent
+ * synchronously.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class PDNotificationQueue extends AbstractGlobalWebSingleton
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (PDNotificationQueue.class);
+  private static final String FILENAME = "pd-notification-queue.xml";
+  // Interval in which due notifications are dispatched
+  private static final long DISPATCH_INTERVAL_MS = 500;
+  // Maximum time to wait for running notifications upon shutdown
+  static final long SHUTDOWN_TIMEOUT_MS = 10 * CGlobal.MILLISECONDS_PER_SECOND;
+
+  private final PDPendingNotifications m_aPending = new PDPendingNotifications ();
+  private ScheduledExecutorService m_aDispatcher;
+  private ExecutorService m_aWorkers;
+
+  @Deprecated
+  @UsedViaReflection
+  public PDNotificationQueue ()
+  {}
+
+  @Nonnull
+  public static PDNotificationQueue getInstance ()
+  {
+    return getGlobalSingleton (PDNotificationQueue.class);
+  }
+
+  @Nonnull
+  private static File _getFile ()
+  {
+    return WebFileIO.getDataIO ().getFile (FILENAME);
+  }
+
+  @Override
+  protected void onAfterInstantiation (@Nonnull final IScope aScope)
+  {
+    if (!SMPWebAppConfiguration.isDirectoryQueueEnabled ())
+      return;
+
+    _readPersistedEntries ();
+
+    final int nThreads = SMPWebAppConfiguration.getDirectoryQueueThreadCount ();
+    m_aWorkers = Executors.newFixedThreadPool (nThreads,
+                                               new BasicThreadFactory.Builder ().setNamingPattern ("smp-pd-notification-%d")
+                                                                                .setDaemon (true)
+                                                                                .build ());
+    m_aDispatcher = Executors.newSingleThreadScheduledExecutor (new BasicThreadFactory.Builder ().setNamingPattern ("smp-pd-dispatcher-%d")
+                                                                                                 .setDaemon (true)
+                                                                                                 .build ());
+    m_aDispatcher.scheduleWithFixedDelay (this::_dispatch,
+                                          DISPATCH_INTERVAL_MS,
+                                          DISPATCH_INTERVAL_MS,
+                                          TimeUnit.MILLISECONDS);
+    LOGGER.info ("Started " + SMPWebAppConfiguration.getDirectoryName () + " notification queue with " + nThreads + " threads");
+  }
+
+  /**
+   * Shutdown the provided executor service and wait at most
+   * {@link #SHUTDOWN_TIMEOUT_MS} milliseconds for the running tasks. Tasks that
+   * are still running afterwards are interrupted.
+   *
+   * @param aES
+   *        The executor service to shutdown. May not be <code>null</code>.
+   * @param sName
+   *        The display name of the executor service for logging. May not be
+   *        <code>null</code>.
+   */
+  static void shutdownBounded (@Nonnull final ExecutorService aES, @Nonnull final String sName)
+  {
+    // ExecutorServiceHelper would wait endlessly - the timeout is only the
+    // polling interval there
+    aES.shutdown ();
+    try
+    {
+      if (!aES.awaitTermination (SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+      {
+        LOGGER.warn ("The " + sName + " did not finish within " + SHUTDOWN_TIMEOUT_MS + " ms - interrupting it");
+        aES.shutdownNow ();
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      LOGGER.warn ("Interrupted while waiting for the " + sName + " to finish", ex);
+      aES.shutdownNow ();
+      Thread.currentThread ().interrupt ();
+    }
+  }
+
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed)
+  {
+    if (m_aDispatcher != null)
+    {
+      shutdownBounded (m_aDispatcher, "notification dispatcher");
+      m_aDispatcher = null;
+    }
+    if (m_aWorkers != null)
+    {
+      // Notifications that are still in flight remain pending and are
+      // persisted below
+      shutdownBounded (m_aWorkers, "notification workers");
+      m_aWorkers = null;
+    }
+    // Store everything that was not sent so far
+    _persistIfDirty ();
+  }
+
+  private void _readPersistedEntries ()
+  {
+    final File aFile = _getFile ();
+    if (!aFile.exists ())
+      return;
+
+    final IMicroDocument aDoc = MicroReader.readMicroXML (aFile);
+    if (aDoc == null || aDoc.getDocumentElement () == null)
+    {
+      LOGGER.error ("Failed to read persisted notification queue from '" + aFile.getAbsolutePath () + "'");
+      return;
+    }
+
+    m_aPending.readFrom (aDoc, SMPMetaManager.getIdentifierFactory (), System.currentTimeMillis ());
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Read " + getQueueSize () + " pending notifications from '" + aFile.getAbsolutePath () + "'");
+  }
+
+  private void _persistIfDirty ()
+  {
+    final IMicroDocument aDoc = m_aPending.getAsDocumentIfDirty ();
+    if (aDoc != null)
+      if (MicroWriter.writeToFile (aDoc, _getFile ()).isFailure ())
+      {
+        LOGGER.error ("Failed to persist the notification queue to '" + _getFile ().getAbsolutePath () + "'");
+        // Try again next time
+        m_aPending.markDirty ();
+      }
+  }
+
+  private void _enqueue (@Nonnull final IParticipantIdentifier aParticipantID, @Nonnull final EAction eAction)
+  {
+    ValueEnforcer.notNull (aParticipantID, "ParticipantID");
+
+    if (m_aDispatcher == null)
+    {
+      // Queue is disabled - send synchronously
+      _send (aParticipantID, eAction);
+      return;
+    }
+
+    m_aPending.enqueue (aParticipantID,
+                        eAction,
+                        System.currentTimeMillis (),
+                        SMPWebAppConfiguration.getDirectoryQueueDebounceMS ());
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Enqueued " + eAction + " notification for '" + aParticipantID.getURIEncoded () + "'");
+  }
+
+  /**
+   * Schedule the (re-)indexing of the provided participant.
+   *
+   * @param aParticipantID
+   *        The participant to be indexed. May not be <code>null</code>.
+   */
+  public void addServiceGroupToIndex (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    _enqueue (aParticipantID, EAction.ADD);
+  }
+
+  /**
+   * Schedule the removal of the provided participant from the index.
+   *
+   * @param aParticipantID
+   *        The participant to be removed. May not be <code>null</code>.
+   */
+  public void deleteServiceGroupFromIndex (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    _enqueue (aParticipantID, EAction.DELETE);
+  }
+
+  @Nonnull
+  private static ESuccess _send (@Nonnull final IParticipantIdentifier aParticipantID, @Nonnull final EAction eAction)
+  {
+    try
+    {
+      final PDClient aPDClient = PDClientProvider.getInstance ().getPDClient ();
+      return eAction == EAction.DELETE ? aPDClient.deleteServiceGroupFromIndex (aParticipantID)
+                                       : aPDClient.addServiceGroupToIndex (aParticipantID);
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Error sending " + eAction + " notification for '" + aParticipantID.getURIEncoded () + "'", ex);
+      return ESuccess.FAILURE;
+    }
+  }
+
+  private void _dispatch ()
+  {
+    try
+    {
+      for (final Entry aEntry : m_aPending.pollDueEntries (System.currentTimeMillis ()))
+        m_aWorkers.submit ( () -> _sendEntry (aEntry));
+
+      _persistIfDirty ();
+    }
+    catch (final RuntimeException ex)
+    {
+      // Never let an exception end the scheduled dispatching
+      LOGGER.error ("Error dispatching notifications", ex);
+    }
+  }
+
+  private void _sendEntry (@Nonnull final Entry aEntry)
+  {
+    final ESuccess eSuccess = _send (aEntry.getParticipantID (), m_aPending.getAction (aEntry));
+    m_aPending.onSendResult (aEntry,
+                             eSuccess,
+                             System.currentTimeMillis (),
+                             SMPWebAppConfiguration.getDirectoryQueueRetryMS (),
+                             SMPWebAppConfiguration.getDirectoryQueueMaxAttempts ());
+  }
+
+  /**
+   * @return The number of pending notifications. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getQueueSize ()
+  {
+    return m_aPending.size ();
+  }
+
+  /**
+   * @return The age in milliseconds of the oldest pending notification or
+   *         <code>null</code> if the queue is empty.
+   */
+  @Nullable
+  public Long getOldestEntryAgeMS ()
+  {
+    return m_aPending.getOldestEntryAgeMS (System.currentTimeMillis ());
+  }
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.state.ESuccess;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroDocument;
+
+/**
+ * The pending notifications of the {@link PDNotificationQueue}. Entries are
+ * kept per participant and additionally ordered by their due time, so that
+ * finding the due entries does not require to scan all entries.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+final class PDPendingNotifications
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (PDPendingNotifications.class);
+  private static final String ELEMENT_ROOT = "pdnotificationqueue";
+  private static final String ELEMENT_ITEM = "item";
+  private static final String ATTR_PARTICIPANT_ID = "participantid";
+  private static final String ATTR_ACTION = "action";
+  private static final String ATTR_FIRST_ENQUEUED = "firstenqueued";
+  private static final String ATTR_ATTEMPTS = "attempts";
+  // Continuous updates may postpone a notification at most this many times
+  // the debounce period
+  private static final int MAX_DEBOUNCE_FACTOR = 10;
+  private static final long MAX_BACKOFF_MS = CGlobal.MILLISECONDS_PER_HOUR;
+
+  enum EAction
+  {
+    ADD,
+    DELETE;
+  }
+
+  static final class Entry
+  {
+    private final IParticipantIdentifier m_aParticipantID;
+    private final long m_nFirstEnqueuedMS;
+    // Unique tie breaker for entries with the same due time
+    private final long m_nSeq;
+    private EAction m_eAction;
+    private long m_nDueMS;
+    private int m_nAttempts;
+    private boolean m_bInFlight;
+    private boolean m_bChangedInFlight;
+
+    private Entry (@Nonnull final IParticipantIdentifier aParticipantID,
+                   @Nonnull final EAction eAction,
+                   final long nFirstEnqueuedMS,
+                   final long nSeq)
+    {
+      m_aParticipantID = aParticipantID;
+      m_eAction = eAction;
+      m_nFirstEnqueuedMS = nFirstEnqueuedMS;
+      m_nSeq = nSeq;
+    }
+
+    @Nonnull
+    IParticipantIdentifier getParticipantID ()
+    {
+      return m_aParticipantID;
+    }
+
+    long getDueMS ()
+    {
+      return m_nDueMS;
+    }
+
+    int getAttempts ()
+    {
+      return m_nAttempts;
+    }
+  }
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  private final ICommonsOrderedMap <String, Entry> m_aMap = new CommonsLinkedHashMap <> ();
+  // All entries that are not in flight, ordered by due time
+  private final TreeSet <Entry> m_aDueQueue = new TreeSet <> (Comparator.comparingLong ( (final Entry x) -> x.m_nDueMS)
+                                                                        .thenComparingLong (x -> x.m_nSeq));
+  private long m_nNextSeq = 0;
+  // Set if the persisted state (participant, action, attempts) changed
+  private boolean m_bDirty = false;
+
+  PDPendingNotifications ()
+  {}
+
+  /**
+   * Add all entries from a previously persisted document. All of them are due
+   * immediately.
+   */
+  void readFrom (@Nonnull final IMicroDocument aDoc,
+                 @Nonnull final IIdentifierFactory aIdentifierFactory,
+                 final long nNow)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      for (final IMicroElement eItem : aDoc.getDocumentElement ().getAllChildElements (ELEMENT_ITEM))
+      {
+        final IParticipantIdentifier aParticipantID = aIdentifierFactory.parseParticipantIdentifier (eItem.getAttributeValue (ATTR_PARTICIPANT_ID));
+        final EAction eAction = "delete".equals (eItem.getAttributeValue (ATTR_ACTION)) ? EAction.DELETE : EAction.ADD;
+        if (aParticipantID == null)
+        {
+          LOGGER.warn ("Ignoring persisted notification for invalid participant ID '" +
+                       eItem.getAttributeValue (ATTR_PARTICIPANT_ID) +
+                       "'");
+          continue;
+        }
+        final Entry aEntry = new Entry (aParticipantID,
+                                        eAction,
+                                        eItem.getAttributeValueAsLong (ATTR_FIRST_ENQUEUED, nNow),
+                                        m_nNextSeq++);
+        aEntry.m_nAttempts = eItem.getAttributeValueAsInt (ATTR_ATTEMPTS, 0);
+        aEntry.m_nDueMS = nNow;
+        m_aMap.put (aParticipantID.getURIEncoded (), aEntry);
+        m_aDueQueue.add (aEntry);
+      }
+    });
+  }
+
+  /**
+   * @return The document to be persisted or <code>null</code> if nothing
+   *         changed since the last call. If writing the document fails,
+   *         {@link #markDirty()} must be called.
+   */
+  @Nullable
+  IMicroDocument getAsDocumentIfDirty ()
+  {
+    return m_aRWLock.writeLocked ( () -> {
+      if (!m_bDirty)
+        return null;
+      m_bDirty = false;
+
+      final IMicroDocument ret = new MicroDocument ();
+      final IMicroElement eRoot = ret.appendElement (ELEMENT_ROOT);
+      for (final Entry aEntry : m_aMap.values ())
+        eRoot.appendElement (ELEMENT_ITEM)
+             .setAttribute (ATTR_PARTICIPANT_ID, aEntry.m_aParticipantID.getURIEncoded ())
+             .setAttribute (ATTR_ACTION, aEntry.m_eAction == EAction.DELETE ? "delete" : "add")
+             .setAttribute (ATTR_FIRST_ENQUEUED, Long.toString (aEntry.m_nFirstEnqueuedMS))
+             .setAttribute (ATTR_ATTEMPTS, Integer.toString (aEntry.m_nAttempts));
+      return ret;
+    });
+  }
+
+  void markDirty ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      m_bDirty = true;
+    });
+  }
+
+  boolean isDirty ()
+  {
+    return m_aRWLock.readLocked ( () -> m_bDirty);
+  }
+
+  /**
+   * Add or coalesce a notification. For an existing entry with the same action
+   * only the due time changes, so continuous updates of the same participant
+   * don't require the queue to be persisted again.
+   */
+  void enqueue (@Nonnull final IParticipantIdentifier aParticipantID,
+                @Nonnull final EAction eAction,
+                final long nNow,
+                final long nDebounceMS)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      final String sKey = aParticipantID.getURIEncoded ();
+      Entry aEntry = m_aMap.get (sKey);
+      if (aEntry == null)
+      {
+        aEntry = new Entry (aParticipantID, eAction, nNow, m_nNextSeq++);
+        aEntry.m_nDueMS = nNow + nDebounceMS;
+        m_aMap.put (sKey, aEntry);
+        m_aDueQueue.add (aEntry);
+        m_bDirty = true;
+      }
+      else
+      {
+        // Coalesce - the latest action wins
+        if (aEntry.m_eAction != eAction || aEntry.m_nAttempts != 0)
+          m_bDirty = true;
+        // Remove before changing the sort key
+        m_aDueQueue.remove (aEntry);
+        aEntry.m_eAction = eAction;
+        aEntry.m_nAttempts = 0;
+        aEntry.m_nDueMS = Math.min (nNow + nDebounceMS, aEntry.m_nFirstEnqueuedMS + MAX_DEBOUNCE_FACTOR * nDebounceMS);
+        if (aEntry.m_bInFlight)
+          aEntry.m_bChangedInFlight = true;
+        else
+          m_aDueQueue.add (aEntry);
+      }
+    });
+  }
+
+  /**
+   * Remove all due entries from the due queue and mark them as in flight. The
+   * result of sending each of them must be reported via
+   * {@link #onSendResult(Entry, ESuccess, long, long, int)}.
+   */
+  @Nonnull
+  ICommonsList <Entry> pollDueEntries (final long nNow)
+  {
+    return m_aRWLock.writeLocked ( () -> {
+      final ICommonsList <Entry> ret = new CommonsArrayList <> ();
+      while (!m_aDueQueue.isEmpty () && m_aDueQueue.first ().m_nDueMS <= nNow)
+      {
+        final Entry aEntry = m_aDueQueue.pollFirst ();
+        aEntry.m_bInFlight = true;
+        aEntry.m_bChangedInFlight = false;
+        ret.add (aEntry);
+      }
+      return ret;
+    });
+  }
+
+  /**
+   * @return The action to be sent for an in flight entry.
+   */
+  @Nonnull
+  EAction getAction (@Nonnull final Entry aEntry)
+  {
+    return m_aRWLock.readLocked ( () -> aEntry.m_eAction);
+  }
+
+  void onSendResult (@Nonnull final Entry aEntry,
+                     @Nonnull final ESuccess eSuccess,
+                     final long nNow,
+                     final long nRetryMS,
+                     final int nMaxAttempts)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      aEntry.m_bInFlight = false;
+      if (aEntry.m_bChangedInFlight)
+      {
+        // Changed while sending - keep it with the new due date
+        m_aDueQueue.add (aEntry);
+        return;
+      }
+
+      final String sKey = aEntry.m_aParticipantID.getURIEncoded ();
+      if (eSuccess.isSuccess ())
+        m_aMap.remove (sKey);
+      else
+      {
+        aEntry.m_nAttempts++;
+        if (aEntry.m_nAttempts >= nMaxAttempts)
+        {
+          LOGGER.error ("Giving up " +
+                        aEntry.m_eAction +
+                        " notification for '" +
+                        sKey +
+                        "' after " +
+                        aEntry.m_nAttempts +
+                        " attempts");
+          m_aMap.remove (sKey);
+        }
+        else
+        {
+          final long nBackoffMS = Math.min (nRetryMS << Math.min (aEntry.m_nAttempts - 1, 20), MAX_BACKOFF_MS);
+          aEntry.m_nDueMS = nNow + nBackoffMS;
+          m_aDueQueue.add (aEntry);
+          LOGGER.warn ("Failed to send " +
+                       aEntry.m_eAction +
+                       " notification for '" +
+                       sKey +
+                       "' - retrying in " +
+                       nBackoffMS +
+                       " ms");
+        }
+      }
+      m_bDirty = true;
+    });
+  }
+
+  @Nonnegative
+  int size ()
+  {
+    return m_aRWLock.readLocked ( () -> m_aMap.size ());
+  }
+
+  @Nullable
+  Long getOldestEntryAgeMS (final long nNow)
+  {
+    return m_aRWLock.readLocked ( () -> {
+      if (m_aMap.isEmpty ())
+        return null;
+      long nOldest = Long.MAX_VALUE;
+      for (final Entry aEntry : m_aMap.values ())
+        nOldest = Math.min (nOldest, aEntry.m_nFirstEnqueuedMS);
+      return Long.valueOf (nNow - nOldest);
+    });
+  }
+}
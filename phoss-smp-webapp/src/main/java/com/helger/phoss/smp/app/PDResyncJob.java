@@ -0,0 +1,474 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.PDTWebDateHelper;
+import com.helger.commons.state.ESuccess;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.photon.app.io.WebFileIO;
+import com.helger.scope.IScope;
+import com.helger.scope.mgr.Scoped;
+import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroDocument;
+import com.helger.xml.microdom.serialize.MicroReader;
+import com.helger.xml.microdom.serialize.MicroWriter;
+
+/**
+ * Background job that pushes all business cards of this SMP to the Directory
+ * again, e.g. after a Directory outage or a migration. The participants are
+ * processed in the order of their URI encoded identifier with a configurable
+ * parallelism and rate limit. The progress is persisted in the data directory,
+ * so that a job that was interrupted by a shutdown continues after the next
+ * startup.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class PDResyncJob extends AbstractGlobalWebSingleton
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (PDResyncJob.class);
+  private static final String FILENAME = "pd-resync-job.xml";
+  private static final String ELEMENT_ROOT = "pdresyncjob";
+  private static final String ELEMENT_FAILED = "failed";
+  private static final String ATTR_RUNNING = "running";
+  private static final String ATTR_WATERMARK = "watermark";
+  private static final String ATTR_STARTED = "started";
+  private static final String ATTR_TOTAL = "total";
+  private static final String ATTR_SUCCEEDED = "succeeded";
+  private static final String ATTR_FAILED = "failed";
+  private static final int MAX_RECORDED_FAILURES = 100;
+  // Persist the progress after this many participants
+  private static final int PERSIST_INTERVAL = 100;
+
+  // Status - all guarded by m_aRWLock
+  private boolean m_bRunning;
+  private boolean m_bCancelRequested;
+  private boolean m_bShutdownRequested;
+  private long m_nStartedMS;
+  private long m_nFinishedMS;
+  private int m_nTotal;
+  private int m_nSucceeded;
+  private int m_nFailed;
+  private String m_sWatermark;
+  private final ICommonsList <String> m_aFailedIDs = new CommonsArrayList <> ();
+  private Thread m_aThread;
+
+  // Rate limiting
+  private final Object m_aRateLock = new Object ();
+  private long m_nNextSlotNS;
+
+  // Serializes the writing of the state file
+  private final Object m_aPersistLock = new Object ();
+
+  @Deprecated
+  @UsedViaReflection
+  public PDResyncJob ()
+  {}
+
+  @Nonnull
+  public static PDResyncJob getInstance ()
+  {
+    return getGlobalSingleton (PDResyncJob.class);
+  }
+
+  @Nonnull
+  private static File _getFile ()
+  {
+    return WebFileIO.getDataIO ().getFile (FILENAME);
+  }
+
+  @Override
+  protected void onAfterInstantiation (@Nonnull final IScope aScope)
+  {
+    final File aFile = _getFile ();
+    if (!aFile.exists ())
+      return;
+
+    final IMicroDocument aDoc = MicroReader.readMicroXML (aFile);
+    if (aDoc == null || aDoc.getDocumentElement () == null)
+    {
+      LOGGER.error ("Failed to read the resync job state from '" + aFile.getAbsolutePath () + "'");
+      return;
+    }
+
+    final IMicroElement eRoot = aDoc.getDocumentElement ();
+    final boolean bWasRunning = "true".equals (eRoot.getAttributeValue (ATTR_RUNNING));
+    m_aRWLock.writeLocked ( () -> {
+      m_sWatermark = eRoot.getAttributeValue (ATTR_WATERMARK);
+      m_nStartedMS = eRoot.getAttributeValueAsLong (ATTR_STARTED, 0);
+      m_nTotal = eRoot.getAttributeValueAsInt (ATTR_TOTAL, 0);
+      m_nSucceeded = eRoot.getAttributeValueAsInt (ATTR_SUCCEEDED, 0);
+      m_nFailed = eRoot.getAttributeValueAsInt (ATTR_FAILED, 0);
+      for (final IMicroElement eFailed : eRoot.getAllChildElements (ELEMENT_FAILED))
+        m_aFailedIDs.add (eFailed.getTextContentTrimmed ());
+    });
+
+    if (bWasRunning)
+    {
+      LOGGER.info ("Resuming the " +
+                   SMPWebAppConfiguration.getDirectoryName () +
+                   " resync job after '" +
+                   m_sWatermark +
+                   "'");
+      m_aRWLock.writeLocked ( () -> _startThread (m_sWatermark));
+    }
+  }
+
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed)
+  {
+    final Thread aThread = m_aRWLock.writeLocked ( () -> {
+      m_bShutdownRequested = true;
+      return m_aThread;
+    });
+    if (aThread != null)
+    {
+      // The job itself waits at most SHUTDOWN_TIMEOUT_MS for its workers
+      final long nTimeoutMS = 2 * PDNotificationQueue.SHUTDOWN_TIMEOUT_MS;
+      try
+      {
+        aThread.join (nTimeoutMS);
+      }
+      catch (final InterruptedException ex)
+      {
+        LOGGER.warn ("Interrupted while waiting for the resync job to finish", ex);
+        Thread.currentThread ().interrupt ();
+      }
+      if (aThread.isAlive ())
+      {
+        LOGGER.warn ("The resync job did not finish within " + nTimeoutMS + " ms - interrupting it");
+        aThread.interrupt ();
+        // The persisted watermark is resumed upon the next startup
+        _persist ();
+      }
+    }
+  }
+
+  private void _startThread (@Nullable final String sResumeAfter)
+  {
+    // Must be called in write lock
+    m_bRunning = true;
+    m_bCancelRequested = false;
+    m_bShutdownRequested = false;
+    m_nFinishedMS = 0;
+    m_aThread = new Thread ( () -> {
+      // The managers of the SQL backend need a request scope
+      try (final Scoped aScoped = new Scoped ())
+      {
+        _run (sResumeAfter);
+      }
+    }, "smp-pd-resync");
+    m_aThread.setDaemon (true);
+    m_aThread.start ();
+  }
+
+  /**
+   * Start a new resync job from the beginning.
+   *
+   * @return {@link ESuccess#FAILURE} if a job is already running.
+   */
+  @Nonnull
+  public ESuccess start ()
+  {
+    return m_aRWLock.writeLocked ( () -> {
+      if (m_bRunning)
+        return ESuccess.FAILURE;
+
+      m_nStartedMS = System.currentTimeMillis ();
+      m_nTotal = 0;
+      m_nSucceeded = 0;
+      m_nFailed = 0;
+      m_sWatermark = null;
+      m_aFailedIDs.clear ();
+      _startThread (null);
+      LOGGER.info ("Started the " + SMPWebAppConfiguration.getDirectoryName () + " resync job");
+      return ESuccess.SUCCESS;
+    });
+  }
+
+  /**
+   * Cancel the currently running job. Cancelled jobs are not resumed.
+   */
+  public void cancel ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      if (m_bRunning)
+        m_bCancelRequested = true;
+    });
+  }
+
+  private boolean _isStopRequested ()
+  {
+    return m_aRWLock.readLocked ( () -> m_bCancelRequested || m_bShutdownRequested);
+  }
+
+  private void _acquireRatePermit (@Nonnegative final int nRatePerSecond)
+  {
+    if (nRatePerSecond <= 0)
+      return;
+
+    final long nIntervalNS = TimeUnit.SECONDS.toNanos (1) / nRatePerSecond;
+    final long nWaitNS;
+    synchronized (m_aRateLock)
+    {
+      final long nNow = System.nanoTime ();
+      if (m_nNextSlotNS < nNow)
+        m_nNextSlotNS = nNow;
+      nWaitNS = m_nNextSlotNS - nNow;
+      m_nNextSlotNS += nIntervalNS;
+    }
+    if (nWaitNS > 0)
+      ThreadHelper.sleep (nWaitNS, TimeUnit.NANOSECONDS);
+  }
+
+  private void _run (@Nullable final String sResumeAfter)
+  {
+    try
+    {
+      // Only keep the participant IDs in memory, sorted by their key
+      final ICommonsSortedMap <String, IParticipantIdentifier> aMap = new CommonsTreeMap <> ();
+      final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+      if (aBusinessCardMgr != null)
+        aBusinessCardMgr.forEachSMPBusinessCard (x -> {
+          final IParticipantIdentifier aParticipantID = x.getServiceGroup ().getParticpantIdentifier ();
+          final String sKey = aParticipantID.getURIEncoded ();
+          if (sResumeAfter == null || sKey.compareTo (sResumeAfter) > 0)
+            aMap.put (sKey, aParticipantID);
+        });
+      final ICommonsList <String> aKeys = new CommonsArrayList <> (aMap.keySet ());
+
+      m_aRWLock.writeLocked ( () -> {
+        m_nTotal = m_nSucceeded + m_nFailed + aKeys.size ();
+      });
+      _persist ();
+
+      final int nThreads = SMPWebAppConfiguration.getDirectoryResyncThreadCount ();
+      final int nRate = SMPWebAppConfiguration.getDirectoryResyncRatePerSecond ();
+      final AtomicInteger aNext = new AtomicInteger (0);
+      final BitSet aDone = new BitSet (aKeys.size ());
+      final AtomicInteger aContiguous = new AtomicInteger (0);
+
+      final ExecutorService aExecutor = Executors.newFixedThreadPool (nThreads,
+                                                                      new BasicThreadFactory.Builder ().setNamingPattern ("smp-pd-resync-%d")
+                                                                                                       .setDaemon (true)
+                                                                                                       .build ());
+      for (int i = 0; i < nThreads; ++i)
+        aExecutor.submit ( () -> {
+          while (!_isStopRequested ())
+          {
+            final int nIndex = aNext.getAndIncrement ();
+            if (nIndex >= aKeys.size ())
+              break;
+
+            _acquireRatePermit (nRate);
+            final String sKey = aKeys.get (nIndex);
+            ESuccess eSuccess;
+            try
+            {
+              eSuccess = PDClientProvider.getInstance ().getPDClient ().addServiceGroupToIndex (aMap.get (sKey));
+            }
+            catch (final RuntimeException ex)
+            {
+              LOGGER.error ("Error pushing '" + sKey + "' to the Directory", ex);
+              eSuccess = ESuccess.FAILURE;
+            }
+
+            final boolean bSuccess = eSuccess.isSuccess ();
+            final boolean bPersist = m_aRWLock.writeLocked ( () -> {
+              if (bSuccess)
+                m_nSucceeded++;
+              else
+              {
+                m_nFailed++;
+                if (m_aFailedIDs.size () < MAX_RECORDED_FAILURES)
+                  m_aFailedIDs.add (sKey);
+              }
+
+              // Advance the watermark over all contiguously finished entries
+              aDone.set (nIndex);
+              int nContiguous = aContiguous.get ();
+              while (nContiguous < aKeys.size () && aDone.get (nContiguous))
+                nContiguous++;
+              aContiguous.set (nContiguous);
+              if (nContiguous > 0)
+                m_sWatermark = aKeys.get (nContiguous - 1);
+              return (m_nSucceeded + m_nFailed) % PERSIST_INTERVAL == 0;
+            });
+            if (bPersist)
+              _persist ();
+          }
+        });
+      aExecutor.shutdown ();
+      // Wait endlessly for a running job, but only limited after a stop request
+      while (!aExecutor.awaitTermination (1, TimeUnit.SECONDS))
+        if (_isStopRequested ())
+        {
+          PDNotificationQueue.shutdownBounded (aExecutor, "resync workers");
+          break;
+        }
+    }
+    catch (final InterruptedException ex)
+    {
+      LOGGER.warn ("Interrupted while waiting for the resync workers to finish", ex);
+      Thread.currentThread ().interrupt ();
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Error in the resync job", ex);
+    }
+    finally
+    {
+      m_aRWLock.writeLocked ( () -> {
+        // A job interrupted by a shutdown is resumed upon the next startup
+        m_bRunning = m_bShutdownRequested;
+        m_nFinishedMS = m_bShutdownRequested ? 0 : System.currentTimeMillis ();
+        m_aThread = null;
+      });
+      _persist ();
+      LOGGER.info ("The " +
+                   SMPWebAppConfiguration.getDirectoryName () +
+                   " resync job ended: " +
+                   getSucceededCount () +
+                   " succeeded, " +
+                   getFailedCount () +
+                   " failed");
+    }
+  }
+
+  private void _persist ()
+  {
+    final IMicroDocument aDoc = m_aRWLock.readLocked ( () -> {
+      final IMicroDocument ret = new MicroDocument ();
+      final IMicroElement eRoot = ret.appendElement (ELEMENT_ROOT);
+      eRoot.setAttribute (ATTR_RUNNING, Boolean.toString (m_bRunning));
+      eRoot.setAttribute (ATTR_WATERMARK, m_sWatermark);
+      eRoot.setAttribute (ATTR_STARTED, Long.toString (m_nStartedMS));
+      eRoot.setAttribute (ATTR_TOTAL, Integer.toString (m_nTotal));
+      eRoot.setAttribute (ATTR_SUCCEEDED, Integer.toString (m_nSucceeded));
+      eRoot.setAttribute (ATTR_FAILED, Integer.toString (m_nFailed));
+      for (final String sFailedID : m_aFailedIDs)
+        eRoot.appendElement (ELEMENT_FAILED).appendText (sFailedID);
+      return ret;
+    });
+    synchronized (m_aPersistLock)
+    {
+      if (MicroWriter.writeToFile (aDoc, _getFile ()).isFailure ())
+        LOGGER.error ("Failed to persist the resync job state to '" + _getFile ().getAbsolutePath () + "'");
+    }
+  }
+
+  public boolean isRunning ()
+  {
+    return m_aRWLock.readLocked ( () -> m_bRunning);
+  }
+
+  /**
+   * @return <code>true</code> if a job was started at least once.
+   */
+  public boolean hasEverStarted ()
+  {
+    return m_aRWLock.readLocked ( () -> m_nStartedMS > 0);
+  }
+
+  @Nonnegative
+  public int getTotalCount ()
+  {
+    return m_aRWLock.readLocked ( () -> m_nTotal);
+  }
+
+  @Nonnegative
+  public int getSucceededCount ()
+  {
+    return m_aRWLock.readLocked ( () -> m_nSucceeded);
+  }
+
+  @Nonnegative
+  public int getFailedCount ()
+  {
+    return m_aRWLock.readLocked ( () -> m_nFailed);
+  }
+
+  /**
+   * @return The first failed participant IDs (URI encoded). Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> getAllFailedParticipantIDs ()
+  {
+    return m_aRWLock.readLocked ( () -> m_aFailedIDs.getClone ());
+  }
+
+  /**
+   * @return The status of the current or last job as JSON. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public IJsonObject getStatusAsJson ()
+  {
+    return m_aRWLock.readLocked ( () -> {
+      final IJsonObject ret = new JsonObject ();
+      ret.add ("running", m_bRunning);
+      if (m_nStartedMS > 0)
+        ret.add ("started", PDTWebDateHelper.getAsStringXSD (PDTFactory.createZonedDateTime (m_nStartedMS)));
+      if (m_nFinishedMS > 0)
+        ret.add ("finished", PDTWebDateHelper.getAsStringXSD (PDTFactory.createZonedDateTime (m_nFinishedMS)));
+      ret.add ("total", m_nTotal);
+      ret.add ("succeeded", m_nSucceeded);
+      ret.add ("failed", m_nFailed);
+      final IJsonArray aFailed = new JsonArray ();
+      for (final String sFailedID : m_aFailedIDs)
+        aFailed.add (sFailedID);
+      ret.add ("failedids", aFailed);
+      return ret;
+    });
+  }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.PDTWebDateHelper;
+import com.helger.commons.state.ESuccess;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.smlhook.RegistrationHookException;
+import com.helger.phoss.smp.smlhook.RegistrationHookWriteToSML;
+import com.helger.phoss.smp.smlhook.SMLOutbox;
+import com.helger.phoss.smp.smlhook.SMLReconciler;
+import com.helger.phoss.smp.smlhook.SMLReconciliationResult;
+import com.helger.scope.IScope;
+import com.helger.scope.mgr.Scoped;
+import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+
+/**
+ * Background job that compares all local service groups with the
+ * participants registered in the SML and optionally repairs the differences.
+ * See {@link SMLReconciler} for the details. Participants with a pending SML
+ * outbox entry are ignored.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMLReconciliationJob extends AbstractGlobalWebSingleton
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMLReconciliationJob.class);
+
+  // Status - all guarded by m_aRWLock
+  private boolean m_bRunning;
+  private boolean m_bStopRequested;
+  private boolean m_bRepair;
+  private long m_nStartedMS;
+  private long m_nFinishedMS;
+  private SMLReconciliationResult m_aResult;
+  private String m_sError;
+  private Thread m_aThread;
+
+  @Deprecated
+  @UsedViaReflection
+  public SMLReconciliationJob ()
+  {}
+
+  @Nonnull
+  public static SMLReconciliationJob getInstance ()
+  {
+    return getGlobalSingleton (SMLReconciliationJob.class);
+  }
+
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed)
+  {
+    final Thread aThread = m_aRWLock.writeLocked ( () -> {
+      m_bStopRequested = true;
+      return m_aThread;
+    });
+    if (aThread != null)
+    {
+      try
+      {
+        aThread.join ();
+      }
+      catch (final InterruptedException ex)
+      {
+        LOGGER.warn ("Interrupted while waiting for the SML reconciliation to finish", ex);
+        Thread.currentThread ().interrupt ();
+      }
+    }
+  }
+
+  /**
+   * Start a new reconciliation.
+   *
+   * @param bRepair
+   *        <code>true</code> to repair the differences, <code>false</code> to
+   *        only report them.
+   * @return {@link ESuccess#FAILURE} if a reconciliation is already running.
+   */
+  @Nonnull
+  public ESuccess start (final boolean bRepair)
+  {
+    return m_aRWLock.writeLocked ( () -> {
+      if (m_bRunning)
+        return ESuccess.FAILURE;
+
+      m_bRunning = true;
+      m_bStopRequested = false;
+      m_bRepair = bRepair;
+      m_nStartedMS = System.currentTimeMillis ();
+      m_nFinishedMS = 0;
+      m_aResult = null;
+      m_sError = null;
+      m_aThread = new Thread ( () -> {
+        // The managers of the SQL backend need a request scope
+        try (final Scoped aScoped = new Scoped ())
+        {
+          _run (bRepair);
+        }
+      }, "smp-sml-reconciliation");
+      m_aThread.setDaemon (true);
+      m_aThread.start ();
+      LOGGER.info ("Started the SML reconciliation" + (bRepair ? " with repair" : ""));
+      return ESuccess.SUCCESS;
+    });
+  }
+
+  /**
+   * Stop the currently running reconciliation.
+   */
+  public void cancel ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      if (m_bRunning)
+        m_bStopRequested = true;
+    });
+  }
+
+  private boolean _isStopRequested ()
+  {
+    return m_aRWLock.readLocked ( () -> m_bStopRequested);
+  }
+
+  private void _run (final boolean bRepair)
+  {
+    SMLReconciliationResult aResult = null;
+    String sError = null;
+    try
+    {
+      final RegistrationHookWriteToSML aSML = new RegistrationHookWriteToSML ();
+      final SMLReconciler aReconciler = new SMLReconciler (aSML, aSML);
+      aReconciler.setThreadCount (SMPServerConfiguration.getSMLReconciliationThreadCount ())
+                 .setBatchesPerSecond (SMPServerConfiguration.getSMLReconciliationRatePerSecond ())
+                 .setRepair (bRepair)
+                 .setStopRequested (this::_isStopRequested);
+      if (SMPServerConfiguration.isSMLOutboxEnabled ())
+      {
+        // Pending operations will be delivered anyway
+        final SMLOutbox aOutbox = SMLOutbox.getInstance ();
+        aReconciler.setIgnoreFilter (x -> aOutbox.getStatus (x) != null);
+      }
+      aResult = aReconciler.reconcile (SMPMetaManager.getServiceGroupMgr ());
+    }
+    catch (final RegistrationHookException | RuntimeException ex)
+    {
+      LOGGER.error ("Error in the SML reconciliation", ex);
+      sError = ex.getMessage ();
+    }
+    finally
+    {
+      final SMLReconciliationResult aFinalResult = aResult;
+      final String sFinalError = sError;
+      m_aRWLock.writeLocked ( () -> {
+        m_bRunning = false;
+        m_nFinishedMS = System.currentTimeMillis ();
+        m_aResult = aFinalResult;
+        m_sError = sFinalError;
+        m_aThread = null;
+      });
+    }
+  }
+
+  public boolean isRunning ()
+  {
+    return m_aRWLock.readLocked ( () -> m_bRunning);
+  }
+
+  /**
+   * @return The result of the last finished reconciliation or
+   *         <code>null</code> if none finished successfully.
+   */
+  @Nullable
+  public SMLReconciliationResult getLastResult ()
+  {
+    return m_aRWLock.readLocked ( () -> m_aResult);
+  }
+
+  @Nonnull
+  private static IJsonArray _getAsJsonArray (@Nonnull final Iterable <String> aIDs)
+  {
+    final IJsonArray ret = new JsonArray ();
+    for (final String sID : aIDs)
+      ret.add (sID);
+    return ret;
+  }
+
+  /**
+   * @return The status of the current or last reconciliation as JSON. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public IJsonObject getStatusAsJson ()
+  {
+    return m_aRWLock.readLocked ( () -> {
+      final IJsonObject ret = new JsonObject ();
+      ret.add ("running", m_bRunning);
+      if (m_nStartedMS > 0)
+      {
+        ret.add ("repair", m_bRepair);
+        ret.add ("started", PDTWebDateHelper.getAsStringXSD (PDTFactory.createZonedDateTime (m_nStartedMS)));
+      }
+      if (m_nFinishedMS > 0)
+        ret.add ("finished", PDTWebDateHelper.getAsStringXSD (PDTFactory.createZonedDateTime (m_nFinishedMS)));
+      ret.addIfNotNull ("error", m_sError);
+      if (m_aResult != null)
+      {
+        ret.add ("completed", m_aResult.isCompleted ());
+        ret.add ("consistent", m_aResult.isConsistent ());
+        ret.add ("local", m_aResult.getLocalCount ());
+        ret.add ("registered", m_aResult.getRegisteredCount ());
+        ret.add ("ignored", m_aResult.getIgnoredCount ());
+        ret.add ("missing", m_aResult.getMissingCount ());
+        ret.add ("stale", m_aResult.getStaleCount ());
+        ret.add ("repaired", m_aResult.getRepairedCount ());
+        ret.add ("repairfailed", m_aResult.getRepairFailedCount ());
+        ret.add ("missingids", _getAsJsonArray (m_aResult.getAllMissingIDs ()));
+        ret.add ("staleids", _getAsJsonArray (m_aResult.getAllStaleIDs ()));
+        ret.add ("repairfailedids", _getAsJsonArray (m_aResult.getAllRepairFailedIDs ()));
+      }
+      return ret;
+    });
+  }
+}
@@ -0,0 +1,390 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.functional.IThrowingConsumer;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.mutable.MutableInt;
+import com.helger.commons.state.ESuccess;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardMicroTypeConverter;
+import com.helger.phoss.smp.domain.changelog.ESMPChangeItemType;
+import com.helger.phoss.smp.domain.changelog.ISMPChangeLogEntry;
+import com.helger.phoss.smp.domain.changelog.SMPChangeLogManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.scope.mgr.Scoped;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroElement;
+import com.helger.xml.microdom.convert.MicroTypeConverter;
+
+/**
+ * Export all service groups incl. service information and redirects, and
+ * optionally all business cards, in the SMP exchange format. The managers are
+ * iterated via their <code>forEach</code> methods and every element is
+ * written as soon as it is created, so the export runs in constant memory.
+ * The service groups are exported in the iteration order of the backend, the
+ * service information and redirects of each service group are sorted.<br>
+ * If the change log is enabled, a delta export containing only the items
+ * changed after a certain change sequence number can be created as well.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPExchangeExporter
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPExchangeExporter.class);
+  private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+  private SMPExchangeExporter ()
+  {}
+
+  @Nonnull
+  private static IMicroElement _getBusinessCardElement (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    return SMPBusinessCardMicroTypeConverter.convertToMicroElement (aBusinessCard,
+                                                                   null,
+                                                                   CSMPExchange.ELEMENT_BUSINESSCARD,
+                                                                   true);
+  }
+
+  @Nonnull
+  private static IMicroElement _getServiceGroupElement (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                        @Nonnull final ISMPServiceInformationManager aServiceInfoMgr,
+                                                        @Nonnull final ISMPRedirectManager aRedirectMgr)
+  {
+    final IMicroElement eServiceGroup = MicroTypeConverter.convertToMicroElement (aServiceGroup,
+                                                                                 CSMPExchange.ELEMENT_SERVICEGROUP);
+
+    // Add all service information
+    for (final ISMPServiceInformation aServiceInfo : aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aServiceGroup)
+                                                                    .getSortedInline (ISMPServiceInformation.comparator ()))
+      eServiceGroup.appendChild (MicroTypeConverter.convertToMicroElement (aServiceInfo,
+                                                                           CSMPExchange.ELEMENT_SERVICEINFO));
+
+    // Add all redirects
+    for (final ISMPRedirect aRedirect : aRedirectMgr.getAllSMPRedirectsOfServiceGroup (aServiceGroup)
+                                                    .getSortedInline (ISMPRedirect.comparator ()))
+      eServiceGroup.appendChild (MicroTypeConverter.convertToMicroElement (aRedirect, CSMPExchange.ELEMENT_REDIRECT));
+    return eServiceGroup;
+  }
+
+  /**
+   * Write all service groups and optionally all business cards to the passed
+   * writer. The writer is not closed.
+   *
+   * @param aWriter
+   *        The writer to use. May not be <code>null</code>.
+   * @param bIncludeBusinessCards
+   *        <code>true</code> to export the business cards as well.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static void exportAll (@Nonnull final SMPExchangeWriter aWriter,
+                                final boolean bIncludeBusinessCards) throws IOException
+  {
+    ValueEnforcer.notNull (aWriter, "Writer");
+
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
+    final MutableInt aSGCount = new MutableInt (0);
+    final MutableInt aBCCount = new MutableInt (0);
+    try
+    {
+      // The consumers cannot throw checked exceptions
+      final ESuccess eSuccess = SMPMetaManager.getServiceGroupMgr ().forEachSMPServiceGroup (aServiceGroup -> {
+        try
+        {
+          aWriter.writeElement (_getServiceGroupElement (aServiceGroup, aServiceInfoMgr, aRedirectMgr));
+          aSGCount.inc ();
+        }
+        catch (final IOException ex)
+        {
+          throw new UncheckedIOException (ex);
+        }
+      });
+      // Don't deliver an incomplete export as a complete one
+      if (eSuccess.isFailure ())
+        throw new IOException ("Failed to read all service groups - the export is incomplete after " +
+                               aSGCount.intValue () +
+                               " service group(s)");
+
+      if (bIncludeBusinessCards)
+        SMPMetaManager.getBusinessCardMgr ().forEachSMPBusinessCard (aBusinessCard -> {
+          try
+          {
+            aWriter.writeElement (_getBusinessCardElement (aBusinessCard));
+            aBCCount.inc ();
+          }
+          catch (final IOException ex)
+          {
+            throw new UncheckedIOException (ex);
+          }
+        });
+    }
+    catch (final UncheckedIOException ex)
+    {
+      throw ex.getCause ();
+    }
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Exported " + aSGCount.intValue () + " service group(s) and " + aBCCount.intValue () + " business card(s)");
+  }
+
+  /**
+   * Write only the items changed after the provided change sequence number to
+   * the passed writer. The first element states the covered sequence range.
+   * It is followed by one element per deleted item, the current state of each
+   * changed service group (incl. all its service information and redirects)
+   * and of each changed business card. The writer is not closed.
+   *
+   * @param aWriter
+   *        The writer to use. May not be <code>null</code>.
+   * @param aChangeLogMgr
+   *        The change log manager to use. May not be <code>null</code>.
+   * @param nSinceSequence
+   *        The last change sequence number already known by the caller. Use 0
+   *        to export everything that was recorded in the change log.
+   * @param bIncludeBusinessCards
+   *        <code>true</code> to export the business cards as well.
+   * @return The last change sequence number contained in the export. It should
+   *         be used as the start of the next delta export.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static long exportChangesSince (@Nonnull final SMPExchangeWriter aWriter,
+                                         @Nonnull final SMPChangeLogManager aChangeLogMgr,
+                                         final long nSinceSequence,
+                                         final boolean bIncludeBusinessCards) throws IOException
+  {
+    ValueEnforcer.notNull (aWriter, "Writer");
+    ValueEnforcer.notNull (aChangeLogMgr, "ChangeLogMgr");
+    ValueEnforcer.isGE0 (nSinceSequence, "SinceSequence");
+
+    final ICommonsList <ISMPChangeLogEntry> aChanges = aChangeLogMgr.getAllChangesSince (nSinceSequence,
+                                                                                        Integer.MAX_VALUE);
+    final long nLastSequence = aChanges.isEmpty () ? nSinceSequence : aChanges.getLast ().getSequence ();
+    aWriter.writeElement (new MicroElement (CSMPExchange.ELEMENT_CHANGES).setAttribute (CSMPExchange.ATTR_SINCE,
+                                                                                          nSinceSequence)
+                                                                           .setAttribute (CSMPExchange.ATTR_LAST_SEQUENCE,
+                                                                                          nLastSequence));
+
+    // Write the tombstones first and remember the items to export
+    final ICommonsOrderedSet <String> aServiceGroupIDs = new CommonsLinkedHashSet <> ();
+    final ICommonsOrderedSet <String> aBusinessCardIDs = new CommonsLinkedHashSet <> ();
+    int nDeletedCount = 0;
+    for (final ISMPChangeLogEntry aChange : aChanges)
+    {
+      final boolean bIsBusinessCard = aChange.getItemType () == ESMPChangeItemType.BUSINESS_CARD;
+      if (bIsBusinessCard && !bIncludeBusinessCards)
+        continue;
+
+      if (aChange.isDeleted ())
+      {
+        final IMicroElement eDeleted = new MicroElement (CSMPExchange.ELEMENT_DELETED);
+        eDeleted.setAttribute (CSMPExchange.ATTR_SEQUENCE, aChange.getSequence ());
+        eDeleted.setAttribute (CSMPExchange.ATTR_TYPE, aChange.getItemType ().getID ());
+        eDeleted.setAttribute (CSMPExchange.ATTR_SERVICEGROUP_ID, aChange.getServiceGroupID ());
+        eDeleted.setAttribute (CSMPExchange.ATTR_DOCTYPE_ID, aChange.getDocumentTypeID ());
+        aWriter.writeElement (eDeleted);
+        nDeletedCount++;
+      }
+
+      if (bIsBusinessCard)
+      {
+        if (!aChange.isDeleted ())
+          aBusinessCardIDs.add (aChange.getServiceGroupID ());
+      }
+      else
+        if (!aChange.isDeleted () || aChange.getItemType () != ESMPChangeItemType.SERVICE_GROUP)
+        {
+          // A changed or deleted child changes the service group
+          aServiceGroupIDs.add (aChange.getServiceGroupID ());
+        }
+    }
+
+    // Write the current state of all changed items that still exist
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
+    int nSGCount = 0;
+    for (final String sServiceGroupID : aServiceGroupIDs)
+    {
+      final IParticipantIdentifier aParticipantID = SMPMetaManager.getIdentifierFactory ()
+                                                                  .parseParticipantIdentifier (sServiceGroupID);
+      final ISMPServiceGroup aServiceGroup = aParticipantID == null ? null
+                                                                    : SMPMetaManager.getServiceGroupMgr ()
+                                                                                    .getSMPServiceGroupOfID (aParticipantID);
+      if (aServiceGroup != null)
+      {
+        aWriter.writeElement (_getServiceGroupElement (aServiceGroup, aServiceInfoMgr, aRedirectMgr));
+        nSGCount++;
+      }
+    }
+
+    int nBCCount = 0;
+    for (final String sServiceGroupID : aBusinessCardIDs)
+    {
+      final ISMPBusinessCard aBusinessCard = SMPMetaManager.getBusinessCardMgr ()
+                                                           .getSMPBusinessCardOfID (sServiceGroupID);
+      if (aBusinessCard != null)
+      {
+        aWriter.writeElement (_getBusinessCardElement (aBusinessCard));
+        nBCCount++;
+      }
+    }
+
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Exported the changes " +
+                   nSinceSequence +
+                   " to " +
+                   nLastSequence +
+                   ": " +
+                   nSGCount +
+                   " service group(s), " +
+                   nBCCount +
+                   " business card(s) and " +
+                   nDeletedCount +
+                   " deleted item(s)");
+    return nLastSequence;
+  }
+
+  /**
+   * Get the export as an input stream that is filled by a background thread
+   * while it is read. This allows to stream the export to an HTTP response
+   * without holding it in memory or in a temporary file. If the export fails,
+   * reading from the stream fails as well, instead of returning a truncated
+   * document.
+   *
+   * @param bIncludeBusinessCards
+   *        <code>true</code> to export the business cards as well.
+   * @param bGZip
+   *        <code>true</code> to GZip compress the output
+   * @return The input stream provider. It can be read only once. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static IHasInputStream getStreamingExport (final boolean bIncludeBusinessCards, final boolean bGZip)
+  {
+    return _getStreamingExport (aWriter -> exportAll (aWriter, bIncludeBusinessCards), bGZip);
+  }
+
+  /**
+   * Get the delta export as an input stream that is filled by a background
+   * thread while it is read. See {@link #getStreamingExport(boolean, boolean)}
+   * for details.
+   *
+   * @param aChangeLogMgr
+   *        The change log manager to use. May not be <code>null</code>.
+   * @param nSinceSequence
+   *        The last change sequence number already known by the caller. Must
+   *        be &ge; 0.
+   * @param bIncludeBusinessCards
+   *        <code>true</code> to export the business cards as well.
+   * @param bGZip
+   *        <code>true</code> to GZip compress the output
+   * @return The input stream provider. It can be read only once. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static IHasInputStream getStreamingDeltaExport (@Nonnull final SMPChangeLogManager aChangeLogMgr,
+                                                         final long nSinceSequence,
+                                                         final boolean bIncludeBusinessCards,
+                                                         final boolean bGZip)
+  {
+    ValueEnforcer.notNull (aChangeLogMgr, "ChangeLogMgr");
+    ValueEnforcer.isGE0 (nSinceSequence, "SinceSequence");
+    return _getStreamingExport (aWriter -> exportChangesSince (aWriter,
+                                                               aChangeLogMgr,
+                                                               nSinceSequence,
+                                                               bIncludeBusinessCards),
+                                bGZip);
+  }
+
+  @Nonnull
+  private static IHasInputStream _getStreamingExport (@Nonnull final IThrowingConsumer <SMPExchangeWriter, IOException> aExporter,
+                                                      final boolean bGZip)
+  {
+    return new IHasInputStream ()
+    {
+      @Nullable
+      public InputStream getInputStream ()
+      {
+        final PipedInputStream aPIS = new PipedInputStream (PIPE_BUFFER_SIZE);
+        final PipedOutputStream aPOS;
+        try
+        {
+          aPOS = new PipedOutputStream (aPIS);
+        }
+        catch (final IOException ex)
+        {
+          LOGGER.error ("Failed to create pipe for the export", ex);
+          return null;
+        }
+
+        final Thread aThread = new Thread ( () -> {
+          // The managers of the SQL backend need a request scope
+          try (final Scoped aScoped = new Scoped ())
+          {
+            final OutputStream aOS = bGZip ? new GZIPOutputStream (aPOS, PIPE_BUFFER_SIZE) : aPOS;
+            final SMPExchangeWriter aWriter = new SMPExchangeWriter (aOS);
+            aExporter.accept (aWriter);
+            // Only close on success - otherwise the reading side fails
+            // because the writing thread is dead
+            aWriter.close ();
+          }
+          catch (final IOException | RuntimeException ex)
+          {
+            LOGGER.error ("Error exporting service groups", ex);
+          }
+        }, "smp-export");
+        aThread.setDaemon (true);
+        aThread.start ();
+        return aPIS;
+      }
+
+      public boolean isReadMultiple ()
+      {
+        return false;
+      }
+    };
+  }
+}
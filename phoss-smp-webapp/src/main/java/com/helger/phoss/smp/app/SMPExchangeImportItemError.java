@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.Serializable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single error that occurred during the import of a certain item.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPExchangeImportItemError implements Serializable
+{
+  private final String m_sItemType;
+  private final String m_sItemID;
+  private final String m_sMessage;
+  private final String m_sCause;
+
+  /**
+   * Constructor
+   *
+   * @param sItemType
+   *        The type of the item. One of the element names of
+   *        {@link CSMPExchange}. May neither be <code>null</code> nor empty.
+   * @param sItemID
+   *        The ID of the item (e.g. the service group ID) or the index in the
+   *        file, if the ID is unknown. May be <code>null</code>.
+   * @param sMessage
+   *        The error message. May neither be <code>null</code> nor empty.
+   * @param aCause
+   *        The exception that caused the error. May be <code>null</code>.
+   */
+  public SMPExchangeImportItemError (@Nonnull @Nonempty final String sItemType,
+                                     @Nullable final String sItemID,
+                                     @Nonnull @Nonempty final String sMessage,
+                                     @Nullable final Throwable aCause)
+  {
+    ValueEnforcer.notEmpty (sItemType, "ItemType");
+    ValueEnforcer.notEmpty (sMessage, "Message");
+    m_sItemType = sItemType;
+    m_sItemID = sItemID;
+    m_sMessage = sMessage;
+    m_sCause = aCause == null ? null : aCause.getClass ().getName () + ": " + aCause.getMessage ();
+  }
+
+  /**
+   * @return The type of the item. One of the element names of
+   *         {@link CSMPExchange}.
+   */
+  @Nonnull
+  @Nonempty
+  public String getItemType ()
+  {
+    return m_sItemType;
+  }
+
+  @Nullable
+  public String getItemID ()
+  {
+    return m_sItemID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getMessage ()
+  {
+    return m_sMessage;
+  }
+
+  /**
+   * @return The class name and message of the causing exception. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public String getCause ()
+  {
+    return m_sCause;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ItemType", m_sItemType)
+                                       .append ("ItemID", m_sItemID)
+                                       .append ("Message", m_sMessage)
+                                       .append ("Cause", m_sCause)
+                                       .getToString ();
+  }
+}
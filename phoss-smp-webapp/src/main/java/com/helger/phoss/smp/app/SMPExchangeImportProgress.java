@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.web.scope.singleton.AbstractSessionWebSingleton;
+
+/**
+ * The progress of the service group import of the current session. It is
+ * updated by the importing request and read by the progress AJAX call of the
+ * UI that runs in parallel.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPExchangeImportProgress extends AbstractSessionWebSingleton
+{
+  private volatile String m_sPhase;
+  private volatile long m_nTotalBytes;
+  private volatile long m_nReadBytes;
+  private volatile int m_nServiceGroupCount;
+  private volatile int m_nBusinessCardCount;
+
+  @Deprecated
+  @UsedViaReflection
+  public SMPExchangeImportProgress ()
+  {}
+
+  @Nonnull
+  public static SMPExchangeImportProgress getInstance ()
+  {
+    return getSessionSingleton (SMPExchangeImportProgress.class);
+  }
+
+  @Nullable
+  public static SMPExchangeImportProgress getInstanceIfInstantiated ()
+  {
+    return getSessionSingletonIfInstantiated (SMPExchangeImportProgress.class);
+  }
+
+  /**
+   * Start a new phase and reset all counters.
+   *
+   * @param sPhase
+   *        The human readable name of the phase. May be <code>null</code> if no
+   *        import is running.
+   * @param nTotalBytes
+   *        The total number of bytes of the file to import. Maybe 0 if unknown.
+   */
+  public void startPhase (@Nullable final String sPhase, @Nonnegative final long nTotalBytes)
+  {
+    m_sPhase = sPhase;
+    m_nTotalBytes = nTotalBytes;
+    m_nReadBytes = 0;
+    m_nServiceGroupCount = 0;
+    m_nBusinessCardCount = 0;
+  }
+
+  public void setReadBytes (@Nonnegative final long nReadBytes)
+  {
+    m_nReadBytes = nReadBytes;
+  }
+
+  public void setServiceGroupCount (@Nonnegative final int nServiceGroupCount)
+  {
+    m_nServiceGroupCount = nServiceGroupCount;
+  }
+
+  public void setBusinessCardCount (@Nonnegative final int nBusinessCardCount)
+  {
+    m_nBusinessCardCount = nBusinessCardCount;
+  }
+
+  public boolean isRunning ()
+  {
+    return m_sPhase != null;
+  }
+
+  /**
+   * @return The current progress as human readable text. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getAsText ()
+  {
+    final String sPhase = m_sPhase;
+    if (sPhase == null)
+      return "No import is running";
+
+    final long nTotalBytes = m_nTotalBytes;
+    final String sPercentage = nTotalBytes > 0 ? " " + Math.min (100, m_nReadBytes * 100 / nTotalBytes) + "%" : "";
+    return sPhase +
+           sPercentage +
+           " - " +
+           m_nServiceGroupCount +
+           " service group(s) and " +
+           m_nBusinessCardCount +
+           " business card(s) processed";
+  }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The result of a single {@link SMPExchangeImporter} run. The list of item
+ * errors is limited to {@link SMPExchangeImporter#MAX_DETAIL_MESSAGES}
+ * entries, whereas the counts are always complete.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@Immutable
+public final class SMPExchangeImportResult
+{
+  private final boolean m_bDryRun;
+  private final boolean m_bWritten;
+  private final int m_nServiceGroupsToImport;
+  private final int m_nServiceGroupsToOverwrite;
+  private final int m_nServiceGroupsIgnored;
+  private final int m_nBusinessCardsToImport;
+  private final int m_nBusinessCardsToOverwrite;
+  private final int m_nBusinessCardsIgnored;
+  private final int m_nCreatedServiceGroups;
+  private final int m_nDeletedServiceGroups;
+  private final int m_nCreatedServiceInfos;
+  private final int m_nCreatedRedirects;
+  private final int m_nCreatedBusinessCards;
+  private final int m_nErrorCount;
+  private final ICommonsList <SMPExchangeImportItemError> m_aItemErrors;
+
+  public SMPExchangeImportResult (final boolean bDryRun,
+                                  final boolean bWritten,
+                                  @Nonnegative final int nServiceGroupsToImport,
+                                  @Nonnegative final int nServiceGroupsToOverwrite,
+                                  @Nonnegative final int nServiceGroupsIgnored,
+                                  @Nonnegative final int nBusinessCardsToImport,
+                                  @Nonnegative final int nBusinessCardsToOverwrite,
+                                  @Nonnegative final int nBusinessCardsIgnored,
+                                  @Nonnegative final int nCreatedServiceGroups,
+                                  @Nonnegative final int nDeletedServiceGroups,
+                                  @Nonnegative final int nCreatedServiceInfos,
+                                  @Nonnegative final int nCreatedRedirects,
+                                  @Nonnegative final int nCreatedBusinessCards,
+                                  @Nonnegative final int nErrorCount,
+                                  @Nonnull final Iterable <SMPExchangeImportItemError> aItemErrors)
+  {
+    m_bDryRun = bDryRun;
+    m_bWritten = bWritten;
+    m_nServiceGroupsToImport = nServiceGroupsToImport;
+    m_nServiceGroupsToOverwrite = nServiceGroupsToOverwrite;
+    m_nServiceGroupsIgnored = nServiceGroupsIgnored;
+    m_nBusinessCardsToImport = nBusinessCardsToImport;
+    m_nBusinessCardsToOverwrite = nBusinessCardsToOverwrite;
+    m_nBusinessCardsIgnored = nBusinessCardsIgnored;
+    m_nCreatedServiceGroups = nCreatedServiceGroups;
+    m_nDeletedServiceGroups = nDeletedServiceGroups;
+    m_nCreatedServiceInfos = nCreatedServiceInfos;
+    m_nCreatedRedirects = nCreatedRedirects;
+    m_nCreatedBusinessCards = nCreatedBusinessCards;
+    m_nErrorCount = nErrorCount;
+    m_aItemErrors = new CommonsArrayList <> (aItemErrors);
+  }
+
+  /**
+   * @return <code>true</code> if the file was only checked,
+   *         <code>false</code> if it should be imported.
+   */
+  public boolean isDryRun ()
+  {
+    return m_bDryRun;
+  }
+
+  /**
+   * @return <code>true</code> if the write phase was started. If this is
+   *         <code>false</code>, nothing was changed.
+   */
+  public boolean isWritten ()
+  {
+    return m_bWritten;
+  }
+
+  /**
+   * @return <code>true</code> if no error occurred.
+   */
+  public boolean isSuccess ()
+  {
+    return m_nErrorCount == 0;
+  }
+
+  @Nonnegative
+  public int getServiceGroupsToImport ()
+  {
+    return m_nServiceGroupsToImport;
+  }
+
+  @Nonnegative
+  public int getServiceGroupsToOverwrite ()
+  {
+    return m_nServiceGroupsToOverwrite;
+  }
+
+  @Nonnegative
+  public int getServiceGroupsIgnored ()
+  {
+    return m_nServiceGroupsIgnored;
+  }
+
+  @Nonnegative
+  public int getBusinessCardsToImport ()
+  {
+    return m_nBusinessCardsToImport;
+  }
+
+  @Nonnegative
+  public int getBusinessCardsToOverwrite ()
+  {
+    return m_nBusinessCardsToOverwrite;
+  }
+
+  @Nonnegative
+  public int getBusinessCardsIgnored ()
+  {
+    return m_nBusinessCardsIgnored;
+  }
+
+  @Nonnegative
+  public int getCreatedServiceGroups ()
+  {
+    return m_nCreatedServiceGroups;
+  }
+
+  @Nonnegative
+  public int getDeletedServiceGroups ()
+  {
+    return m_nDeletedServiceGroups;
+  }
+
+  @Nonnegative
+  public int getCreatedServiceInfos ()
+  {
+    return m_nCreatedServiceInfos;
+  }
+
+  @Nonnegative
+  public int getCreatedRedirects ()
+  {
+    return m_nCreatedRedirects;
+  }
+
+  @Nonnegative
+  public int getCreatedBusinessCards ()
+  {
+    return m_nCreatedBusinessCards;
+  }
+
+  /**
+   * @return The total number of errors. May be larger than the number of
+   *         contained item errors.
+   */
+  @Nonnegative
+  public int getErrorCount ()
+  {
+    return m_nErrorCount;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <SMPExchangeImportItemError> getAllItemErrors ()
+  {
+    return m_aItemErrors.getClone ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("DryRun", m_bDryRun)
+                                       .append ("Written", m_bWritten)
+                                       .append ("ServiceGroupsToImport", m_nServiceGroupsToImport)
+                                       .append ("ServiceGroupsToOverwrite", m_nServiceGroupsToOverwrite)
+                                       .append ("ServiceGroupsIgnored", m_nServiceGroupsIgnored)
+                                       .append ("BusinessCardsToImport", m_nBusinessCardsToImport)
+                                       .append ("BusinessCardsToOverwrite", m_nBusinessCardsToOverwrite)
+                                       .append ("BusinessCardsIgnored", m_nBusinessCardsIgnored)
+                                       .append ("CreatedServiceGroups", m_nCreatedServiceGroups)
+                                       .append ("DeletedServiceGroups", m_nDeletedServiceGroups)
+                                       .append ("CreatedServiceInfos", m_nCreatedServiceInfos)
+                                       .append ("CreatedRedirects", m_nCreatedRedirects)
+                                       .append ("CreatedBusinessCards", m_nCreatedBusinessCards)
+                                       .append ("ErrorCount", m_nErrorCount)
+                                       .append ("ItemErrors", m_aItemErrors)
+                                       .getToString ();
+  }
+}
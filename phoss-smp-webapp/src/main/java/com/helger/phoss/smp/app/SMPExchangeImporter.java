@@ -0,0 +1,900 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.error.level.EErrorLevel;
+import com.helger.commons.error.level.IErrorLevel;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.CountingInputStream;
+import com.helger.commons.log.InMemoryLogger;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardMicroTypeConverter;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.redirect.SMPRedirectMicroTypeConverter;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupProvider;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupMicroTypeConverter;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformationMicroTypeConverter;
+import com.helger.phoss.smp.domain.user.ISMPUser;
+import com.helger.phoss.smp.exception.SMPServerException;
+import com.helger.scope.mgr.Scoped;
+import com.helger.xml.microdom.IMicroElement;
+
+/**
+ * Streaming importer for service groups, service information, redirects and
+ * business cards in the SMP exchange format version 1.0. The import is a
+ * pipeline with three stages:
+ * <ol>
+ * <li>Parsing: the file is read with a {@link SMPExchangeReader}, so only one
+ * service group or business card is held in memory at a time.</li>
+ * <li>Validation: a first pass checks every element and decides what to
+ * import. Nothing is written, if an error is found or if the import is a dry
+ * run.</li>
+ * <li>Writing: a second pass collects batches of {@link #getBatchSize()}
+ * service groups or business cards, that are written by
+ * {@link #getThreadCount()} threads in parallel, using the bulk methods of the
+ * managers. At most twice as many batches as threads are pending, so the
+ * memory consumption is bounded. All service groups are written before the
+ * first business card.</li>
+ * </ol>
+ * Existence checks are done via the managers and a hash map of the IDs
+ * contained in the file. All messages are collected in the provided
+ * {@link InMemoryLogger}. To keep the log usable for large files, at most
+ * {@link #MAX_DETAIL_MESSAGES} detail messages per severity are logged. The
+ * errors per item are part of the returned {@link SMPExchangeImportResult}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@ThreadSafe
+public final class SMPExchangeImporter
+{
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  public static final int DEFAULT_THREAD_COUNT = 4;
+  public static final int MAX_DETAIL_MESSAGES = 1_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPExchangeImporter.class);
+
+  private static final String PHASE_VALIDATE = "Checking";
+  private static final String PHASE_IMPORT = "Importing";
+
+  private static final class SGImportData
+  {
+    private final ICommonsList <ISMPServiceInformation> m_aServiceInfos = new CommonsArrayList <> ();
+    private final ICommonsList <ISMPRedirect> m_aRedirects = new CommonsArrayList <> ();
+  }
+
+  /**
+   * The result of the first pass: the IDs to import, mapped to the index of
+   * the last definition in the file.
+   */
+  private static final class ImportPlan
+  {
+    private final ICommonsMap <String, Integer> m_aServiceGroups = new CommonsHashMap <> ();
+    private final ICommonsMap <String, Integer> m_aBusinessCards = new CommonsHashMap <> ();
+    private int m_nSGOverwrite;
+    private int m_nSGIgnore;
+    private int m_nBCOverwrite;
+    private int m_nBCIgnore;
+  }
+
+  private final boolean m_bOverwriteExisting;
+  private final ISMPUser m_aDefaultOwner;
+  private final InMemoryLogger m_aLogger;
+  private int m_nBatchSize = DEFAULT_BATCH_SIZE;
+  private int m_nThreadCount = DEFAULT_THREAD_COUNT;
+  private boolean m_bDryRun = false;
+  private SMPExchangeImportProgress m_aProgress;
+
+  // Status per import - modified by the writer threads
+  private final SimpleLock m_aLock = new SimpleLock ();
+  private CountingInputStream m_aCIS;
+  private final AtomicInteger m_aErrorCount = new AtomicInteger (0);
+  private int m_nDetailErrorCount;
+  private int m_nDetailOtherCount;
+  private int m_nSuppressedCount;
+  private final ICommonsList <SMPExchangeImportItemError> m_aItemErrors = new CommonsArrayList <> ();
+  private final ICommonsSet <String> m_aFailedServiceGroupIDs = new CommonsHashSet <> ();
+  private final AtomicInteger m_aCreatedServiceGroups = new AtomicInteger (0);
+  private final AtomicInteger m_aDeletedServiceGroups = new AtomicInteger (0);
+  private final AtomicInteger m_aCreatedServiceInfos = new AtomicInteger (0);
+  private final AtomicInteger m_aCreatedRedirects = new AtomicInteger (0);
+  private final AtomicInteger m_aCreatedBusinessCards = new AtomicInteger (0);
+
+  /**
+   * Constructor
+   *
+   * @param bOverwriteExisting
+   *        <code>true</code> to delete and re-create existing service groups
+   *        and business cards contained in the file, <code>false</code> to
+   *        ignore them.
+   * @param aDefaultOwner
+   *        The owner of the service groups, if the owner contained in the file
+   *        is unknown. May not be <code>null</code>.
+   * @param aLogger
+   *        The logger that receives all messages. May not be <code>null</code>.
+   */
+  public SMPExchangeImporter (final boolean bOverwriteExisting,
+                              @Nonnull final ISMPUser aDefaultOwner,
+                              @Nonnull final InMemoryLogger aLogger)
+  {
+    ValueEnforcer.notNull (aDefaultOwner, "DefaultOwner");
+    ValueEnforcer.notNull (aLogger, "Logger");
+    m_bOverwriteExisting = bOverwriteExisting;
+    m_aDefaultOwner = aDefaultOwner;
+    m_aLogger = aLogger;
+  }
+
+  @Nonnegative
+  public int getBatchSize ()
+  {
+    return m_nBatchSize;
+  }
+
+  @Nonnull
+  public SMPExchangeImporter setBatchSize (@Nonnegative final int nBatchSize)
+  {
+    ValueEnforcer.isGT0 (nBatchSize, "BatchSize");
+    m_nBatchSize = nBatchSize;
+    return this;
+  }
+
+  @Nonnegative
+  public int getThreadCount ()
+  {
+    return m_nThreadCount;
+  }
+
+  @Nonnull
+  public SMPExchangeImporter setThreadCount (@Nonnegative final int nThreadCount)
+  {
+    ValueEnforcer.isGT0 (nThreadCount, "ThreadCount");
+    m_nThreadCount = nThreadCount;
+    return this;
+  }
+
+  public boolean isDryRun ()
+  {
+    return m_bDryRun;
+  }
+
+  /**
+   * @param bDryRun
+   *        <code>true</code> to only check the file without writing anything.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMPExchangeImporter setDryRun (final boolean bDryRun)
+  {
+    m_bDryRun = bDryRun;
+    return this;
+  }
+
+  /**
+   * @param aProgress
+   *        The progress object to be updated during the import. May be
+   *        <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public SMPExchangeImporter setProgress (@Nullable final SMPExchangeImportProgress aProgress)
+  {
+    m_aProgress = aProgress;
+    return this;
+  }
+
+  private void _log (@Nonnull final IErrorLevel aErrorLevel, @Nonnull final String sMsg, @Nullable final Throwable t)
+  {
+    final boolean bIsError = aErrorLevel.isGE (EErrorLevel.ERROR);
+    if (bIsError)
+      m_aErrorCount.incrementAndGet ();
+
+    m_aLock.locked ( () -> {
+      final int nDetailCount = bIsError ? m_nDetailErrorCount++ : m_nDetailOtherCount++;
+      if (nDetailCount < MAX_DETAIL_MESSAGES)
+        m_aLogger.log (aErrorLevel, sMsg, t);
+      else
+        m_nSuppressedCount++;
+    });
+  }
+
+  /**
+   * Log an error and remember it for the result.
+   *
+   * @param sItemType
+   *        The element name of the item, the error belongs to. Use
+   *        {@link CSMPExchange#ELEMENT_SMP_DATA} for errors of the whole file.
+   * @param sItemID
+   *        The ID of the item or <code>null</code> if unknown.
+   * @param sMsg
+   *        The error message.
+   * @param t
+   *        The exception that caused the error. May be <code>null</code>.
+   */
+  private void _error (@Nonnull final String sItemType,
+                       @Nullable final String sItemID,
+                       @Nonnull final String sMsg,
+                       @Nullable final Throwable t)
+  {
+    _log (EErrorLevel.ERROR, sMsg, t);
+    m_aLock.locked ( () -> {
+      if (m_aItemErrors.size () < MAX_DETAIL_MESSAGES)
+        m_aItemErrors.add (new SMPExchangeImportItemError (sItemType, sItemID, sMsg, t));
+    });
+  }
+
+  private void _fileError (@Nonnull final String sMsg, @Nullable final Throwable t)
+  {
+    _error (CSMPExchange.ELEMENT_SMP_DATA, null, sMsg, t);
+  }
+
+  @Nonnull
+  private static ISMPServiceGroup _readServiceGroup (@Nonnull final IMicroElement eServiceGroup,
+                                                     @Nonnull final ISMPUser aDefaultOwner)
+  {
+    return SMPServiceGroupMicroTypeConverter.convertToNative (eServiceGroup, x -> {
+      ISMPUser ret = SMPMetaManager.getUserMgr ().getUserOfID (x);
+      if (ret == null)
+      {
+        // Select the default owner if an unknown user is contained
+        ret = aDefaultOwner;
+      }
+      return ret;
+    });
+  }
+
+  @Nonnull
+  private static SGImportData _readServiceGroupContent (@Nonnull final IMicroElement eServiceGroup,
+                                                        @Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    final SGImportData ret = new SGImportData ();
+    for (final IMicroElement eServiceInfo : eServiceGroup.getAllChildElements (CSMPExchange.ELEMENT_SERVICEINFO))
+      ret.m_aServiceInfos.add (SMPServiceInformationMicroTypeConverter.convertToNative (eServiceInfo,
+                                                                                        x -> aServiceGroup));
+    for (final IMicroElement eRedirect : eServiceGroup.getAllChildElements (CSMPExchange.ELEMENT_REDIRECT))
+      ret.m_aRedirects.add (SMPRedirectMicroTypeConverter.convertToNative (eRedirect, x -> aServiceGroup));
+    return ret;
+  }
+
+  @Nullable
+  private SMPExchangeReader _openReader (@Nonnull final IHasInputStream aISP,
+                                         @Nonnull final String sPhase,
+                                         @Nonnegative final long nTotalBytes)
+  {
+    final InputStream aIS = aISP.getBufferedInputStream ();
+    if (aIS == null)
+    {
+      _fileError ("Failed to open the file to import", null);
+      return null;
+    }
+
+    m_aCIS = new CountingInputStream (aIS);
+    if (m_aProgress != null)
+      m_aProgress.startPhase (sPhase, nTotalBytes);
+    try
+    {
+      return new SMPExchangeReader (m_aCIS);
+    }
+    catch (final XMLStreamException ex)
+    {
+      _fileError ("The provided file is not a valid XML file", ex);
+      return null;
+    }
+  }
+
+  private void _updateProgress (final int nServiceGroupCount, final int nBusinessCardCount)
+  {
+    if (m_aProgress != null)
+    {
+      m_aProgress.setReadBytes (m_aCIS.getBytesRead ());
+      m_aProgress.setServiceGroupCount (nServiceGroupCount);
+      m_aProgress.setBusinessCardCount (nBusinessCardCount);
+    }
+  }
+
+  @Nonnull
+  private ImportPlan _validate (@Nonnull final SMPExchangeReader aReader,
+                                final boolean bHandleBusinessCards) throws XMLStreamException
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+    final ImportPlan ret = new ImportPlan ();
+
+    int nSGIndex = 0;
+    int nBCIndex = 0;
+    IMicroElement eElement;
+    while ((eElement = aReader.readNextElement ()) != null)
+    {
+      if (eElement.hasTagName (CSMPExchange.ELEMENT_SERVICEGROUP))
+      {
+        try
+        {
+          final ISMPServiceGroup aServiceGroup = _readServiceGroup (eElement, m_aDefaultOwner);
+          final String sServiceGroupID = aServiceGroup.getID ();
+          final boolean bIsServiceGroupContained = aServiceGroupMgr.containsSMPServiceGroupWithID (aServiceGroup.getParticpantIdentifier ());
+          if (!bIsServiceGroupContained || m_bOverwriteExisting)
+          {
+            if (ret.m_aServiceGroups.put (sServiceGroupID, Integer.valueOf (nSGIndex)) != null)
+            {
+              _error (CSMPExchange.ELEMENT_SERVICEGROUP,
+                      sServiceGroupID,
+                      "The service group " +
+                                       sServiceGroupID +
+                                       " (index " +
+                                       nSGIndex +
+                                       ") is already contained in the file. Will overwrite the previous definition.",
+                      null);
+            }
+            if (bIsServiceGroupContained)
+              ret.m_nSGOverwrite++;
+
+            // Check all contained service information and redirects
+            final SGImportData aSGInfo = _readServiceGroupContent (eElement, aServiceGroup);
+            _log (EErrorLevel.SUCCESS,
+                  "Will " +
+                                       (bIsServiceGroupContained ? "overwrite" : "import") +
+                                       " service group " +
+                                       sServiceGroupID +
+                                       " with " +
+                                       aSGInfo.m_aServiceInfos.size () +
+                                       " service information and " +
+                                       aSGInfo.m_aRedirects.size () +
+                                       " redirect(s)",
+                  null);
+          }
+          else
+          {
+            ret.m_nSGIgnore++;
+            _log (EErrorLevel.WARN, "Ignoring already contained service group " + sServiceGroupID, null);
+          }
+        }
+        catch (final RuntimeException ex)
+        {
+          _error (CSMPExchange.ELEMENT_SERVICEGROUP,
+                  "index " + nSGIndex,
+                  "Failed to read service group at index " + nSGIndex,
+                  ex);
+        }
+        ++nSGIndex;
+      }
+      else
+        if (eElement.hasTagName (CSMPExchange.ELEMENT_BUSINESSCARD) && bHandleBusinessCards)
+        {
+          // Read business card
+          ISMPBusinessCard aBusinessCard = null;
+          try
+          {
+            final ISMPServiceGroupProvider aSGProvider = x -> {
+              // First look in service groups to import - they don't exist yet
+              if (ret.m_aServiceGroups.containsKey (SMPServiceGroup.createSMPServiceGroupID (x)))
+                return new SMPServiceGroup (m_aDefaultOwner.getID (), x, null);
+              // Lookup in all existing service group
+              return aServiceGroupMgr.getSMPServiceGroupOfID (x);
+            };
+            aBusinessCard = SMPBusinessCardMicroTypeConverter.convertToNative (eElement, aSGProvider);
+          }
+          catch (final RuntimeException ex)
+          {
+            // Service group not found
+            _error (CSMPExchange.ELEMENT_BUSINESSCARD,
+                    eElement.getAttributeValue (SMPBusinessCardMicroTypeConverter.ATTR_SERVICE_GROUP_ID),
+                    "Business card at index " + nBCIndex + " contains an invalid/unknown service group!",
+                    ex);
+          }
+          if (aBusinessCard != null)
+          {
+            final String sBusinessCardID = aBusinessCard.getID ();
+            final boolean bIsBusinessCardContained = aBusinessCardMgr.getSMPBusinessCardOfID (sBusinessCardID) != null;
+            if (!bIsBusinessCardContained || m_bOverwriteExisting)
+            {
+              if (ret.m_aBusinessCards.put (sBusinessCardID, Integer.valueOf (nBCIndex)) != null)
+              {
+                _error (CSMPExchange.ELEMENT_BUSINESSCARD,
+                        sBusinessCardID,
+                        "The business card for " +
+                                         sBusinessCardID +
+                                         " is already contained in the file. Will overwrite the previous definition.",
+                        null);
+              }
+              if (bIsBusinessCardContained)
+                ret.m_nBCOverwrite++;
+              _log (EErrorLevel.SUCCESS,
+                    "Will " +
+                                         (bIsBusinessCardContained ? "overwrite" : "import") +
+                                         " business card for " +
+                                         sBusinessCardID,
+                    null);
+            }
+            else
+            {
+              ret.m_nBCIgnore++;
+              _log (EErrorLevel.WARN, "Ignoring already contained business card " + sBusinessCardID, null);
+            }
+          }
+          ++nBCIndex;
+        }
+      _updateProgress (nSGIndex, nBCIndex);
+    }
+
+    m_aLogger.info ("Found " +
+                    ret.m_aServiceGroups.size () +
+                    " service group(s) to import (" +
+                    ret.m_nSGOverwrite +
+                    " to overwrite) and ignoring " +
+                    ret.m_nSGIgnore +
+                    " existing one(s)");
+    if (bHandleBusinessCards)
+      m_aLogger.info ("Found " +
+                      ret.m_aBusinessCards.size () +
+                      " business card(s) to import (" +
+                      ret.m_nBCOverwrite +
+                      " to overwrite) and ignoring " +
+                      ret.m_nBCIgnore +
+                      " existing one(s)");
+    return ret;
+  }
+
+  private void _writeServiceGroups (@Nonnull final ICommonsOrderedMap <ISMPServiceGroup, SGImportData> aBatch)
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
+
+    // 1. delete all existing service groups to be imported (if overwrite);
+    // this may implicitly delete business cards
+    for (final ISMPServiceGroup aServiceGroup : aBatch.keySet ())
+    {
+      final IParticipantIdentifier aPI = aServiceGroup.getParticpantIdentifier ();
+      if (aServiceGroupMgr.containsSMPServiceGroupWithID (aPI))
+        try
+        {
+          if (aServiceGroupMgr.deleteSMPServiceGroup (aPI).isChanged ())
+          {
+            m_aDeletedServiceGroups.incrementAndGet ();
+            _log (EErrorLevel.SUCCESS, "Successfully deleted service group " + aServiceGroup.getID (), null);
+          }
+          else
+            _error (CSMPExchange.ELEMENT_SERVICEGROUP,
+                    aServiceGroup.getID (),
+                    "Failed to delete service group " + aServiceGroup.getID (),
+                    null);
+        }
+        catch (final SMPServerException ex)
+        {
+          _error (CSMPExchange.ELEMENT_SERVICEGROUP,
+                  aServiceGroup.getID (),
+                  "Failed to delete service group " + aServiceGroup.getID (),
+                  ex);
+        }
+    }
+
+    // 2. create all service groups - the SML registration is done in batches
+    final ICommonsList <ISMPServiceGroup> aNewServiceGroups;
+    aNewServiceGroups = aServiceGroupMgr.createSMPServiceGroups (aBatch.keySet (), (aImportServiceGroup, ex) -> {
+      // E.g. if SML connection failed
+      _error (CSMPExchange.ELEMENT_SERVICEGROUP,
+              aImportServiceGroup.getID (),
+              "Error creating the new service group " + aImportServiceGroup.getID (),
+              ex);
+      m_aLock.locked ( () -> m_aFailedServiceGroupIDs.add (aImportServiceGroup.getID ()));
+    });
+    m_aCreatedServiceGroups.addAndGet (aNewServiceGroups.size ());
+
+    // 3a. create all endpoints at once
+    final ICommonsList <ISMPServiceInformation> aServiceInfos = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aNewServiceGroup : aNewServiceGroups)
+    {
+      _log (EErrorLevel.SUCCESS, "Successfully created service group " + aNewServiceGroup.getID (), null);
+      final SGImportData aImportData = aBatch.get (aNewServiceGroup);
+      if (aImportData != null)
+        aServiceInfos.addAll (aImportData.m_aServiceInfos);
+    }
+    if (aServiceInfos.isNotEmpty ())
+    {
+      final ICommonsSet <ISMPServiceInformation> aMerged = new CommonsHashSet <> (aServiceInfoMgr.mergeSMPServiceInformations (aServiceInfos));
+      m_aCreatedServiceInfos.addAndGet (aMerged.size ());
+      for (final ISMPServiceInformation aServiceInfo : aServiceInfos)
+        if (!aMerged.contains (aServiceInfo))
+          _error (CSMPExchange.ELEMENT_SERVICEINFO,
+                  aServiceInfo.getServiceGroupID (),
+                  "Error creating the new service information for " + aServiceInfo.getServiceGroupID (),
+                  null);
+    }
+
+    // 3b. create all redirects
+    for (final ISMPServiceGroup aNewServiceGroup : aNewServiceGroups)
+    {
+      final SGImportData aImportData = aBatch.get (aNewServiceGroup);
+      if (aImportData != null)
+        for (final ISMPRedirect aImportRedirect : aImportData.m_aRedirects)
+          try
+          {
+            if (aRedirectMgr.createOrUpdateSMPRedirect (aNewServiceGroup,
+                                                        aImportRedirect.getDocumentTypeIdentifier (),
+                                                        aImportRedirect.getTargetHref (),
+                                                        aImportRedirect.getSubjectUniqueIdentifier (),
+                                                        aImportRedirect.getCertificate (),
+                                                        aImportRedirect.getExtensionsAsString ()) != null)
+              m_aCreatedRedirects.incrementAndGet ();
+          }
+          catch (final Exception ex)
+          {
+            _error (CSMPExchange.ELEMENT_REDIRECT,
+                    aNewServiceGroup.getID (),
+                    "Error creating the new redirect for " + aNewServiceGroup.getID (),
+                    ex);
+          }
+    }
+  }
+
+  private void _writeBusinessCards (@Nonnull final ICommonsList <ISMPBusinessCard> aBatch)
+  {
+    final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+
+    // 4. delete all existing business cards to be imported (if overwrite).
+    // Business cards of overwritten service groups are already gone.
+    for (final ISMPBusinessCard aBusinessCard : aBatch)
+    {
+      final ISMPBusinessCard aExisting = aBusinessCardMgr.getSMPBusinessCardOfID (aBusinessCard.getID ());
+      if (aExisting != null)
+        try
+        {
+          if (aBusinessCardMgr.deleteSMPBusinessCard (aExisting).isChanged ())
+            _log (EErrorLevel.SUCCESS, "Successfully deleted business card " + aExisting.getID (), null);
+          else
+            _error (CSMPExchange.ELEMENT_BUSINESSCARD,
+                    aExisting.getID (),
+                    "Failed to delete business card " + aExisting.getID (),
+                    null);
+        }
+        catch (final Exception ex)
+        {
+          _error (CSMPExchange.ELEMENT_BUSINESSCARD,
+                  aExisting.getID (),
+                  "Failed to delete business card " + aExisting.getID (),
+                  ex);
+        }
+    }
+
+    // 5. create all new business cards at once
+    final ICommonsSet <String> aCreatedIDs = new CommonsHashSet <> ();
+    Exception aCause = null;
+    try
+    {
+      for (final ISMPBusinessCard aCreated : aBusinessCardMgr.createOrUpdateSMPBusinessCards (aBatch))
+        aCreatedIDs.add (aCreated.getID ());
+    }
+    catch (final Exception ex)
+    {
+      aCause = ex;
+    }
+    m_aCreatedBusinessCards.addAndGet (aCreatedIDs.size ());
+    for (final ISMPBusinessCard aBusinessCard : aBatch)
+      if (aCreatedIDs.contains (aBusinessCard.getID ()))
+        _log (EErrorLevel.SUCCESS, "Successfully created business card " + aBusinessCard.getID (), null);
+      else
+        _error (CSMPExchange.ELEMENT_BUSINESSCARD,
+                aBusinessCard.getID (),
+                "Failed to create business card " + aBusinessCard.getID (),
+                aCause);
+  }
+
+  private void _write (@Nonnull final SMPExchangeReader aReader, @Nonnull final ImportPlan aPlan) throws XMLStreamException
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (m_nThreadCount,
+                                                                    new BasicThreadFactory.Builder ().setNamingPattern ("smp-import-%d")
+                                                                                                     .setDaemon (true)
+                                                                                                     .build ());
+    // Don't queue more batches than can be processed
+    final int nMaxPending = m_nThreadCount * 2;
+    final Semaphore aPending = new Semaphore (nMaxPending);
+    try
+    {
+      ICommonsOrderedMap <ISMPServiceGroup, SGImportData> aSGBatch = new CommonsLinkedHashMap <> ();
+      ICommonsList <ISMPBusinessCard> aBCBatch = new CommonsArrayList <> ();
+      boolean bServiceGroupsDone = false;
+
+      int nSGIndex = 0;
+      int nBCIndex = 0;
+      IMicroElement eElement;
+      while ((eElement = aReader.readNextElement ()) != null)
+      {
+        if (eElement.hasTagName (CSMPExchange.ELEMENT_SERVICEGROUP))
+        {
+          final ISMPServiceGroup aServiceGroup = _readServiceGroup (eElement, m_aDefaultOwner);
+          // Only the last definition of a service group is imported
+          if (Integer.valueOf (nSGIndex).equals (aPlan.m_aServiceGroups.get (aServiceGroup.getID ())))
+          {
+            aSGBatch.put (aServiceGroup, _readServiceGroupContent (eElement, aServiceGroup));
+            if (aSGBatch.size () >= m_nBatchSize)
+            {
+              final ICommonsOrderedMap <ISMPServiceGroup, SGImportData> aFinalBatch = aSGBatch;
+              _submit (aExecutor, aPending, () -> _writeServiceGroups (aFinalBatch));
+              aSGBatch = new CommonsLinkedHashMap <> ();
+            }
+          }
+          ++nSGIndex;
+        }
+        else
+          if (eElement.hasTagName (CSMPExchange.ELEMENT_BUSINESSCARD) && aPlan.m_aBusinessCards.isNotEmpty ())
+          {
+            if (!bServiceGroupsDone)
+            {
+              // The service groups must exist before the business cards
+              if (aSGBatch.isNotEmpty ())
+              {
+                final ICommonsOrderedMap <ISMPServiceGroup, SGImportData> aFinalBatch = aSGBatch;
+                _submit (aExecutor, aPending, () -> _writeServiceGroups (aFinalBatch));
+                aSGBatch = new CommonsLinkedHashMap <> ();
+              }
+              _waitForPending (aPending, nMaxPending);
+              bServiceGroupsDone = true;
+            }
+
+            final IParticipantIdentifier aPI = SMPMetaManager.getIdentifierFactory ()
+                                                             .parseParticipantIdentifier (eElement.getAttributeValue (SMPBusinessCardMicroTypeConverter.ATTR_SERVICE_GROUP_ID));
+            final String sServiceGroupID = aPI == null ? null : SMPServiceGroup.createSMPServiceGroupID (aPI);
+            if (Integer.valueOf (nBCIndex).equals (aPlan.m_aBusinessCards.get (sServiceGroupID)))
+            {
+              if (m_aLock.locked ( () -> m_aFailedServiceGroupIDs.contains (sServiceGroupID)))
+                _log (EErrorLevel.WARN,
+                      "Ignoring the business card for " + sServiceGroupID + " because the service group is missing",
+                      null);
+              else
+                try
+                {
+                  aBCBatch.add (SMPBusinessCardMicroTypeConverter.convertToNative (eElement, aServiceGroupMgr));
+                  if (aBCBatch.size () >= m_nBatchSize)
+                  {
+                    final ICommonsList <ISMPBusinessCard> aFinalBatch = aBCBatch;
+                    _submit (aExecutor, aPending, () -> _writeBusinessCards (aFinalBatch));
+                    aBCBatch = new CommonsArrayList <> ();
+                  }
+                }
+                catch (final RuntimeException ex)
+                {
+                  _error (CSMPExchange.ELEMENT_BUSINESSCARD,
+                          sServiceGroupID,
+                          "Failed to read business card for " + sServiceGroupID,
+                          ex);
+                }
+            }
+            ++nBCIndex;
+          }
+        _updateProgress (nSGIndex, nBCIndex);
+      }
+
+      if (aSGBatch.isNotEmpty ())
+      {
+        final ICommonsOrderedMap <ISMPServiceGroup, SGImportData> aFinalBatch = aSGBatch;
+        _submit (aExecutor, aPending, () -> _writeServiceGroups (aFinalBatch));
+      }
+      if (aBCBatch.isNotEmpty ())
+      {
+        final ICommonsList <ISMPBusinessCard> aFinalBatch = aBCBatch;
+        _submit (aExecutor, aPending, () -> _writeBusinessCards (aFinalBatch));
+      }
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+    }
+  }
+
+  private void _submit (@Nonnull final ExecutorService aExecutor,
+                        @Nonnull final Semaphore aPending,
+                        @Nonnull final Runnable aTask)
+  {
+    aPending.acquireUninterruptibly ();
+    aExecutor.submit ( () -> {
+      // The managers of the SQL backend need a request scope
+      try (final Scoped aScoped = new Scoped ())
+      {
+        aTask.run ();
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Error writing import batch", ex);
+        _fileError ("Internal error writing a batch of the import", ex);
+      }
+      finally
+      {
+        aPending.release ();
+      }
+    });
+  }
+
+  private static void _waitForPending (@Nonnull final Semaphore aPending, @Nonnegative final int nMaxPending)
+  {
+    // All permits are available again, when all submitted tasks are done
+    aPending.acquireUninterruptibly (nMaxPending);
+    aPending.release (nMaxPending);
+  }
+
+  private void _resetStatus ()
+  {
+    m_aErrorCount.set (0);
+    m_aLock.locked ( () -> {
+      m_nDetailErrorCount = 0;
+      m_nDetailOtherCount = 0;
+      m_nSuppressedCount = 0;
+      m_aItemErrors.clear ();
+      m_aFailedServiceGroupIDs.clear ();
+    });
+    m_aCreatedServiceGroups.set (0);
+    m_aDeletedServiceGroups.set (0);
+    m_aCreatedServiceInfos.set (0);
+    m_aCreatedRedirects.set (0);
+    m_aCreatedBusinessCards.set (0);
+  }
+
+  /**
+   * Import the content of the passed exchange file. Only one import may run
+   * per instance at a time.
+   *
+   * @param aISP
+   *        The input stream provider of the file to import. It must be
+   *        readable multiple times. May not be <code>null</code>.
+   * @param nTotalBytes
+   *        The size of the file in bytes. Only used for the progress. Maybe 0
+   *        if unknown.
+   * @return The result with all counts and the errors per item. Never
+   *         <code>null</code>. The details are contained in the logger.
+   */
+  @Nonnull
+  public SMPExchangeImportResult importXMLVer10 (@Nonnull final IHasInputStream aISP,
+                                                 @Nonnegative final long nTotalBytes)
+  {
+    ValueEnforcer.notNull (aISP, "InputStreamProvider");
+    ValueEnforcer.isTrue (aISP.isReadMultiple (), "InputStreamProvider must be readable multiple times");
+
+    _resetStatus ();
+    final boolean bHandleBusinessCards = SMPMetaManager.getSettings ().isDirectoryIntegrationEnabled ();
+    ImportPlan aPlan = null;
+    boolean bWritten = false;
+    try
+    {
+      // First pass: check only
+      try (final SMPExchangeReader aReader = _openReader (aISP, PHASE_VALIDATE, nTotalBytes))
+      {
+        if (aReader != null)
+        {
+          if (CSMPExchange.VERSION_10.equals (aReader.getVersion ()))
+            aPlan = _validate (aReader, bHandleBusinessCards);
+          else
+            _fileError ("The provided file contains the unsupported version '" + aReader.getVersion () + "'.", null);
+        }
+      }
+      catch (final XMLStreamException ex)
+      {
+        _fileError ("The provided file is not a valid XML file", ex);
+        aPlan = null;
+      }
+
+      if (aPlan != null)
+      {
+        if (aPlan.m_aServiceGroups.isEmpty () && aPlan.m_aBusinessCards.isEmpty ())
+        {
+          if (bHandleBusinessCards)
+            m_aLogger.warn ("Found neither a service group nor a business card to import.");
+          else
+            m_aLogger.warn ("Found no service group to import.");
+        }
+        else
+          if (m_aErrorCount.get () > 0)
+          {
+            m_aLogger.error ("Nothing will be imported because of the previous errors!");
+          }
+          else
+            if (m_bDryRun)
+            {
+              m_aLogger.info ("Dry run - nothing is imported.");
+            }
+            else
+            {
+              // Second pass: write in parallel batches
+              m_aLogger.info ("Import is performed!");
+              bWritten = true;
+              try (final SMPExchangeReader aReader = _openReader (aISP, PHASE_IMPORT, nTotalBytes))
+              {
+                if (aReader != null)
+                  _write (aReader, aPlan);
+              }
+              catch (final XMLStreamException ex)
+              {
+                _fileError ("The provided file is not a valid XML file", ex);
+              }
+
+              m_aLogger.log (m_aErrorCount.get () > 0 ? EErrorLevel.WARN : EErrorLevel.SUCCESS,
+                             "Imported " +
+                                 m_aCreatedServiceGroups.get () +
+                                 " service group(s) (" +
+                                 m_aDeletedServiceGroups.get () +
+                                 " overwritten), " +
+                                 m_aCreatedServiceInfos.get () +
+                                 " service information, " +
+                                 m_aCreatedRedirects.get () +
+                                 " redirect(s) and " +
+                                 m_aCreatedBusinessCards.get () +
+                                 " business card(s)");
+            }
+      }
+    }
+    finally
+    {
+      if (m_nSuppressedCount > 0)
+        m_aLogger.info (m_nSuppressedCount + " further detail message(s) were suppressed");
+      if (m_aProgress != null)
+        m_aProgress.startPhase (null, 0);
+    }
+
+    final ImportPlan aFinalPlan = aPlan;
+    final boolean bFinalWritten = bWritten;
+    return m_aLock.locked ( () -> new SMPExchangeImportResult (m_bDryRun,
+                                                               bFinalWritten,
+                                                               aFinalPlan == null ? 0 : aFinalPlan.m_aServiceGroups.size (),
+                                                               aFinalPlan == null ? 0 : aFinalPlan.m_nSGOverwrite,
+                                                               aFinalPlan == null ? 0 : aFinalPlan.m_nSGIgnore,
+                                                               aFinalPlan == null ? 0 : aFinalPlan.m_aBusinessCards.size (),
+                                                               aFinalPlan == null ? 0 : aFinalPlan.m_nBCOverwrite,
+                                                               aFinalPlan == null ? 0 : aFinalPlan.m_nBCIgnore,
+                                                               m_aCreatedServiceGroups.get (),
+                                                               m_aDeletedServiceGroups.get (),
+                                                               m_aCreatedServiceInfos.get (),
+                                                               m_aCreatedRedirects.get (),
+                                                               m_aCreatedBusinessCards.get (),
+                                                               m_aErrorCount.get (),
+                                                               m_aItemErrors));
+  }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroElement;
+
+/**
+ * Streaming reader for the SMP exchange format (see {@link CSMPExchange}). In
+ * contrast to reading the whole document into a MicroDOM, only the currently
+ * read child element of the root element (e.g. a single service group incl.
+ * all service information and redirects) is held in memory.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@NotThreadSafe
+public final class SMPExchangeReader implements AutoCloseable
+{
+  private final InputStream m_aIS;
+  private final XMLStreamReader m_aReader;
+  private final String m_sRootElementName;
+  private final String m_sVersion;
+  private boolean m_bEndReached = false;
+
+  @Nonnull
+  private static XMLInputFactory _createXMLInputFactory ()
+  {
+    final XMLInputFactory ret = XMLInputFactory.newInstance ();
+    // No DTDs and no external entities
+    ret.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    ret.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    ret.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    ret.setProperty (XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    return ret;
+  }
+
+  /**
+   * Constructor. Reads up to and including the root element.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is
+   *        closed when this reader is closed.
+   * @throws XMLStreamException
+   *         If the input is not well-formed XML or has no root element. In
+   *         this case the input stream is already closed.
+   */
+  public SMPExchangeReader (@Nonnull @WillClose final InputStream aIS) throws XMLStreamException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    m_aIS = aIS;
+    try
+    {
+      m_aReader = _createXMLInputFactory ().createXMLStreamReader (aIS);
+      m_aReader.nextTag ();
+    }
+    catch (final XMLStreamException | RuntimeException ex)
+    {
+      StreamHelper.close (aIS);
+      throw ex;
+    }
+    m_sRootElementName = m_aReader.getLocalName ();
+    m_sVersion = m_aReader.getAttributeValue (null, CSMPExchange.ATTR_VERSION);
+  }
+
+  /**
+   * @return The local name of the root element. Never <code>null</code>.
+   */
+  @Nonnull
+  public String getRootElementName ()
+  {
+    return m_sRootElementName;
+  }
+
+  /**
+   * @return The value of the {@link CSMPExchange#ATTR_VERSION} attribute of the
+   *         root element. May be <code>null</code>.
+   */
+  @Nullable
+  public String getVersion ()
+  {
+    return m_sVersion;
+  }
+
+  /**
+   * Read the next child element of the root element including all of its
+   * descendants. Text and comments directly underneath the root element are
+   * skipped.
+   *
+   * @return <code>null</code> if the end of the root element was reached.
+   * @throws XMLStreamException
+   *         If the input is not well-formed XML
+   */
+  @Nullable
+  public IMicroElement readNextElement () throws XMLStreamException
+  {
+    while (!m_bEndReached && m_aReader.hasNext ())
+    {
+      final int nEventType = m_aReader.next ();
+      if (nEventType == XMLStreamConstants.START_ELEMENT)
+        return _readElement ();
+      if (nEventType == XMLStreamConstants.END_ELEMENT)
+      {
+        // End of the root element
+        m_bEndReached = true;
+      }
+    }
+    return null;
+  }
+
+  @Nonnull
+  private IMicroElement _createElement ()
+  {
+    final String sNamespaceURI = m_aReader.getNamespaceURI ();
+    final IMicroElement ret = StringHelper.hasText (sNamespaceURI) ? new MicroElement (sNamespaceURI,
+                                                                                       m_aReader.getLocalName ())
+                                                                   : new MicroElement (m_aReader.getLocalName ());
+    for (int i = 0; i < m_aReader.getAttributeCount (); ++i)
+    {
+      final String sAttrNamespaceURI = m_aReader.getAttributeNamespace (i);
+      if (StringHelper.hasText (sAttrNamespaceURI))
+        ret.setAttribute (sAttrNamespaceURI, m_aReader.getAttributeLocalName (i), m_aReader.getAttributeValue (i));
+      else
+        ret.setAttribute (m_aReader.getAttributeLocalName (i), m_aReader.getAttributeValue (i));
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private IMicroElement _readElement () throws XMLStreamException
+  {
+    final IMicroElement ret = _createElement ();
+    final ICommonsList <IMicroElement> aStack = new CommonsArrayList <> ();
+    aStack.add (ret);
+    while (true)
+    {
+      final int nEventType = m_aReader.next ();
+      switch (nEventType)
+      {
+        case XMLStreamConstants.START_ELEMENT:
+        {
+          final IMicroElement aChild = aStack.getLast ().appendChild (_createElement ());
+          aStack.add (aChild);
+          break;
+        }
+        case XMLStreamConstants.END_ELEMENT:
+          aStack.removeLast ();
+          if (aStack.isEmpty ())
+            return ret;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+          aStack.getLast ().appendText (m_aReader.getText ());
+          break;
+        default:
+          // Ignore comments, processing instructions etc.
+          break;
+      }
+    }
+  }
+
+  public void close () throws XMLStreamException
+  {
+    try
+    {
+      m_aReader.close ();
+    }
+    finally
+    {
+      // Closing the reader does not close the underlying stream
+      StreamHelper.close (m_aIS);
+    }
+  }
+}
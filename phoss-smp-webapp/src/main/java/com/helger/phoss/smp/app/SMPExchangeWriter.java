@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.serialize.MicroWriter;
+import com.helger.xml.serialize.write.EXMLSerializeXMLDeclaration;
+import com.helger.xml.serialize.write.IXMLWriterSettings;
+import com.helger.xml.serialize.write.XMLWriterSettings;
+
+/**
+ * Streaming writer for the SMP exchange format (see {@link CSMPExchange}). The
+ * root element is written upon construction and closed in {@link #close()};
+ * each child element is serialized and written separately, so only the
+ * current element needs to be held in memory. This is the counterpart of
+ * {@link SMPExchangeReader}.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+@NotThreadSafe
+public final class SMPExchangeWriter implements AutoCloseable
+{
+  private static final IXMLWriterSettings XWS = new XMLWriterSettings ().setSerializeXMLDeclaration (EXMLSerializeXMLDeclaration.IGNORE);
+
+  private final Writer m_aWriter;
+  private int m_nElementCount = 0;
+
+  /**
+   * Constructor. Writes the XML declaration and the start of the root element
+   * in version {@link CSMPExchange#VERSION_10}.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is
+   *        closed when this writer is closed.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public SMPExchangeWriter (@Nonnull @WillCloseWhenClosed final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    m_aWriter = StreamHelper.getBuffered (StreamHelper.createWriter (aOS, StandardCharsets.UTF_8));
+    m_aWriter.write ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" +
+                     CSMPExchange.ELEMENT_SMP_DATA +
+                     " " +
+                     CSMPExchange.ATTR_VERSION +
+                     "=\"" +
+                     CSMPExchange.VERSION_10 +
+                     "\">\n");
+  }
+
+  /**
+   * Write a single child element of the root element.
+   *
+   * @param aElement
+   *        The element to write. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public void writeElement (@Nonnull final IMicroElement aElement) throws IOException
+  {
+    ValueEnforcer.notNull (aElement, "Element");
+    m_aWriter.write (MicroWriter.getNodeAsString (aElement, XWS));
+    m_nElementCount++;
+  }
+
+  /**
+   * @return The number of child elements written so far. Always &ge; 0.
+   */
+  public int getElementCount ()
+  {
+    return m_nElementCount;
+  }
+
+  /**
+   * Write the end of the root element and close the underlying stream.
+   *
+   * @throws IOException
+   *         In case of a write error
+   */
+  public void close () throws IOException
+  {
+    try
+    {
+      m_aWriter.write ("</" + CSMPExchange.ELEMENT_SMP_DATA + ">\n");
+    }
+    finally
+    {
+      m_aWriter.close ();
+    }
+  }
+}
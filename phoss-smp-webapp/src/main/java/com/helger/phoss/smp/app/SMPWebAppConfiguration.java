@@ -16,6 +16,7 @@
  */
 package com.helger.phoss.smp.app;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -210,4 +211,105 @@ public final class SMPWebAppConfiguration extends AbstractGlobalSingleton
   {
     return s_aConfigFile.getAsBoolean ("webapp.public.login.enabled", true);
   }
+
+  /**
+   * @return <code>true</code> if Directory notifications should be sent
+   *         asynchronously via the {@link PDNotificationQueue},
+   *         <code>false</code> to send them synchronously. Default is
+   *         <code>true</code>.
+   * @since 5.2.0
+   */
+  public static boolean isDirectoryQueueEnabled ()
+  {
+    return s_aConfigFile.getAsBoolean ("webapp.directory.queue.enabled", true);
+  }
+
+  /**
+   * @return The time in milliseconds to wait for further changes of the same
+   *         participant before a Directory notification is sent. Default is
+   *         2000.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static long getDirectoryQueueDebounceMS ()
+  {
+    return Math.max (0, s_aConfigFile.getAsLong ("webapp.directory.queue.debounce.ms", 2000));
+  }
+
+  /**
+   * @return The maximum number of Directory notifications sent in parallel.
+   *         Default is 2.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getDirectoryQueueThreadCount ()
+  {
+    return Math.max (1, s_aConfigFile.getAsInt ("webapp.directory.queue.threads", 2));
+  }
+
+  /**
+   * @return The initial time in milliseconds to wait before a failed Directory
+   *         notification is retried. It is doubled with each failed attempt.
+   *         Default is 10000.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static long getDirectoryQueueRetryMS ()
+  {
+    return Math.max (1, s_aConfigFile.getAsLong ("webapp.directory.queue.retry.ms", 10000));
+  }
+
+  /**
+   * @return The maximum number of attempts to send a Directory notification.
+   *         Default is 10.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getDirectoryQueueMaxAttempts ()
+  {
+    return Math.max (1, s_aConfigFile.getAsInt ("webapp.directory.queue.maxattempts", 10));
+  }
+
+  /**
+   * @return The number of business cards pushed in parallel by the
+   *         {@link PDResyncJob}. Default is 4.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getDirectoryResyncThreadCount ()
+  {
+    return Math.max (1, s_aConfigFile.getAsInt ("webapp.directory.resync.threads", 4));
+  }
+
+  /**
+   * @return The maximum number of business cards pushed per second by the
+   *         {@link PDResyncJob}. Values &le; 0 mean unlimited. Default is 10.
+   * @since 5.2.0
+   */
+  public static int getDirectoryResyncRatePerSecond ()
+  {
+    return s_aConfigFile.getAsInt ("webapp.directory.resync.rate", 10);
+  }
+
+  /**
+   * @return The number of batches written in parallel by the
+   *         {@link SMPExchangeImporter}. Default is 4.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getImportThreadCount ()
+  {
+    return Math.max (1, s_aConfigFile.getAsInt ("webapp.import.threads", SMPExchangeImporter.DEFAULT_THREAD_COUNT));
+  }
+
+  /**
+   * @return The number of service groups or business cards written per batch
+   *         by the {@link SMPExchangeImporter}. Default is 100.
+   * @since 5.2.0
+   */
+  @Nonnegative
+  public static int getImportBatchSize ()
+  {
+    return Math.max (1, s_aConfigFile.getAsInt ("webapp.import.batchsize", SMPExchangeImporter.DEFAULT_BATCH_SIZE));
+  }
 }
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.mime.CMimeType;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.app.SMPWebAppConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchResult;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Search the business cards using the in-memory search index. The result is
+ * returned as JSON.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class APIExecutorBusinessCardSearchGet implements IAPIExecutor
+{
+  public static final String PARAM_QUERY = "q";
+  public static final String PARAM_COUNTRY = "country";
+  public static final String PARAM_OFFSET = "offset";
+  public static final String PARAM_COUNT = "count";
+  public static final int DEFAULT_COUNT = 20;
+  public static final int MAX_COUNT = 1_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (APIExecutorBusinessCardSearchGet.class);
+
+  @Nonnull
+  private static IJsonObject _getAsJson (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    final IJsonArray aEntities = new JsonArray ();
+    for (final SMPBusinessCardEntity aEntity : aBusinessCard.getAllEntities ())
+    {
+      final IJsonArray aNames = new JsonArray ();
+      for (final SMPBusinessCardName aName : aEntity.names ())
+        aNames.add (new JsonObject ().add ("name", aName.getName ())
+                                     .addIfNotNull ("language", aName.getLanguageCode ()));
+      final IJsonArray aIdentifiers = new JsonArray ();
+      for (final SMPBusinessCardIdentifier aIdentifier : aEntity.identifiers ())
+        aIdentifiers.add (new JsonObject ().add ("scheme", aIdentifier.getScheme ())
+                                           .add ("value", aIdentifier.getValue ()));
+      aEntities.add (new JsonObject ().add ("names", aNames)
+                                      .addIfNotNull ("countrycode", aEntity.getCountryCode ())
+                                      .addIfNotNull ("geoinfo", aEntity.getGeographicalInformation ())
+                                      .add ("identifiers", aIdentifiers));
+    }
+    return new JsonObject ().add ("participantid",
+                                  aBusinessCard.getServiceGroup ().getParticpantIdentifier ().getURIEncoded ())
+                            .add ("entities", aEntities);
+  }
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final BasicAuthClientCredentials aBasicAuth = Rest2RequestHelper.getAuth (aRequestScope.headers ());
+    SMPMetaManager.getUserMgr ().validateUserCredentials (aBasicAuth);
+
+    final SMPBusinessCardSearchIndex aSearchIndex = SMPMetaManager.getBusinessCardSearchIndex ();
+    if (aSearchIndex == null || !SMPMetaManager.getSettings ().isDirectoryIntegrationEnabled ())
+    {
+      // PD integration is disabled
+      LOGGER.warn ("The " +
+                   SMPWebAppConfiguration.getDirectoryName () +
+                   " integration is disabled. searchBusinessCards will not be executed.");
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_FOUND);
+    }
+    else
+    {
+      final String sQuery = aRequestScope.params ().getAsString (PARAM_QUERY);
+      final String sCountryCode = aRequestScope.params ().getAsString (PARAM_COUNTRY);
+      final int nOffset = Math.max (0, aRequestScope.params ().getAsInt (PARAM_OFFSET, 0));
+      final int nCount = Math.min (Math.max (1, aRequestScope.params ().getAsInt (PARAM_COUNT, DEFAULT_COUNT)),
+                                   MAX_COUNT);
+
+      final SMPBusinessCardSearchResult aResult = aSearchIndex.search (sQuery, sCountryCode, nOffset, nCount);
+      final IJsonArray aBusinessCards = new JsonArray ();
+      for (final ISMPBusinessCard aBusinessCard : aResult.getAllBusinessCards ())
+        aBusinessCards.add (_getAsJson (aBusinessCard));
+
+      final IJsonObject ret = new JsonObject ().add ("total", aResult.getTotalCount ())
+                                               .add ("offset", aResult.getOffset ())
+                                               .add ("businesscards", aBusinessCards);
+      aUnifiedResponse.disableCaching ();
+      aUnifiedResponse.setContentAndCharset (ret.getAsJsonString (), StandardCharsets.UTF_8)
+                      .setMimeType (CMimeType.APPLICATION_JSON);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.PDTWebDateHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.changelog.ISMPChangeLogEntry;
+import com.helger.phoss.smp.domain.changelog.SMPChangeLogManager;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Get the change feed as JSON: all items changed after the change sequence
+ * number provided in the request parameter "{@value #PARAM_SINCE}", ordered by
+ * sequence. At most "{@value #PARAM_MAX}" entries are returned, so the feed can
+ * be read page by page by passing the last returned sequence number in the
+ * next request.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class APIExecutorChangesGet implements IAPIExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (APIExecutorChangesGet.class);
+
+  public static final String PARAM_SINCE = "since";
+  public static final String PARAM_MAX = "max";
+  public static final int DEFAULT_MAX = 1000;
+  public static final int MAX_MAX = 10_000;
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final SMPChangeLogManager aChangeLogMgr = SMPMetaManager.getChangeLogMgr ();
+    if (aChangeLogMgr == null)
+    {
+      LOGGER.warn ("The change log is disabled. getChanges will not be executed.");
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    final BasicAuthClientCredentials aBasicAuth = Rest2RequestHelper.getAuth (aRequestScope.headers ());
+    SMPMetaManager.getUserMgr ().validateUserCredentials (aBasicAuth);
+
+    final long nSince = aRequestScope.params ().getAsLong (PARAM_SINCE, 0);
+    final int nMax = aRequestScope.params ().getAsInt (PARAM_MAX, DEFAULT_MAX);
+    if (nSince < 0 || nMax <= 0 || nMax > MAX_MAX)
+    {
+      LOGGER.warn ("Invalid change feed parameters " + PARAM_SINCE + "=" + nSince + " and " + PARAM_MAX + "=" + nMax);
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    // The caller is up to date, once "next" equals "lastsequence"
+    final long nLastSequence = aChangeLogMgr.getLastSequence ();
+    final ICommonsList <ISMPChangeLogEntry> aChanges = aChangeLogMgr.getAllChangesSince (nSince, nMax);
+
+    final IJsonArray aJsonChanges = new JsonArray ();
+    for (final ISMPChangeLogEntry aChange : aChanges)
+      aJsonChanges.add (new JsonObject ().add ("sequence", aChange.getSequence ())
+                                         .add ("type", aChange.getItemType ().getID ())
+                                         .add ("servicegroupid", aChange.getServiceGroupID ())
+                                         .addIfNotNull ("doctypeid", aChange.getDocumentTypeID ())
+                                         .add ("deleted", aChange.isDeleted ())
+                                         .add ("changed",
+                                               PDTWebDateHelper.getAsStringXSD (PDTFactory.createZonedDateTime (aChange.getChangeMS ()))));
+
+    final IJsonObject ret = new JsonObject ().add ("since", nSince)
+                                             .add ("lastsequence", nLastSequence)
+                                             .add ("next",
+                                                   aChanges.isEmpty () ? nSince : aChanges.getLast ().getSequence ())
+                                             .add ("changes", aJsonChanges);
+
+    aUnifiedResponse.disableCaching ();
+    aUnifiedResponse.setContentAndCharset (ret.getAsJsonString (), StandardCharsets.UTF_8)
+                    .setMimeType (CMimeType.APPLICATION_JSON);
+  }
+}
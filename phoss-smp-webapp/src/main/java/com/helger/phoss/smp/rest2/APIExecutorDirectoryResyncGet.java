@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.mime.CMimeType;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.phoss.smp.app.PDResyncJob;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Get the status of the current or last Directory resync job as JSON.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class APIExecutorDirectoryResyncGet implements IAPIExecutor
+{
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    final BasicAuthClientCredentials aBasicAuth = Rest2RequestHelper.getAuth (aRequestScope.headers ());
+    SMPMetaManager.getUserMgr ().validateUserCredentials (aBasicAuth);
+
+    final PDResyncJob aJob = PDResyncJob.getInstance ();
+    aUnifiedResponse.disableCaching ();
+    aUnifiedResponse.setContentAndCharset (aJob.getStatusAsJson ().getAsJsonString (), StandardCharsets.UTF_8)
+                    .setMimeType (CMimeType.APPLICATION_JSON);
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.file.FileOperations;
+import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.commons.log.InMemoryLogger;
+import com.helger.commons.mime.CMimeType;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.app.SMPExchangeImportItemError;
+import com.helger.phoss.smp.app.SMPExchangeImportResult;
+import com.helger.phoss.smp.app.SMPExchangeImporter;
+import com.helger.phoss.smp.app.SMPWebAppConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.user.ISMPUser;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Import service groups, service information, redirects and business cards in
+ * the SMP exchange format version 1.0, as created by the export. The body may
+ * be GZip compressed, if the header "Content-Encoding: gzip" is present. The
+ * authenticated user is the owner of all service groups with an unknown
+ * owner. Existing elements are only overwritten if the request parameter
+ * "{@value #PARAM_OVERWRITE}" is <code>true</code> and nothing is written if
+ * the request parameter "{@value #PARAM_DRY_RUN}" is <code>true</code>.
+ * Responds with HTTP 400 if nothing was imported because of errors.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class APIExecutorImportPost implements IAPIExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (APIExecutorImportPost.class);
+
+  public static final String PARAM_OVERWRITE = "overwrite";
+  public static final String PARAM_DRY_RUN = "dryrun";
+
+  @Nonnull
+  private static IJsonObject _getResultAsJson (@Nonnull final SMPExchangeImportResult aResult)
+  {
+    final IJsonObject ret = new JsonObject ();
+    ret.add ("dryrun", aResult.isDryRun ());
+    ret.add ("written", aResult.isWritten ());
+    ret.add ("success", aResult.isSuccess ());
+    ret.add ("servicegroupstoimport", aResult.getServiceGroupsToImport ());
+    ret.add ("servicegroupstooverwrite", aResult.getServiceGroupsToOverwrite ());
+    ret.add ("servicegroupsignored", aResult.getServiceGroupsIgnored ());
+    ret.add ("businesscardstoimport", aResult.getBusinessCardsToImport ());
+    ret.add ("businesscardstooverwrite", aResult.getBusinessCardsToOverwrite ());
+    ret.add ("businesscardsignored", aResult.getBusinessCardsIgnored ());
+    ret.add ("createdservicegroups", aResult.getCreatedServiceGroups ());
+    ret.add ("deletedservicegroups", aResult.getDeletedServiceGroups ());
+    ret.add ("createdserviceinfos", aResult.getCreatedServiceInfos ());
+    ret.add ("createdredirects", aResult.getCreatedRedirects ());
+    ret.add ("createdbusinesscards", aResult.getCreatedBusinessCards ());
+    ret.add ("errorcount", aResult.getErrorCount ());
+    final IJsonArray aErrors = new JsonArray ();
+    for (final SMPExchangeImportItemError aError : aResult.getAllItemErrors ())
+    {
+      final IJsonObject aErrorObj = new JsonObject ();
+      aErrorObj.add ("type", aError.getItemType ());
+      if (aError.getItemID () != null)
+        aErrorObj.add ("id", aError.getItemID ());
+      aErrorObj.add ("message", aError.getMessage ());
+      if (aError.getCause () != null)
+        aErrorObj.add ("cause", aError.getCause ());
+      aErrors.add (aErrorObj);
+    }
+    ret.add ("errors", aErrors);
+    return ret;
+  }
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    // Is the writable API disabled?
+    if (SMPMetaManager.getSettings ().isRESTWritableAPIDisabled ())
+    {
+      LOGGER.warn ("The writable REST API is disabled. importServiceGroups will not be executed.");
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_FOUND);
+    }
+    else
+    {
+      final BasicAuthClientCredentials aBasicAuth = Rest2RequestHelper.getAuth (aRequestScope.headers ());
+      final ISMPUser aDefaultOwner = SMPMetaManager.getUserMgr ().validateUserCredentials (aBasicAuth);
+
+      final boolean bOverwrite = aRequestScope.params ().getAsBoolean (PARAM_OVERWRITE, false);
+      final boolean bDryRun = aRequestScope.params ().getAsBoolean (PARAM_DRY_RUN, false);
+      final boolean bGZip = "gzip".equalsIgnoreCase (aRequestScope.headers ()
+                                                                  .getFirstHeaderValue (CHttpHeader.CONTENT_ENCODING));
+
+      // The importer reads the file twice, so the body is buffered on disk
+      final File aTempFile = File.createTempFile ("smp-import", ".xml");
+      try
+      {
+        try (final InputStream aBodyIS = aRequestScope.getRequest ().getInputStream ();
+            final InputStream aIS = bGZip ? new GZIPInputStream (aBodyIS) : aBodyIS)
+        {
+          Files.copy (aIS, aTempFile.toPath (), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (LOGGER.isInfoEnabled ())
+          LOGGER.info ("Importing " +
+                       aTempFile.length () +
+                       " bytes" +
+                       (bOverwrite ? " with overwrite" : "") +
+                       (bDryRun ? " as a dry run" : ""));
+
+        final SMPExchangeImporter aImporter = new SMPExchangeImporter (bOverwrite,
+                                                                       aDefaultOwner,
+                                                                       new InMemoryLogger ());
+        aImporter.setBatchSize (SMPWebAppConfiguration.getImportBatchSize ())
+                 .setThreadCount (SMPWebAppConfiguration.getImportThreadCount ())
+                 .setDryRun (bDryRun);
+        final SMPExchangeImportResult aResult = aImporter.importXMLVer10 (new FileSystemResource (aTempFile),
+                                                                          aTempFile.length ());
+
+        if (LOGGER.isInfoEnabled ())
+          LOGGER.info ("Finished import with " + aResult.getErrorCount () + " error(s)");
+
+        if (!aResult.isSuccess () && !aResult.isWritten ())
+        {
+          // Nothing was imported because of errors
+          aUnifiedResponse.setStatus (HttpServletResponse.SC_BAD_REQUEST).setAllowContentOnStatusCode (true);
+        }
+        aUnifiedResponse.setContentAndCharset (_getResultAsJson (aResult).getAsJsonString (), StandardCharsets.UTF_8)
+                        .setMimeType (CMimeType.APPLICATION_JSON);
+      }
+      finally
+      {
+        FileOperations.deleteFileIfExisting (aTempFile);
+      }
+    }
+  }
+}
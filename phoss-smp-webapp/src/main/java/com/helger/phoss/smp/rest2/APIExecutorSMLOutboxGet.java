@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.PDTWebDateHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.smlhook.SMLOutbox;
+import com.helger.phoss.smp.smlhook.SMLOutboxStatus;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Get the SML outbox status of a single service group as JSON. The status is
+ * either "pending", "failed" or "delivered", where the latter is also used if
+ * the outbox never contained the service group.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class APIExecutorSMLOutboxGet implements IAPIExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (APIExecutorSMLOutboxGet.class);
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    if (!SMPServerConfiguration.isSMLOutboxEnabled ())
+    {
+      LOGGER.warn ("The SML outbox is disabled. getSMLOutboxStatus will not be executed.");
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    final BasicAuthClientCredentials aBasicAuth = Rest2RequestHelper.getAuth (aRequestScope.headers ());
+    SMPMetaManager.getUserMgr ().validateUserCredentials (aBasicAuth);
+
+    final String sServiceGroupID = aPathVariables.get (Rest2Filter.PARAM_SERVICE_GROUP_ID);
+    final IParticipantIdentifier aParticipantID = SMPMetaManager.getIdentifierFactory ()
+                                                                .parseParticipantIdentifier (sServiceGroupID);
+    if (aParticipantID == null)
+    {
+      LOGGER.warn ("Failed to parse service group '" + sServiceGroupID + "'");
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    final IJsonObject ret = new JsonObject ().add ("participantid", aParticipantID.getURIEncoded ());
+    final SMLOutboxStatus aStatus = SMLOutbox.getInstance ().getStatus (aParticipantID);
+    if (aStatus == null)
+      ret.add ("status", "delivered");
+    else
+      ret.add ("status", aStatus.isFailed () ? "failed" : "pending")
+         .add ("operation", aStatus.getOperation ().getID ())
+         .add ("attempts", aStatus.getAttempts ())
+         .add ("enqueued", PDTWebDateHelper.getAsStringXSD (PDTFactory.createZonedDateTime (aStatus.getEnqueuedMS ())))
+         .addIfNotNull ("lasterror", aStatus.getLastError ());
+
+    aUnifiedResponse.disableCaching ();
+    aUnifiedResponse.setContentAndCharset (ret.getAsJsonString (), StandardCharsets.UTF_8)
+                    .setMimeType (CMimeType.APPLICATION_JSON);
+  }
+}
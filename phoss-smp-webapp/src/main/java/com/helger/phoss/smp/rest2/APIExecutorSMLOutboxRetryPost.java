@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.mime.CMimeType;
+import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.smlhook.SMLOutbox;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.photon.api.IAPIExecutor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Restart the delivery of all failed SML outbox entries.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class APIExecutorSMLOutboxRetryPost implements IAPIExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (APIExecutorSMLOutboxRetryPost.class);
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    // Is the writable API disabled?
+    if (SMPMetaManager.getSettings ().isRESTWritableAPIDisabled ())
+    {
+      LOGGER.warn ("The writable REST API is disabled. retrySMLOutbox will not be executed.");
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_FOUND);
+    }
+    else
+      if (!SMPServerConfiguration.isSMLOutboxEnabled ())
+      {
+        LOGGER.warn ("The SML outbox is disabled. retrySMLOutbox will not be executed.");
+        aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_FOUND);
+      }
+      else
+      {
+        final BasicAuthClientCredentials aBasicAuth = Rest2RequestHelper.getAuth (aRequestScope.headers ());
+        SMPMetaManager.getUserMgr ().validateUserCredentials (aBasicAuth);
+
+        final SMLOutbox aOutbox = SMLOutbox.getInstance ();
+        final IJsonObject ret = new JsonObject ().add ("restarted", aOutbox.retryAllFailed ())
+                                                 .add ("pending", aOutbox.getPendingCount ())
+                                                 .add ("failed", aOutbox.getFailedCount ());
+        aUnifiedResponse.setContentAndCharset (ret.getAsJsonString (), StandardCharsets.UTF_8)
+                        .setMimeType (CMimeType.APPLICATION_JSON);
+      }
+  }
+}
@@ -87,6 +87,23 @@ public final class APIExecutorServiceMetadataGet implements IAPIExecutor
       default:
         throw new UnsupportedOperationException ("Unsupported REST type specified!");
     }
+    signAndSetResponse (aDoc, aUnifiedResponse);
+  }
+
+  /**
+   * Sign the provided unsigned service metadata document and put the
+   * serialized result into the response. Shared between the synchronous and
+   * the asynchronous lookup path.
+   *
+   * @param aDoc
+   *        The unsigned document. May be <code>null</code> in which case an
+   *        exception is thrown.
+   * @param aUnifiedResponse
+   *        The response to fill. May not be <code>null</code>.
+   * @since 5.2.0
+   */
+  static void signAndSetResponse (final Document aDoc, @Nonnull final UnifiedResponse aUnifiedResponse)
+  {
     if (aDoc == null)
       throw new IllegalStateException ("Failed to serialize unsigned node!");
 
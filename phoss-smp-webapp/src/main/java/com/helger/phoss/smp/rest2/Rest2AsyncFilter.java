@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest2;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.http.EHttpMethod;
+import com.helger.peppol.bdxr.smp1.marshal.BDXR1MarshallerSignedServiceMetadataType;
+import com.helger.peppol.smp.marshal.SMPMarshallerSignedServiceMetadataType;
+import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.restapi.BDXR1ServerAPI;
+import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
+import com.helger.phoss.smp.restapi.SMPServerAPI;
+import com.helger.photon.api.APIDescriptor;
+import com.helger.photon.api.APIPath;
+import com.helger.photon.api.APIRegistry;
+import com.helger.photon.api.IAPIRegistry;
+import com.helger.photon.api.InvokableAPIDescriptor;
+import com.helger.servlet.request.RequestHelper;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScope;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * Optional filter that serves the public service metadata GET requests
+ * asynchronously. The backend lookups are chained without blocking the
+ * container thread and the signing and serialization happens on a dedicated
+ * thread pool. All other requests are passed on to the {@link Rest2Filter}
+ * which MUST be mapped after this filter. This filter only becomes active if
+ * {@link SMPServerConfiguration#isRESTAsyncEnabled()} is <code>true</code>.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public class Rest2AsyncFilter implements Filter
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (Rest2AsyncFilter.class);
+
+  private ExecutorService m_aExecutor;
+  // Only contains the service metadata GET API
+  private IAPIRegistry m_aAPIRegistry;
+
+  public void init (@Nonnull final FilterConfig aFilterConfig) throws ServletException
+  {
+    if (SMPServerConfiguration.isRESTAsyncEnabled ())
+    {
+      // Same path as in the synchronous filter so that the path variables are
+      // extracted identically
+      m_aAPIRegistry = new APIRegistry ();
+      m_aAPIRegistry.registerAPI (new APIDescriptor (APIPath.get (Rest2Filter.PATH_SERVICE_METADATA),
+                                                     new APIExecutorServiceMetadataGet ()));
+
+      final int nThreads = SMPServerConfiguration.getRESTAsyncThreadCount ();
+      m_aExecutor = Executors.newFixedThreadPool (nThreads,
+                                                  new BasicThreadFactory.Builder ().setNamingPattern ("smp-rest-async-%d")
+                                                                                   .setDaemon (true)
+                                                                                   .build ());
+      LOGGER.info ("Asynchronous service metadata lookup is enabled using " + nThreads + " threads");
+    }
+  }
+
+  public void destroy ()
+  {
+    if (m_aExecutor != null)
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+      m_aExecutor = null;
+    }
+  }
+
+  public void doFilter (@Nonnull final ServletRequest aRequest,
+                        @Nonnull final ServletResponse aResponse,
+                        @Nonnull final FilterChain aChain) throws IOException, ServletException
+  {
+    if (m_aExecutor == null ||
+        !aRequest.isAsyncSupported () ||
+        !(aRequest instanceof HttpServletRequest) ||
+        !(aResponse instanceof HttpServletResponse))
+    {
+      aChain.doFilter (aRequest, aResponse);
+      return;
+    }
+
+    final HttpServletRequest aHttpRequest = (HttpServletRequest) aRequest;
+    final HttpServletResponse aHttpResponse = (HttpServletResponse) aResponse;
+
+    // Check the cheap things before creating any object
+    if (!EHttpMethod.GET.getName ().equals (aHttpRequest.getMethod ()))
+    {
+      aChain.doFilter (aRequest, aResponse);
+      return;
+    }
+
+    // Same exclusions as in the synchronous filter
+    final String sPath = RequestHelper.getPathWithinServletContext (aHttpRequest);
+    if (Rest2Filter.isApplicationServletPath (sPath))
+    {
+      aChain.doFilter (aRequest, aResponse);
+      return;
+    }
+
+    final InvokableAPIDescriptor aInvokableDescriptor = m_aAPIRegistry.getAPIByPath (new APIPath (EHttpMethod.GET,
+                                                                                                  sPath));
+    if (aInvokableDescriptor == null)
+    {
+      aChain.doFilter (aRequest, aResponse);
+      return;
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Asynchronously handling '" + aInvokableDescriptor.getPath () + "'");
+
+    final AsyncContext aAsyncContext = aHttpRequest.startAsync ();
+    // Either the lookup or the container (timeout, error) finishes the request
+    final AtomicBoolean aFinished = new AtomicBoolean (false);
+    aAsyncContext.addListener (new AsyncListener ()
+    {
+      public void onStartAsync (@Nonnull final AsyncEvent aEvent)
+      {}
+
+      public void onComplete (@Nonnull final AsyncEvent aEvent)
+      {}
+
+      public void onTimeout (@Nonnull final AsyncEvent aEvent)
+      {
+        if (aFinished.compareAndSet (false, true))
+        {
+          LOGGER.warn ("Asynchronous service metadata lookup of '" + aInvokableDescriptor.getPath () + "' timed out");
+          _sendErrorAndComplete (aAsyncContext, aHttpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+      }
+
+      public void onError (@Nonnull final AsyncEvent aEvent)
+      {
+        if (aFinished.compareAndSet (false, true))
+        {
+          LOGGER.error ("Error in asynchronous service metadata lookup of '" + aInvokableDescriptor.getPath () + "'",
+                        aEvent.getThrowable ());
+          _sendErrorAndComplete (aAsyncContext, aHttpResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+      }
+    });
+
+    // The lookup is started within a request scope of the container thread.
+    // The data provider only reads the request URL, which stays valid until
+    // the asynchronous request is completed.
+    CompletableFuture <Document> aFuture;
+    try (final WebScoped aWebScoped = new WebScoped (aHttpRequest, aHttpResponse))
+    {
+      final Map <String, String> aPathVariables = aInvokableDescriptor.getAllPathVariables ();
+      final String sServiceGroupID = aPathVariables.get (Rest2Filter.PARAM_SERVICE_GROUP_ID);
+      final String sDocumentTypeID = aPathVariables.get (Rest2Filter.PARAM_DOCUMENT_TYPE_ID);
+      final ISMPServerAPIDataProvider aDataProvider = new Rest2DataProvider (aWebScoped.getRequestScope ());
+      switch (SMPServerConfiguration.getRESTType ())
+      {
+        case PEPPOL:
+          aFuture = new SMPServerAPI (aDataProvider).getServiceRegistrationAsync (sServiceGroupID, sDocumentTypeID)
+                                                    .thenApply (x -> new SMPMarshallerSignedServiceMetadataType ().getAsDocument (x));
+          break;
+        case BDXR:
+          aFuture = new BDXR1ServerAPI (aDataProvider).getServiceRegistrationAsync (sServiceGroupID, sDocumentTypeID)
+                                                      .thenApply (x -> new BDXR1MarshallerSignedServiceMetadataType ().getAsDocument (x));
+          break;
+        default:
+          throw new UnsupportedOperationException ("Unsupported REST type specified!");
+      }
+    }
+    catch (final RuntimeException ex)
+    {
+      aFuture = new CompletableFuture <> ();
+      aFuture.completeExceptionally (ex);
+    }
+
+    aFuture.whenCompleteAsync ( (aDoc, aThrowable) -> {
+      if (aFinished.get ())
+      {
+        // Already answered by the listener
+        return;
+      }
+
+      final UnifiedResponse aUnifiedResponse = UnifiedResponse.createSimple (aHttpRequest);
+      aUnifiedResponse.disableCaching ();
+      // Separate request scope for the executor thread
+      try (final WebScoped aWebScoped = new WebScoped (aHttpRequest, aHttpResponse))
+      {
+        try
+        {
+          if (aThrowable == null)
+            APIExecutorServiceMetadataGet.signAndSetResponse (aDoc, aUnifiedResponse);
+          else
+            _handleException (aWebScoped.getRequestScope (), aUnifiedResponse, aThrowable);
+        }
+        catch (final RuntimeException ex)
+        {
+          _handleException (aWebScoped.getRequestScope (), aUnifiedResponse, ex);
+        }
+      }
+
+      if (!aFinished.compareAndSet (false, true))
+        return;
+      try
+      {
+        aUnifiedResponse.applyToResponse (aHttpResponse);
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.error ("Failed to write asynchronous response", ex);
+      }
+      finally
+      {
+        aAsyncContext.complete ();
+      }
+    }, m_aExecutor);
+  }
+
+  private static void _sendErrorAndComplete (@Nonnull final AsyncContext aAsyncContext,
+                                             @Nonnull final HttpServletResponse aHttpResponse,
+                                             final int nStatusCode)
+  {
+    try
+    {
+      if (!aHttpResponse.isCommitted ())
+        aHttpResponse.sendError (nStatusCode);
+    }
+    catch (final IOException | IllegalStateException ex)
+    {
+      LOGGER.error ("Failed to send error " + nStatusCode + " for asynchronous request", ex);
+    }
+    finally
+    {
+      aAsyncContext.complete ();
+    }
+  }
+
+  private static void _handleException (@Nonnull final IRequestWebScope aRequestScope,
+                                        @Nonnull final UnifiedResponse aUnifiedResponse,
+                                        @Nonnull final Throwable aThrowable)
+  {
+    Throwable aRealThrowable = aThrowable;
+    if (aRealThrowable instanceof CompletionException && aRealThrowable.getCause () != null)
+      aRealThrowable = aRealThrowable.getCause ();
+    if (new Rest2ExceptionMapper ().applyExceptionOnResponse (null, aRequestScope, aUnifiedResponse, aRealThrowable)
+                                   .isUnhandled ())
+    {
+      LOGGER.error ("Unhandled error in asynchronous service metadata lookup", aRealThrowable);
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+  }
+}
@@ -47,7 +47,11 @@ public class Rest2Filter extends AbstractXFilterUnifiedResponse
   public static final String PARAM_SERVICE_GROUP_ID = "ServiceGroupId";
   public static final String PARAM_USER_ID = "UserId";
   public static final String PARAM_DOCUMENT_TYPE_ID = "DocumentTypeId";
+  /** The API path of a single service metadata */
+  static final String PATH_SERVICE_METADATA = "/{" + PARAM_SERVICE_GROUP_ID + "}/services/{" + PARAM_DOCUMENT_TYPE_ID + "}";
   private static final String PATH_PREFIX_OASIS_BDXR_SMP_2 = "/bdxr-smp-2";
+  /** The paths that are handled by other servlets */
+  private static final String REGEX_APPLICATION_SERVLET_PATHS = "^/(stream|public|secure|ajax|resbundle|smp-status|error|logout|favicon.ico)(/.*)?$";
 
   private static final Logger LOGGER = LoggerFactory.getLogger (Rest2Filter.class);
 
@@ -83,6 +87,65 @@ public class Rest2Filter extends AbstractXFilterUnifiedResponse
       aDeleteBusinessCard.setExceptionMapper (aExceptionMapper);
       aRegistry.registerAPI (aDeleteBusinessCard);
     }
+    // BusinessCard search (since 5.2.0)
+    {
+      final APIDescriptor aSearchBusinessCards = new APIDescriptor (APIPath.get ("/businesscards/search"),
+                                                                    new APIExecutorBusinessCardSearchGet ());
+      aSearchBusinessCards.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aSearchBusinessCards);
+    }
+    // Directory resync (since 5.2.0)
+    {
+      final APIDescriptor aGetDirectoryResync = new APIDescriptor (APIPath.get ("/directory/resync"),
+                                                                   new APIExecutorDirectoryResyncGet ());
+      aGetDirectoryResync.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aGetDirectoryResync);
+    }
+    {
+      final APIDescriptor aPostDirectoryResync = new APIDescriptor (APIPath.post ("/directory/resync"),
+                                                                    new APIExecutorDirectoryResyncPost ());
+      aPostDirectoryResync.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aPostDirectoryResync);
+    }
+    // SML outbox (since 5.2.0)
+    {
+      final APIDescriptor aGetSMLOutbox = new APIDescriptor (APIPath.get ("/sml/outbox/{" + PARAM_SERVICE_GROUP_ID + "}"),
+                                                             new APIExecutorSMLOutboxGet ());
+      aGetSMLOutbox.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aGetSMLOutbox);
+    }
+    {
+      final APIDescriptor aPostSMLOutboxRetry = new APIDescriptor (APIPath.post ("/sml/outbox/retry"),
+                                                                   new APIExecutorSMLOutboxRetryPost ());
+      aPostSMLOutboxRetry.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aPostSMLOutboxRetry);
+    }
+    // SML reconciliation (since 5.2.0)
+    {
+      final APIDescriptor aGetSMLReconciliation = new APIDescriptor (APIPath.get ("/sml/reconciliation"),
+                                                                     new APIExecutorSMLReconciliationGet ());
+      aGetSMLReconciliation.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aGetSMLReconciliation);
+    }
+    {
+      final APIDescriptor aPostSMLReconciliation = new APIDescriptor (APIPath.post ("/sml/reconciliation"),
+                                                                      new APIExecutorSMLReconciliationPost ());
+      aPostSMLReconciliation.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aPostSMLReconciliation);
+    }
+    {
+      final APIDescriptor aPostImport = new APIDescriptor (APIPath.post ("/import"), new APIExecutorImportPost ());
+      aPostImport.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aPostImport);
+    }
+    // Change feed (since 5.2.0)
+    // A single segment path would be ambiguous with "/{ServiceGroupId}"
+    {
+      final APIDescriptor aGetChanges = new APIDescriptor (APIPath.get ("/changelog/changes"),
+                                                           new APIExecutorChangesGet ());
+      aGetChanges.setExceptionMapper (aExceptionMapper);
+      aRegistry.registerAPI (aGetChanges);
+    }
     // CompleteServiceGroup
     {
       final APIDescriptor aGetCompleteServiceGroup = new APIDescriptor (APIPath.get ("/complete/{" +
@@ -122,11 +185,7 @@ public class Rest2Filter extends AbstractXFilterUnifiedResponse
     }
     // ServiceMetadata
     {
-      final APIDescriptor aGetServiceMetadata = new APIDescriptor (APIPath.get ("/{" +
-                                                                                PARAM_SERVICE_GROUP_ID +
-                                                                                "}/services/{" +
-                                                                                PARAM_DOCUMENT_TYPE_ID +
-                                                                                "}"),
+      final APIDescriptor aGetServiceMetadata = new APIDescriptor (APIPath.get (PATH_SERVICE_METADATA),
                                                                    new APIExecutorServiceMetadataGet ());
       aGetServiceMetadata.setExceptionMapper (aExceptionMapper);
       aRegistry.registerAPI (aGetServiceMetadata);
@@ -155,6 +214,17 @@ public class Rest2Filter extends AbstractXFilterUnifiedResponse
     }
   }
 
+  /**
+   * @param sPath
+   *        The path within the servlet context. May not be <code>null</code>.
+   * @return <code>true</code> if the path belongs to another servlet and must
+   *         not be handled by the REST API.
+   */
+  static boolean isApplicationServletPath (@Nonnull final String sPath)
+  {
+    return sPath.matches (REGEX_APPLICATION_SERVLET_PATHS);
+  }
+
   @Override
   @Nonnull
   protected EContinue onFilterBefore (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
@@ -163,8 +233,7 @@ public class Rest2Filter extends AbstractXFilterUnifiedResponse
   {
     final APIPath aAPIPath = APIPath.createForFilter (aRequestScope);
 
-    if (aAPIPath.getPath ()
-                .matches ("^/(stream|public|secure|ajax|resbundle|smp-status|error|logout|favicon.ico)(/.*)?$"))
+    if (isApplicationServletPath (aAPIPath.getPath ()))
     {
       // Explicitly other servlet
       if (LOGGER.isDebugEnabled ())
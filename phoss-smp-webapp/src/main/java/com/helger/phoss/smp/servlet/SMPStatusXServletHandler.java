@@ -41,10 +41,12 @@ import com.helger.json.JsonObject;
 import com.helger.peppol.sml.ISMLInfo;
 import com.helger.phoss.smp.CSMPServer;
 import com.helger.phoss.smp.SMPServerConfiguration;
+import com.helger.phoss.smp.app.PDNotificationQueue;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.security.SMPKeyManager;
 import com.helger.phoss.smp.settings.ISMPSettings;
+import com.helger.phoss.smp.smlhook.SMLOutbox;
 import com.helger.servlet.response.UnifiedResponse;
 import com.helger.web.scope.IRequestWebScopeWithoutResponse;
 import com.helger.xservlet.handler.simple.IXServletSimpleHandler;
@@ -98,6 +100,14 @@ public class SMPStatusXServletHandler implements IXServletSimpleHandler
     }
     aStatusData.addIfNotNull ("smp.sml.connection-timeout-ms", SMPServerConfiguration.getSMLConnectionTimeoutMS ());
     aStatusData.add ("smp.sml.request-timeout-ms", SMPServerConfiguration.getSMLRequestTimeoutMS ());
+    // New in 5.2.0
+    aStatusData.add ("smp.sml.outbox.enabled", SMPServerConfiguration.isSMLOutboxEnabled ());
+    if (SMPServerConfiguration.isSMLOutboxEnabled ())
+    {
+      final SMLOutbox aSMLOutbox = SMLOutbox.getInstance ();
+      aStatusData.add ("smp.sml.outbox.pending", aSMLOutbox.getPendingCount ());
+      aStatusData.add ("smp.sml.outbox.failed", aSMLOutbox.getFailedCount ());
+    }
 
     // Directory information
     aStatusData.add ("smp.pd.enabled", aSettings.isDirectoryIntegrationEnabled ());
@@ -105,6 +115,10 @@ public class SMPStatusXServletHandler implements IXServletSimpleHandler
     aStatusData.add ("smp.pd.needed", aSettings.isDirectoryIntegrationRequired ());
     aStatusData.add ("smp.pd.auto-update", aSettings.isDirectoryIntegrationAutoUpdate ());
     aStatusData.add ("smp.pd.hostname", aSettings.getDirectoryHostName ());
+    // New in 5.2.0
+    final PDNotificationQueue aPDQueue = PDNotificationQueue.getInstance ();
+    aStatusData.add ("smp.pd.queue.size", aPDQueue.getQueueSize ());
+    aStatusData.addIfNotNull ("smp.pd.queue.oldest-age-ms", aPDQueue.getOldestEntryAgeMS ());
 
     // Certificate information
     final boolean bCertConfigOk = SMPKeyManager.isCertificateValid ();
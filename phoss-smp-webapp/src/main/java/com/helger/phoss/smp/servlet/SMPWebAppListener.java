@@ -34,6 +34,8 @@ import com.helger.pd.client.PDClientConfiguration;
 import com.helger.phoss.smp.SMPServerConfiguration;
 import com.helger.phoss.smp.app.CSMP;
 import com.helger.phoss.smp.app.PDClientProvider;
+import com.helger.phoss.smp.app.PDNotificationQueue;
+import com.helger.phoss.smp.app.PDResyncJob;
 import com.helger.phoss.smp.app.SMPSecurity;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
@@ -42,6 +44,7 @@ import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
+import com.helger.phoss.smp.smlhook.SMLOutbox;
 import com.helger.phoss.smp.ui.SMPCommonUI;
 import com.helger.phoss.smp.ui.ajax.CAjax;
 import com.helger.phoss.smp.ui.pub.MenuPublic;
@@ -205,6 +208,14 @@ public class SMPWebAppListener extends WebAppListenerBootstrap
     // If the SMP settings change, the PD client must be re-created
     SMPMetaManager.getSettingsMgr ().callbacks ().add (x -> PDClientProvider.getInstance ().resetPDClient ());
 
+    // Load pending Directory notifications and start sending
+    PDNotificationQueue.getInstance ();
+    // Resume an interrupted resync job
+    PDResyncJob.getInstance ();
+    // Load pending SML operations and start delivering
+    if (SMPServerConfiguration.isSMLOutboxEnabled ())
+      SMLOutbox.getInstance ();
+
     // Callback on BusinessCard manager - if something happens, notify PD server
     final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
     if (aBusinessCardMgr != null)
@@ -216,9 +227,8 @@ public class SMPWebAppListener extends WebAppListenerBootstrap
           if (SMPMetaManager.getSettings ().isDirectoryIntegrationAutoUpdate ())
           {
             // Notify PD server: add
-            PDClientProvider.getInstance ()
-                            .getPDClient ()
-                            .addServiceGroupToIndex (aBusinessCard.getServiceGroup ().getParticpantIdentifier ());
+            PDNotificationQueue.getInstance ()
+                               .addServiceGroupToIndex (aBusinessCard.getServiceGroup ().getParticpantIdentifier ());
           }
         }
 
@@ -227,9 +237,8 @@ public class SMPWebAppListener extends WebAppListenerBootstrap
           if (SMPMetaManager.getSettings ().isDirectoryIntegrationAutoUpdate ())
           {
             // Notify PD server: delete
-            PDClientProvider.getInstance ()
-                            .getPDClient ()
-                            .deleteServiceGroupFromIndex (aBusinessCard.getServiceGroup ().getParticpantIdentifier ());
+            PDNotificationQueue.getInstance ()
+                               .deleteServiceGroupFromIndex (aBusinessCard.getServiceGroup ().getParticpantIdentifier ());
           }
         }
       });
@@ -248,10 +257,9 @@ public class SMPWebAppListener extends WebAppListenerBootstrap
                           if (aBusinessCardMgr.containsSMPBusinessCardOfServiceGroup (aServiceInformation.getServiceGroup ()))
                           {
                             // Notify PD server: update
-                            PDClientProvider.getInstance ()
-                                            .getPDClient ()
-                                            .addServiceGroupToIndex (aServiceInformation.getServiceGroup ()
-                                                                                        .getParticpantIdentifier ());
+                            PDNotificationQueue.getInstance ()
+                                               .addServiceGroupToIndex (aServiceInformation.getServiceGroup ()
+                                                                                           .getParticpantIdentifier ());
                           }
                         }
                       }
@@ -264,10 +272,9 @@ public class SMPWebAppListener extends WebAppListenerBootstrap
                           if (aBusinessCardMgr.containsSMPBusinessCardOfServiceGroup (aServiceInformation.getServiceGroup ()))
                           {
                             // Notify PD server: update
-                            PDClientProvider.getInstance ()
-                                            .getPDClient ()
-                                            .addServiceGroupToIndex (aServiceInformation.getServiceGroup ()
-                                                                                        .getParticpantIdentifier ());
+                            PDNotificationQueue.getInstance ()
+                                               .addServiceGroupToIndex (aServiceInformation.getServiceGroup ()
+                                                                                           .getParticpantIdentifier ());
                           }
                         }
                       }
@@ -280,10 +287,9 @@ public class SMPWebAppListener extends WebAppListenerBootstrap
                           if (aBusinessCardMgr.containsSMPBusinessCardOfServiceGroup (aServiceInformation.getServiceGroup ()))
                           {
                             // Notify PD server: update
-                            PDClientProvider.getInstance ()
-                                            .getPDClient ()
-                                            .addServiceGroupToIndex (aServiceInformation.getServiceGroup ()
-                                                                                        .getParticpantIdentifier ());
+                            PDNotificationQueue.getInstance ()
+                                               .addServiceGroupToIndex (aServiceInformation.getServiceGroup ()
+                                                                                           .getParticpantIdentifier ());
                           }
                         }
                       }
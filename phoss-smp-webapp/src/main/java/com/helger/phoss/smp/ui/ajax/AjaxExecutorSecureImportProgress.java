@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.ui.ajax;
+
+import javax.annotation.Nonnull;
+
+import com.helger.phoss.smp.app.SMPExchangeImportProgress;
+import com.helger.photon.app.PhotonUnifiedResponse;
+import com.helger.photon.core.execcontext.LayoutExecutionContext;
+
+/**
+ * Get the progress of the service group import of the current session as
+ * text. If no import is running, the response is empty.
+ *
+ * @author Philip Helger
+ * @since 5.2.0
+ */
+public final class AjaxExecutorSecureImportProgress extends AbstractSMPAjaxExecutor
+{
+  @Override
+  protected void mainHandleRequest (@Nonnull final LayoutExecutionContext aLEC,
+                                    @Nonnull final PhotonUnifiedResponse aAjaxResponse) throws Exception
+  {
+    final SMPExchangeImportProgress aProgress = SMPExchangeImportProgress.getInstanceIfInstantiated ();
+    aAjaxResponse.disableCaching ();
+    aAjaxResponse.text (aProgress == null || !aProgress.isRunning () ? "" : aProgress.getAsText ());
+  }
+}
@@ -18,11 +18,13 @@ package com.helger.phoss.smp.ui.pub;
 
 import java.util.Comparator;
 import java.util.Locale;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.html.hc.ext.HCExtHelper;
@@ -81,8 +83,6 @@ public final class PagePublicStart extends AbstractSMPWebPage
     else
     {
       final ISMPServiceGroupManager aSMPServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-      final ICommonsList <ISMPServiceGroup> aServiceGroups = aSMPServiceGroupMgr.getAllSMPServiceGroups ();
-
       // Use dynamic or static table?
       final boolean bUseDataTables = SMPWebAppConfiguration.isStartPageDynamicTable ();
       final boolean bShowExtensionDetails = SMPWebAppConfiguration.isStartPageExtensionsShow ();
@@ -109,13 +109,9 @@ public final class PagePublicStart extends AbstractSMPWebPage
               .addCell (bShowExtensionDetails ? "Extension" : "Extension?")
               .addCell (EPhotonCoreText.ACTIONS.getDisplayText (aDisplayLocale));
         aFinalTable = aTable;
-
-        // Sort manually
-        aServiceGroups.sort (Comparator.comparing (x -> x.getParticpantIdentifier ().getURIEncoded ()));
       }
 
-      for (final ISMPServiceGroup aServiceGroup : aServiceGroups)
-      {
+      final Consumer <ISMPServiceGroup> aRowAdder = aServiceGroup -> {
         final String sDisplayName = aServiceGroup.getParticpantIdentifier ().getURIEncoded ();
 
         final HCRow aRow = aFinalTable.addBodyRow ();
@@ -136,7 +132,22 @@ public final class PagePublicStart extends AbstractSMPWebPage
                                                                                                                         sDisplayName)
                                                                                                              .setTargetBlank ()
                                                                                                              .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
+      };
+
+      if (bUseDataTables)
+      {
+        // Sorted on the client side
+        aSMPServiceGroupMgr.forEachSMPServiceGroup (aRowAdder);
       }
+      else
+      {
+        // Sort manually
+        final ICommonsList <ISMPServiceGroup> aServiceGroups = new CommonsArrayList <> ();
+        aSMPServiceGroupMgr.forEachSMPServiceGroup (aServiceGroups::add);
+        aServiceGroups.sort (Comparator.comparing (x -> x.getParticpantIdentifier ().getURIEncoded ()));
+        aServiceGroups.forEach (aRowAdder);
+      }
+
       if (aFinalTable.hasBodyRows ())
       {
         aNodeList.addChild (aFinalTable);
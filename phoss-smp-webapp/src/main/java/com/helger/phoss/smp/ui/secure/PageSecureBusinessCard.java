@@ -43,6 +43,7 @@ import com.helger.commons.url.URLValidator;
 import com.helger.html.hc.IHCNode;
 import com.helger.html.hc.ext.HCA_MailTo;
 import com.helger.html.hc.ext.HCExtHelper;
+import com.helger.html.hc.html.forms.EHCFormMethod;
 import com.helger.html.hc.html.forms.HCEdit;
 import com.helger.html.hc.html.forms.HCTextArea;
 import com.helger.html.hc.html.grouping.HCDiv;
@@ -62,6 +63,7 @@ import com.helger.html.jscode.JSVar;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.app.PDClientProvider;
+import com.helger.phoss.smp.app.PDResyncJob;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
@@ -70,6 +72,8 @@ import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchResult;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.settings.ISMPSettingsManager;
@@ -80,10 +84,12 @@ import com.helger.photon.app.PhotonUnifiedResponse;
 import com.helger.photon.app.url.LinkHelper;
 import com.helger.photon.bootstrap4.CBootstrapCSS;
 import com.helger.photon.bootstrap4.alert.BootstrapErrorBox;
+import com.helger.photon.bootstrap4.alert.BootstrapInfoBox;
 import com.helger.photon.bootstrap4.alert.BootstrapQuestionBox;
 import com.helger.photon.bootstrap4.alert.BootstrapSuccessBox;
 import com.helger.photon.bootstrap4.alert.BootstrapWarnBox;
 import com.helger.photon.bootstrap4.button.BootstrapButton;
+import com.helger.photon.bootstrap4.button.BootstrapSubmitButton;
 import com.helger.photon.bootstrap4.button.EBootstrapButtonSize;
 import com.helger.photon.bootstrap4.buttongroup.BootstrapButtonToolbar;
 import com.helger.photon.bootstrap4.card.BootstrapCard;
@@ -138,6 +144,10 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
   private static final String SUFFIX_REG_DATE = "regdate";
   private static final String TMP_ID_PREFIX = "tmp";
   private static final String ACTION_PUBLISH_TO_INDEXER = "publishtoindexer";
+  private static final String ACTION_PUBLISH_ALL_TO_INDEXER = "publishalltoindexer";
+  private static final String FIELD_SEARCH_QUERY = "q";
+  /** The maximum number of business cards shown in the list */
+  private static final int MAX_LIST_COUNT = 1_000;
 
   private static final String PARAM_ENTITY_ID = "entityid";
 
@@ -248,6 +258,25 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
                           return EShowList.SHOW_LIST;
                         }
                       });
+    addCustomHandler (ACTION_PUBLISH_ALL_TO_INDEXER,
+                      new AbstractBootstrapWebPageActionHandler <ISMPBusinessCard, WebPageExecutionContext> (false)
+                      {
+                        @Nonnull
+                        public EShowList handleAction (@Nonnull final WebPageExecutionContext aWPEC,
+                                                       @Nullable final ISMPBusinessCard aSelectedObject)
+                        {
+                          final String sDirectoryName = SMPWebAppConfiguration.getDirectoryName ();
+                          if (PDResyncJob.getInstance ().start ().isSuccess ())
+                            aWPEC.postRedirectGetInternal (new BootstrapSuccessBox ().addChild ("Successfully started to push all Business Cards to the " +
+                                                                                                sDirectoryName +
+                                                                                                "."));
+                          else
+                            aWPEC.postRedirectGetInternal (new BootstrapErrorBox ().addChild ("Pushing all Business Cards to the " +
+                                                                                              sDirectoryName +
+                                                                                              " is already in progress."));
+                          return EShowList.SHOW_LIST;
+                        }
+                      });
   }
 
   @Override
@@ -1045,8 +1074,60 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
 
     final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
     aToolbar.addButton ("Create new Business Card", createCreateURL (aWPEC), EDefaultIcon.NEW);
+    final PDResyncJob aResyncJob = PDResyncJob.getInstance ();
+    if (!aResyncJob.isRunning ())
+      aToolbar.addButton ("Push all Business Cards to " + SMPWebAppConfiguration.getDirectoryName (),
+                          aWPEC.getSelfHref ().add (CPageParam.PARAM_ACTION, ACTION_PUBLISH_ALL_TO_INDEXER),
+                          EDefaultIcon.YES);
     aNodeList.addChild (aToolbar);
 
+    if (aResyncJob.hasEverStarted ())
+    {
+      // Show the progress of the current or last job
+      final int nProcessed = aResyncJob.getSucceededCount () + aResyncJob.getFailedCount ();
+      final BootstrapInfoBox aBox = new BootstrapInfoBox ();
+      aBox.addChild (new HCDiv ().addChild ((aResyncJob.isRunning () ? "Pushing all Business Cards to the "
+                                                                     : "Last push of all Business Cards to the ") +
+                                            SMPWebAppConfiguration.getDirectoryName () +
+                                            ": " +
+                                            nProcessed +
+                                            " of " +
+                                            aResyncJob.getTotalCount () +
+                                            " processed, " +
+                                            aResyncJob.getFailedCount () +
+                                            " failed"));
+      final ICommonsList <String> aFailedIDs = aResyncJob.getAllFailedParticipantIDs ();
+      if (aFailedIDs.isNotEmpty ())
+        aBox.addChild (new HCDiv ().addChild ("Failed: " + StringHelper.getImploded (", ", aFailedIDs)));
+      aNodeList.addChild (aBox);
+    }
+
+    final ICommonsList <ISMPBusinessCard> aBusinessCards;
+    final SMPBusinessCardSearchIndex aSearchIndex = SMPMetaManager.getBusinessCardSearchIndex ();
+    if (aSearchIndex != null)
+    {
+      // Use the in-memory index instead of loading all business cards
+      final String sQuery = aWPEC.params ().getAsString (FIELD_SEARCH_QUERY);
+      final BootstrapForm aForm = new BootstrapForm (aWPEC).setAction (aWPEC.getSelfHref ())
+                                                           .setMethod (EHCFormMethod.GET);
+      aForm.addFormGroup (new BootstrapFormGroup ().setLabel ("Search")
+                                                   .setCtrl (new HCEdit (new RequestField (FIELD_SEARCH_QUERY)))
+                                                   .setHelpText ("Name, country code, identifier or participant ID. All words must match and each word is matched as a prefix."));
+      aForm.addChild (new BootstrapSubmitButton ().addChild ("Search").setIcon (EDefaultIcon.MAGNIFIER));
+      aNodeList.addChild (aForm);
+
+      final SMPBusinessCardSearchResult aResult = aSearchIndex.search (sQuery, null, 0, MAX_LIST_COUNT);
+      aBusinessCards = aResult.getAllBusinessCards ();
+      if (aResult.getTotalCount () > aBusinessCards.size ())
+        aNodeList.addChild (new BootstrapWarnBox ().addChild ("Only the first " +
+                                                             aBusinessCards.size () +
+                                                             " of " +
+                                                             aResult.getTotalCount () +
+                                                             " matching Business Cards are shown. Please refine the search."));
+    }
+    else
+      aBusinessCards = aBusinessCardMgr.getAllSMPBusinessCards ();
+
     final HCTable aTable = new HCTable (new DTCol ("Service Group").setDataSort (0, 1)
                                                                    .setInitialSorting (ESortOrder.ASCENDING),
                                         new DTCol ("Name"),
@@ -1054,7 +1135,7 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
                                         new DTCol ("GeoInfo"),
                                         new DTCol ("Identifiers"),
                                         new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-    for (final ISMPBusinessCard aCurObject : aBusinessCardMgr.getAllSMPBusinessCards ())
+    for (final ISMPBusinessCard aCurObject : aBusinessCards)
     {
       final ISimpleURL aViewLink = createViewURL (aWPEC, aCurObject);
       final String sDisplayName = aCurObject.getServiceGroupID ();
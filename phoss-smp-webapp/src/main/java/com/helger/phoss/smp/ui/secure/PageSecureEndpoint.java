@@ -29,11 +29,13 @@ import com.helger.collection.multimap.IMultiMapListBased;
 import com.helger.collection.multimap.MultiHashMapArrayListBased;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.attr.StringMap;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.datetime.PDTFromString;
 import com.helger.commons.datetime.PDTToString;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.state.IValidityIndicator;
 import com.helger.commons.string.StringHelper;
@@ -890,12 +892,17 @@ public final class PageSecureEndpoint extends AbstractSMPWebPageForm <ISMPServic
                                                  .setErrorList (aFormErrors.getListOfField (FIELD_EXTENSION)));
   }
 
+  @Nonnull
+  private static BootstrapErrorBox _createIncompleteErrorBox ()
+  {
+    return new BootstrapErrorBox ().addChild ("Not all endpoints could be read. The information on this page is incomplete! Please check the logs!");
+  }
+
   @Override
   protected void showListOfExistingObjects (@Nonnull final WebPageExecutionContext aWPEC)
   {
     final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
     final HCNodeList aNodeList = aWPEC.getNodeList ();
-    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
     final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
 
     // Default view is now tree view
@@ -913,13 +920,14 @@ public final class PageSecureEndpoint extends AbstractSMPWebPageForm <ISMPServic
 
     if (bTreeView)
     {
-      // Create sorted list of service groups
+      // Create sorted list of service groups that have service information
       final IMultiMapListBased <ISMPServiceGroup, ISMPServiceInformation> aMap = new MultiHashMapArrayListBased <> ();
-      aServiceInfoMgr.getAllSMPServiceInformation ().forEach (x -> aMap.putSingle (x.getServiceGroup (), x));
+      if (aServiceInfoMgr.forEachSMPServiceInformation (x -> aMap.putSingle (x.getServiceGroup (), x)).isFailure ())
+        aNodeList.addChild (_createIncompleteErrorBox ());
 
       final HCUL aULSG = new HCUL ();
-      final ICommonsList <ISMPServiceGroup> aServiceGroups = aServiceGroupMgr.getAllSMPServiceGroups ()
-                                                                             .getSortedInline (ISMPServiceGroup.comparator ());
+      final ICommonsList <ISMPServiceGroup> aServiceGroups = new CommonsArrayList <> (aMap.keySet ());
+      aServiceGroups.sort (ISMPServiceGroup.comparator ());
       for (final ISMPServiceGroup aServiceGroup : aServiceGroups)
       {
         // Print service group
@@ -930,99 +938,98 @@ public final class PageSecureEndpoint extends AbstractSMPWebPageForm <ISMPServic
         final HCUL aULDT = new HCUL ();
 
         final ICommonsList <ISMPServiceInformation> aServiceInfos = aMap.get (aServiceGroup);
-        if (aServiceInfos != null)
-          for (final ISMPServiceInformation aServiceInfo : aServiceInfos.getSortedInline (ISMPServiceInformation.comparator ()))
+        for (final ISMPServiceInformation aServiceInfo : aServiceInfos.getSortedInline (ISMPServiceInformation.comparator ()))
+        {
+          final HCUL aULP = new HCUL ();
+          final ICommonsList <ISMPProcess> aProcesses = aServiceInfo.getAllProcesses ()
+                                                                    .getSortedInline (ISMPProcess.comparator ());
+          for (final ISMPProcess aProcess : aProcesses)
           {
-            final HCUL aULP = new HCUL ();
-            final ICommonsList <ISMPProcess> aProcesses = aServiceInfo.getAllProcesses ()
-                                                                      .getSortedInline (ISMPProcess.comparator ());
-            for (final ISMPProcess aProcess : aProcesses)
+            final BootstrapTable aEPTable = new BootstrapTable (HCCol.perc (40),
+                                                                HCCol.perc (40),
+                                                                HCCol.perc (20)).setBordered (true);
+            final ICommonsList <ISMPEndpoint> aEndpoints = aProcess.getAllEndpoints ()
+                                                                   .getSortedInline (ISMPEndpoint.comparator ());
+            for (final ISMPEndpoint aEndpoint : aEndpoints)
             {
-              final BootstrapTable aEPTable = new BootstrapTable (HCCol.perc (40),
-                                                                  HCCol.perc (40),
-                                                                  HCCol.perc (20)).setBordered (true);
-              final ICommonsList <ISMPEndpoint> aEndpoints = aProcess.getAllEndpoints ()
-                                                                     .getSortedInline (ISMPEndpoint.comparator ());
-              for (final ISMPEndpoint aEndpoint : aEndpoints)
-              {
-                final StringMap aParams = _createParamMap (aServiceInfo, aProcess, aEndpoint);
-
-                final HCRow aBodyRow = aEPTable.addBodyRow ();
-                aBodyRow.addCell (new HCA (createViewURL (aWPEC,
-                                                          aServiceInfo,
-                                                          aParams)).addChild (aEndpoint.getTransportProfile ()));
-
-                aBodyRow.addCell (aEndpoint.getEndpointReference ());
-
-                final ISimpleURL aEditURL = createEditURL (aWPEC, aServiceInfo).addAll (aParams);
-                final ISimpleURL aCopyURL = createCopyURL (aWPEC, aServiceInfo).addAll (aParams);
-                final ISimpleURL aDeleteURL = createDeleteURL (aWPEC, aServiceInfo).addAll (aParams);
-                final ISimpleURL aPreviewURL = LinkHelper.getURLWithServerAndContext (aServiceInfo.getServiceGroup ()
-                                                                                                  .getParticpantIdentifier ()
-                                                                                                  .getURIPercentEncoded () +
-                                                                                      "/services/" +
-                                                                                      aServiceInfo.getDocumentTypeIdentifier ()
-                                                                                                  .getURIPercentEncoded ());
-                aBodyRow.addCell (new HCTextNode (" "),
-                                  new HCA (aEditURL).setTitle ("Edit endpoint")
-                                                    .addChild (EDefaultIcon.EDIT.getAsNode ()),
-                                  new HCTextNode (" "),
-                                  new HCA (aCopyURL).setTitle ("Copy endpoint")
-                                                    .addChild (EDefaultIcon.COPY.getAsNode ()),
-                                  new HCTextNode (" "),
-                                  new HCA (aDeleteURL).setTitle ("Delete endpoint")
-                                                      .addChild (EDefaultIcon.DELETE.getAsNode ()),
-                                  new HCTextNode (" "),
-                                  new HCA (aPreviewURL).setTitle ("Perform SMP query on endpoint")
-                                                       .setTargetBlank ()
-                                                       .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
-              }
-
-              // Show process + endpoints
-              final HCLI aLI = aULP.addItem ();
-              final HCDiv aDiv = new HCDiv ().addChild (SMPCommonUI.getProcessID (aProcess.getProcessIdentifier ()));
-              aLI.addChild (aDiv);
-              if (aEndpoints.isEmpty ())
-              {
-                aDiv.addChild (" ")
-                    .addChild (new HCA (aWPEC.getSelfHref ()
-                                             .addAll (_createParamMap (aServiceInfo, aProcess, (ISMPEndpoint) null))
-                                             .add (CPageParam.PARAM_ACTION, ACTION_DELETE_PROCESS))
-                                                                                                   .setTitle ("Delete process")
-                                                                                                   .addChild (EDefaultIcon.DELETE.getAsNode ()));
-              }
-              else
-                aLI.addChild (aEPTable);
+              final StringMap aParams = _createParamMap (aServiceInfo, aProcess, aEndpoint);
+
+              final HCRow aBodyRow = aEPTable.addBodyRow ();
+              aBodyRow.addCell (new HCA (createViewURL (aWPEC,
+                                                        aServiceInfo,
+                                                        aParams)).addChild (aEndpoint.getTransportProfile ()));
+
+              aBodyRow.addCell (aEndpoint.getEndpointReference ());
+
+              final ISimpleURL aEditURL = createEditURL (aWPEC, aServiceInfo).addAll (aParams);
+              final ISimpleURL aCopyURL = createCopyURL (aWPEC, aServiceInfo).addAll (aParams);
+              final ISimpleURL aDeleteURL = createDeleteURL (aWPEC, aServiceInfo).addAll (aParams);
+              final ISimpleURL aPreviewURL = LinkHelper.getURLWithServerAndContext (aServiceInfo.getServiceGroup ()
+                                                                                                .getParticpantIdentifier ()
+                                                                                                .getURIPercentEncoded () +
+                                                                                    "/services/" +
+                                                                                    aServiceInfo.getDocumentTypeIdentifier ()
+                                                                                                .getURIPercentEncoded ());
+              aBodyRow.addCell (new HCTextNode (" "),
+                                new HCA (aEditURL).setTitle ("Edit endpoint")
+                                                  .addChild (EDefaultIcon.EDIT.getAsNode ()),
+                                new HCTextNode (" "),
+                                new HCA (aCopyURL).setTitle ("Copy endpoint")
+                                                  .addChild (EDefaultIcon.COPY.getAsNode ()),
+                                new HCTextNode (" "),
+                                new HCA (aDeleteURL).setTitle ("Delete endpoint")
+                                                    .addChild (EDefaultIcon.DELETE.getAsNode ()),
+                                new HCTextNode (" "),
+                                new HCA (aPreviewURL).setTitle ("Perform SMP query on endpoint")
+                                                     .setTargetBlank ()
+                                                     .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
             }
 
-            // Show document types + children
-            final HCLI aLI = aULDT.addItem ();
-            final HCDiv aDiv = new HCDiv ().addChild (SMPCommonUI.getDocumentTypeID (aServiceInfo.getDocumentTypeIdentifier ()))
-                                           .addChild (" ")
-                                           .addChild (new HCA (LinkHelper.getURLWithServerAndContext (aServiceInfo.getServiceGroup ()
-                                                                                                                  .getParticpantIdentifier ()
-                                                                                                                  .getURIPercentEncoded () +
-                                                                                                      "/services/" +
-                                                                                                      aServiceInfo.getDocumentTypeIdentifier ()
-                                                                                                                  .getURIPercentEncoded ())).setTitle ("Perform SMP query on document type ")
-                                                                                                                                            .setTargetBlank ()
-                                                                                                                                            .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
+            // Show process + endpoints
+            final HCLI aLI = aULP.addItem ();
+            final HCDiv aDiv = new HCDiv ().addChild (SMPCommonUI.getProcessID (aProcess.getProcessIdentifier ()));
             aLI.addChild (aDiv);
-            if (aProcesses.isEmpty ())
+            if (aEndpoints.isEmpty ())
             {
               aDiv.addChild (" ")
                   .addChild (new HCA (aWPEC.getSelfHref ()
-                                           .addAll (_createParamMap (aServiceInfo,
-                                                                     (ISMPProcess) null,
-                                                                     (ISMPEndpoint) null))
-                                           .add (CPageParam.PARAM_ACTION, ACTION_DELETE_DOCUMENT_TYPE))
-                                                                                                       .setTitle ("Delete document type")
-                                                                                                       .addChild (EDefaultIcon.DELETE.getAsNode ()));
+                                           .addAll (_createParamMap (aServiceInfo, aProcess, (ISMPEndpoint) null))
+                                           .add (CPageParam.PARAM_ACTION, ACTION_DELETE_PROCESS))
+                                                                                                 .setTitle ("Delete process")
+                                                                                                 .addChild (EDefaultIcon.DELETE.getAsNode ()));
             }
             else
-              aLI.addChild (aULP);
+              aLI.addChild (aEPTable);
           }
-        if (aServiceInfos == null || aServiceInfos.isEmpty () || aULDT.hasNoChildren ())
+
+          // Show document types + children
+          final HCLI aLI = aULDT.addItem ();
+          final HCDiv aDiv = new HCDiv ().addChild (SMPCommonUI.getDocumentTypeID (aServiceInfo.getDocumentTypeIdentifier ()))
+                                         .addChild (" ")
+                                         .addChild (new HCA (LinkHelper.getURLWithServerAndContext (aServiceInfo.getServiceGroup ()
+                                                                                                                .getParticpantIdentifier ()
+                                                                                                                .getURIPercentEncoded () +
+                                                                                                    "/services/" +
+                                                                                                    aServiceInfo.getDocumentTypeIdentifier ()
+                                                                                                                .getURIPercentEncoded ())).setTitle ("Perform SMP query on document type ")
+                                                                                                                                          .setTargetBlank ()
+                                                                                                                                          .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
+          aLI.addChild (aDiv);
+          if (aProcesses.isEmpty ())
+          {
+            aDiv.addChild (" ")
+                .addChild (new HCA (aWPEC.getSelfHref ()
+                                         .addAll (_createParamMap (aServiceInfo,
+                                                                   (ISMPProcess) null,
+                                                                   (ISMPEndpoint) null))
+                                         .add (CPageParam.PARAM_ACTION, ACTION_DELETE_DOCUMENT_TYPE))
+                                                                                                     .setTitle ("Delete document type")
+                                                                                                     .addChild (EDefaultIcon.DELETE.getAsNode ()));
+          }
+          else
+            aLI.addChild (aULP);
+        }
+        if (aULDT.hasNoChildren ())
           aLISG.addChild (new BootstrapBadge (EBootstrapBadgeType.INFO).addChild ("This service group has no assigned endpoints!"));
         else
           aLISG.addChild (aULDT);
@@ -1037,7 +1044,7 @@ public final class PageSecureEndpoint extends AbstractSMPWebPageForm <ISMPServic
                                           new DTCol ("Process ID").setDataSort (2, 0, 1, 3),
                                           new DTCol ("Transport profile").setDataSort (3, 0, 1, 2),
                                           new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-      for (final ISMPServiceInformation aServiceInfo : aServiceInfoMgr.getAllSMPServiceInformation ())
+      final ESuccess eReadSuccess = aServiceInfoMgr.forEachSMPServiceInformation (aServiceInfo -> {
         for (final ISMPProcess aProcess : aServiceInfo.getAllProcesses ())
           for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
           {
@@ -1072,6 +1079,9 @@ public final class PageSecureEndpoint extends AbstractSMPWebPageForm <ISMPServic
                                                .setTargetBlank ()
                                                .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
           }
+      });
+      if (eReadSuccess.isFailure ())
+        aNodeList.addChild (_createIncompleteErrorBox ());
 
       final DataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
       aNodeList.addChild (aTable).addChild (aDataTables);
@@ -27,6 +27,7 @@ import com.helger.collection.multimap.MultiHashMapArrayListBased;
 import com.helger.collection.multimap.MultiHashMapHashSetBased;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsTreeSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsSet;
@@ -34,6 +35,8 @@ import com.helger.commons.collection.impl.ICommonsSortedSet;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.datetime.PDTToString;
+import com.helger.commons.mutable.MutableInt;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.state.IValidityIndicator;
 import com.helger.commons.string.StringHelper;
@@ -162,19 +165,20 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
 
     final MultiHashMapArrayListBased <String, ISMPEndpoint> aEndpointsGroupedPerURL = new MultiHashMapArrayListBased <> ();
     final MultiHashMapHashSetBased <String, ISMPServiceGroup> aServiceGroupsGroupedPerURL = new MultiHashMapHashSetBased <> ();
-    final ICommonsList <ISMPServiceInformation> aAllSIs = aServiceInfoMgr.getAllSMPServiceInformation ();
-    int nTotalEndpointCount = 0;
-    for (final ISMPServiceInformation aSI : aAllSIs)
-    {
+    final MutableInt aTotalEndpointCount = new MutableInt (0);
+    final ESuccess eReadSuccess = aServiceInfoMgr.forEachSMPServiceInformation (aSI -> {
       final ISMPServiceGroup aSG = aSI.getServiceGroup ();
       for (final ISMPProcess aProcess : aSI.getAllProcesses ())
         for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
         {
           aEndpointsGroupedPerURL.putSingle (aEndpoint.getCertificate (), aEndpoint);
           aServiceGroupsGroupedPerURL.putSingle (aEndpoint.getCertificate (), aSG);
-          ++nTotalEndpointCount;
+          aTotalEndpointCount.inc ();
         }
-    }
+    });
+    final int nTotalEndpointCount = aTotalEndpointCount.intValue ();
+    if (eReadSuccess.isFailure ())
+      aNodeList.addChild (new BootstrapErrorBox ().addChild ("Not all endpoints could be read. The information on this page is incomplete! Please check the logs!"));
 
     if (aWPEC.hasAction (CPageParam.ACTION_EDIT))
     {
@@ -213,11 +217,9 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
         if (aFormErrors.isEmpty ())
         {
           // Modify all endpoints
-          int nChangedEndpoints = 0;
-          int nSaveErrors = 0;
-          final ICommonsSortedSet <String> aChangedServiceGroup = new CommonsTreeSet <> ();
-          for (final ISMPServiceInformation aSI : aAllSIs)
-          {
+          final MutableInt aChangedEndpoints = new MutableInt (0);
+          final ICommonsList <ISMPServiceInformation> aChangedSIs = new CommonsArrayList <> ();
+          final ESuccess eChangeSuccess = aServiceInfoMgr.forEachSMPServiceInformation (aSI -> {
             boolean bChanged = false;
             for (final ISMPProcess aProcess : aSI.getAllProcesses ())
               for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
@@ -225,14 +227,21 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
                 {
                   ((SMPEndpoint) aEndpoint).setCertificate (sNewCert);
                   bChanged = true;
-                  ++nChangedEndpoints;
+                  aChangedEndpoints.inc ();
                 }
             if (bChanged)
-            {
-              if (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isFailure ())
-                nSaveErrors++;
-              aChangedServiceGroup.add (aSI.getServiceGroupID ());
-            }
+              aChangedSIs.add (aSI);
+          });
+          final int nChangedEndpoints = aChangedEndpoints.intValue ();
+
+          // Save outside of the iteration
+          int nSaveErrors = eChangeSuccess.isFailure () ? 1 : 0;
+          final ICommonsSortedSet <String> aChangedServiceGroup = new CommonsTreeSet <> ();
+          for (final ISMPServiceInformation aSI : aChangedSIs)
+          {
+            if (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isFailure ())
+              nSaveErrors++;
+            aChangedServiceGroup.add (aSI.getServiceGroupID ());
           }
 
           if (nChangedEndpoints > 0)
@@ -26,7 +26,8 @@ import javax.annotation.Nullable;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.WorkInProgress;
 import com.helger.commons.collection.attr.StringMap;
-import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.state.IValidityIndicator;
@@ -57,7 +58,6 @@ import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.domain.user.ISMPUser;
 import com.helger.phoss.smp.domain.user.ISMPUserManager;
@@ -117,6 +117,13 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
   private static final String ACTION_REGISTER_TO_SML = "register-to-sml";
   private static final String ACTION_UNREGISTER_FROM_SML = "unregister-from-sml";
 
+  private static final class ServiceGroupCounts
+  {
+    private int m_nDocumentTypes;
+    private int m_nProcesses;
+    private int m_nEndpoints;
+  }
+
   public PageSecureServiceGroup (@Nonnull @Nonempty final String sID)
   {
     super (sID, "Service groups");
@@ -217,8 +224,7 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
                                                               new DTCol ("IP address").setDataSort (2, 0),
                                                               new DTCol ("Nice name"),
                                                               new DTCol ("Action")).setID (getID () + "_checkdns");
-                          for (final ISMPServiceGroup aServiceGroup : aServiceGroupMgr.getAllSMPServiceGroups ())
-                          {
+                          aServiceGroupMgr.forEachSMPServiceGroup (aServiceGroup -> {
                             String sDNSName = null;
                             try
                             {
@@ -289,7 +295,7 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
                                                                                                           !SMPMetaManager.getSettings ()
                                                                                                                          .isSMLEnabled ()));
                             }
-                          }
+                          });
 
                           final DataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
                           aNodeList.addChild (aTable).addChild (aDataTables);
@@ -591,7 +597,16 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
     final ESMPRESTType eRESTType = SMPServerConfiguration.getRESTType ();
     final boolean bShowExtensionDetails = SMPWebAppConfiguration.isServiceGroupsExtensionsShow ();
 
-    final ICommonsList <ISMPServiceGroup> aAllServiceGroups = aServiceGroupMgr.getAllSMPServiceGroups ();
+    // Count the document types, processes and endpoints of all service groups
+    // in one pass instead of one query per service group
+    final ICommonsMap <String, ServiceGroupCounts> aCounts = new CommonsHashMap <> ();
+    aServiceInfoMgr.forEachSMPServiceInformation (aSI -> {
+      final ServiceGroupCounts aSGCounts = aCounts.computeIfAbsent (aSI.getServiceGroupID (),
+                                                                    k -> new ServiceGroupCounts ());
+      aSGCounts.m_nDocumentTypes++;
+      aSGCounts.m_nProcesses += aSI.getProcessCount ();
+      aSGCounts.m_nEndpoints += aSI.getTotalEndpointCount ();
+    });
 
     final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
     aToolbar.addButton ("Create new Service group", createCreateURL (aWPEC), EDefaultIcon.NEW);
@@ -604,7 +619,7 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
                                    aWPEC.getSelfHref ().add (CPageParam.PARAM_ACTION, ACTION_CHECK_DNS),
                                    EDefaultIcon.MAGNIFIER)
               .setDisabled (SMPMetaManager.getSettings ().getSMLDNSZone () == null ||
-                            aAllServiceGroups.isEmpty () ||
+                            aServiceGroupMgr.getSMPServiceGroupCount () == 0 ||
                             !SMPMetaManager.getSettings ().isSMLEnabled ());
     }
     aNodeList.addChild (aToolbar);
@@ -623,16 +638,8 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
                                                                 .setTitle ("Number of assigned endpoints")).setDisplayType (EDTColType.INT,
                                                                                                                             aDisplayLocale),
                                         new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-    for (final ISMPServiceGroup aCurObject : aAllServiceGroups)
-    {
-      final ICommonsList <ISMPServiceInformation> aSIs = aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aCurObject);
-      int nProcesses = 0;
-      int nEndpoints = 0;
-      for (final ISMPServiceInformation aSI : aSIs)
-      {
-        nProcesses += aSI.getProcessCount ();
-        nEndpoints += aSI.getTotalEndpointCount ();
-      }
+    aServiceGroupMgr.forEachSMPServiceGroup (aCurObject -> {
+      final ServiceGroupCounts aSGCounts = aCounts.get (aCurObject.getID ());
 
       final ISimpleURL aViewLink = createViewURL (aWPEC, aCurObject);
       final String sDisplayName = aCurObject.getParticpantIdentifier ().getURIEncoded ();
@@ -651,9 +658,9 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
       {
         aRow.addCell (EPhotonCoreText.getYesOrNo (aCurObject.extensions ().isNotEmpty (), aDisplayLocale));
       }
-      aRow.addCell (Integer.toString (aSIs.size ()));
-      aRow.addCell (Integer.toString (nProcesses));
-      aRow.addCell (Integer.toString (nEndpoints));
+      aRow.addCell (Integer.toString (aSGCounts == null ? 0 : aSGCounts.m_nDocumentTypes));
+      aRow.addCell (Integer.toString (aSGCounts == null ? 0 : aSGCounts.m_nProcesses));
+      aRow.addCell (Integer.toString (aSGCounts == null ? 0 : aSGCounts.m_nEndpoints));
 
       final HCNodeList aActions = new HCNodeList ();
       aActions.addChildren (createEditLink (aWPEC, aCurObject, "Edit " + sDisplayName),
@@ -678,7 +685,7 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
                                                                                                                   .addChild (EFamFamIcon.SCRIPT_LINK.getAsNode ()));
       }
       aRow.addCell (aActions);
-    }
+    });
 
     final DataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
     aNodeList.addChild (aTable).addChild (aDataTables);
@@ -17,51 +17,43 @@
 package com.helger.phoss.smp.ui.secure;
 
 import java.util.Locale;
-import java.util.Map;
 
 import javax.annotation.Nonnull;
+import javax.xml.stream.XMLStreamException;
 
 import com.helger.commons.annotation.Nonempty;
-import com.helger.commons.collection.impl.CommonsArrayList;
-import com.helger.commons.collection.impl.CommonsHashSet;
-import com.helger.commons.collection.impl.CommonsLinkedHashMap;
-import com.helger.commons.collection.impl.CommonsLinkedHashSet;
-import com.helger.commons.collection.impl.ICommonsIterable;
-import com.helger.commons.collection.impl.ICommonsList;
-import com.helger.commons.collection.impl.ICommonsOrderedMap;
-import com.helger.commons.collection.impl.ICommonsOrderedSet;
-import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.error.level.EErrorLevel;
 import com.helger.commons.error.level.IErrorLevel;
 import com.helger.commons.log.InMemoryLogger;
 import com.helger.commons.log.LogMessage;
 import com.helger.commons.string.StringHelper;
+import com.helger.html.hc.html.forms.EHCFormMethod;
 import com.helger.html.hc.html.forms.HCCheckBox;
+import com.helger.html.hc.html.forms.HCEdit;
+import com.helger.html.hc.html.grouping.HCDiv;
 import com.helger.html.hc.html.grouping.HCUL;
 import com.helger.html.hc.impl.HCNodeList;
-import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.html.jquery.JQuery;
+import com.helger.html.jquery.JQueryAjaxBuilder;
+import com.helger.html.js.EJSEvent;
+import com.helger.html.jscode.JSAnonymousFunction;
+import com.helger.html.jscode.JSPackage;
+import com.helger.html.jscode.JSVar;
+import com.helger.html.jscode.html.JSHtml;
 import com.helger.phoss.smp.app.CSMPExchange;
+import com.helger.phoss.smp.app.SMPExchangeImportProgress;
+import com.helger.phoss.smp.app.SMPExchangeImporter;
+import com.helger.phoss.smp.app.SMPExchangeReader;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
-import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
-import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
-import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardMicroTypeConverter;
-import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
-import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
-import com.helger.phoss.smp.domain.redirect.SMPRedirectMicroTypeConverter;
-import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.changelog.SMPChangeLogManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
-import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupProvider;
-import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupMicroTypeConverter;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
-import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformationMicroTypeConverter;
 import com.helger.phoss.smp.domain.user.ISMPUser;
 import com.helger.phoss.smp.domain.user.ISMPUserManager;
-import com.helger.phoss.smp.exception.SMPServerException;
 import com.helger.phoss.smp.settings.ISMPSettings;
 import com.helger.phoss.smp.ui.AbstractSMPWebPage;
 import com.helger.phoss.smp.ui.SMPCommonUI;
+import com.helger.phoss.smp.ui.ajax.AjaxExecutorSecureExportAllServiceGroups;
 import com.helger.phoss.smp.ui.ajax.CAjax;
 import com.helger.phoss.smp.ui.secure.hc.HCSMPUserSelect;
 import com.helger.photon.bootstrap4.alert.BootstrapInfoBox;
@@ -84,10 +76,6 @@ import com.helger.photon.uicore.icon.EDefaultIcon;
 import com.helger.photon.uicore.page.WebPageExecutionContext;
 import com.helger.web.fileupload.IFileItem;
 import com.helger.web.scope.IRequestWebScopeWithoutResponse;
-import com.helger.xml.microdom.IMicroDocument;
-import com.helger.xml.microdom.IMicroElement;
-import com.helger.xml.microdom.serialize.MicroReader;
-import com.helger.xml.serialize.read.SAXReaderSettings;
 
 /**
  * Class to import and export service groups with all contents
@@ -99,324 +87,17 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
   private static final String FIELD_IMPORT_FILE = "importfile";
   private static final String FIELD_OVERWRITE_EXISTING = "overwriteexisting";
   private static final String FIELD_DEFAULT_OWNER = "defaultowner";
+  private static final String FIELD_DRY_RUN = "dryrun";
   private static final boolean DEFAULT_OVERWRITE_EXISTING = false;
-
-  private static final class SGImportData
-  {
-    private final ICommonsList <ISMPServiceInformation> m_aServiceInfos = new CommonsArrayList <> ();
-    private final ICommonsList <ISMPRedirect> m_aRedirects = new CommonsArrayList <> ();
-
-    public void addServiceInfo (@Nonnull final ISMPServiceInformation aServiceInfo)
-    {
-      m_aServiceInfos.add (aServiceInfo);
-    }
-
-    @Nonnull
-    public ICommonsIterable <ISMPServiceInformation> getServiceInfo ()
-    {
-      return m_aServiceInfos;
-    }
-
-    public void addRedirect (@Nonnull final ISMPRedirect aRedirect)
-    {
-      m_aRedirects.add (aRedirect);
-    }
-
-    @Nonnull
-    public ICommonsIterable <ISMPRedirect> getRedirects ()
-    {
-      return m_aRedirects;
-    }
-  }
+  private static final boolean DEFAULT_DRY_RUN = false;
+  private static final String ID_IMPORT_PROGRESS = "importprogress";
+  private static final int PROGRESS_INTERVAL_MS = 2_000;
 
   public PageSecureServiceGroupExchange (@Nonnull @Nonempty final String sID)
   {
     super (sID, "Import/Export");
   }
 
-  public static void importXMLVer10 (@Nonnull final IMicroElement eRoot,
-                                     final boolean bOverwriteExisting,
-                                     @Nonnull final ISMPUser aDefaultOwner,
-                                     @Nonnull final ICommonsList <ISMPServiceGroup> aAllServiceGroups,
-                                     @Nonnull final ICommonsList <ISMPBusinessCard> aAllBusinessCards,
-                                     @Nonnull final InMemoryLogger aLogger)
-  {
-    final ISMPSettings aSettings = SMPMetaManager.getSettings ();
-
-    final ICommonsOrderedMap <ISMPServiceGroup, SGImportData> aImportServiceGroups = new CommonsLinkedHashMap <> ();
-    final ICommonsList <ISMPServiceGroup> aDeleteServiceGroups = new CommonsArrayList <> ();
-
-    // First read all service groups as they are dependents of the
-    // business cards
-    int nSGIndex = 0;
-    for (final IMicroElement eServiceGroup : eRoot.getAllChildElements (CSMPExchange.ELEMENT_SERVICEGROUP))
-    {
-      // Read service group and service information
-      final ISMPServiceGroup aServiceGroup = SMPServiceGroupMicroTypeConverter.convertToNative (eServiceGroup, x -> {
-        ISMPUser ret = SMPMetaManager.getUserMgr ().getUserOfID (x);
-        if (ret == null)
-        {
-          // Select the default owner if an unknown user is contained
-          ret = aDefaultOwner;
-        }
-        return ret;
-      });
-      final String sServiceGroupID = aServiceGroup.getID ();
-      final boolean bIsServiceGroupContained = aAllServiceGroups.containsAny (x -> x.getID ().equals (sServiceGroupID));
-      if (!bIsServiceGroupContained || bOverwriteExisting)
-      {
-        if (aImportServiceGroups.containsKey (aServiceGroup))
-        {
-          aLogger.error ("The service group " +
-                         sServiceGroupID +
-                         " (index " +
-                         nSGIndex +
-                         ") is already contained in the file. Will overwrite the previous definition.");
-        }
-
-        // Remember to create/overwrite the service group
-        final SGImportData aSGInfo = new SGImportData ();
-        aImportServiceGroups.put (aServiceGroup, aSGInfo);
-        if (bIsServiceGroupContained)
-          aDeleteServiceGroups.add (aServiceGroup);
-        aLogger.success ("Will " +
-                         (bIsServiceGroupContained ? "overwrite" : "import") +
-                         " service group " +
-                         sServiceGroupID);
-
-        // read all contained service information
-        {
-          int nSICount = 0;
-          for (final IMicroElement eServiceInfo : eServiceGroup.getAllChildElements (CSMPExchange.ELEMENT_SERVICEINFO))
-          {
-            final ISMPServiceInformation aServiceInfo = SMPServiceInformationMicroTypeConverter.convertToNative (eServiceInfo,
-                                                                                                                 x -> aServiceGroup);
-            aSGInfo.addServiceInfo (aServiceInfo);
-            ++nSICount;
-          }
-          aLogger.info ("Read " + nSICount + " service information of service group " + sServiceGroupID);
-        }
-
-        // read all contained redirects
-        {
-          int nRDCount = 0;
-          for (final IMicroElement eRedirect : eServiceGroup.getAllChildElements (CSMPExchange.ELEMENT_REDIRECT))
-          {
-            final ISMPRedirect aRedirect = SMPRedirectMicroTypeConverter.convertToNative (eRedirect,
-                                                                                          x -> aServiceGroup);
-            aSGInfo.addRedirect (aRedirect);
-            ++nRDCount;
-          }
-          aLogger.info ("Read " + nRDCount + " redirects of service group " + sServiceGroupID);
-        }
-      }
-      else
-      {
-        aLogger.warn ("Ignoring already contained service group " + sServiceGroupID);
-      }
-      ++nSGIndex;
-    }
-
-    // Now read the business cards
-    final ICommonsOrderedSet <ISMPBusinessCard> aImportBusinessCards = new CommonsLinkedHashSet <> ();
-    final ICommonsList <ISMPBusinessCard> aDeleteBusinessCards = new CommonsArrayList <> ();
-    if (aSettings.isDirectoryIntegrationEnabled ())
-    {
-      // Read them only if the PEPPOL Directory integration is enabled
-      int nBCIndex = 0;
-      for (final IMicroElement eBusinessCard : eRoot.getAllChildElements (CSMPExchange.ELEMENT_BUSINESSCARD))
-      {
-        // Read business card
-        ISMPBusinessCard aBusinessCard = null;
-        try
-        {
-          final ISMPServiceGroupProvider aSGProvider = x -> {
-            // First look in service groups to import
-            ISMPServiceGroup aSG = aImportServiceGroups.findFirstKey (y -> x.hasSameContent (y.getKey ()
-                                                                                              .getParticpantIdentifier ()));
-            if (aSG == null)
-            {
-              // Lookup in all existing service group
-              aSG = aAllServiceGroups.findFirst (y -> x.hasSameContent (y.getParticpantIdentifier ()));
-            }
-            return aSG;
-          };
-          aBusinessCard = SMPBusinessCardMicroTypeConverter.convertToNative (eBusinessCard, aSGProvider);
-        }
-        catch (final IllegalStateException ex)
-        {
-          // Service group not found
-          aLogger.error ("Business card at index " + nBCIndex + " contains an invalid/unknown service group!");
-        }
-        if (aBusinessCard == null)
-        {
-          aLogger.error ("Failed to read business card at index " + nBCIndex);
-        }
-        else
-        {
-          final String sBusinessCardID = aBusinessCard.getID ();
-          final boolean bIsBusinessCardContained = aAllBusinessCards.containsAny (x -> x.getID ()
-                                                                                        .equals (sBusinessCardID));
-          if (!bIsBusinessCardContained || bOverwriteExisting)
-          {
-            final ISMPServiceGroup aBCSG = aBusinessCard.getServiceGroup ();
-            if (aImportBusinessCards.removeIf (x -> x.getServiceGroup ().equals (aBCSG)))
-            {
-              aLogger.error ("The business card for " +
-                             sBusinessCardID +
-                             " is already contained in the file. Will overwrite the previous definition.");
-            }
-            aImportBusinessCards.add (aBusinessCard);
-            if (bIsBusinessCardContained)
-              aDeleteBusinessCards.add (aBusinessCard);
-            aLogger.success ("Will " +
-                             (bIsBusinessCardContained ? "overwrite" : "import") +
-                             " business card for " +
-                             sBusinessCardID);
-          }
-          else
-          {
-            aLogger.warn ("Ignoring already contained business card " + sBusinessCardID);
-          }
-        }
-        ++nBCIndex;
-      }
-    }
-
-    if (aImportServiceGroups.isEmpty () && aImportBusinessCards.isEmpty ())
-    {
-      if (aSettings.isDirectoryIntegrationEnabled ())
-        aLogger.warn ("Found neither a service group nor a business card to import.");
-      else
-        aLogger.warn ("Found no service group to import.");
-    }
-    else
-      if (aLogger.containsAtLeastOneError ())
-      {
-        aLogger.error ("Nothing will be imported because of the previous errors!");
-      }
-      else
-      {
-        // Start importing
-        aLogger.info ("Import is performed!");
-
-        final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-        final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
-        final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
-        final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
-
-        // 1. delete all existing service groups to be imported (if overwrite);
-        // this may implicitly delete business cards
-        final ICommonsSet <IParticipantIdentifier> aDeletedServiceGroups = new CommonsHashSet <> ();
-        for (final ISMPServiceGroup aDeleteServiceGroup : aDeleteServiceGroups)
-        {
-          final IParticipantIdentifier aPI = aDeleteServiceGroup.getParticpantIdentifier ();
-          try
-          {
-            if (aServiceGroupMgr.deleteSMPServiceGroup (aPI).isChanged ())
-            {
-              aLogger.success ("Successfully deleted service group " + aDeleteServiceGroup.getID ());
-              aDeletedServiceGroups.add (aPI);
-            }
-            else
-              aLogger.error ("Failed to delete service group " + aDeleteServiceGroup.getID ());
-          }
-          catch (final SMPServerException ex)
-          {
-            aLogger.error ("Failed to delete service group " + aDeleteServiceGroup.getID (), ex);
-          }
-        }
-
-        // 2. create all service groups
-        for (final Map.Entry <ISMPServiceGroup, SGImportData> aEntry : aImportServiceGroups.entrySet ())
-        {
-          final ISMPServiceGroup aImportServiceGroup = aEntry.getKey ();
-          ISMPServiceGroup aNewServiceGroup = null;
-          try
-          {
-            aNewServiceGroup = aServiceGroupMgr.createSMPServiceGroup (aImportServiceGroup.getOwnerID (),
-                                                                       aImportServiceGroup.getParticpantIdentifier (),
-                                                                       aImportServiceGroup.getExtensionsAsString ());
-            aLogger.success ("Successfully created service group " + aImportServiceGroup.getID ());
-          }
-          catch (final Exception ex)
-          {
-            // E.g. if SML connection failed
-            aLogger.error ("Error creating the new service group " + aImportServiceGroup.getID (), ex);
-
-            // Delete Business Card again, if already present
-            aImportBusinessCards.removeIf (x -> x.getServiceGroupID ().equals (aImportServiceGroup.getID ()));
-          }
-          if (aNewServiceGroup != null)
-          {
-            // 3a. create all endpoints
-            for (final ISMPServiceInformation aImportServiceInfo : aEntry.getValue ().getServiceInfo ())
-              try
-              {
-                if (aServiceInfoMgr.mergeSMPServiceInformation (aImportServiceInfo).isSuccess ())
-                  aLogger.success ("Successfully created service information for " + aImportServiceGroup.getID ());
-              }
-              catch (final Exception ex)
-              {
-                aLogger.error ("Error creating the new service information for " + aImportServiceGroup.getID (), ex);
-              }
-
-            // 3b. create all redirects
-            for (final ISMPRedirect aImportRedirect : aEntry.getValue ().getRedirects ())
-              try
-              {
-                if (aRedirectMgr.createOrUpdateSMPRedirect (aNewServiceGroup,
-                                                            aImportRedirect.getDocumentTypeIdentifier (),
-                                                            aImportRedirect.getTargetHref (),
-                                                            aImportRedirect.getSubjectUniqueIdentifier (),
-                                                            aImportRedirect.getCertificate (),
-                                                            aImportRedirect.getExtensionsAsString ()) != null)
-                  aLogger.success ("Successfully created redirect for " + aImportServiceGroup.getID ());
-              }
-              catch (final Exception ex)
-              {
-                aLogger.error ("Error creating the new redirect for " + aImportServiceGroup.getID (), ex);
-              }
-          }
-        }
-
-        // 4. delete all existing business cards to be imported (if overwrite)
-        // Note: if PD integration is disabled, the list is empty
-        for (final ISMPBusinessCard aDeleteBusinessCard : aDeleteBusinessCards)
-          try
-          {
-            if (aBusinessCardMgr.deleteSMPBusinessCard (aDeleteBusinessCard).isChanged ())
-              aLogger.success ("Successfully deleted business card " + aDeleteBusinessCard.getID ());
-            else
-            {
-              // If the service group to which the business card belongs was
-              // already deleted, don't display an error, as the business card
-              // was automatically deleted afterwards
-              if (!aDeletedServiceGroups.contains (aDeleteBusinessCard.getServiceGroup ().getParticpantIdentifier ()))
-                aLogger.error ("Failed to delete business card " + aDeleteBusinessCard.getID ());
-            }
-          }
-          catch (final Exception ex)
-          {
-            aLogger.error ("Failed to delete business card " + aDeleteBusinessCard.getID (), ex);
-          }
-
-        // 5. create all new business cards
-        // Note: if PD integration is disabled, the list is empty
-        for (final ISMPBusinessCard aImportBusinessCard : aImportBusinessCards)
-          try
-          {
-            if (aBusinessCardMgr.createOrUpdateSMPBusinessCard (aImportBusinessCard.getServiceGroup (),
-                                                                aImportBusinessCard.getAllEntities ()) != null)
-              aLogger.success ("Successfully created business card " + aImportBusinessCard.getID ());
-          }
-          catch (final Exception ex)
-          {
-            aLogger.error ("Failed to create business card " + aImportBusinessCard.getID (), ex);
-          }
-      }
-  }
-
   @Override
   protected void fillContent (@Nonnull final WebPageExecutionContext aWPEC)
   {
@@ -425,11 +106,8 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
     final IRequestWebScopeWithoutResponse aRequestScope = aWPEC.getRequestScope ();
     final ISMPSettings aSettings = SMPMetaManager.getSettings ();
     final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-    final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
     final ISMPUserManager aUserMgr = SMPMetaManager.getUserMgr ();
-    final ICommonsList <ISMPServiceGroup> aAllServiceGroups = aServiceGroupMgr.getAllSMPServiceGroups ();
-    final int nServiceGroupCount = aAllServiceGroups.size ();
-    final ICommonsList <ISMPBusinessCard> aAllBusinessCards = aBusinessCardMgr.getAllSMPBusinessCards ();
+    final long nServiceGroupCount = aServiceGroupMgr.getSMPServiceGroupCount ();
     final FormErrorList aFormErrors = new FormErrorList ();
 
     boolean bSelectImportTab = false;
@@ -443,6 +121,7 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
       final IFileItem aImportFile = aWPEC.params ().getAsFileItem (FIELD_IMPORT_FILE);
       final boolean bOverwriteExisting = aWPEC.params ()
                                               .isCheckBoxChecked (FIELD_OVERWRITE_EXISTING, DEFAULT_OVERWRITE_EXISTING);
+      final boolean bDryRun = aWPEC.params ().isCheckBoxChecked (FIELD_DRY_RUN, DEFAULT_DRY_RUN);
       final String sDefaultOwnerID = aWPEC.params ().getAsString (FIELD_DEFAULT_OWNER);
       final ISMPUser aDefaultOwner = aUserMgr.getUserOfID (sDefaultOwnerID);
 
@@ -457,24 +136,34 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
 
       if (aFormErrors.isEmpty ())
       {
-        final SAXReaderSettings aSRS = new SAXReaderSettings ();
-        final IMicroDocument aDoc = MicroReader.readMicroXML (aImportFile, aSRS);
-        if (aDoc == null || aDoc.getDocumentElement () == null)
+        // Only read the root element to determine the version
+        String sVersion = null;
+        boolean bValidXML;
+        try (final SMPExchangeReader aReader = new SMPExchangeReader (aImportFile.getBufferedInputStream ()))
+        {
+          sVersion = aReader.getVersion ();
+          bValidXML = true;
+        }
+        catch (final XMLStreamException ex)
+        {
+          bValidXML = false;
+        }
+
+        if (!bValidXML)
           aFormErrors.addFieldError (FIELD_IMPORT_FILE, "The provided file is not a valid XML file!");
         else
         {
           // Start interpreting
-          final String sVersion = aDoc.getDocumentElement ().getAttributeValue (CSMPExchange.ATTR_VERSION);
           if (CSMPExchange.VERSION_10.equals (sVersion))
           {
-            // Version 1.0
+            // Version 1.0 - streaming import
             final InMemoryLogger aLogger = new InMemoryLogger ();
-            importXMLVer10 (aDoc.getDocumentElement (),
-                            bOverwriteExisting,
-                            aDefaultOwner,
-                            aAllServiceGroups,
-                            aAllBusinessCards,
-                            aLogger);
+            final SMPExchangeImporter aImporter = new SMPExchangeImporter (bOverwriteExisting, aDefaultOwner, aLogger);
+            aImporter.setBatchSize (SMPWebAppConfiguration.getImportBatchSize ())
+                     .setThreadCount (SMPWebAppConfiguration.getImportThreadCount ())
+                     .setDryRun (bDryRun)
+                     .setProgress (SMPExchangeImportProgress.getInstance ());
+            aImporter.importXMLVer10 (aImportFile, aImportFile.getSize ());
             for (final LogMessage aLogMsg : aLogger)
             {
               final IErrorLevel aErrorLevel = aLogMsg.getErrorLevel ();
@@ -521,7 +210,7 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
         aExport.addChild (new BootstrapInfoBox ().addChild ("Export " +
                                                             (nServiceGroupCount == 1 ? "service group"
                                                                                      : "all " +
-                                                                                       aAllServiceGroups.size () +
+                                                                                       nServiceGroupCount +
                                                                                        " service groups") +
                                                             (bHandleBusinessCards ? " and business card" +
                                                                                     (nServiceGroupCount == 1 ? "" : "s")
@@ -533,7 +222,33 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
       aToolbar.addChild (new BootstrapButton ().addChild ("Export all Service Groups")
                                                .setIcon (EDefaultIcon.SAVE_ALL)
                                                .setOnClick (CAjax.FUNCTION_EXPORT_ALL_SERVICE_GROUPS.getInvocationURL (aRequestScope))
-                                               .setDisabled (aAllServiceGroups.isEmpty ()));
+                                               .setDisabled (nServiceGroupCount == 0));
+      aToolbar.addChild (new BootstrapButton ().addChild ("Export all Service Groups (GZip compressed)")
+                                               .setIcon (EDefaultIcon.SAVE_ALL)
+                                               .setOnClick (CAjax.FUNCTION_EXPORT_ALL_SERVICE_GROUPS.getInvocationURL (aRequestScope)
+                                                                                                    .add (AjaxExecutorSecureExportAllServiceGroups.PARAM_GZIP,
+                                                                                                          "true"))
+                                               .setDisabled (nServiceGroupCount == 0));
+
+      final SMPChangeLogManager aChangeLogMgr = SMPMetaManager.getChangeLogMgr ();
+      if (aChangeLogMgr != null)
+      {
+        // Delta export
+        final long nLastSequence = aChangeLogMgr.getLastSequence ();
+        aExport.addChild (new BootstrapInfoBox ().addChild ("Export only the changes after a certain change sequence number. The current change sequence number is " +
+                                                            nLastSequence +
+                                                            "."));
+        final BootstrapForm aDeltaForm = aExport.addAndReturnChild (new BootstrapForm (aWPEC).setAction (CAjax.FUNCTION_EXPORT_ALL_SERVICE_GROUPS.getInvocationURL (aRequestScope))
+                                                                                             .setMethod (EHCFormMethod.GET));
+        aDeltaForm.addFormGroup (new BootstrapFormGroup ().setLabel ("Changes since")
+                                                          .setCtrl (new HCEdit (new RequestField (AjaxExecutorSecureExportAllServiceGroups.PARAM_SINCE,
+                                                                                                  "0")))
+                                                          .setHelpText ("The last change sequence number already known. Use 0 to export all recorded changes."));
+        aDeltaForm.addFormGroup (new BootstrapFormGroup ().setLabel ("GZip compressed")
+                                                          .setCtrl (new HCCheckBox (new RequestFieldBoolean (AjaxExecutorSecureExportAllServiceGroups.PARAM_GZIP,
+                                                                                                             false))));
+        aDeltaForm.addChild (new BootstrapSubmitButton ().addChild ("Export changes").setIcon (EDefaultIcon.SAVE_ALL));
+      }
       aTabBox.addTab ("export", "Export", aExport, !bSelectImportTab);
     }
 
@@ -566,6 +281,11 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
                                                                  SMPWebAppConfiguration.getDirectoryName () +
                                                                  " integration is enabled, existing business cards contained in the import are also overwritten!")
                                                    .setErrorList (aFormErrors.getListOfField (FIELD_OVERWRITE_EXISTING)));
+      aForm.addFormGroup (new BootstrapFormGroup ().setLabel ("Dry run")
+                                                   .setCtrl (new HCCheckBox (new RequestFieldBoolean (FIELD_DRY_RUN,
+                                                                                                      DEFAULT_DRY_RUN)))
+                                                   .setHelpText ("If this box is checked, the file is only checked and nothing is imported.")
+                                                   .setErrorList (aFormErrors.getListOfField (FIELD_DRY_RUN)));
       aForm.addFormGroup (new BootstrapFormGroup ().setLabelMandatory ("Owner of the new service groups")
                                                    .setCtrl (new HCSMPUserSelect (new RequestField (FIELD_DEFAULT_OWNER),
                                                                                   aDisplayLocale))
@@ -575,6 +295,27 @@ public final class PageSecureServiceGroupExchange extends AbstractSMPWebPage
       final BootstrapButtonToolbar aToolbar = aForm.addAndReturnChild (getUIHandler ().createToolbar (aWPEC));
       aToolbar.addHiddenField (CPageParam.PARAM_ACTION, CPageParam.ACTION_PERFORM);
       aToolbar.addChild (new BootstrapSubmitButton ().addChild ("Import Service Groups").setIcon (EDefaultIcon.ADD));
+
+      // Show the progress while the import is running
+      final HCDiv aProgress = aForm.addAndReturnChild (new HCDiv ().setID (ID_IMPORT_PROGRESS));
+      {
+        final JSAnonymousFunction aJSUpdate = new JSAnonymousFunction ();
+        final JSVar aJSUpdateData = aJSUpdate.param ("data");
+        aJSUpdate.body ()._if (aJSUpdateData, JQuery.idRef (aProgress).text (aJSUpdateData));
+
+        final JSAnonymousFunction aJSPoll = new JSAnonymousFunction ();
+        aJSPoll.body ()
+               .add (new JQueryAjaxBuilder ().url (CAjax.FUNCTION_IMPORT_PROGRESS.getInvocationURL (aRequestScope))
+                                             .cache (false)
+                                             .dataType ("text")
+                                             .success (aJSUpdate)
+                                             .build ());
+
+        final JSPackage aOnSubmit = new JSPackage ();
+        aOnSubmit.add (JQuery.idRef (aProgress).text ("Uploading..."));
+        aOnSubmit.add (JSHtml.windowSetInterval (aJSPoll, PROGRESS_INTERVAL_MS));
+        aForm.addEventHandler (EJSEvent.SUBMIT, aOnSubmit);
+      }
       aTabBox.addTab ("import", "Import", aImport, bSelectImportTab);
     }
   }
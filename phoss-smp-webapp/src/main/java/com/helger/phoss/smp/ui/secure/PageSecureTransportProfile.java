@@ -26,6 +26,8 @@ import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.compare.ESortOrder;
+import com.helger.commons.mutable.MutableBoolean;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.url.ISimpleURL;
 import com.helger.html.hc.html.forms.HCCheckBox;
@@ -41,7 +43,6 @@ import com.helger.peppol.smp.ISMPTransportProfile;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
 import com.helger.phoss.smp.ui.AbstractSMPWebPageForm;
@@ -183,11 +184,18 @@ public class PageSecureTransportProfile extends AbstractSMPWebPageForm <ISMPTran
 
       // If the transport profile is already used, it cannot be deleted
       final ISMPServiceInformationManager aServiceInformationMgr = SMPMetaManager.getServiceInformationMgr ();
-      for (final ISMPServiceInformation aServiceInfo : aServiceInformationMgr.getAllSMPServiceInformation ())
+      final MutableBoolean aUsed = new MutableBoolean (false);
+      final ESuccess eSuccess = aServiceInformationMgr.forEachSMPServiceInformation (aServiceInfo -> {
+        if (aUsed.booleanValue ())
+          return;
         for (final ISMPProcess aProcess : aServiceInfo.getAllProcesses ())
           for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
             if (aEndpoint.getTransportProfile ().equals (aSelectedObject.getID ()))
-              return false;
+              aUsed.set (true);
+      });
+      // If not all service information could be checked, don't allow it
+      if (aUsed.booleanValue () || eSuccess.isFailure ())
+        return false;
     }
 
     return super.isActionAllowed (aWPEC, eFormAction, aSelectedObject);
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.app.PDPendingNotifications.EAction;
+import com.helger.phoss.smp.app.PDPendingNotifications.Entry;
+import com.helger.xml.microdom.IMicroDocument;
+
+/**
+ * Test class for class {@link PDPendingNotifications}.
+ *
+ * @author Philip Helger
+ */
+public final class PDPendingNotificationsTest
+{
+  private static final long DEBOUNCE = 1000;
+  private static final long RETRY = 100;
+
+  private static final IParticipantIdentifier PI1 = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:pdqueue1");
+  private static final IParticipantIdentifier PI2 = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:pdqueue2");
+
+  @Test
+  public void testCoalescing ()
+  {
+    final PDPendingNotifications aQueue = new PDPendingNotifications ();
+    aQueue.enqueue (PI1, EAction.ADD, 0, DEBOUNCE);
+    aQueue.enqueue (PI2, EAction.ADD, 10, DEBOUNCE);
+    aQueue.enqueue (PI1, EAction.ADD, 500, DEBOUNCE);
+    aQueue.enqueue (PI1, EAction.DELETE, 600, DEBOUNCE);
+    assertEquals (2, aQueue.size ());
+
+    // Nothing is due before the debounce period passed
+    assertTrue (aQueue.pollDueEntries (999).isEmpty ());
+
+    // PI2 is due first, PI1 was postponed by the later changes
+    ICommonsList <Entry> aDue = aQueue.pollDueEntries (1010);
+    assertEquals (1, aDue.size ());
+    assertEquals (PI2, aDue.getFirst ().getParticipantID ());
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.SUCCESS, 1010, RETRY, 3);
+    assertEquals (1, aQueue.size ());
+
+    aDue = aQueue.pollDueEntries (1600);
+    assertEquals (1, aDue.size ());
+    // The latest action wins
+    assertEquals (PI1, aDue.getFirst ().getParticipantID ());
+    assertSame (EAction.DELETE, aQueue.getAction (aDue.getFirst ()));
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.SUCCESS, 1600, RETRY, 3);
+    assertEquals (0, aQueue.size ());
+  }
+
+  @Test
+  public void testPersistOnlyAfterChanges ()
+  {
+    final PDPendingNotifications aQueue = new PDPendingNotifications ();
+    assertFalse (aQueue.isDirty ());
+    assertNull (aQueue.getAsDocumentIfDirty ());
+
+    aQueue.enqueue (PI1, EAction.ADD, 0, DEBOUNCE);
+    assertTrue (aQueue.isDirty ());
+    assertNotNull (aQueue.getAsDocumentIfDirty ());
+    assertFalse (aQueue.isDirty ());
+
+    // Only the due time changes
+    aQueue.enqueue (PI1, EAction.ADD, 100, DEBOUNCE);
+    assertFalse (aQueue.isDirty ());
+
+    // The action changes
+    aQueue.enqueue (PI1, EAction.DELETE, 200, DEBOUNCE);
+    assertTrue (aQueue.isDirty ());
+    final IMicroDocument aDoc = aQueue.getAsDocumentIfDirty ();
+    assertNotNull (aDoc);
+
+    // Read it back
+    final PDPendingNotifications aQueue2 = new PDPendingNotifications ();
+    aQueue2.readFrom (aDoc, PeppolIdentifierFactory.INSTANCE, 5000);
+    assertEquals (1, aQueue2.size ());
+    final ICommonsList <Entry> aDue = aQueue2.pollDueEntries (5000);
+    assertEquals (1, aDue.size ());
+    assertEquals (PI1, aDue.getFirst ().getParticipantID ());
+    assertSame (EAction.DELETE, aQueue2.getAction (aDue.getFirst ()));
+    assertEquals (Long.valueOf (5000), aQueue2.getOldestEntryAgeMS (5000));
+  }
+
+  @Test
+  public void testContinuousUpdatesAreBounded ()
+  {
+    final PDPendingNotifications aQueue = new PDPendingNotifications ();
+    // Update every 500ms - the notification must still be sent after at most
+    // 10 times the debounce period
+    for (long nNow = 0; nNow <= 20 * DEBOUNCE; nNow += 500)
+      aQueue.enqueue (PI1, EAction.ADD, nNow, DEBOUNCE);
+    final ICommonsList <Entry> aDue = aQueue.pollDueEntries (10 * DEBOUNCE);
+    assertEquals (1, aDue.size ());
+    assertEquals (10 * DEBOUNCE, aDue.getFirst ().getDueMS ());
+  }
+
+  @Test
+  public void testChangedWhileInFlight ()
+  {
+    final PDPendingNotifications aQueue = new PDPendingNotifications ();
+    aQueue.enqueue (PI1, EAction.ADD, 0, DEBOUNCE);
+    final ICommonsList <Entry> aDue = aQueue.pollDueEntries (DEBOUNCE);
+    assertEquals (1, aDue.size ());
+
+    // Change while sending - the entry must not be dropped
+    aQueue.enqueue (PI1, EAction.DELETE, DEBOUNCE + 1, DEBOUNCE);
+    assertTrue (aQueue.pollDueEntries (5 * DEBOUNCE).isEmpty ());
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.SUCCESS, DEBOUNCE + 2, RETRY, 3);
+    assertEquals (1, aQueue.size ());
+
+    final ICommonsList <Entry> aDue2 = aQueue.pollDueEntries (5 * DEBOUNCE);
+    assertEquals (1, aDue2.size ());
+    assertSame (EAction.DELETE, aQueue.getAction (aDue2.getFirst ()));
+  }
+
+  @Test
+  public void testRetryWithBackoff ()
+  {
+    final PDPendingNotifications aQueue = new PDPendingNotifications ();
+    aQueue.enqueue (PI1, EAction.ADD, 0, 0);
+
+    long nNow = 0;
+    ICommonsList <Entry> aDue = aQueue.pollDueEntries (nNow);
+    assertEquals (1, aDue.size ());
+
+    // First failure - retry after RETRY
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.FAILURE, nNow, RETRY, 3);
+    assertEquals (1, aQueue.size ());
+    assertEquals (1, aDue.getFirst ().getAttempts ());
+    assertTrue (aQueue.pollDueEntries (nNow + RETRY - 1).isEmpty ());
+    nNow += RETRY;
+    aDue = aQueue.pollDueEntries (nNow);
+    assertEquals (1, aDue.size ());
+
+    // Second failure - exponential backoff
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.FAILURE, nNow, RETRY, 3);
+    assertEquals (2, aDue.getFirst ().getAttempts ());
+    assertTrue (aQueue.pollDueEntries (nNow + 2 * RETRY - 1).isEmpty ());
+    nNow += 2 * RETRY;
+    aDue = aQueue.pollDueEntries (nNow);
+    assertEquals (1, aDue.size ());
+
+    // Third failure - give up
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.FAILURE, nNow, RETRY, 3);
+    assertEquals (0, aQueue.size ());
+    assertTrue (aQueue.pollDueEntries (Long.MAX_VALUE).isEmpty ());
+  }
+
+  @Test
+  public void testRetryResetByNewChange ()
+  {
+    final PDPendingNotifications aQueue = new PDPendingNotifications ();
+    aQueue.enqueue (PI1, EAction.ADD, 0, 0);
+    final ICommonsList <Entry> aDue = aQueue.pollDueEntries (0);
+    aQueue.onSendResult (aDue.getFirst (), ESuccess.FAILURE, 0, RETRY, 3);
+    assertEquals (1, aDue.getFirst ().getAttempts ());
+
+    // A new change resets the attempts and is debounced again
+    aQueue.enqueue (PI1, EAction.ADD, 10, DEBOUNCE);
+    assertEquals (0, aDue.getFirst ().getAttempts ());
+    assertTrue (aQueue.pollDueEntries (DEBOUNCE).isEmpty ());
+    assertEquals (1, aQueue.pollDueEntries (DEBOUNCE + 10).size ());
+  }
+}
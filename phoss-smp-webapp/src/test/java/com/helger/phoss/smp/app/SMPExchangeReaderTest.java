@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.xml.microdom.IMicroElement;
+
+/**
+ * Test class for class {@link SMPExchangeReader}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPExchangeReaderTest
+{
+  @Test
+  public void testReadElements () throws Exception
+  {
+    final String sXML = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                        "<smp-data version='1.0'>\n" +
+                        "  <!-- comment -->\n" +
+                        "  <servicegroup ownerid='owner'>\n" +
+                        "    <participant scheme='iso6523-actorid-upis' value='0088:123'/>\n" +
+                        "    <extension><![CDATA[<a>b</a>]]></extension>\n" +
+                        "  </servicegroup>\n" +
+                        "  <businesscard servicegroupid='iso6523-actorid-upis::0088:123'/>\n" +
+                        "</smp-data>";
+    try (final SMPExchangeReader aReader = new SMPExchangeReader (new NonBlockingByteArrayInputStream (sXML.getBytes (StandardCharsets.UTF_8))))
+    {
+      assertEquals (CSMPExchange.ELEMENT_SMP_DATA, aReader.getRootElementName ());
+      assertEquals (CSMPExchange.VERSION_10, aReader.getVersion ());
+
+      IMicroElement e = aReader.readNextElement ();
+      assertNotNull (e);
+      assertEquals (CSMPExchange.ELEMENT_SERVICEGROUP, e.getTagName ());
+      assertEquals ("owner", e.getAttributeValue ("ownerid"));
+      assertEquals ("0088:123", e.getFirstChildElement ("participant").getAttributeValue ("value"));
+      assertEquals ("<a>b</a>", e.getFirstChildElement ("extension").getTextContent ());
+
+      e = aReader.readNextElement ();
+      assertNotNull (e);
+      assertEquals (CSMPExchange.ELEMENT_BUSINESSCARD, e.getTagName ());
+      assertEquals (0, e.getChildElementCount ());
+
+      assertNull (aReader.readNextElement ());
+      assertNull (aReader.readNextElement ());
+    }
+  }
+
+  @Test
+  public void testInvalid ()
+  {
+    try (final SMPExchangeReader aReader = new SMPExchangeReader (new NonBlockingByteArrayInputStream ("no xml".getBytes (StandardCharsets.UTF_8))))
+    {
+      fail ();
+    }
+    catch (final XMLStreamException ex)
+    {
+      // expected
+    }
+  }
+}
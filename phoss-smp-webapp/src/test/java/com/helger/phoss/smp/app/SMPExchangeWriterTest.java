@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2014-2019 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroElement;
+
+/**
+ * Test class for class {@link SMPExchangeWriter}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPExchangeWriterTest
+{
+  @Test
+  public void testRoundTrip () throws Exception
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    try (final SMPExchangeWriter aWriter = new SMPExchangeWriter (aBAOS))
+    {
+      final IMicroElement eSG = new MicroElement (CSMPExchange.ELEMENT_SERVICEGROUP);
+      eSG.setAttribute ("ownerid", "owner");
+      eSG.appendElement ("extension").appendText ("<a>b & c</a>");
+      aWriter.writeElement (eSG);
+      aWriter.writeElement (new MicroElement (CSMPExchange.ELEMENT_BUSINESSCARD));
+      assertEquals (2, aWriter.getElementCount ());
+    }
+
+    try (final SMPExchangeReader aReader = new SMPExchangeReader (new NonBlockingByteArrayInputStream (aBAOS.toByteArray ())))
+    {
+      assertEquals (CSMPExchange.ELEMENT_SMP_DATA, aReader.getRootElementName ());
+      assertEquals (CSMPExchange.VERSION_10, aReader.getVersion ());
+
+      IMicroElement e = aReader.readNextElement ();
+      assertNotNull (e);
+      assertEquals (CSMPExchange.ELEMENT_SERVICEGROUP, e.getTagName ());
+      assertEquals ("owner", e.getAttributeValue ("ownerid"));
+      assertEquals ("<a>b & c</a>", e.getFirstChildElement ("extension").getTextContent ());
+
+      e = aReader.readNextElement ();
+      assertNotNull (e);
+      assertEquals (CSMPExchange.ELEMENT_BUSINESSCARD, e.getTagName ());
+
+      assertNull (aReader.readNextElement ());
+    }
+  }
+}